@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Chooses by how much live preview frames are subsampled before detection, so that the detector
+ * latency stays close to a target.
+ *
+ * <p>The controller smooths the measured detector latency and only changes the subsampling factor
+ * once the latency has been off target for a number of consecutive frames. Going back to a higher
+ * resolution requires a larger margin and more frames than going down, so that the resolution does
+ * not oscillate around the target. The latency measured at a factor is only trusted for {@link
+ * #MEASUREMENT_MAX_AGE_MS}, after which the finer factor is probed again, so that a transient
+ * slowdown does not keep the resolution down for the rest of the session. The factor that was
+ * reached is stored per device model, detector, frame size and target, so that the next session
+ * starts from it.
+ */
+public final class AdaptiveResolutionController {
+
+  private static final String TAG = "AdaptiveResolution";
+  private static final String CALIBRATION_PREFS_NAME = "adaptive_resolution_calibration";
+
+  private static final int MAX_DOWNSCALE_FACTOR = 4;
+  // Detection quality drops quickly below this, whatever the latency.
+  private static final int MIN_DETECTION_SHORT_SIDE = 120;
+
+  private static final float LATENCY_SMOOTHING = 0.2f;
+  private static final float STEP_DOWN_LATENCY_RATIO = 1.15f;
+  private static final int STEP_DOWN_FRAMES = 10;
+  private static final float STEP_UP_LATENCY_RATIO = 0.85f;
+  private static final int STEP_UP_FRAMES = 60;
+  // Frames that were already in flight when the factor changed are not representative.
+  private static final int SETTLE_FRAMES = 3;
+  private static final long MEASUREMENT_MAX_AGE_MS = 30_000;
+
+  private final SharedPreferences calibration;
+  private final String detectorName;
+  private final long targetLatencyMs;
+
+  @GuardedBy("this")
+  @Nullable
+  private String calibrationKey;
+
+  @GuardedBy("this")
+  private int frameWidth;
+
+  @GuardedBy("this")
+  private int frameHeight;
+
+  @GuardedBy("this")
+  private int maxDownscaleFactor = 1;
+
+  @GuardedBy("this")
+  private int downscaleFactor = 1;
+
+  @GuardedBy("this")
+  private float smoothedLatencyMs = -1;
+
+  // Last smoothed latency seen at each factor and when, used to predict the latency of going back
+  // up.
+  @GuardedBy("this")
+  private final float[] latencyByFactorMs = new float[MAX_DOWNSCALE_FACTOR + 1];
+
+  @GuardedBy("this")
+  private final long[] latencyByFactorTimeMs = new long[MAX_DOWNSCALE_FACTOR + 1];
+
+  @GuardedBy("this")
+  private int framesOverTarget;
+
+  @GuardedBy("this")
+  private int framesUnderTarget;
+
+  @GuardedBy("this")
+  private int framesToSettle;
+
+  @VisibleForTesting
+  AdaptiveResolutionController(
+      SharedPreferences calibration, String detectorName, long targetLatencyMs) {
+    this.calibration = calibration;
+    this.detectorName = detectorName;
+    this.targetLatencyMs = targetLatencyMs;
+  }
+
+  /**
+   * Creates a controller for the given detector, or returns null if adaptive resolution is turned
+   * off in the settings.
+   */
+  @Nullable
+  public static AdaptiveResolutionController create(Context context, String detectorName) {
+    long targetLatencyMs = PreferenceUtils.getAdaptiveResolutionTargetLatencyMs(context);
+    if (targetLatencyMs <= 0) {
+      return null;
+    }
+    return new AdaptiveResolutionController(
+        context
+            .getApplicationContext()
+            .getSharedPreferences(CALIBRATION_PREFS_NAME, Context.MODE_PRIVATE),
+        detectorName,
+        targetLatencyMs);
+  }
+
+  /**
+   * Returns the factor by which frames of the given size, in sensor orientation, should be
+   * subsampled in both dimensions before detection. A factor of 1 means full resolution.
+   */
+  public synchronized int getDownscaleFactor(int frameWidth, int frameHeight) {
+    if (frameWidth != this.frameWidth || frameHeight != this.frameHeight) {
+      this.frameWidth = frameWidth;
+      this.frameHeight = frameHeight;
+      maxDownscaleFactor =
+          Math.max(
+              1,
+              Math.min(
+                  MAX_DOWNSCALE_FACTOR,
+                  Math.min(frameWidth, frameHeight) / MIN_DETECTION_SHORT_SIDE));
+      calibrationKey =
+          Build.MODEL + "/" + detectorName + "/" + frameWidth + "x" + frameHeight + "/"
+              + targetLatencyMs;
+      downscaleFactor =
+          Math.max(1, Math.min(maxDownscaleFactor, calibration.getInt(calibrationKey, 1)));
+      Arrays.fill(latencyByFactorMs, 0);
+      Arrays.fill(latencyByFactorTimeMs, 0);
+      resetObservations();
+      Log.d(TAG, "Starting " + calibrationKey + " at downscale factor " + downscaleFactor);
+    }
+    return downscaleFactor;
+  }
+
+  /** Feeds the detector latency of a live frame to the controller. */
+  public void onDetectorLatency(long latencyMs) {
+    onDetectorLatency(latencyMs, SystemClock.elapsedRealtime());
+  }
+
+  @VisibleForTesting
+  synchronized void onDetectorLatency(long latencyMs, long nowMs) {
+    if (calibrationKey == null) {
+      return;
+    }
+    if (framesToSettle > 0) {
+      framesToSettle--;
+      return;
+    }
+    smoothedLatencyMs =
+        smoothedLatencyMs < 0
+            ? latencyMs
+            : smoothedLatencyMs + LATENCY_SMOOTHING * (latencyMs - smoothedLatencyMs);
+    latencyByFactorMs[downscaleFactor] = smoothedLatencyMs;
+    latencyByFactorTimeMs[downscaleFactor] = nowMs;
+
+    if (smoothedLatencyMs > targetLatencyMs * STEP_DOWN_LATENCY_RATIO
+        && downscaleFactor < maxDownscaleFactor) {
+      framesUnderTarget = 0;
+      if (++framesOverTarget >= STEP_DOWN_FRAMES) {
+        setDownscaleFactor(downscaleFactor + 1);
+      }
+    } else if (downscaleFactor > 1
+        && predictLatencyMs(downscaleFactor - 1, nowMs) < targetLatencyMs * STEP_UP_LATENCY_RATIO) {
+      framesOverTarget = 0;
+      if (++framesUnderTarget >= STEP_UP_FRAMES) {
+        setDownscaleFactor(downscaleFactor - 1);
+      }
+    } else {
+      framesOverTarget = 0;
+      framesUnderTarget = 0;
+    }
+  }
+
+  /**
+   * Predicts the latency at the given factor from what was measured there before, or else from the
+   * change in pixel count, which overestimates it for detectors that resize their input anyway. A
+   * measurement older than {@link #MEASUREMENT_MAX_AGE_MS} may have been taken during a transient
+   * slowdown, so it is then ignored and the factor is only probed again if the pixel count
+   * prediction is under target too.
+   */
+  @GuardedBy("this")
+  private float predictLatencyMs(int factor, long nowMs) {
+    if (latencyByFactorMs[factor] > 0
+        && nowMs - latencyByFactorTimeMs[factor] <= MEASUREMENT_MAX_AGE_MS) {
+      return latencyByFactorMs[factor];
+    }
+    float linearRatio = (float) downscaleFactor / factor;
+    return smoothedLatencyMs * linearRatio * linearRatio;
+  }
+
+  @GuardedBy("this")
+  private void setDownscaleFactor(int factor) {
+    Log.d(
+        TAG,
+        String.format(
+            Locale.US,
+            "%s: downscale factor %d -> %d, smoothed latency %.1fms, target %dms",
+            calibrationKey,
+            downscaleFactor,
+            factor,
+            smoothedLatencyMs,
+            targetLatencyMs));
+    downscaleFactor = factor;
+    calibration.edit().putInt(calibrationKey, factor).apply();
+    resetObservations();
+    framesToSettle = SETTLE_FRAMES;
+  }
+
+  @GuardedBy("this")
+  private void resetObservations() {
+    smoothedLatencyMs = -1;
+    framesOverTarget = 0;
+    framesUnderTarget = 0;
+    framesToSettle = 0;
+  }
+}
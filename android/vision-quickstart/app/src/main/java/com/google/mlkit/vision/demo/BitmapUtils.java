@@ -21,7 +21,9 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.ImageFormat;
 import android.graphics.Matrix;
+import android.graphics.PixelFormat;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.YuvImage;
 import android.media.Image;
 import android.media.Image.Plane;
@@ -46,6 +48,16 @@ public class BitmapUtils {
   /** Converts NV21 format byte buffer to bitmap. */
   @Nullable
   public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
+    Bitmap bitmap = getSensorBitmap(data, metadata);
+    return bitmap == null ? null : rotateBitmap(bitmap, metadata.getRotation(), false, false);
+  }
+
+  /**
+   * Converts NV21 format byte buffer to a bitmap in sensor orientation, i.e. without applying the
+   * rotation of the metadata. See {@link #getUprightTransformation} to draw it upright.
+   */
+  @Nullable
+  public static Bitmap getSensorBitmap(ByteBuffer data, FrameMetadata metadata) {
     data.rewind();
     byte[] imageInBuffer = new byte[data.limit()];
     data.get(imageInBuffer, 0, imageInBuffer.length);
@@ -59,28 +71,99 @@ public class BitmapUtils {
       Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
 
       stream.close();
-      return rotateBitmap(bmp, metadata.getRotation(), false, false);
+      return bmp;
     } catch (Exception e) {
       Log.e("VisionProcessorBase", "Error: " + e.getMessage());
     }
     return null;
   }
 
-  /** Converts a YUV_420_888 image from CameraX API to a bitmap. */
+  /**
+   * Converts a YUV_420_888 or RGBA_8888 image from CameraX API to a bitmap, rotated to be upright.
+   */
   @RequiresApi(VERSION_CODES.LOLLIPOP)
   @Nullable
   @ExperimentalGetImage
   public static Bitmap getBitmap(ImageProxy image) {
+    Bitmap bitmap = getSensorBitmap(image);
+    return bitmap == null
+        ? null
+        : rotateBitmap(bitmap, image.getImageInfo().getRotationDegrees(), false, false);
+  }
+
+  /**
+   * Converts a YUV_420_888 or RGBA_8888 image from CameraX API to a bitmap in sensor orientation,
+   * i.e. without applying the rotation of the image. See {@link #getUprightTransformation} to draw
+   * it upright.
+   */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  @Nullable
+  @ExperimentalGetImage
+  public static Bitmap getSensorBitmap(ImageProxy image) {
+    if (image.getFormat() == PixelFormat.RGBA_8888) {
+      return getRgbaBitmap(image);
+    }
+
+    return getSensorBitmap(image.getImage());
+  }
+
+  /** Converts a YUV_420_888 media image to a bitmap in sensor orientation. */
+  @Nullable
+  public static Bitmap getSensorBitmap(Image image) {
     FrameMetadata frameMetadata =
-        new FrameMetadata.Builder()
-            .setWidth(image.getWidth())
-            .setHeight(image.getHeight())
-            .setRotation(image.getImageInfo().getRotationDegrees())
-            .build();
+        new FrameMetadata.Builder().setWidth(image.getWidth()).setHeight(image.getHeight()).build();
 
     ByteBuffer nv21Buffer =
-        yuv420ThreePlanesToNV21(image.getImage().getPlanes(), image.getWidth(), image.getHeight());
-    return getBitmap(nv21Buffer, frameMetadata);
+        yuv420ThreePlanesToNV21(image.getPlanes(), image.getWidth(), image.getHeight());
+    return getSensorBitmap(nv21Buffer, frameMetadata);
+  }
+
+  /**
+   * Copies the pixels of an RGBA_8888 image from CameraX API into a bitmap, without rotating it.
+   * Unlike the YUV path this is a plain memory copy, the color conversion having been done by
+   * CameraX.
+   */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  public static Bitmap getRgbaBitmap(ImageProxy image) {
+    ImageProxy.PlaneProxy plane = image.getPlanes()[0];
+    ByteBuffer buffer = plane.getBuffer();
+    buffer.rewind();
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int rowBytes = width * plane.getPixelStride();
+    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    if (plane.getRowStride() == rowBytes) {
+      bitmap.copyPixelsFromBuffer(buffer);
+      return bitmap;
+    }
+
+    // Rows are padded, so pack them before copying as the bitmap expects tightly packed pixels.
+    byte[] packed = new byte[rowBytes * height];
+    for (int row = 0; row < height; row++) {
+      buffer.position(row * plane.getRowStride());
+      buffer.get(packed, row * rowBytes, rowBytes);
+    }
+    bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(packed));
+    return bitmap;
+  }
+
+  /** Rotates a bitmap to be upright, recycling the original one if a new bitmap is created. */
+  public static Bitmap rotateBitmap(Bitmap bitmap, int rotationDegrees) {
+    return rotateBitmap(bitmap, rotationDegrees, false, false);
+  }
+
+  /**
+   * Returns a copy of a bitmap rotated to be upright, or the bitmap itself if it needs no rotation.
+   * Unlike {@link #rotateBitmap(Bitmap, int)}, the given bitmap is never recycled.
+   */
+  public static Bitmap copyRotatedBitmap(Bitmap bitmap, int rotationDegrees) {
+    if (rotationDegrees == 0) {
+      return bitmap;
+    }
+    Matrix matrix = new Matrix();
+    matrix.postRotate(rotationDegrees);
+    return Bitmap.createBitmap(
+        bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, /* filter= */ true);
   }
 
   /** Rotates a bitmap if it is converted from a bytebuffer. */
@@ -93,14 +176,40 @@ public class BitmapUtils {
 
     // Mirror the image along the X or Y axis.
     matrix.postScale(flipX ? -1.0f : 1.0f, flipY ? -1.0f : 1.0f);
-    Bitmap rotatedBitmap =
+    return transformBitmap(bitmap, matrix);
+  }
+
+  /**
+   * Returns the transformation from the pixels of an image in sensor or file orientation to those
+   * of the upright image, i.e. what {@link #rotateBitmap} applies, so that the image can be drawn
+   * upright without copying it.
+   *
+   * @param width the width of the image before the transformation
+   * @param height the height of the image before the transformation
+   * @param rotationDegrees the clockwise rotation that makes the image upright
+   */
+  public static Matrix getUprightTransformation(
+      int width, int height, int rotationDegrees, boolean flipX, boolean flipY) {
+    Matrix matrix = new Matrix();
+    matrix.postRotate(rotationDegrees);
+    matrix.postScale(flipX ? -1.0f : 1.0f, flipY ? -1.0f : 1.0f);
+    // Moves the transformed image back to the origin, as Bitmap.createBitmap does.
+    RectF bounds = new RectF(0, 0, width, height);
+    matrix.mapRect(bounds);
+    matrix.postTranslate(-bounds.left, -bounds.top);
+    return matrix;
+  }
+
+  /** Applies a transformation to a bitmap, recycling the original one if it has changed. */
+  private static Bitmap transformBitmap(Bitmap bitmap, Matrix matrix) {
+    Bitmap transformedBitmap =
         Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
 
     // Recycle the old bitmap if it has changed.
-    if (rotatedBitmap != bitmap) {
+    if (transformedBitmap != bitmap) {
       bitmap.recycle();
     }
-    return rotatedBitmap;
+    return transformedBitmap;
   }
 
   @Nullable
@@ -110,8 +219,144 @@ public class BitmapUtils {
     if (decodedBitmap == null) {
       return null;
     }
+    Matrix matrix = new Matrix();
+    postExifTransformation(matrix, getExifOrientationTag(contentResolver, imageUri));
+    return transformBitmap(decodedBitmap, matrix);
+  }
+
+  /**
+   * Decodes an image from a content URI, scaled down to fit in the given size once upright while
+   * keeping its aspect ratio, without ever holding the full resolution image in memory. The pixels
+   * are kept in the orientation they are stored in whenever that orientation is a plain rotation,
+   * so that no rotated copy is made. The rotation is returned along with the bitmap, to be passed
+   * to detectors instead. Mirrored images cannot be described by a rotation and are decoded
+   * upright.
+   *
+   * <p>The image size and EXIF orientation are read first, so that the image can be decoded at the
+   * largest power of two subsampling that still covers the target size. The remaining scaling is
+   * applied in a single pass, along with the orientation of mirrored images. Returns null if the
+   * image cannot be decoded, or if the calling thread is interrupted, e.g. because the decode was
+   * cancelled.
+   *
+   * @param targetWidth the width to fit the upright image in, or 0 to keep its original size
+   * @param targetHeight the height to fit the upright image in, or 0 to keep its original size
+   */
+  @Nullable
+  public static OrientedBitmap decodeOrientedBitmapFromContentUri(
+      ContentResolver contentResolver, Uri imageUri, int targetWidth, int targetHeight)
+      throws IOException {
     int orientation = getExifOrientationTag(contentResolver, imageUri);
+    int rotationDegrees = getExifRotationDegrees(orientation);
+    boolean isUpright = rotationDegrees < 0;
+    Bitmap bitmap =
+        decodeSampledBitmap(
+            contentResolver, imageUri, orientation, targetWidth, targetHeight, isUpright);
+    return bitmap == null ? null : new OrientedBitmap(bitmap, isUpright ? 0 : rotationDegrees);
+  }
+
+  /** A bitmap along with the clockwise rotation that makes it upright. */
+  public static final class OrientedBitmap {
+    private final Bitmap bitmap;
+    private final int rotationDegrees;
+
+    OrientedBitmap(Bitmap bitmap, int rotationDegrees) {
+      this.bitmap = bitmap;
+      this.rotationDegrees = rotationDegrees;
+    }
+
+    public Bitmap getBitmap() {
+      return bitmap;
+    }
 
+    public int getRotationDegrees() {
+      return rotationDegrees;
+    }
+  }
+
+  @Nullable
+  private static Bitmap decodeSampledBitmap(
+      ContentResolver contentResolver,
+      Uri imageUri,
+      int orientation,
+      int targetWidth,
+      int targetHeight,
+      boolean isUpright)
+      throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
+      BitmapFactory.decodeStream(inputStream, null, options);
+    }
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return null;
+    }
+
+    boolean isTransposed = isExifTransposed(orientation);
+    int uprightWidth = isTransposed ? options.outHeight : options.outWidth;
+    int uprightHeight = isTransposed ? options.outWidth : options.outHeight;
+    float scaleFactor = 1;
+    if (targetWidth > 0 && targetHeight > 0) {
+      scaleFactor =
+          Math.max((float) uprightWidth / targetWidth, (float) uprightHeight / targetHeight);
+    }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = 1;
+    while (options.inSampleSize * 2 <= scaleFactor) {
+      options.inSampleSize *= 2;
+    }
+
+    if (Thread.currentThread().isInterrupted()) {
+      return null;
+    }
+    Bitmap decodedBitmap;
+    try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
+      decodedBitmap = BitmapFactory.decodeStream(inputStream, null, options);
+    }
+    if (decodedBitmap == null || Thread.currentThread().isInterrupted()) {
+      return null;
+    }
+
+    Matrix matrix = new Matrix();
+    float remainingScale = options.inSampleSize / scaleFactor;
+    matrix.setScale(remainingScale, remainingScale);
+    if (isUpright) {
+      postExifTransformation(matrix, orientation);
+    }
+    return transformBitmap(decodedBitmap, matrix);
+  }
+
+  /**
+   * Returns the clockwise rotation that makes an image with the given EXIF orientation upright, or
+   * -1 if the image is also mirrored, which cannot be expressed as a rotation.
+   */
+  public static int getExifRotationDegrees(int orientation) {
+    switch (orientation) {
+      case ExifInterface.ORIENTATION_ROTATE_90:
+        return 90;
+      case ExifInterface.ORIENTATION_ROTATE_180:
+        return 180;
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        return 270;
+      case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+      case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+      case ExifInterface.ORIENTATION_TRANSPOSE:
+      case ExifInterface.ORIENTATION_TRANSVERSE:
+        return -1;
+      default:
+        return 0;
+    }
+  }
+
+  /** Returns whether an EXIF orientation swaps the width and height of the image. */
+  private static boolean isExifTransposed(int orientation) {
+    return orientation == ExifInterface.ORIENTATION_ROTATE_90
+        || orientation == ExifInterface.ORIENTATION_TRANSPOSE
+        || orientation == ExifInterface.ORIENTATION_ROTATE_270
+        || orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+  }
+
+  /** Appends the transformation that makes an image with the given EXIF orientation upright. */
+  private static void postExifTransformation(Matrix matrix, int orientation) {
     int rotationDegrees = 0;
     boolean flipX = false;
     boolean flipY = false;
@@ -147,10 +392,12 @@ public class BitmapUtils {
         // No transformations necessary in this case.
     }
 
-    return rotateBitmap(decodedBitmap, rotationDegrees, flipX, flipY);
+    matrix.postRotate(rotationDegrees);
+    matrix.postScale(flipX ? -1.0f : 1.0f, flipY ? -1.0f : 1.0f);
   }
 
-  private static int getExifOrientationTag(ContentResolver resolver, Uri imageUri) {
+  /** Returns the EXIF orientation of an image, one of the ExifInterface.ORIENTATION_* values. */
+  public static int getExifOrientationTag(ContentResolver resolver, Uri imageUri) {
     // We only support parsing EXIF orientation tag from local file on the device.
     // See also:
     // https://android-developers.googleblog.com/2016/12/introducing-the-exifinterface-support-library.html
@@ -174,6 +421,124 @@ public class BitmapUtils {
     return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
   }
 
+  /**
+   * Returns the size of a dimension after subsampling by the given factor, rounded down to an even
+   * value as required by NV21.
+   */
+  public static int getDownscaledSize(int size, int factor) {
+    return (size / factor) & ~1;
+  }
+
+  /**
+   * Subsamples an NV21 frame by an integer factor in both dimensions, keeping every factor-th pixel
+   * of each plane. The result is written into {@code out}, which must hold at least {@code w * h *
+   * 3 / 2} bytes where w and h are the sizes given by {@link #getDownscaledSize}.
+   */
+  public static void downscaleNv21(ByteBuffer data, int width, int height, int factor, byte[] out) {
+    cropNv21(data, width, height, new Rect(0, 0, width, height), factor, out);
+  }
+
+  /** Subsamples an NV21 frame by an integer factor, see {@link #downscaleNv21}. */
+  public static ByteBuffer downscaleNv21(ByteBuffer data, int width, int height, int factor) {
+    return cropNv21(data, width, height, new Rect(0, 0, width, height), factor);
+  }
+
+  /**
+   * Cuts a rectangle out of an NV21 frame and subsamples it by an integer factor in both
+   * dimensions. The rectangle must start on even coordinates. The result is written into {@code
+   * out}, which must hold at least {@code w * h * 3 / 2} bytes where w and h are the sizes of the
+   * rectangle given by {@link #getDownscaledSize}.
+   */
+  public static void cropNv21(
+      ByteBuffer data, int width, int height, Rect crop, int factor, byte[] out) {
+    int outWidth = getDownscaledSize(crop.width(), factor);
+    int outHeight = getDownscaledSize(crop.height(), factor);
+    int outChromaOffset = outWidth * outHeight;
+    byte[] in;
+    int inOffset;
+    if (data.hasArray()) {
+      in = data.array();
+      inOffset = data.arrayOffset();
+    } else {
+      data.rewind();
+      in = new byte[data.limit()];
+      data.get(in);
+      inOffset = 0;
+    }
+    int chromaOffset = inOffset + width * height;
+
+    for (int y = 0; y < outHeight; y++) {
+      int inRow = inOffset + (crop.top + y * factor) * width + crop.left;
+      int outRow = y * outWidth;
+      for (int x = 0; x < outWidth; x++) {
+        out[outRow + x] = in[inRow + x * factor];
+      }
+    }
+    // Each VU pair covers 2x2 luma pixels, so the chroma plane is subsampled by the same factor.
+    for (int y = 0; y < outHeight / 2; y++) {
+      int inRow = chromaOffset + (crop.top / 2 + y * factor) * width + crop.left;
+      int outRow = outChromaOffset + y * outWidth;
+      for (int x = 0; x < outWidth / 2; x++) {
+        int inIndex = inRow + x * factor * 2;
+        out[outRow + x * 2] = in[inIndex];
+        out[outRow + x * 2 + 1] = in[inIndex + 1];
+      }
+    }
+  }
+
+  /** Cuts a rectangle out of an NV21 frame and subsamples it, see {@link #cropNv21}. */
+  public static ByteBuffer cropNv21(
+      ByteBuffer data, int width, int height, Rect crop, int factor) {
+    int outWidth = getDownscaledSize(crop.width(), factor);
+    int outHeight = getDownscaledSize(crop.height(), factor);
+    byte[] out = new byte[outWidth * outHeight * 3 / 2];
+    cropNv21(data, width, height, crop, factor, out);
+    return ByteBuffer.wrap(out);
+  }
+
+  /**
+   * Cuts a rectangle out of a YUV_420_888 image from CameraX API and converts it to an NV21
+   * bytebuffer subsampled by an integer factor. The rectangle must start on even coordinates. Only
+   * the pixels that are kept are read.
+   */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  public static ByteBuffer yuv420ToCroppedNv21(ImageProxy image, Rect crop, int factor) {
+    int outWidth = getDownscaledSize(crop.width(), factor);
+    int outHeight = getDownscaledSize(crop.height(), factor);
+    int outChromaOffset = outWidth * outHeight;
+    byte[] out = new byte[outChromaOffset * 3 / 2];
+    ImageProxy.PlaneProxy[] planes = image.getPlanes();
+
+    ByteBuffer yBuffer = planes[0].getBuffer();
+    int yRowStride = planes[0].getRowStride();
+    int yPixelStride = planes[0].getPixelStride();
+    for (int y = 0; y < outHeight; y++) {
+      int inRow = (crop.top + y * factor) * yRowStride;
+      int outRow = y * outWidth;
+      for (int x = 0; x < outWidth; x++) {
+        out[outRow + x] = yBuffer.get(inRow + (crop.left + x * factor) * yPixelStride);
+      }
+    }
+
+    ByteBuffer uBuffer = planes[1].getBuffer();
+    ByteBuffer vBuffer = planes[2].getBuffer();
+    int uRowStride = planes[1].getRowStride();
+    int uPixelStride = planes[1].getPixelStride();
+    int vRowStride = planes[2].getRowStride();
+    int vPixelStride = planes[2].getPixelStride();
+    for (int y = 0; y < outHeight / 2; y++) {
+      int chromaRow = crop.top / 2 + y * factor;
+      int outRow = outChromaOffset + y * outWidth;
+      for (int x = 0; x < outWidth / 2; x++) {
+        int chromaColumn = crop.left / 2 + x * factor;
+        out[outRow + x * 2] = vBuffer.get(chromaRow * vRowStride + chromaColumn * vPixelStride);
+        out[outRow + x * 2 + 1] =
+            uBuffer.get(chromaRow * uRowStride + chromaColumn * uPixelStride);
+      }
+    }
+    return ByteBuffer.wrap(out);
+  }
+
   /**
    * Converts YUV_420_888 to NV21 bytebuffer.
    *
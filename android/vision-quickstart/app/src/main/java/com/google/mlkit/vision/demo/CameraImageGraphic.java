@@ -18,20 +18,61 @@ package com.google.mlkit.vision.demo;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
+import androidx.annotation.Nullable;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
 
 /** Draw camera image to background. */
 public class CameraImageGraphic extends Graphic {
 
+  private final GraphicOverlay overlay;
   private final Bitmap bitmap;
+  private final Matrix matrix = new Matrix();
+  // Makes the bitmap upright if it is in sensor orientation, null if it is already upright.
+  @Nullable private final Matrix uprightMatrix;
+  private final int uprightWidth;
 
   public CameraImageGraphic(GraphicOverlay overlay, Bitmap bitmap) {
     super(overlay);
+    this.overlay = overlay;
     this.bitmap = bitmap;
+    int rotationDegrees = overlay.getSourceRotation();
+    if (rotationDegrees == 0) {
+      uprightMatrix = null;
+      uprightWidth = bitmap.getWidth();
+    } else {
+      uprightMatrix =
+          BitmapUtils.getUprightTransformation(
+              bitmap.getWidth(), bitmap.getHeight(), rotationDegrees, false, false);
+      uprightWidth = rotationDegrees % 180 == 0 ? bitmap.getWidth() : bitmap.getHeight();
+    }
   }
 
   @Override
   public void draw(Canvas canvas) {
-    canvas.drawBitmap(bitmap, getTransformationMatrix(), null);
+    // The detector may have been given a scaled down copy of the frame, in which case the overlay
+    // works in the coordinates of that copy rather than of this full resolution bitmap.
+    // If only a region of the frame was sent to it, the transformation matrix is also shifted to
+    // that region, so it is shifted back for the whole frame.
+    int imageWidth = overlay.getImageWidth();
+    float offsetX = overlay.getImageOffsetX();
+    float offsetY = overlay.getImageOffsetY();
+    // A bitmap in sensor orientation is rotated on the fly as well.
+    boolean hasOffset = offsetX != 0 || offsetY != 0;
+    boolean isScaled = imageWidth > 0 && imageWidth != uprightWidth;
+    if (!hasOffset && !isScaled && uprightMatrix == null) {
+      canvas.drawBitmap(bitmap, getTransformationMatrix(), null);
+      return;
+    }
+    matrix.set(getTransformationMatrix());
+    matrix.preTranslate(-offsetX, -offsetY);
+    if (isScaled) {
+      float bitmapScale = (float) imageWidth / uprightWidth;
+      matrix.preScale(bitmapScale, bitmapScale);
+    }
+    if (uprightMatrix != null) {
+      matrix.preConcat(uprightMatrix);
+    }
+    canvas.drawBitmap(bitmap, matrix, null);
   }
 }
@@ -25,6 +25,9 @@ import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
 import android.hardware.Camera.Parameters;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Surface;
 import android.view.SurfaceHolder;
@@ -36,8 +39,12 @@ import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Manages the camera and allows UI updates on top of it (e.g. overlaying extra Graphics or
@@ -55,6 +62,26 @@ public class CameraSource {
   public static final int DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH = 480;
   public static final int DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT = 360;
 
+  /**
+   * Four frame buffers are needed by default for working with the camera:
+   *
+   * <ul>
+   *   <li>one for the frame that is currently being executed upon in doing detection
+   *   <li>one for the next pending frame to process immediately upon completing detection
+   *   <li>two for the frames that the camera uses to populate future preview images
+   * </ul>
+   *
+   * <p>Through trial and error it appears that two free buffers, in addition to the two buffers
+   * used in this code, are needed for the camera to work properly. Perhaps the camera has one
+   * thread for acquiring images, and another thread for calling into user code. If only three
+   * buffers are used, then the camera will spew thousands of warning messages when detection takes
+   * a non-trivial amount of time.
+   */
+  public static final int DEFAULT_PREVIEW_BUFFER_COUNT = 4;
+
+  /** One buffer being processed, one pending and at least one for the camera to fill. */
+  private static final int MIN_PREVIEW_BUFFER_COUNT = 3;
+
   private static final String TAG = "MIDemoApp:CameraSource";
 
   /**
@@ -81,6 +108,9 @@ public class CameraSource {
 
   private Size previewSize;
 
+  /** The preview frames per second range the camera currently runs at, scaled by 1000. */
+  private int[] previewFpsRange;
+
   private static final float REQUESTED_FPS = 30.0f;
   private static final boolean REQUESTED_AUTO_FOCUS = true;
 
@@ -102,16 +132,31 @@ public class CameraSource {
 
   private VisionImageProcessor frameProcessor;
 
+  private int previewBufferCount = DEFAULT_PREVIEW_BUFFER_COUNT;
+
   /**
-   * Map to convert between a byte array, received from the camera, and its associated byte buffer.
-   * We use byte buffers internally because this is a more efficient way to call into native code
-   * later (avoids a potential copy).
+   * The preview buffers handed to the camera, each paired with the byte buffer wrapping it. We use
+   * byte buffers internally because this is a more efficient way to call into native code later
+   * (avoids a potential copy). The array is replaced, never modified, when the camera is created.
    *
-   * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
-   * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
-   * identity ('==') check on the keys.
+   * <p>Byte arrays received from the camera are matched by identity ('==') against this small
+   * array, since the behavior of an array's equals and hashCode is both useless and unexpected.
    */
-  private final IdentityHashMap<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
+  private volatile PreviewFrame[] previewFrames = new PreviewFrame[0];
+
+  // Counters of the frame handoff between the camera callback thread and the processing thread,
+  // also published to VisionMetrics under camera.* across camera sources.
+  private final AtomicLong framesReceived = new AtomicLong();
+  private final AtomicLong framesDropped = new AtomicLong();
+  private final AtomicLong bufferStarvations = new AtomicLong();
+  // Number of preview buffers currently owned by the camera, i.e. available to be filled.
+  private final AtomicInteger buffersInCamera = new AtomicInteger();
+
+  private boolean adaptiveCaptureRate;
+  // Only created while the camera runs with adaptive capture rate turned on.
+  @Nullable private CaptureRateController captureRateController;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final Runnable captureRateEvaluation = this::evaluateCaptureRate;
 
   public CameraSource(Activity activity, GraphicOverlay overlay) {
     this.activity = activity;
@@ -156,6 +201,7 @@ public class CameraSource {
     processingThread = new Thread(processingRunnable);
     processingRunnable.setActive(true);
     processingThread.start();
+    startCaptureRateEvaluation();
     return this;
   }
 
@@ -179,6 +225,7 @@ public class CameraSource {
     processingThread = new Thread(processingRunnable);
     processingRunnable.setActive(true);
     processingThread.start();
+    startCaptureRateEvaluation();
     return this;
   }
 
@@ -192,6 +239,8 @@ public class CameraSource {
    * resources of the underlying detector.
    */
   public synchronized void stop() {
+    mainHandler.removeCallbacks(captureRateEvaluation);
+    captureRateController = null;
     processingRunnable.setActive(false);
     if (processingThread != null) {
       try {
@@ -219,8 +268,74 @@ public class CameraSource {
       camera = null;
     }
 
+    Log.d(TAG, "Frame handoff: " + getFrameHandoffStats());
     // Release the reference to any image buffers, since these will no longer be in use.
-    bytesToByteBuffer.clear();
+    processingRunnable.clearPendingFrame();
+    previewFrames = new PreviewFrame[0];
+    buffersInCamera.set(0);
+  }
+
+  /**
+   * Sets the number of preview buffers to allocate for the camera, see {@link
+   * #DEFAULT_PREVIEW_BUFFER_COUNT}. Takes effect the next time the camera is started.
+   */
+  public synchronized void setPreviewBufferCount(int previewBufferCount) {
+    if (previewBufferCount < MIN_PREVIEW_BUFFER_COUNT) {
+      throw new IllegalArgumentException(
+          "At least " + MIN_PREVIEW_BUFFER_COUNT + " preview buffers are needed.");
+    }
+    this.previewBufferCount = previewBufferCount;
+  }
+
+  /**
+   * Sets whether the preview frames per second range follows how many frames the frame processor
+   * actually gets through, instead of staying at {@link #REQUESTED_FPS}. Takes effect the next time
+   * the camera is started.
+   */
+  public synchronized void setAdaptiveCaptureRateEnabled(boolean adaptiveCaptureRate) {
+    this.adaptiveCaptureRate = adaptiveCaptureRate;
+  }
+
+  /** Returns a snapshot of the frame handoff counters since this camera source was created. */
+  public FrameHandoffStats getFrameHandoffStats() {
+    return new FrameHandoffStats(
+        framesReceived.get(), framesDropped.get(), bufferStarvations.get(), previewBufferCount);
+  }
+
+  /** Counters of the handoff of preview frames from the camera to the frame processor. */
+  public static class FrameHandoffStats {
+    /** Number of preview frames delivered by the camera. */
+    public final long framesReceived;
+    /** Number of frames replaced by a newer frame before the processor got to them. */
+    public final long framesDropped;
+    /**
+     * Number of times the camera was left without a free preview buffer to fill. When this keeps
+     * increasing, the camera drops frames on its own and more preview buffers may help.
+     */
+    public final long bufferStarvations;
+
+    public final int previewBufferCount;
+
+    FrameHandoffStats(
+        long framesReceived, long framesDropped, long bufferStarvations, int previewBufferCount) {
+      this.framesReceived = framesReceived;
+      this.framesDropped = framesDropped;
+      this.bufferStarvations = bufferStarvations;
+      this.previewBufferCount = previewBufferCount;
+    }
+
+    @Override
+    public String toString() {
+      return "FrameHandoffStats{received="
+          + framesReceived
+          + ", dropped="
+          + framesDropped
+          + ", starvations="
+          + bufferStarvations
+          + ", buffers="
+          + previewBufferCount
+          + "}";
+    }
   }
 
   /** Changes the facing of the camera. */
@@ -314,7 +429,7 @@ public class CameraSource {
     previewSize = sizePair.preview;
     Log.v(TAG, "Camera preview size: " + previewSize);
 
-    int[] previewFpsRange = selectPreviewFpsRange(camera, REQUESTED_FPS);
+    previewFpsRange = selectPreviewFpsRange(camera, REQUESTED_FPS);
     if (previewFpsRange == null) {
       throw new IOException("Could not find suitable preview frames per second range.");
     }
@@ -347,22 +462,17 @@ public class CameraSource {
 
     camera.setParameters(parameters);
 
-    // Four frame buffers are needed for working with the camera:
-    //
-    //   one for the frame that is currently being executed upon in doing detection
-    //   one for the next pending frame to process immediately upon completing detection
-    //   two for the frames that the camera uses to populate future preview images
-    //
-    // Through trial and error it appears that two free buffers, in addition to the two buffers
-    // used in this code, are needed for the camera to work properly.  Perhaps the camera has
-    // one thread for acquiring images, and another thread for calling into user code.  If only
-    // three buffers are used, then the camera will spew thousands of warning messages when
-    // detection takes a non-trivial amount of time.
+    // See DEFAULT_PREVIEW_BUFFER_COUNT for how many buffers are needed.
     camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+    PreviewFrame[] frames = new PreviewFrame[previewBufferCount];
+    for (int i = 0; i < frames.length; i++) {
+      frames[i] = createPreviewFrame(previewSize);
+    }
+    previewFrames = frames;
+    VisionMetrics.setGauge("camera.preview_buffers", frames.length);
+    for (PreviewFrame frame : frames) {
+      returnBufferToCamera(camera, frame);
+    }
 
     return camera;
   }
@@ -517,6 +627,51 @@ public class CameraSource {
     return selectedFpsRange;
   }
 
+  private void startCaptureRateEvaluation() {
+    if (!adaptiveCaptureRate) {
+      return;
+    }
+    captureRateController = new CaptureRateController(Math.round(REQUESTED_FPS));
+    mainHandler.postDelayed(captureRateEvaluation, CaptureRateController.EVALUATION_INTERVAL_MS);
+  }
+
+  /**
+   * Periodically picks the preview frames per second range closest to the rate the frame processor
+   * keeps up with. Runs on the main thread, like the other calls changing the camera parameters.
+   */
+  private synchronized void evaluateCaptureRate() {
+    if (camera == null || captureRateController == null) {
+      return;
+    }
+    int processedFps = frameProcessor == null ? -1 : frameProcessor.getProcessedFramesPerSecond();
+    int captureFps = previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000;
+    VisionMetrics.setGauge("capture.fps", captureFps);
+    int targetFps = captureRateController.onEvaluation(processedFps, captureFps);
+    int[] fpsRange = selectPreviewFpsRange(camera, targetFps);
+    if (fpsRange != null && !Arrays.equals(fpsRange, previewFpsRange)) {
+      try {
+        Parameters parameters = camera.getParameters();
+        parameters.setPreviewFpsRange(
+            fpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+            fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+        camera.setParameters(parameters);
+      } catch (RuntimeException e) {
+        // Some devices refuse to change the range while previewing, keep the current one.
+        Log.e(TAG, "Failed to change the preview frames per second range.", e);
+        captureRateController = null;
+        return;
+      }
+      Log.d(
+          TAG,
+          "Preview frames per second range: "
+              + Arrays.toString(previewFpsRange)
+              + " -> "
+              + Arrays.toString(fpsRange));
+      previewFpsRange = fpsRange;
+    }
+    mainHandler.postDelayed(captureRateEvaluation, CaptureRateController.EVALUATION_INTERVAL_MS);
+  }
+
   /**
    * Calculates the correct rotation for the given camera id and sets the rotation in the
    * parameters. It also sets the camera's display orientation and rotation.
@@ -573,7 +728,7 @@ public class CameraSource {
    * @return a new preview buffer of the appropriate size for the current camera settings
    */
   @SuppressLint("InlinedApi")
-  private byte[] createPreviewBuffer(Size previewSize) {
+  private static PreviewFrame createPreviewFrame(Size previewSize) {
     int bitsPerPixel = ImageFormat.getBitsPerPixel(IMAGE_FORMAT);
     long sizeInBits = (long) previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
     int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
@@ -588,8 +743,36 @@ public class CameraSource {
       throw new IllegalStateException("Failed to create valid buffer for camera source.");
     }
 
-    bytesToByteBuffer.put(byteArray, buffer);
-    return byteArray;
+    return new PreviewFrame(byteArray, buffer);
+  }
+
+  /** Returns the preview frame owning the given byte array, or null if it's not one of ours. */
+  @Nullable
+  private PreviewFrame findPreviewFrame(byte[] data) {
+    for (PreviewFrame frame : previewFrames) {
+      if (frame.data == data) {
+        return frame;
+      }
+    }
+    return null;
+  }
+
+  private void returnBufferToCamera(Camera camera, PreviewFrame frame) {
+    buffersInCamera.incrementAndGet();
+    camera.addCallbackBuffer(frame.data);
+  }
+
+  /** A preview buffer handed to the camera, together with the byte buffer wrapping it. */
+  private static final class PreviewFrame {
+    final byte[] data;
+    final ByteBuffer buffer;
+    // When the camera delivered this frame, published to the processing thread through the slot.
+    long arrivalTimeMs;
+
+    PreviewFrame(byte[] data, ByteBuffer buffer) {
+      this.data = data;
+      this.buffer = buffer;
+    }
   }
 
   // ==============================================================================================
@@ -612,6 +795,15 @@ public class CameraSource {
       }
       frameProcessor = processor;
     }
+    if (PreferenceUtils.isDetectorWarmUpEnabled(activity)) {
+      // The preview size is only known once the camera has been started.
+      if (previewSize != null) {
+        processor.warmUp(previewSize.getWidth(), previewSize.getHeight());
+      } else {
+        processor.warmUp(
+            DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH, DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT);
+      }
+    }
   }
 
   /**
@@ -623,58 +815,77 @@ public class CameraSource {
    * frames come in, the most recent frame is held onto as pending. As soon as detection and its
    * associated processing is done for the previous frame, detection on the mostly recently received
    * frame will immediately start on the same thread.
+   *
+   * <p>The pending frame is handed over through a single atomic slot, with the camera callback
+   * thread as the only producer and the processing thread as the only consumer, so neither side
+   * ever blocks on a monitor held by the other. The processing thread parks while the slot is
+   * empty and the camera callback unparks it after publishing a frame.
    */
   private class FrameProcessingRunnable implements Runnable {
 
-    // This lock guards all of the member variables below.
-    private final Object lock = new Object();
-    private boolean active = true;
-
-    // These pending variables hold the state associated with the new frame awaiting processing.
-    private ByteBuffer pendingFrameData;
+    private final AtomicReference<PreviewFrame> pendingFrame = new AtomicReference<>();
+    private volatile boolean active = true;
+    @Nullable private volatile Thread consumerThread;
 
     FrameProcessingRunnable() {}
 
-    /** Marks the runnable as active/not active. Signals any blocked threads to continue. */
+    /** Marks the runnable as active/not active. Wakes up the processing thread if it is parked. */
     void setActive(boolean active) {
-      synchronized (lock) {
-        this.active = active;
-        lock.notifyAll();
+      this.active = active;
+      Thread thread = consumerThread;
+      if (thread != null) {
+        LockSupport.unpark(thread);
       }
     }
 
+    /** Drops the pending frame, if any, without returning its buffer to the camera. */
+    void clearPendingFrame() {
+      pendingFrame.set(null);
+    }
+
     /**
      * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
      * present) back to the camera, and keeps a pending reference to the frame data for future use.
      */
-    @SuppressWarnings("ByteBufferBackingArray")
     void setNextFrame(byte[] data, Camera camera) {
-      synchronized (lock) {
-        if (pendingFrameData != null) {
-          camera.addCallbackBuffer(pendingFrameData.array());
-          pendingFrameData = null;
-        }
+      framesReceived.incrementAndGet();
+      VisionMetrics.incrementCounter("camera.frames_received", 1);
+      if (buffersInCamera.decrementAndGet() <= 0) {
+        // The camera has no free buffer left until one is returned after processing.
+        bufferStarvations.incrementAndGet();
+        VisionMetrics.incrementCounter("camera.buffer_starvations", 1);
+      }
 
-        if (!bytesToByteBuffer.containsKey(data)) {
-          Log.d(
-              TAG,
-              "Skipping frame. Could not find ByteBuffer associated with the image "
-                  + "data from the camera.");
-          return;
-        }
+      PreviewFrame frame = findPreviewFrame(data);
+      if (frame == null) {
+        Log.d(
+            TAG,
+            "Skipping frame. Could not find ByteBuffer associated with the image "
+                + "data from the camera.");
+        return;
+      }
 
-        pendingFrameData = bytesToByteBuffer.get(data);
+      // Camera1 has no sensor timestamps, so the arrival time is the closest to the capture time.
+      frame.arrivalTimeMs = SystemClock.elapsedRealtime();
+      PreviewFrame previousFrame = pendingFrame.getAndSet(frame);
+      if (previousFrame != null) {
+        framesDropped.incrementAndGet();
+        VisionMetrics.incrementCounter("camera.frames_dropped", 1);
+        returnBufferToCamera(camera, previousFrame);
+      }
 
-        // Notify the processor thread if it is waiting on the next frame (see below).
-        lock.notifyAll();
+      // Wake up the processor thread if it is waiting on the next frame (see below).
+      Thread thread = consumerThread;
+      if (thread != null) {
+        LockSupport.unpark(thread);
       }
     }
 
     /**
      * As long as the processing thread is active, this executes detection on frames continuously.
      * The next pending frame is either immediately available or hasn't been received yet. Once it
-     * is available, we transfer the frame info to local variables and run detection on that frame.
-     * It immediately loops back for the next frame without pausing.
+     * is available, we take it out of the slot and run detection on that frame. It immediately
+     * loops back for the next frame without pausing.
      *
      * <p>If detection takes longer than the time in between new frames from the camera, this will
      * mean that this loop will run without ever waiting on a frame, avoiding any context switching
@@ -684,59 +895,52 @@ public class CameraSource {
      * FPS setting above to allow for some idle time in between frames.
      */
     @SuppressLint("InlinedApi")
-    @SuppressWarnings({"GuardedBy", "ByteBufferBackingArray"})
     @Override
     public void run() {
-      ByteBuffer data;
-
-      while (true) {
-        synchronized (lock) {
-          while (active && (pendingFrameData == null)) {
-            try {
-              // Wait for the next frame to be received from the camera, since we
-              // don't have it yet.
-              lock.wait();
-            } catch (InterruptedException e) {
-              Log.d(TAG, "Frame processing loop terminated.", e);
+      consumerThread = Thread.currentThread();
+      try {
+        while (true) {
+          PreviewFrame frame = pendingFrame.getAndSet(null);
+          while (active && frame == null) {
+            // Wait for the next frame to be received from the camera, since we don't have it yet.
+            // Spurious wake-ups are fine, the slot is simply checked again.
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+              Log.d(TAG, "Frame processing loop terminated.");
               return;
             }
+            frame = pendingFrame.getAndSet(null);
           }
 
           if (!active) {
-            // Exit the loop once this camera source is stopped or released.  We check
-            // this here, immediately after the wait() above, to handle the case where
-            // setActive(false) had been called, triggering the termination of this
-            // loop.
+            // Exit the loop once this camera source is stopped or released. The frame taken out
+            // of the slot, if any, doesn't need to go back to the camera as it is released.
             return;
           }
 
-          // Hold onto the frame data locally, so that we can use this for detection
-          // below.  We need to clear pendingFrameData to ensure that this buffer isn't
-          // recycled back to the camera before we are done using that data.
-          data = pendingFrameData;
-          pendingFrameData = null;
-        }
-
-        // The code below needs to run outside of synchronization, because this will allow
-        // the camera to add pending frame(s) while we are running detection on the current
-        // frame.
-
-        try {
-          synchronized (processorLock) {
-            frameProcessor.processByteBuffer(
-                data,
-                new FrameMetadata.Builder()
-                    .setWidth(previewSize.getWidth())
-                    .setHeight(previewSize.getHeight())
-                    .setRotation(rotationDegrees)
-                    .build(),
-                graphicOverlay);
+          // Taking the frame out of the slot ensures that this buffer isn't recycled back to the
+          // camera before we are done using that data, while the camera can keep adding pending
+          // frames.
+          try {
+            synchronized (processorLock) {
+              frameProcessor.processByteBuffer(
+                  frame.buffer,
+                  new FrameMetadata.Builder()
+                      .setWidth(previewSize.getWidth())
+                      .setHeight(previewSize.getHeight())
+                      .setRotation(rotationDegrees)
+                      .setCaptureTimeMs(frame.arrivalTimeMs)
+                      .build(),
+                  graphicOverlay);
+            }
+          } catch (Exception t) {
+            Log.e(TAG, "Exception thrown from receiver.", t);
+          } finally {
+            returnBufferToCamera(camera, frame);
           }
-        } catch (Exception t) {
-          Log.e(TAG, "Exception thrown from receiver.", t);
-        } finally {
-          camera.addCallbackBuffer(data.array());
         }
+      } finally {
+        consumerThread = null;
       }
     }
   }
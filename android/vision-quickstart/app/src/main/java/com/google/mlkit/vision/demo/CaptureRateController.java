@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Chooses the frame rate to request from the camera so that it matches what the frame processor
+ * actually gets through, plus some headroom. Frames captured beyond that are dropped before
+ * detection anyway, and only cost power.
+ *
+ * <p>The processed frame rate is fed in every {@link #EVALUATION_INTERVAL_MS}. As long as the
+ * processor keeps up with the capture rate, it cannot tell how fast it could go, so the controller
+ * then probes with the maximum rate again, at most once every {@link #PROBE_COOLDOWN_MS}. Small
+ * changes of the target are ignored so that the camera is not reconfigured all the time.
+ */
+public final class CaptureRateController {
+
+  private static final String TAG = "CaptureRateController";
+
+  /** How often the processed frame rate should be fed to the controller. */
+  public static final long EVALUATION_INTERVAL_MS = 2_000;
+
+  private static final int MIN_FPS = 5;
+  private static final float HEADROOM = 1.25f;
+  private static final float FPS_SMOOTHING = 0.5f;
+  // The processor is considered to keep up when it handles this share of the captured frames.
+  private static final float SATURATION_RATIO = 0.9f;
+  private static final int SATURATED_EVALUATIONS_BEFORE_PROBE = 2;
+  private static final long PROBE_COOLDOWN_MS = 20_000;
+  private static final float MIN_CHANGE_RATIO = 0.15f;
+  private static final int MIN_CHANGE_FPS = 2;
+
+  private final int maxFps;
+  private int targetFps;
+  private float smoothedFps = -1;
+  private int saturatedEvaluations;
+  private long lastProbeMs = -PROBE_COOLDOWN_MS;
+  // The first evaluation after a change still includes frames captured at the previous rate.
+  private boolean settling;
+
+  public CaptureRateController(int maxFps) {
+    this.maxFps = maxFps;
+    this.targetFps = maxFps;
+  }
+
+  /** Returns the frame rate that should currently be requested from the camera. */
+  public int getTargetFps() {
+    return targetFps;
+  }
+
+  /**
+   * Feeds the number of frames processed over the last second and returns the frame rate that
+   * should be requested from the camera from now on.
+   *
+   * @param processedFps frames processed over the last second, or a negative value if unknown
+   * @param captureFps the upper bound of the frame rate range the camera is actually running at,
+   *     which may differ from the target as cameras only support a few ranges
+   */
+  public int onEvaluation(int processedFps, int captureFps) {
+    return onEvaluation(processedFps, captureFps, SystemClock.elapsedRealtime());
+  }
+
+  @VisibleForTesting
+  int onEvaluation(int processedFps, int captureFps, long nowMs) {
+    if (processedFps < 0) {
+      return targetFps;
+    }
+    if (settling) {
+      settling = false;
+      return targetFps;
+    }
+    smoothedFps =
+        smoothedFps < 0 ? processedFps : smoothedFps + FPS_SMOOTHING * (processedFps - smoothedFps);
+
+    if (captureFps < maxFps && processedFps >= captureFps * SATURATION_RATIO) {
+      if (++saturatedEvaluations >= SATURATED_EVALUATIONS_BEFORE_PROBE
+          && nowMs - lastProbeMs >= PROBE_COOLDOWN_MS) {
+        lastProbeMs = nowMs;
+        setTargetFps(maxFps);
+      }
+      return targetFps;
+    }
+    saturatedEvaluations = 0;
+
+    int desiredFps = Math.max(MIN_FPS, Math.min(maxFps, Math.round(smoothedFps * HEADROOM)));
+    int change = Math.abs(desiredFps - targetFps);
+    if (change >= MIN_CHANGE_FPS && change >= targetFps * MIN_CHANGE_RATIO) {
+      setTargetFps(desiredFps);
+    }
+    return targetFps;
+  }
+
+  private void setTargetFps(int fps) {
+    Log.d(
+        TAG,
+        "Capture rate target " + targetFps + " -> " + fps + " fps, processed " + smoothedFps);
+    targetFps = fps;
+    smoothedFps = -1;
+    settling = true;
+    VisionMetrics.setGauge("capture.target_fps", fps);
+    VisionMetrics.incrementCounter("capture.rate_changes", 1);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.util.Log;
+
+/**
+ * How long the first detections of a processor took compared to later ones, published in {@link
+ * VisionMetrics} under {@code coldstart.<processor>.*}.
+ *
+ * <p>The time to the first result is counted from the creation of these stats, i.e. of the
+ * processor. The steady state is the mean latency of {@link #STEADY_STATE_RUNS} detections once
+ * {@link #SKIPPED_RUNS} more have passed, as the detections right after the first one may still be
+ * slower. A warm-up detection on a blank frame is reported on its own, so that the first result
+ * shows what warming up saves. Not thread safe, processors call it on the main thread.
+ */
+public final class ColdStartStats {
+
+  private static final String TAG = "ColdStartStats";
+  private static final int SKIPPED_RUNS = 5;
+  private static final int STEADY_STATE_RUNS = 30;
+
+  private final String processorName;
+  private final String metricPrefix;
+  private final long startMs;
+
+  private boolean hasFirstResult;
+  private long firstLatencyMs;
+  private int runsAfterFirstResult;
+  private long steadyStateTotalMs;
+
+  /**
+   * @param processorName names the metrics, e.g. the simple class name of the processor
+   * @param startMs when the processor was created, in {@link
+   *     android.os.SystemClock#elapsedRealtime()} time base
+   */
+  public ColdStartStats(String processorName, long startMs) {
+    this.processorName = processorName;
+    this.metricPrefix = "coldstart." + processorName + ".";
+    this.startMs = startMs;
+  }
+
+  /** Records how long the warm-up detection took. */
+  public void onWarmUp(long latencyMs) {
+    VisionMetrics.setGauge(metricPrefix + "warm_up_ms", latencyMs);
+  }
+
+  /** Records a detection of a camera frame or image, which ended at the given time. */
+  public void onDetection(long latencyMs, long endMs) {
+    if (!hasFirstResult) {
+      hasFirstResult = true;
+      firstLatencyMs = latencyMs;
+      VisionMetrics.setGauge(metricPrefix + "time_to_first_result_ms", endMs - startMs);
+      VisionMetrics.setGauge(metricPrefix + "first_latency_ms", latencyMs);
+      return;
+    }
+    if (++runsAfterFirstResult <= SKIPPED_RUNS
+        || runsAfterFirstResult > SKIPPED_RUNS + STEADY_STATE_RUNS) {
+      return;
+    }
+    steadyStateTotalMs += latencyMs;
+    if (runsAfterFirstResult == SKIPPED_RUNS + STEADY_STATE_RUNS) {
+      float steadyStateLatencyMs = (float) steadyStateTotalMs / STEADY_STATE_RUNS;
+      float ratio = firstLatencyMs / Math.max(1f, steadyStateLatencyMs);
+      VisionMetrics.setGauge(metricPrefix + "steady_latency_ms", steadyStateLatencyMs);
+      VisionMetrics.setGauge(metricPrefix + "first_to_steady_ratio", ratio);
+      Log.i(
+          TAG,
+          "Cold start of "
+              + processorName
+              + ": first detection "
+              + firstLatencyMs
+              + " ms, steady state "
+              + steadyStateLatencyMs
+              + " ms");
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+/**
+ * The region of live frames that is sent to the detector, so that it processes fewer pixels.
+ *
+ * <p>Regions are given in normalized coordinates of the upright frame, i.e. from 0 to 1 after the
+ * frame has been rotated by its rotation degrees. A region is either fixed, centered, or tracks
+ * the results of the previous frames: it is then placed around the bounds of the last results,
+ * moved ahead by how far they moved since the frame before, padded so that moving objects stay
+ * inside, and falls back to the full frame once nothing has been found for a few frames.
+ *
+ * <p>{@link #getCrop} turns the region into a {@link Crop} of a given frame, in the sensor
+ * orientation the frame pixels are stored in, so that it can be cut out of YUV data directly.
+ */
+public final class DetectionRegion {
+
+  private static final RectF FULL_FRAME = new RectF(0, 0, 1, 1);
+  // Regions covering almost the whole frame are not worth the copy.
+  private static final float MAX_CROPPED_AREA_FRACTION = 0.9f;
+  // Padding added on each side of the tracked bounds, relative to their size.
+  private static final float TRACKING_PADDING = 0.5f;
+  private static final float MIN_TRACKED_SIZE = 0.25f;
+  private static final int MISSES_BEFORE_FULL_FRAME = 5;
+
+  private final boolean isTracking;
+
+  @GuardedBy("this")
+  private final RectF region;
+
+  @GuardedBy("this")
+  private int misses;
+
+  // Center of the last results, to predict where the next ones will be. NaN after a miss.
+  @GuardedBy("this")
+  private float lastCenterX = Float.NaN;
+
+  @GuardedBy("this")
+  private float lastCenterY = Float.NaN;
+
+  private DetectionRegion(RectF region, boolean isTracking) {
+    this.region = new RectF(region);
+    this.region.intersect(FULL_FRAME);
+    this.isTracking = isTracking;
+  }
+
+  /** Creates a region that always covers the given normalized rectangle of the upright frame. */
+  public static DetectionRegion fixed(RectF region) {
+    return new DetectionRegion(region, /* isTracking= */ false);
+  }
+
+  /** Creates a region of the given fractions of the frame width and height, at its center. */
+  public static DetectionRegion center(float widthFraction, float heightFraction) {
+    return new DetectionRegion(
+        getCenterRegion(widthFraction, heightFraction), /* isTracking= */ false);
+  }
+
+  /**
+   * Creates a region that follows the results of the previous frames, starting from the full frame.
+   * The processor needs to report the bounds of its results for the region to shrink.
+   */
+  public static DetectionRegion tracked() {
+    return new DetectionRegion(FULL_FRAME, /* isTracking= */ true);
+  }
+
+  public boolean isTracking() {
+    return isTracking;
+  }
+
+  /**
+   * Feeds the bounds of the results of the last frame, normalized to the upright frame, or null if
+   * nothing was found. Only changes tracking regions.
+   */
+  public synchronized void onResults(@Nullable RectF bounds) {
+    if (!isTracking) {
+      return;
+    }
+    if (bounds == null || bounds.isEmpty()) {
+      lastCenterX = Float.NaN;
+      lastCenterY = Float.NaN;
+      if (++misses >= MISSES_BEFORE_FULL_FRAME) {
+        region.set(FULL_FRAME);
+      }
+      return;
+    }
+    misses = 0;
+    // Assume the results keep moving as they did between the last two frames.
+    float centerX = bounds.centerX();
+    float centerY = bounds.centerY();
+    float predictedCenterX = Float.isNaN(lastCenterX) ? centerX : 2 * centerX - lastCenterX;
+    float predictedCenterY = Float.isNaN(lastCenterY) ? centerY : 2 * centerY - lastCenterY;
+    lastCenterX = centerX;
+    lastCenterY = centerY;
+    float width = Math.max(MIN_TRACKED_SIZE, bounds.width() * (1 + 2 * TRACKING_PADDING));
+    float height = Math.max(MIN_TRACKED_SIZE, bounds.height() * (1 + 2 * TRACKING_PADDING));
+    region.set(
+        predictedCenterX - width / 2,
+        predictedCenterY - height / 2,
+        predictedCenterX + width / 2,
+        predictedCenterY + height / 2);
+    // Keep the padded bounds in the region even if the prediction overshoots.
+    region.union(bounds);
+    region.intersect(FULL_FRAME);
+  }
+
+  /**
+   * Returns how to cut the current region out of a frame, or null if the frame should be processed
+   * whole.
+   *
+   * @param frameWidth the width of the frame in sensor orientation
+   * @param frameHeight the height of the frame in sensor orientation
+   * @param rotationDegrees the clockwise rotation that makes the frame upright
+   * @param downscaleFactor the factor the cropped pixels are subsampled by
+   */
+  @Nullable
+  public Crop getCrop(int frameWidth, int frameHeight, int rotationDegrees, int downscaleFactor) {
+    RectF normalizedRegion;
+    synchronized (this) {
+      normalizedRegion = new RectF(region);
+    }
+    if (normalizedRegion.width() * normalizedRegion.height() > MAX_CROPPED_AREA_FRACTION) {
+      return null;
+    }
+
+    boolean isRotated = rotationDegrees == 90 || rotationDegrees == 270;
+    int uprightWidth = isRotated ? frameHeight : frameWidth;
+    int uprightHeight = isRotated ? frameWidth : frameHeight;
+    Rect uprightRect =
+        new Rect(
+            Math.round(normalizedRegion.left * uprightWidth),
+            Math.round(normalizedRegion.top * uprightHeight),
+            Math.round(normalizedRegion.right * uprightWidth),
+            Math.round(normalizedRegion.bottom * uprightHeight));
+    Rect sensorRect = toSensorRect(uprightRect, frameWidth, frameHeight, rotationDegrees);
+    // NV21 chroma samples cover 2x2 pixels, so the crop must start on even coordinates.
+    sensorRect.left &= ~1;
+    sensorRect.top &= ~1;
+    int minSize = 2 * downscaleFactor;
+    if (sensorRect.width() < minSize || sensorRect.height() < minSize) {
+      return null;
+    }
+    return new Crop(
+        sensorRect,
+        toUprightRect(sensorRect, frameWidth, frameHeight, rotationDegrees),
+        uprightWidth,
+        uprightHeight,
+        downscaleFactor);
+  }
+
+  private static RectF getCenterRegion(float widthFraction, float heightFraction) {
+    float width = Math.min(1, widthFraction);
+    float height = Math.min(1, heightFraction);
+    return new RectF((1 - width) / 2, (1 - height) / 2, (1 + width) / 2, (1 + height) / 2);
+  }
+
+  /** Maps a rectangle of the upright frame to the frame as stored, in sensor orientation. */
+  private static Rect toSensorRect(Rect upright, int width, int height, int rotationDegrees) {
+    switch (rotationDegrees) {
+      case 90:
+        return new Rect(upright.top, height - upright.right, upright.bottom, height - upright.left);
+      case 180:
+        return new Rect(
+            width - upright.right,
+            height - upright.bottom,
+            width - upright.left,
+            height - upright.top);
+      case 270:
+        return new Rect(width - upright.bottom, upright.left, width - upright.top, upright.right);
+      default:
+        return new Rect(upright);
+    }
+  }
+
+  /** Maps a rectangle of the frame in sensor orientation to the upright frame. */
+  private static Rect toUprightRect(Rect sensor, int width, int height, int rotationDegrees) {
+    switch (rotationDegrees) {
+      case 90:
+        return new Rect(height - sensor.bottom, sensor.left, height - sensor.top, sensor.right);
+      case 180:
+        return new Rect(
+            width - sensor.right, height - sensor.bottom, width - sensor.left, height - sensor.top);
+      case 270:
+        return new Rect(sensor.top, width - sensor.right, sensor.bottom, width - sensor.left);
+      default:
+        return new Rect(sensor);
+    }
+  }
+
+  /** A rectangle to cut out of a frame and subsample before detection. */
+  public static final class Crop {
+    private final Rect sensorRect;
+    private final Rect uprightRect;
+    private final int uprightFrameWidth;
+    private final int uprightFrameHeight;
+    private final int downscaleFactor;
+
+    Crop(
+        Rect sensorRect,
+        Rect uprightRect,
+        int uprightFrameWidth,
+        int uprightFrameHeight,
+        int downscaleFactor) {
+      this.sensorRect = sensorRect;
+      this.uprightRect = uprightRect;
+      this.uprightFrameWidth = uprightFrameWidth;
+      this.uprightFrameHeight = uprightFrameHeight;
+      this.downscaleFactor = downscaleFactor;
+    }
+
+    /** Returns the rectangle to cut out of the frame in sensor orientation, on even coordinates. */
+    public Rect getSensorRect() {
+      return sensorRect;
+    }
+
+    public int getDownscaleFactor() {
+      return downscaleFactor;
+    }
+
+    /**
+     * Returns the width of the upright frame in the coordinates of the detector input, i.e. after
+     * subsampling. This is the image width the {@link GraphicOverlay} should use.
+     */
+    public int getFrameWidth() {
+      return uprightFrameWidth / downscaleFactor;
+    }
+
+    /** Returns the height of the upright frame in the coordinates of the detector input. */
+    public int getFrameHeight() {
+      return uprightFrameHeight / downscaleFactor;
+    }
+
+    /** Returns where the detector input starts horizontally within {@link #getFrameWidth()}. */
+    public float getOffsetX() {
+      return (float) uprightRect.left / downscaleFactor;
+    }
+
+    /** Returns where the detector input starts vertically within {@link #getFrameHeight()}. */
+    public float getOffsetY() {
+      return (float) uprightRect.top / downscaleFactor;
+    }
+  }
+}
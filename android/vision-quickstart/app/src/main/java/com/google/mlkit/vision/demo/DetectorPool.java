@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide pool of ML Kit detector clients keyed by their options, so that switching between
+ * processors or coming back to a live preview does not pay for initializing the same detector
+ * again.
+ *
+ * <p>Processors {@link #acquire} their detector when they are created and {@link #release} it
+ * instead of closing it when they stop. Released detectors stay warm until the pool holds more than
+ * {@link #MAX_IDLE_DETECTORS} idle ones or the system reports memory pressure, in which case the
+ * least recently used ones are closed first. A detector can be used by several processors at once,
+ * e.g. while an activity replaces its processor.
+ *
+ * <p>Detector options are compared with {@code equals}, so options holding callbacks, like barcode
+ * zoom suggestions, should not be pooled. Hits, misses and evictions are counted in {@link
+ * VisionMetrics} under {@code detector_pool.*}, and the time it took to create each type of
+ * detector under {@code coldstart.<detector>.construction_ms}.
+ */
+public final class DetectorPool {
+
+  private static final String TAG = "DetectorPool";
+  private static final int MAX_IDLE_DETECTORS = 4;
+
+  /** Creates a detector on a pool miss. */
+  public interface Factory<D extends Closeable> {
+    D create();
+  }
+
+  @GuardedBy("DetectorPool.class")
+  private static final Map<List<Object>, Entry> entries = new HashMap<>();
+
+  // Idle entries, least recently released first.
+  @GuardedBy("DetectorPool.class")
+  private static final LinkedHashMap<List<Object>, Entry> idleEntries = new LinkedHashMap<>();
+
+  @GuardedBy("DetectorPool.class")
+  private static boolean isMemoryCallbackRegistered;
+
+  private DetectorPool() {}
+
+  /**
+   * Returns a detector of the given type and options, either a warm one from the pool or a new one
+   * from the factory. Each call must be balanced by a call to {@link #release}.
+   */
+  public static synchronized <D extends Closeable> D acquire(
+      Context context, Class<D> type, Object options, Factory<D> factory) {
+    registerMemoryCallback(context);
+    List<Object> key = Arrays.asList(type, options);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      VisionMetrics.incrementCounter("detector_pool.misses", 1);
+      long createStartMs = SystemClock.elapsedRealtime();
+      entry = new Entry(key, factory.create());
+      VisionMetrics.setGauge(
+          "coldstart." + type.getSimpleName() + ".construction_ms",
+          SystemClock.elapsedRealtime() - createStartMs);
+      entries.put(key, entry);
+    } else {
+      VisionMetrics.incrementCounter("detector_pool.hits", 1);
+      idleEntries.remove(key);
+    }
+    entry.users++;
+    publishIdleCount();
+    return type.cast(entry.detector);
+  }
+
+  /** Gives back a detector obtained from {@link #acquire}, which keeps it warm for later use. */
+  public static synchronized void release(Closeable detector) {
+    for (Entry entry : entries.values()) {
+      if (entry.detector == detector) {
+        if (--entry.users == 0) {
+          idleEntries.put(entry.key, entry);
+          trimIdleEntries(MAX_IDLE_DETECTORS);
+        }
+        publishIdleCount();
+        return;
+      }
+    }
+    Log.w(TAG, "Released a detector that is not pooled, closing it");
+    close(detector);
+  }
+
+  /** Closes all idle detectors. */
+  public static synchronized void clear() {
+    trimIdleEntries(0);
+    publishIdleCount();
+  }
+
+  @GuardedBy("DetectorPool.class")
+  private static void trimIdleEntries(int maxIdleEntries) {
+    Iterator<Entry> iterator = idleEntries.values().iterator();
+    while (idleEntries.size() > maxIdleEntries && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      iterator.remove();
+      entries.remove(entry.key);
+      close(entry.detector);
+      VisionMetrics.incrementCounter("detector_pool.evictions", 1);
+    }
+  }
+
+  @GuardedBy("DetectorPool.class")
+  private static void publishIdleCount() {
+    VisionMetrics.setGauge("detector_pool.idle", idleEntries.size());
+  }
+
+  @GuardedBy("DetectorPool.class")
+  private static void registerMemoryCallback(Context context) {
+    if (isMemoryCallbackRegistered) {
+      return;
+    }
+    isMemoryCallbackRegistered = true;
+    context
+        .getApplicationContext()
+        .registerComponentCallbacks(
+            new ComponentCallbacks2() {
+              @Override
+              public void onTrimMemory(int level) {
+                synchronized (DetectorPool.class) {
+                  if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                    trimIdleEntries(0);
+                  } else if (level == TRIM_MEMORY_RUNNING_LOW) {
+                    trimIdleEntries(1);
+                  } else if (level == TRIM_MEMORY_RUNNING_MODERATE) {
+                    trimIdleEntries(MAX_IDLE_DETECTORS / 2);
+                  }
+                  publishIdleCount();
+                }
+              }
+
+              @Override
+              public void onLowMemory() {
+                clear();
+              }
+
+              @Override
+              public void onConfigurationChanged(@NonNull Configuration newConfig) {}
+            });
+  }
+
+  private static void close(Closeable detector) {
+    try {
+      detector.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to close detector", e);
+    }
+  }
+
+  private static final class Entry {
+    final List<Object> key;
+    final Closeable detector;
+    int users;
+
+    Entry(List<Object> key, Closeable detector) {
+      this.key = key;
+      this.detector = detector;
+    }
+  }
+}
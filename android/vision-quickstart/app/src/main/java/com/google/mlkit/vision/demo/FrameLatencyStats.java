@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.util.Log;
+
+/**
+ * Percentiles of the end-to-end latency of live frames, from capture until their results are drawn
+ * in the {@link GraphicOverlay}, over the most recent frames.
+ *
+ * <p>The latency is split into stages: queueing (capture until the processor received the frame),
+ * processing (until the detector results were delivered on the main thread) and drawing (until
+ * the overlay finished drawing them). Results replaced by newer ones before they were drawn never
+ * reach the screen and are not recorded.
+ */
+public final class FrameLatencyStats {
+
+  private static final String TAG = "FrameLatencyStats";
+  private static final int WINDOW_SIZE = 256;
+
+  private static final LatencyPercentiles glassToOverlay = new LatencyPercentiles(WINDOW_SIZE);
+  private static final LatencyPercentiles queueing = new LatencyPercentiles(WINDOW_SIZE);
+  private static final LatencyPercentiles processing = new LatencyPercentiles(WINDOW_SIZE);
+  private static final LatencyPercentiles drawing = new LatencyPercentiles(WINDOW_SIZE);
+
+  private FrameLatencyStats() {}
+
+  /**
+   * Records the timing of a frame whose results were just drawn, all in the {@link
+   * android.os.SystemClock#elapsedRealtime()} time base.
+   */
+  public static synchronized void record(
+      long captureTimeMs, long receivedTimeMs, long resultTimeMs, long drawnTimeMs) {
+    glassToOverlay.add(drawnTimeMs - captureTimeMs);
+    queueing.add(receivedTimeMs - captureTimeMs);
+    processing.add(resultTimeMs - receivedTimeMs);
+    drawing.add(drawnTimeMs - resultTimeMs);
+  }
+
+  /** Returns a one line summary of the latency percentiles, or null if nothing was recorded. */
+  public static synchronized String getSummary() {
+    if (glassToOverlay.getCount() == 0) {
+      return null;
+    }
+    StringBuilder summary = new StringBuilder();
+    glassToOverlay.appendTo(summary, "glass-to-overlay");
+    queueing.appendTo(summary.append(", "), "queueing");
+    processing.appendTo(summary.append(", "), "processing");
+    drawing.appendTo(summary.append(", "), "drawing");
+    return summary.toString();
+  }
+
+  /** Logs the summary and publishes the glass-to-overlay percentiles to {@link VisionMetrics}. */
+  public static void logSummary() {
+    String summary;
+    long[] percentiles;
+    synchronized (FrameLatencyStats.class) {
+      summary = getSummary();
+      if (summary == null) {
+        return;
+      }
+      percentiles = glassToOverlay.getPercentiles();
+    }
+    Log.d(TAG, summary);
+    VisionMetrics.setGauge("latency.glass_to_overlay_p50_ms", percentiles[0]);
+    VisionMetrics.setGauge("latency.glass_to_overlay_p90_ms", percentiles[1]);
+    VisionMetrics.setGauge("latency.glass_to_overlay_p99_ms", percentiles[2]);
+  }
+
+  /** Drops all recorded latencies. */
+  public static synchronized void reset() {
+    glassToOverlay.clear();
+    queueing.clear();
+    processing.clear();
+    drawing.clear();
+  }
+}
@@ -16,12 +16,15 @@
 
 package com.google.mlkit.vision.demo;
 
+import android.os.SystemClock;
+
 /** Describing a frame info. */
 public class FrameMetadata {
 
   private final int width;
   private final int height;
   private final int rotation;
+  private final long captureTimeMs;
 
   public int getWidth() {
     return width;
@@ -35,10 +38,35 @@ public class FrameMetadata {
     return rotation;
   }
 
-  private FrameMetadata(int width, int height, int rotation) {
+  /**
+   * Returns when the frame was captured, in the {@link SystemClock#elapsedRealtime()} time base, or
+   * 0 if it is not known.
+   */
+  public long getCaptureTimeMs() {
+    return captureTimeMs;
+  }
+
+  private FrameMetadata(int width, int height, int rotation, long captureTimeMs) {
     this.width = width;
     this.height = height;
     this.rotation = rotation;
+    this.captureTimeMs = captureTimeMs;
+  }
+
+  /**
+   * Converts a sensor timestamp in nanoseconds, e.g. from {@code ImageInfo#getTimestamp()}, to the
+   * {@link SystemClock#elapsedRealtime()} time base. Depending on the device, sensor timestamps
+   * either follow {@link SystemClock#elapsedRealtimeNanos()} or {@link System#nanoTime()}, which
+   * stops while the device sleeps, so the closer of both clocks is assumed to be the source.
+   */
+  public static long toElapsedRealtimeMs(long sensorTimestampNs) {
+    long elapsedRealtimeNs = SystemClock.elapsedRealtimeNanos();
+    long monotonicNs = System.nanoTime();
+    if (Math.abs(elapsedRealtimeNs - sensorTimestampNs)
+        > Math.abs(monotonicNs - sensorTimestampNs)) {
+      sensorTimestampNs += elapsedRealtimeNs - monotonicNs;
+    }
+    return sensorTimestampNs / 1_000_000;
   }
 
   /** Builder of {@link FrameMetadata}. */
@@ -47,6 +75,7 @@ public class FrameMetadata {
     private int width;
     private int height;
     private int rotation;
+    private long captureTimeMs;
 
     public Builder setWidth(int width) {
       this.width = width;
@@ -63,8 +92,13 @@ public class FrameMetadata {
       return this;
     }
 
+    public Builder setCaptureTimeMs(long captureTimeMs) {
+      this.captureTimeMs = captureTimeMs;
+      return this;
+    }
+
     public FrameMetadata build() {
-      return new FrameMetadata(width, height, rotation);
+      return new FrameMetadata(width, height, rotation, captureTimeMs);
     }
   }
 }
@@ -23,8 +23,10 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
+import androidx.annotation.Nullable;
 import com.google.common.base.Preconditions;
 import com.google.common.primitives.Ints;
 import java.util.ArrayList;
@@ -48,6 +50,10 @@ import java.util.List;
  *   <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the
  *       coordinate from the image's coordinate system to the view coordinate system.
  * </ol>
+ *
+ * <p>By default graphics are drawn on the UI thread in {@link #onDraw(Canvas)}. Alternatively a
+ * {@link GraphicOverlayTextureView} can be attached with {@link #setRenderView}, in which case the
+ * same graphics are drawn on a dedicated render thread into the surface of that view.
  */
 public class GraphicOverlay extends View {
   private final Object lock = new Object();
@@ -66,8 +72,21 @@ public class GraphicOverlay extends View {
   // The number of vertical pixels needed to be cropped on each side to fit the image with the
   // area of overlay View after scaling.
   private float postScaleHeightOffset;
+  // Where the image sent to the detectors starts within the image, when only a region was sent.
+  private float imageOffsetX;
+  private float imageOffsetY;
   private boolean isImageFlipped;
+  // The clockwise rotation that makes the images drawn behind the graphics upright, for images
+  // kept in sensor orientation rather than rotated.
+  private volatile int sourceRotationDegrees;
   private boolean needUpdateTransformation = true;
+  // If set, graphics are rendered into this view on its render thread instead of in onDraw.
+  @Nullable private volatile GraphicOverlayTextureView renderView;
+  // Timing of the live frame whose results are in the overlay, until they are drawn once. Guarded
+  // by lock, like the graphics.
+  private long pendingCaptureTimeMs;
+  private long pendingReceivedTimeMs;
+  private long pendingResultTimeMs;
 
   /**
    * Base class for a custom graphics object to be rendered within the graphic overlay. Subclass
@@ -123,10 +142,11 @@ public class GraphicOverlay extends View {
      * Adjusts the x coordinate from the image's coordinate system to the view coordinate system.
      */
     public float translateX(float x) {
+      float viewX = scale(x + overlay.imageOffsetX) - overlay.postScaleWidthOffset;
       if (overlay.isImageFlipped) {
-        return overlay.getWidth() - (scale(x) - overlay.postScaleWidthOffset);
+        return overlay.getWidth() - viewX;
       } else {
-        return scale(x) - overlay.postScaleWidthOffset;
+        return viewX;
       }
     }
 
@@ -134,7 +154,7 @@ public class GraphicOverlay extends View {
      * Adjusts the y coordinate from the image's coordinate system to the view coordinate system.
      */
     public float translateY(float y) {
-      return scale(y) - overlay.postScaleHeightOffset;
+      return scale(y + overlay.imageOffsetY) - overlay.postScaleHeightOffset;
     }
 
     /**
@@ -249,17 +269,87 @@ public class GraphicOverlay extends View {
    *     front camera.
    */
   public void setImageSourceInfo(int imageWidth, int imageHeight, boolean isFlipped) {
+    setImageSourceInfo(imageWidth, imageHeight, /* offsetX= */ 0, /* offsetY= */ 0, isFlipped);
+  }
+
+  /**
+   * Sets the source information of an image of which only a region was processed by detectors, so
+   * that their results are placed where that region is in the image.
+   *
+   * @param imageWidth the width of the whole image, in the scale of the image sent to detectors
+   * @param imageHeight the height of the whole image, in the scale of the image sent to detectors
+   * @param offsetX where the image sent to detectors starts horizontally in the whole image
+   * @param offsetY where the image sent to detectors starts vertically in the whole image
+   * @param isFlipped whether the image is flipped
+   */
+  public void setImageSourceInfo(
+      int imageWidth, int imageHeight, float offsetX, float offsetY, boolean isFlipped) {
     Preconditions.checkState(imageWidth > 0, "image width must be positive");
     Preconditions.checkState(imageHeight > 0, "image height must be positive");
     synchronized (lock) {
       this.imageWidth = imageWidth;
       this.imageHeight = imageHeight;
+      this.imageOffsetX = offsetX;
+      this.imageOffsetY = offsetY;
       this.isImageFlipped = isFlipped;
       needUpdateTransformation = true;
     }
     postInvalidate();
   }
 
+  /**
+   * Sets the clockwise rotation that makes the images drawn behind the graphics upright, e.g. by
+   * {@link CameraImageGraphic}. Frames can then be drawn in sensor orientation, the rotation being
+   * applied along with the transformation from image to view coordinates, rather than being copied
+   * into upright bitmaps first. The image size set by {@link #setImageSourceInfo} stays that of the
+   * upright image, which is what detectors return results for.
+   */
+  public void setSourceRotation(int rotationDegrees) {
+    sourceRotationDegrees = rotationDegrees;
+  }
+
+  public int getSourceRotation() {
+    return sourceRotationDegrees;
+  }
+
+  /**
+   * Sets the timing of the live frame whose results were just added, all in the {@link
+   * SystemClock#elapsedRealtime()} time base. Its end-to-end latency is recorded in {@link
+   * FrameLatencyStats} the next time the graphics are drawn.
+   */
+  public void setFrameTiming(long captureTimeMs, long receivedTimeMs, long resultTimeMs) {
+    synchronized (lock) {
+      pendingCaptureTimeMs = captureTimeMs;
+      pendingReceivedTimeMs = receivedTimeMs;
+      pendingResultTimeMs = resultTimeMs;
+    }
+  }
+
+  /**
+   * Sets the view to render the graphics into on a dedicated render thread, or null to draw them
+   * on the UI thread of this view. The render view should have the same bounds as this overlay.
+   */
+  public void setRenderView(@Nullable GraphicOverlayTextureView renderView) {
+    this.renderView = renderView;
+    if (renderView != null) {
+      renderView.setGraphicOverlay(this);
+    }
+    // Redraws both this view and the render view, so the graphics only show up in one of them.
+    super.postInvalidate();
+    postInvalidate();
+  }
+
+  /** Requests a redraw of the graphics, either on the UI thread or on the render thread. */
+  @Override
+  public void postInvalidate() {
+    GraphicOverlayTextureView renderView = this.renderView;
+    if (renderView != null) {
+      renderView.requestRender();
+    } else {
+      super.postInvalidate();
+    }
+  }
+
   public int getImageWidth() {
     return imageWidth;
   }
@@ -268,6 +358,18 @@ public class GraphicOverlay extends View {
     return imageHeight;
   }
 
+  public float getImageOffsetX() {
+    return imageOffsetX;
+  }
+
+  public float getImageOffsetY() {
+    return imageOffsetY;
+  }
+
+  public boolean isImageFlipped() {
+    return isImageFlipped;
+  }
+
   private void updateTransformationIfNeeded() {
     if (!needUpdateTransformation || imageWidth <= 0 || imageHeight <= 0) {
       return;
@@ -293,6 +395,7 @@ public class GraphicOverlay extends View {
     if (isImageFlipped) {
       transformationMatrix.postScale(-1f, 1f, getWidth() / 2f, getHeight() / 2f);
     }
+    transformationMatrix.preTranslate(imageOffsetX, imageOffsetY);
 
     needUpdateTransformation = false;
   }
@@ -301,13 +404,29 @@ public class GraphicOverlay extends View {
   @Override
   protected void onDraw(Canvas canvas) {
     super.onDraw(canvas);
+    if (renderView != null) {
+      return;
+    }
+    drawGraphics(canvas);
+  }
 
+  /** Draws all graphics on the supplied canvas. May be called from the UI or the render thread. */
+  void drawGraphics(Canvas canvas) {
     synchronized (lock) {
       updateTransformationIfNeeded();
 
       for (Graphic graphic : graphics) {
         graphic.draw(canvas);
       }
+
+      if (pendingCaptureTimeMs > 0) {
+        FrameLatencyStats.record(
+            pendingCaptureTimeMs,
+            pendingReceivedTimeMs,
+            pendingResultTimeMs,
+            SystemClock.elapsedRealtime());
+        pendingCaptureTimeMs = 0;
+      }
     }
   }
 }
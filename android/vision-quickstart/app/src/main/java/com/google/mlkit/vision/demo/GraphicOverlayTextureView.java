@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.TextureView;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link TextureView} that renders the graphics of a {@link GraphicOverlay} on a dedicated render
+ * thread, so that heavy graphics (e.g. full camera frames or segmentation masks) don't block the UI
+ * thread. Attach it with {@link GraphicOverlay#setRenderView} and lay it out with the same bounds as
+ * the overlay, since the graphics are still positioned using the overlay's size.
+ *
+ * <p>Render requests are coalesced: while a frame is pending, further requests are dropped and the
+ * pending frame draws the latest graphics.
+ */
+public class GraphicOverlayTextureView extends TextureView
+    implements TextureView.SurfaceTextureListener {
+  private static final String TAG = "OverlayTextureView";
+
+  private final AtomicBoolean renderPending = new AtomicBoolean();
+  private final Runnable renderRunnable = this::render;
+
+  @Nullable private volatile GraphicOverlay graphicOverlay;
+
+  @GuardedBy("this")
+  @Nullable
+  private HandlerThread renderThread;
+
+  @GuardedBy("this")
+  @Nullable
+  private Handler renderHandler;
+
+  public GraphicOverlayTextureView(Context context, AttributeSet attrs) {
+    super(context, attrs);
+    setOpaque(false);
+    setSurfaceTextureListener(this);
+  }
+
+  void setGraphicOverlay(GraphicOverlay graphicOverlay) {
+    this.graphicOverlay = graphicOverlay;
+  }
+
+  /** Schedules drawing the graphics on the render thread. Can be called from any thread. */
+  public synchronized void requestRender() {
+    if (renderHandler != null && renderPending.compareAndSet(false, true)) {
+      renderHandler.post(renderRunnable);
+    }
+  }
+
+  private void render() {
+    renderPending.set(false);
+    GraphicOverlay overlay = graphicOverlay;
+    if (overlay == null) {
+      return;
+    }
+    Canvas canvas = lockCanvas();
+    if (canvas == null) {
+      // The surface has been destroyed in the meantime.
+      return;
+    }
+    try {
+      canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+      overlay.drawGraphics(canvas);
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Failed to render overlay graphics.", e);
+    } finally {
+      unlockCanvasAndPost(canvas);
+    }
+  }
+
+  @Override
+  public synchronized void onSurfaceTextureAvailable(
+      @NonNull SurfaceTexture surface, int width, int height) {
+    renderThread = new HandlerThread("OverlayRenderThread");
+    renderThread.start();
+    renderHandler = new Handler(renderThread.getLooper());
+    renderPending.set(false);
+    requestRender();
+  }
+
+  @Override
+  public void onSurfaceTextureSizeChanged(@NonNull SurfaceTexture surface, int width, int height) {
+    requestRender();
+  }
+
+  @Override
+  public boolean onSurfaceTextureDestroyed(@NonNull SurfaceTexture surface) {
+    HandlerThread thread;
+    synchronized (this) {
+      thread = renderThread;
+      renderThread = null;
+      renderHandler = null;
+    }
+    if (thread != null) {
+      thread.quitSafely();
+      try {
+        // Waits for an in-flight render to finish before the surface texture gets released.
+        thread.join();
+      } catch (InterruptedException e) {
+        Log.d(TAG, "Interrupted while waiting for the render thread to stop.");
+        Thread.currentThread().interrupt();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surface) {}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latency statistics per detector and per input path, i.e. whether frames were handed to the
+ * detector as an {@code InputImage} or as an {@code MlImage}.
+ *
+ * <p>Processors are recreated whenever the settings change, so the statistics are kept for the
+ * lifetime of the process. This way both paths of a detector can be compared by flipping the
+ * setting back and forth.
+ */
+public final class InputPathLatencyStats {
+
+  private static final String TAG = "InputPathLatencyStats";
+
+  /** How a frame was handed to the detector. */
+  public enum InputPath {
+    INPUT_IMAGE("InputImage"),
+    ML_IMAGE("MlImage");
+
+    private final String displayName;
+
+    InputPath(String displayName) {
+      this.displayName = displayName;
+    }
+  }
+
+  private static final Map<String, Stats> statsByKey = new HashMap<>();
+
+  private InputPathLatencyStats() {}
+
+  /** Records the latencies of one frame processed by the given detector. */
+  public static synchronized void record(
+      String detectorName, InputPath inputPath, long frameLatencyMs, long detectorLatencyMs) {
+    String key = getKey(detectorName, inputPath);
+    Stats stats = statsByKey.get(key);
+    if (stats == null) {
+      stats = new Stats();
+      statsByKey.put(key, stats);
+    }
+    stats.add(frameLatencyMs, detectorLatencyMs);
+  }
+
+  /**
+   * Returns a one line comparison of both input paths of the given detector, or null if no frame
+   * has been recorded for it yet.
+   */
+  public static synchronized String getSummary(String detectorName) {
+    Stats inputImageStats = statsByKey.get(getKey(detectorName, InputPath.INPUT_IMAGE));
+    Stats mlImageStats = statsByKey.get(getKey(detectorName, InputPath.ML_IMAGE));
+    if (inputImageStats == null && mlImageStats == null) {
+      return null;
+    }
+
+    StringBuilder summary = new StringBuilder(detectorName);
+    appendStats(summary, InputPath.INPUT_IMAGE, inputImageStats);
+    appendStats(summary, InputPath.ML_IMAGE, mlImageStats);
+    if (inputImageStats != null && mlImageStats != null) {
+      float inputImageAvgMs = inputImageStats.getAverageDetectorMs();
+      float mlImageAvgMs = mlImageStats.getAverageDetectorMs();
+      if (inputImageAvgMs > 0) {
+        summary.append(
+            String.format(
+                Locale.US,
+                ", MlImage detector latency is %+.1f%% vs InputImage",
+                (mlImageAvgMs - inputImageAvgMs) * 100f / inputImageAvgMs));
+      }
+    }
+    return summary.toString();
+  }
+
+  /** Logs the comparison for the given detector, if there is anything to compare yet. */
+  public static void logSummary(String detectorName) {
+    String summary = getSummary(detectorName);
+    if (summary != null) {
+      Log.d(TAG, summary);
+    }
+  }
+
+  private static void appendStats(StringBuilder summary, InputPath inputPath, Stats stats) {
+    summary.append(", ").append(inputPath.displayName).append(": ");
+    if (stats == null) {
+      summary.append("no frames");
+      return;
+    }
+    summary.append(
+        String.format(
+            Locale.US,
+            "n=%d frame avg=%.1fms detector avg=%.1fms min=%d max=%d",
+            stats.count,
+            stats.getAverageFrameMs(),
+            stats.getAverageDetectorMs(),
+            stats.minDetectorMs,
+            stats.maxDetectorMs));
+  }
+
+  private static String getKey(String detectorName, InputPath inputPath) {
+    return detectorName + "/" + inputPath.name();
+  }
+
+  private static final class Stats {
+    private long count;
+    private long totalFrameMs;
+    private long totalDetectorMs;
+    private long minDetectorMs = Long.MAX_VALUE;
+    private long maxDetectorMs;
+
+    void add(long frameLatencyMs, long detectorLatencyMs) {
+      count++;
+      totalFrameMs += frameLatencyMs;
+      totalDetectorMs += detectorLatencyMs;
+      minDetectorMs = Math.min(minDetectorMs, detectorLatencyMs);
+      maxDetectorMs = Math.max(maxDetectorMs, detectorLatencyMs);
+    }
+
+    float getAverageFrameMs() {
+      return (float) totalFrameMs / count;
+    }
+
+    float getAverageDetectorMs() {
+      return (float) totalDetectorMs / count;
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.graphics.PointF;
+import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Smooths the landmarks found in live frames and extrapolates them, so that the detector only needs
+ * to run on keyframes and the frames in between can be drawn from the tracked landmarks.
+ *
+ * <p>Each landmark is identified by a key chosen by the caller and filtered with a {@link
+ * OneEuroFilter} per coordinate, in coordinates normalized to the frame. Landmarks are filtered at
+ * the capture time of their keyframe and moved along their filtered velocity to the capture time
+ * of the latest frame, for at most {@link #MAX_EXTRAPOLATION_MS}, so that the detector latency and
+ * its jitter do not distort the velocity.
+ *
+ * <p>The keyframe interval follows the observed motion and latency: landmarks moving at speed v
+ * can be extrapolated for about {@link #MAX_DRIFT} / v before they drift visibly, minus the
+ * detector latency, as results are already that old when they are shown. The interval is the
+ * number of frames that fit in that time, up to {@link #MAX_KEYFRAME_INTERVAL}. Every frame is a
+ * keyframe while nothing is tracked, so that new objects are found right away.
+ *
+ * <p>Thread safe. Keyframes and skipped frames are counted in {@link VisionMetrics} under the
+ * given prefix.
+ */
+public final class LandmarkTracker {
+
+  private static final float MIN_CUTOFF_HZ = 1.5f;
+  private static final float BETA = 5f;
+  private static final float DERIVATIVE_CUTOFF_HZ = 1f;
+  // Fraction of the frame size extrapolated landmarks may drift from the detected ones.
+  private static final float MAX_DRIFT = 0.01f;
+  private static final long MAX_EXTRAPOLATION_MS = 250;
+  private static final int MAX_KEYFRAME_INTERVAL = 6;
+  private static final float SMOOTHING = 0.1f;
+
+  private final String metricPrefix;
+
+  @GuardedBy("this")
+  private final Map<Long, Landmark> landmarks = new HashMap<>();
+
+  // Size of the frames the landmarks are in, landmarks are dropped when it changes.
+  @GuardedBy("this")
+  private int frameSize;
+
+  @GuardedBy("this")
+  private int keyframeInterval = 1;
+
+  @GuardedBy("this")
+  private int framesSinceKeyframe;
+
+  // Capture time of the latest frame, which the tracked landmarks are extrapolated to.
+  @GuardedBy("this")
+  private long lastFrameMs;
+
+  // Capture time of the keyframe whose landmarks are fed next.
+  @GuardedBy("this")
+  private long keyframeMs;
+
+  @GuardedBy("this")
+  private float frameIntervalMs = -1;
+
+  @GuardedBy("this")
+  private float detectorLatencyMs = -1;
+
+  /** Creates a tracker whose metrics are named after the given prefix, e.g. "face_keyframes". */
+  public LandmarkTracker(String metricPrefix) {
+    this.metricPrefix = metricPrefix + ".";
+  }
+
+  /**
+   * Returns whether the detector can be skipped for the next frame, in which case the tracked
+   * landmarks are to be drawn instead. Called once per live frame.
+   *
+   * @param captureTimeMs when the frame was captured, in {@link SystemClock#elapsedRealtime()}
+   *     time base, or 0 if unknown
+   */
+  public synchronized boolean shouldSkipFrame(long captureTimeMs) {
+    long nowMs = getTimeMs(captureTimeMs);
+    if (lastFrameMs > 0) {
+      frameIntervalMs = smooth(frameIntervalMs, nowMs - lastFrameMs);
+    }
+    lastFrameMs = nowMs;
+    if (landmarks.isEmpty() || framesSinceKeyframe + 1 >= keyframeInterval) {
+      framesSinceKeyframe = 0;
+      return false;
+    }
+    framesSinceKeyframe++;
+    VisionMetrics.incrementCounter(metricPrefix + "skipped_frames", 1);
+    return true;
+  }
+
+  /**
+   * Feeds when a keyframe was captured and how long the detector took for it, before its landmarks
+   * are fed with {@link #update}.
+   *
+   * @param captureTimeMs when the keyframe was captured, in {@link SystemClock#elapsedRealtime()}
+   *     time base, or 0 if unknown
+   */
+  public synchronized void onKeyframeDetected(long captureTimeMs, long latencyMs) {
+    keyframeMs = getTimeMs(captureTimeMs);
+    detectorLatencyMs = smooth(detectorLatencyMs, latencyMs);
+  }
+
+  /**
+   * Feeds the landmarks detected in the keyframe last passed to {@link #onKeyframeDetected}, by
+   * key. Landmarks missing from it are no longer tracked.
+   *
+   * @param frameWidth the width of the frame the positions are in
+   * @param frameHeight the height of the frame the positions are in
+   */
+  public synchronized void update(Map<Long, PointF> positions, int frameWidth, int frameHeight) {
+    long nowMs = keyframeMs > 0 ? keyframeMs : SystemClock.elapsedRealtime();
+    int size = Math.max(frameWidth, frameHeight);
+    if (size != frameSize) {
+      landmarks.clear();
+      frameSize = size;
+    }
+    if (frameSize <= 0) {
+      return;
+    }
+    for (Map.Entry<Long, PointF> entry : positions.entrySet()) {
+      Landmark landmark = landmarks.get(entry.getKey());
+      if (landmark == null) {
+        landmark = new Landmark();
+        landmarks.put(entry.getKey(), landmark);
+      }
+      landmark.x.filter(entry.getValue().x / frameSize, nowMs);
+      landmark.y.filter(entry.getValue().y / frameSize, nowMs);
+    }
+    float maxSpeed = 0;
+    Iterator<Map.Entry<Long, Landmark>> iterator = landmarks.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, Landmark> entry = iterator.next();
+      if (!positions.containsKey(entry.getKey())) {
+        iterator.remove();
+        continue;
+      }
+      Landmark landmark = entry.getValue();
+      maxSpeed =
+          Math.max(
+              maxSpeed,
+              (float) Math.hypot(landmark.x.getDerivative(), landmark.y.getDerivative()));
+    }
+    keyframeInterval = getKeyframeInterval(maxSpeed);
+    VisionMetrics.incrementCounter(metricPrefix + "keyframes", 1);
+    VisionMetrics.setGauge(metricPrefix + "interval", keyframeInterval);
+    VisionMetrics.setGauge(metricPrefix + "landmark_speed", maxSpeed);
+  }
+
+  /**
+   * Returns where a landmark is expected in the latest frame, smoothed and extrapolated since the
+   * last keyframe, or the given detected position if it is not tracked.
+   */
+  public synchronized PointF getPosition(long key, PointF detectedPosition) {
+    Landmark landmark = landmarks.get(key);
+    if (landmark == null) {
+      return detectedPosition;
+    }
+    long elapsedMs = lastFrameMs - landmark.x.getLastTimeMs();
+    float elapsedSeconds = Math.min(Math.max(elapsedMs, 0), MAX_EXTRAPOLATION_MS) / 1000f;
+    return new PointF(
+        (landmark.x.getValue() + landmark.x.getDerivative() * elapsedSeconds) * frameSize,
+        (landmark.y.getValue() + landmark.y.getDerivative() * elapsedSeconds) * frameSize);
+  }
+
+  @GuardedBy("this")
+  private int getKeyframeInterval(float speed) {
+    if (frameIntervalMs <= 0) {
+      return 1;
+    }
+    float extrapolationMs =
+        speed > 0 ? Math.min(1000 * MAX_DRIFT / speed, MAX_EXTRAPOLATION_MS) : MAX_EXTRAPOLATION_MS;
+    float skippableMs = extrapolationMs - Math.max(detectorLatencyMs, 0);
+    if (skippableMs <= 0) {
+      return 1;
+    }
+    return Math.min(1 + (int) (skippableMs / frameIntervalMs), MAX_KEYFRAME_INTERVAL);
+  }
+
+  private static long getTimeMs(long captureTimeMs) {
+    return captureTimeMs > 0 ? captureTimeMs : SystemClock.elapsedRealtime();
+  }
+
+  private static float smooth(float average, long value) {
+    return average < 0 ? value : average + SMOOTHING * (value - average);
+  }
+
+  private static final class Landmark {
+    final OneEuroFilter x = new OneEuroFilter(MIN_CUTOFF_HZ, BETA, DERIVATIVE_CUTOFF_HZ);
+    final OneEuroFilter y = new OneEuroFilter(MIN_CUTOFF_HZ, BETA, DERIVATIVE_CUTOFF_HZ);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The latencies of one stage of a pipeline, summarized by their 50th, 90th and 99th percentiles.
+ * Either the most recent latencies or all of them are kept. Not thread safe.
+ */
+public final class LatencyPercentiles {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  // The number of latest latencies kept, or 0 to keep all of them.
+  private final int windowSize;
+  private long[] valuesMs;
+  private int count;
+  private int next;
+
+  /** @param windowSize how many of the latest latencies to keep, or 0 to keep all of them */
+  public LatencyPercentiles(int windowSize) {
+    this.windowSize = windowSize;
+    valuesMs = new long[windowSize > 0 ? windowSize : INITIAL_CAPACITY];
+  }
+
+  public void add(long valueMs) {
+    if (windowSize > 0) {
+      valuesMs[next] = valueMs;
+      next = (next + 1) % windowSize;
+      count = Math.min(count + 1, windowSize);
+      return;
+    }
+    if (count == valuesMs.length) {
+      valuesMs = Arrays.copyOf(valuesMs, count * 2);
+    }
+    valuesMs[count++] = valueMs;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /** Returns the 50th, 90th and 99th percentiles, or zeros if nothing was recorded. */
+  public long[] getPercentiles() {
+    long[] sorted = Arrays.copyOf(valuesMs, count);
+    Arrays.sort(sorted);
+    return new long[] {
+      getPercentile(sorted, 0.5f), getPercentile(sorted, 0.9f), getPercentile(sorted, 0.99f)
+    };
+  }
+
+  public void clear() {
+    count = 0;
+    next = 0;
+  }
+
+  /** Appends the percentiles to a summary, e.g. {@code decoding p50=12ms p90=20ms p99=31ms}. */
+  public void appendTo(StringBuilder summary, String name) {
+    long[] percentiles = getPercentiles();
+    summary.append(
+        String.format(
+            Locale.US,
+            "%s p50=%dms p90=%dms p99=%dms",
+            name,
+            percentiles[0],
+            percentiles[1],
+            percentiles[2]));
+  }
+
+  private static long getPercentile(long[] sorted, float fraction) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+/**
+ * One-Euro filter: a low-pass filter whose cutoff frequency rises with the speed of the signal, so
+ * that it smooths out jitter while a value is still and adds little lag while it moves. See Casiez
+ * et al., "1 Euro Filter: A Simple Speed-based Low-pass Filter for Noisy Input in Interactive
+ * Systems".
+ *
+ * <p>Besides the filtered value, the filter keeps a smoothed estimate of its derivative, which can
+ * be used to extrapolate the value between samples.
+ */
+public final class OneEuroFilter {
+
+  private final float minCutoffHz;
+  private final float beta;
+  private final float derivativeCutoffHz;
+
+  private boolean hasValue;
+  private float value;
+  private float derivative;
+  private long lastTimeMs;
+
+  /**
+   * @param minCutoffHz the cutoff frequency while the value is still, lower values smooth more
+   * @param beta how fast the cutoff frequency rises with the speed, higher values lag less
+   * @param derivativeCutoffHz the cutoff frequency of the derivative estimate
+   */
+  public OneEuroFilter(float minCutoffHz, float beta, float derivativeCutoffHz) {
+    this.minCutoffHz = minCutoffHz;
+    this.beta = beta;
+    this.derivativeCutoffHz = derivativeCutoffHz;
+  }
+
+  /** Feeds a sample taken at the given time and returns the filtered value. */
+  public float filter(float rawValue, long timeMs) {
+    if (!hasValue) {
+      hasValue = true;
+      value = rawValue;
+      derivative = 0;
+      lastTimeMs = timeMs;
+      return value;
+    }
+    float elapsedSeconds = Math.max(timeMs - lastTimeMs, 1) / 1000f;
+    float rawDerivative = (rawValue - value) / elapsedSeconds;
+    derivative += getAlpha(derivativeCutoffHz, elapsedSeconds) * (rawDerivative - derivative);
+    float cutoffHz = minCutoffHz + beta * Math.abs(derivative);
+    value += getAlpha(cutoffHz, elapsedSeconds) * (rawValue - value);
+    lastTimeMs = timeMs;
+    return value;
+  }
+
+  /** Returns the last filtered value. */
+  public float getValue() {
+    return value;
+  }
+
+  /** Returns the smoothed derivative of the value, per second. */
+  public float getDerivative() {
+    return derivative;
+  }
+
+  /** Returns when the last sample was taken. */
+  public long getLastTimeMs() {
+    return lastTimeMs;
+  }
+
+  private static float getAlpha(float cutoffHz, float elapsedSeconds) {
+    float timeConstant = 1 / (2 * (float) Math.PI * cutoffHz);
+    return 1 / (1 + timeConstant / elapsedSeconds);
+  }
+}
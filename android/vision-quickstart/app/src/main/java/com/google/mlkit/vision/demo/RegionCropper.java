@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import androidx.annotation.Nullable;
+
+/**
+ * Cuts the {@link DetectionRegion} out of live frames and subsamples them before detection, and
+ * feeds the results back to a tracking region. Without a region, frames are only subsampled.
+ *
+ * <p>Thread safe.
+ */
+public final class RegionCropper {
+
+  @Nullable private volatile DetectionRegion detectionRegion;
+
+  /** @param detectionRegion the region to send to the detector, or null to send whole frames */
+  public RegionCropper(@Nullable DetectionRegion detectionRegion) {
+    this.detectionRegion = detectionRegion;
+  }
+
+  /** Replaces the region to send to the detector, or sets it to null to send whole frames. */
+  public void setDetectionRegion(@Nullable DetectionRegion detectionRegion) {
+    this.detectionRegion = detectionRegion;
+  }
+
+  public boolean hasDetectionRegion() {
+    return detectionRegion != null;
+  }
+
+  /** Returns whether the region follows the results, which then need to be fed back. */
+  public boolean isTracking() {
+    DetectionRegion region = detectionRegion;
+    return region != null && region.isTracking();
+  }
+
+  /** Returns how to cut the detection region out of a Camera1 frame, or null to send it whole. */
+  @Nullable
+  public DetectionRegion.Crop getCrop(FrameMetadata frameMetadata, int downscaleFactor) {
+    return getCrop(
+        frameMetadata.getWidth(),
+        frameMetadata.getHeight(),
+        frameMetadata.getRotation(),
+        downscaleFactor);
+  }
+
+  /** Returns how to cut the detection region out of a live frame, or null to send it whole. */
+  @Nullable
+  public DetectionRegion.Crop getCrop(
+      int frameWidth, int frameHeight, int rotationDegrees, int downscaleFactor) {
+    DetectionRegion region = detectionRegion;
+    return region == null
+        ? null
+        : region.getCrop(frameWidth, frameHeight, rotationDegrees, downscaleFactor);
+  }
+
+  /**
+   * Feeds the bounds of the results of a live frame back to the region, see {@link #isTracking()}.
+   *
+   * @param bounds the bounds in the coordinates of the upright detector input, or null if nothing
+   *     was found
+   * @param crop the crop the results were found in, or null if the frame was sent whole
+   * @param frameWidth the width of the upright frame in the coordinates of the detector input
+   * @param frameHeight the height of the upright frame in the coordinates of the detector input
+   */
+  public void onResultBounds(
+      @Nullable RectF bounds,
+      @Nullable DetectionRegion.Crop crop,
+      int frameWidth,
+      int frameHeight) {
+    DetectionRegion region = detectionRegion;
+    if (region == null) {
+      return;
+    }
+    if (bounds != null) {
+      bounds = new RectF(bounds);
+      if (crop != null) {
+        bounds.offset(crop.getOffsetX(), crop.getOffsetY());
+      }
+      bounds.set(
+          bounds.left / frameWidth,
+          bounds.top / frameHeight,
+          bounds.right / frameWidth,
+          bounds.bottom / frameHeight);
+    }
+    region.onResults(bounds);
+  }
+
+  /**
+   * Returns the metadata of a Camera1 frame once the given crop, or the whole frame if null, has
+   * been cut out of it and subsampled.
+   */
+  public static FrameMetadata getCroppedMetadata(
+      FrameMetadata frameMetadata, @Nullable DetectionRegion.Crop crop, int downscaleFactor) {
+    Rect rect = getSensorRect(crop, frameMetadata.getWidth(), frameMetadata.getHeight());
+    return new FrameMetadata.Builder()
+        .setWidth(BitmapUtils.getDownscaledSize(rect.width(), downscaleFactor))
+        .setHeight(BitmapUtils.getDownscaledSize(rect.height(), downscaleFactor))
+        .setRotation(frameMetadata.getRotation())
+        .setCaptureTimeMs(frameMetadata.getCaptureTimeMs())
+        .build();
+  }
+
+  /**
+   * Cuts the given crop, or the whole frame if null, out of a frame bitmap in sensor orientation
+   * and subsamples it. The given bitmap is not modified.
+   */
+  public static Bitmap cropBitmap(
+      Bitmap frameBitmap, @Nullable DetectionRegion.Crop crop, int downscaleFactor) {
+    if (crop == null && downscaleFactor == 1) {
+      return frameBitmap;
+    }
+    Rect rect = getSensorRect(crop, frameBitmap.getWidth(), frameBitmap.getHeight());
+    return Bitmap.createScaledBitmap(
+        Bitmap.createBitmap(frameBitmap, rect.left, rect.top, rect.width(), rect.height()),
+        BitmapUtils.getDownscaledSize(rect.width(), downscaleFactor),
+        BitmapUtils.getDownscaledSize(rect.height(), downscaleFactor),
+        /* filter= */ false);
+  }
+
+  /** Returns the rectangle of a frame in sensor orientation that the given crop keeps. */
+  public static Rect getSensorRect(
+      @Nullable DetectionRegion.Crop crop, int frameWidth, int frameHeight) {
+    return crop != null ? crop.getSensorRect() : new Rect(0, 0, frameWidth, frameHeight);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.os.Build.VERSION_CODES;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.camera.core.ImageProxy;
+import java.nio.ByteBuffer;
+
+/**
+ * Decides which live frames are answered with the results of an earlier frame instead of running
+ * the detector: frames of a static scene, with a {@link SceneChangeDetector}, and the frames
+ * between keyframes, with a {@link LandmarkTracker}. Both are optional.
+ *
+ * <p>Thread safe.
+ *
+ * @param <T> The type of the detection results.
+ */
+public final class ResultReuse<T> {
+
+  @Nullable private final SceneChangeDetector<T> sceneChangeDetector;
+  @Nullable private volatile LandmarkTracker landmarkTracker;
+  // The results of the last keyframe, shown again for the frames the tracker skips.
+  @Nullable private volatile T lastKeyframeResults;
+
+  /** @param isStaticSceneSkippingEnabled whether frames of a static scene are skipped */
+  public ResultReuse(boolean isStaticSceneSkippingEnabled) {
+    sceneChangeDetector = isStaticSceneSkippingEnabled ? new SceneChangeDetector<>() : null;
+  }
+
+  /** Sets the tracker that decides which live frames are keyframes, or null to detect them all. */
+  public void setLandmarkTracker(@Nullable LandmarkTracker landmarkTracker) {
+    this.landmarkTracker = landmarkTracker;
+  }
+
+  /** Returns the signature of a Camera1 frame if static scenes are skipped, null otherwise. */
+  @Nullable
+  public byte[] getSignature(ByteBuffer data, FrameMetadata frameMetadata) {
+    if (sceneChangeDetector == null) {
+      return null;
+    }
+    return SceneChangeDetector.computeSignature(
+        data, frameMetadata.getWidth(), frameMetadata.getHeight());
+  }
+
+  /** Returns the signature of a CameraX frame if static scenes are skipped, null otherwise. */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  @Nullable
+  public byte[] getSignature(ImageProxy image) {
+    return sceneChangeDetector == null ? null : SceneChangeDetector.computeSignature(image);
+  }
+
+  /**
+   * Returns the results to show again for a live frame with the given signature, or null if it is
+   * to be detected. Called once per live frame.
+   *
+   * @param captureTimeMs when the frame was captured, or 0 if unknown
+   */
+  @Nullable
+  public T getReusableResults(@Nullable byte[] signature, long captureTimeMs) {
+    LandmarkTracker tracker = landmarkTracker;
+    T keyframeResults = lastKeyframeResults;
+    if (tracker != null && keyframeResults != null && tracker.shouldSkipFrame(captureTimeMs)) {
+      return keyframeResults;
+    }
+    if (sceneChangeDetector == null || signature == null) {
+      return null;
+    }
+    return sceneChangeDetector.getReusableResults(signature);
+  }
+
+  /**
+   * Feeds the results detected in a live frame, before they are drawn.
+   *
+   * @param signature the signature of the frame, or null if static scenes are not skipped
+   * @param captureTimeMs when the frame was captured, or 0 if unknown
+   * @param detectorLatencyMs how long the detector took for the frame
+   */
+  public void onResults(
+      T results, @Nullable byte[] signature, long captureTimeMs, long detectorLatencyMs) {
+    if (sceneChangeDetector != null && signature != null) {
+      sceneChangeDetector.setReference(signature, results);
+    }
+    LandmarkTracker tracker = landmarkTracker;
+    if (tracker != null) {
+      tracker.onKeyframeDetected(captureTimeMs, detectorLatencyMs);
+      lastKeyframeResults = results;
+    }
+  }
+
+  /** Forgets the results kept so far. */
+  public void reset() {
+    if (sceneChangeDetector != null) {
+      sceneChangeDetector.reset();
+    }
+    lastKeyframeResults = null;
+  }
+}
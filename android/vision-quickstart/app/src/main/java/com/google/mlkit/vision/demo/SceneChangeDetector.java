@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.os.Build.VERSION_CODES;
+import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
+import androidx.camera.core.ImageProxy;
+import java.nio.ByteBuffer;
+
+/**
+ * Tells whether a live frame shows the same scene as the last frame that was sent to the detector,
+ * so that its results can be shown again instead of running the detector.
+ *
+ * <p>Frames are compared through a signature: the luma of a coarse grid of {@link #GRID_SIZE} x
+ * {@link #GRID_SIZE} points, each averaged over 2x2 pixels to smooth out sensor noise. A frame is
+ * considered unchanged when the mean absolute difference of its signature from the reference frame
+ * is under {@link #MAX_MEAN_DIFFERENCE} luma levels. The reference is only replaced by frames that
+ * are actually detected, so that slow changes add up instead of slipping through frame by frame,
+ * and results are reused for at most {@link #MAX_REUSE_AGE_MS}.
+ *
+ * <p>Skipped frames are counted in {@link VisionMetrics} under {@code scene.*}.
+ *
+ * @param <T> The type of the detection results.
+ */
+public final class SceneChangeDetector<T> {
+
+  private static final int GRID_SIZE = 32;
+  private static final float MAX_MEAN_DIFFERENCE = 4f;
+  private static final long MAX_REUSE_AGE_MS = 1_000;
+
+  @GuardedBy("this")
+  @Nullable
+  private byte[] referenceSignature;
+
+  @GuardedBy("this")
+  @Nullable
+  private T referenceResults;
+
+  @GuardedBy("this")
+  private long referenceTimeMs;
+
+  /** Computes the signature of an NV21 frame. */
+  public static byte[] computeSignature(ByteBuffer data, int width, int height) {
+    return computeSignature(data, width, new Rect(0, 0, width, height));
+  }
+
+  /**
+   * Computes the signature of a rectangle of an NV21 frame of the given width, e.g. to compare
+   * parts of frames. The rectangle must start on even coordinates.
+   */
+  public static byte[] computeSignature(ByteBuffer data, int width, Rect rect) {
+    byte[] signature = new byte[GRID_SIZE * GRID_SIZE];
+    for (int row = 0; row < GRID_SIZE; row++) {
+      int y = rect.top + getSamplePosition(row, rect.height());
+      for (int column = 0; column < GRID_SIZE; column++) {
+        int x = rect.left + getSamplePosition(column, rect.width());
+        int index = y * width + x;
+        int sum =
+            (data.get(index) & 0xff)
+                + (data.get(index + 1) & 0xff)
+                + (data.get(index + width) & 0xff)
+                + (data.get(index + width + 1) & 0xff);
+        signature[row * GRID_SIZE + column] = (byte) (sum / 4);
+      }
+    }
+    return signature;
+  }
+
+  /** Computes the signature of a YUV_420_888 or RGBA_8888 image from CameraX API. */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  public static byte[] computeSignature(ImageProxy image) {
+    if (image.getFormat() == PixelFormat.RGBA_8888) {
+      return computeRgbaSignature(image);
+    }
+    ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+    ByteBuffer yBuffer = yPlane.getBuffer();
+    int rowStride = yPlane.getRowStride();
+    int pixelStride = yPlane.getPixelStride();
+    byte[] signature = new byte[GRID_SIZE * GRID_SIZE];
+    for (int row = 0; row < GRID_SIZE; row++) {
+      int y = getSamplePosition(row, image.getHeight());
+      for (int column = 0; column < GRID_SIZE; column++) {
+        int x = getSamplePosition(column, image.getWidth());
+        int index = y * rowStride + x * pixelStride;
+        int sum =
+            (yBuffer.get(index) & 0xff)
+                + (yBuffer.get(index + pixelStride) & 0xff)
+                + (yBuffer.get(index + rowStride) & 0xff)
+                + (yBuffer.get(index + rowStride + pixelStride) & 0xff);
+        signature[row * GRID_SIZE + column] = (byte) (sum / 4);
+      }
+    }
+    return signature;
+  }
+
+  /**
+   * Computes the signature of an RGBA_8888 image from its luma, approximated with integer BT.601
+   * weights so that it is close to the signature of the same frame in YUV.
+   */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  private static byte[] computeRgbaSignature(ImageProxy image) {
+    ImageProxy.PlaneProxy plane = image.getPlanes()[0];
+    ByteBuffer buffer = plane.getBuffer();
+    int rowStride = plane.getRowStride();
+    int pixelStride = plane.getPixelStride();
+    byte[] signature = new byte[GRID_SIZE * GRID_SIZE];
+    for (int row = 0; row < GRID_SIZE; row++) {
+      int y = getSamplePosition(row, image.getHeight());
+      for (int column = 0; column < GRID_SIZE; column++) {
+        int x = getSamplePosition(column, image.getWidth());
+        int index = y * rowStride + x * pixelStride;
+        int sum =
+            getRgbaLuma(buffer, index)
+                + getRgbaLuma(buffer, index + pixelStride)
+                + getRgbaLuma(buffer, index + rowStride)
+                + getRgbaLuma(buffer, index + rowStride + pixelStride);
+        signature[row * GRID_SIZE + column] = (byte) (sum / 4);
+      }
+    }
+    return signature;
+  }
+
+  private static int getRgbaLuma(ByteBuffer buffer, int index) {
+    int r = buffer.get(index) & 0xff;
+    int g = buffer.get(index + 1) & 0xff;
+    int b = buffer.get(index + 2) & 0xff;
+    return (77 * r + 150 * g + 29 * b) >> 8;
+  }
+
+  /** Returns whether two signatures computed the same way show the same content. */
+  public static boolean isUnchanged(byte[] signature, byte[] referenceSignature) {
+    return getMeanDifference(signature, referenceSignature) < MAX_MEAN_DIFFERENCE;
+  }
+
+  /**
+   * Returns the results of the reference frame if the frame with the given signature shows the
+   * same scene and they are recent enough, or null if the frame needs to be detected.
+   */
+  @Nullable
+  public T getReusableResults(byte[] signature) {
+    return getReusableResults(signature, SystemClock.elapsedRealtime());
+  }
+
+  @VisibleForTesting
+  @Nullable
+  synchronized T getReusableResults(byte[] signature, long nowMs) {
+    if (referenceSignature == null || referenceResults == null) {
+      return null;
+    }
+    float difference = getMeanDifference(signature, referenceSignature);
+    VisionMetrics.setGauge("scene.difference", difference);
+    if (difference >= MAX_MEAN_DIFFERENCE) {
+      return null;
+    }
+    if (nowMs - referenceTimeMs > MAX_REUSE_AGE_MS) {
+      VisionMetrics.incrementCounter("scene.reuse_expired", 1);
+      return null;
+    }
+    VisionMetrics.incrementCounter("scene.frames_skipped", 1);
+    return referenceResults;
+  }
+
+  /** Makes a detected frame the reference that the next frames are compared to. */
+  public void setReference(byte[] signature, T results) {
+    setReference(signature, results, SystemClock.elapsedRealtime());
+  }
+
+  @VisibleForTesting
+  synchronized void setReference(byte[] signature, T results, long nowMs) {
+    referenceSignature = signature;
+    referenceResults = results;
+    referenceTimeMs = nowMs;
+    VisionMetrics.incrementCounter("scene.frames_detected", 1);
+  }
+
+  /** Drops the reference, so that the next frame is detected. */
+  public synchronized void reset() {
+    referenceSignature = null;
+    referenceResults = null;
+  }
+
+  /** Returns the top left pixel of the 2x2 block sampled for a grid cell, on an even coordinate. */
+  private static int getSamplePosition(int cell, int size) {
+    return ((2 * cell + 1) * size / (2 * GRID_SIZE)) & ~1;
+  }
+
+  private static float getMeanDifference(byte[] signature, byte[] otherSignature) {
+    long sum = 0;
+    for (int i = 0; i < signature.length; i++) {
+      sum += Math.abs((signature[i] & 0xff) - (otherSignature[i] & 0xff));
+    }
+    return (float) sum / signature.length;
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.content.Context;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lowers the load of live detection before the device starts throttling, and restores it once the
+ * device has cooled down.
+ *
+ * <p>The governor follows the readings of {@link TemperatureMonitor}. As the sensors measure
+ * different parts of the device, their absolute values are not compared against a fixed limit.
+ * Instead the governor tracks how much each sensor has warmed up since it was first read, and how
+ * fast. The thermal budget is exceeded when the largest rise is over {@link #BUDGET_RISE_CELSIUS},
+ * or is projected to be within {@link #PROJECTION_HORIZON_MS} at the current trend. On Android Q+
+ * the thermal status reported by the platform is taken into account as well.
+ *
+ * <p>Each {@link Level} lowers the detection rate, the input resolution or both. The level goes up
+ * one step at a time while the budget is exceeded and goes down one step at a time after the device
+ * has been well under budget for a while, so that it does not oscillate.
+ *
+ * <p>There is a single governor per process so that the temperature baselines survive processors
+ * being recreated. Its state is published to {@link VisionMetrics} under {@code thermal.*}.
+ */
+public final class ThermalGovernor {
+
+  private static final String TAG = "ThermalGovernor";
+
+  /** How much live detection is cut down. */
+  public enum Level {
+    NOMINAL(/* minFrameIntervalMs= */ 0, /* minDownscaleFactor= */ 1),
+    LIGHT(/* minFrameIntervalMs= */ 66, /* minDownscaleFactor= */ 1),
+    MODERATE(/* minFrameIntervalMs= */ 100, /* minDownscaleFactor= */ 2),
+    SEVERE(/* minFrameIntervalMs= */ 200, /* minDownscaleFactor= */ 2);
+
+    private final long minFrameIntervalMs;
+    private final int minDownscaleFactor;
+
+    Level(long minFrameIntervalMs, int minDownscaleFactor) {
+      this.minFrameIntervalMs = minFrameIntervalMs;
+      this.minDownscaleFactor = minDownscaleFactor;
+    }
+
+    /** Returns the minimum time between two live frames sent to the detector, 0 for no limit. */
+    public long getMinFrameIntervalMs() {
+      return minFrameIntervalMs;
+    }
+
+    /** Returns the minimum factor live frames are subsampled by before detection. */
+    public int getMinDownscaleFactor() {
+      return minDownscaleFactor;
+    }
+  }
+
+  private static final float BUDGET_RISE_CELSIUS = 6f;
+  // How far under budget the device must be before the level is lowered again.
+  private static final float RECOVERY_MARGIN_CELSIUS = 2f;
+  private static final long PROJECTION_HORIZON_MS = 60_000;
+  private static final long ESCALATE_AFTER_MS = 5_000;
+  private static final long RELAX_AFTER_MS = 30_000;
+  private static final float TREND_SMOOTHING = 0.2f;
+
+  @GuardedBy("ThermalGovernor.class")
+  @Nullable
+  private static ThermalGovernor instance;
+
+  @GuardedBy("ThermalGovernor.class")
+  private static int users;
+
+  private final Context context;
+  @Nullable private final PowerManager powerManager;
+
+  @GuardedBy("this")
+  @Nullable
+  private TemperatureMonitor temperatureMonitor;
+
+  // Temperature of each sensor when it was first read.
+  @GuardedBy("this")
+  private final Map<String, Float> baselinesCelsius = new HashMap<>();
+
+  @GuardedBy("this")
+  private float riseCelsius = Float.NaN;
+
+  @GuardedBy("this")
+  private long lastRiseSampleMs;
+
+  @GuardedBy("this")
+  private float trendCelsiusPerMinute;
+
+  @GuardedBy("this")
+  private long overBudgetSinceMs;
+
+  @GuardedBy("this")
+  private long underBudgetSinceMs;
+
+  // Read on camera threads for every frame.
+  private volatile Level level = Level.NOMINAL;
+
+  private ThermalGovernor(Context context) {
+    this.context = context;
+    powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+  }
+
+  /**
+   * Returns the governor of this process and starts monitoring temperatures if needed. Each call
+   * must be balanced by a call to {@link #release()}.
+   */
+  public static synchronized ThermalGovernor acquire(Context context) {
+    if (instance == null) {
+      instance = new ThermalGovernor(context.getApplicationContext());
+    }
+    if (users++ == 0) {
+      instance.startMonitoring();
+    }
+    return instance;
+  }
+
+  /** Stops monitoring temperatures once no processor uses the governor anymore. */
+  public void release() {
+    synchronized (ThermalGovernor.class) {
+      if (--users == 0) {
+        stopMonitoring();
+      }
+    }
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  /** Samples the temperatures and adjusts the level. Meant to be called about once per second. */
+  public synchronized void update() {
+    long nowMs = SystemClock.elapsedRealtime();
+    updateRise(nowMs);
+    int thermalStatus = getPlatformThermalStatus();
+
+    boolean hasRise = !Float.isNaN(riseCelsius);
+    float projectedRiseCelsius =
+        riseCelsius + trendCelsiusPerMinute * PROJECTION_HORIZON_MS / 60_000f;
+    boolean overBudget =
+        (hasRise && Math.max(riseCelsius, projectedRiseCelsius) > BUDGET_RISE_CELSIUS)
+            || thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE;
+    boolean wellUnderBudget =
+        (!hasRise
+                || (riseCelsius < BUDGET_RISE_CELSIUS - RECOVERY_MARGIN_CELSIUS
+                    && trendCelsiusPerMinute <= 0))
+            && thermalStatus < PowerManager.THERMAL_STATUS_LIGHT;
+
+    if (overBudget) {
+      underBudgetSinceMs = 0;
+      if (overBudgetSinceMs == 0) {
+        overBudgetSinceMs = nowMs;
+      } else if (nowMs - overBudgetSinceMs >= ESCALATE_AFTER_MS && level != Level.SEVERE) {
+        setLevel(Level.values()[level.ordinal() + 1]);
+        overBudgetSinceMs = nowMs;
+      }
+    } else if (wellUnderBudget) {
+      overBudgetSinceMs = 0;
+      if (underBudgetSinceMs == 0) {
+        underBudgetSinceMs = nowMs;
+      } else if (nowMs - underBudgetSinceMs >= RELAX_AFTER_MS && level != Level.NOMINAL) {
+        setLevel(Level.values()[level.ordinal() - 1]);
+        underBudgetSinceMs = nowMs;
+      }
+    } else {
+      overBudgetSinceMs = 0;
+      underBudgetSinceMs = 0;
+    }
+
+    VisionMetrics.setGauge("thermal.level", level);
+    VisionMetrics.setGauge("thermal.rise_celsius", riseCelsius);
+    VisionMetrics.setGauge("thermal.trend_celsius_per_minute", trendCelsiusPerMinute);
+    VisionMetrics.setGauge("thermal.over_budget", overBudget);
+    if (thermalStatus >= 0) {
+      VisionMetrics.setGauge("thermal.platform_status", thermalStatus);
+    }
+  }
+
+  /** Logs the latest readings of all temperature sensors. */
+  public synchronized void logTemperature() {
+    if (temperatureMonitor != null) {
+      temperatureMonitor.logTemperature();
+    }
+  }
+
+  @GuardedBy("this")
+  private void updateRise(long nowMs) {
+    if (temperatureMonitor == null) {
+      return;
+    }
+    float maxRiseCelsius = Float.NaN;
+    for (Map.Entry<String, Float> entry : temperatureMonitor.sensorReadingsCelsius.entrySet()) {
+      float celsius = entry.getValue();
+      // Skips likely invalid sensor readings
+      if (celsius < 0) {
+        continue;
+      }
+      Float baselineCelsius = baselinesCelsius.get(entry.getKey());
+      if (baselineCelsius == null) {
+        baselinesCelsius.put(entry.getKey(), celsius);
+        baselineCelsius = celsius;
+      }
+      float sensorRiseCelsius = celsius - baselineCelsius;
+      if (Float.isNaN(maxRiseCelsius) || sensorRiseCelsius > maxRiseCelsius) {
+        maxRiseCelsius = sensorRiseCelsius;
+      }
+    }
+    if (Float.isNaN(maxRiseCelsius)) {
+      return;
+    }
+
+    if (!Float.isNaN(riseCelsius) && nowMs > lastRiseSampleMs) {
+      float slope = (maxRiseCelsius - riseCelsius) * 60_000f / (nowMs - lastRiseSampleMs);
+      trendCelsiusPerMinute += TREND_SMOOTHING * (slope - trendCelsiusPerMinute);
+    }
+    riseCelsius = maxRiseCelsius;
+    lastRiseSampleMs = nowMs;
+  }
+
+  /** Returns the thermal status reported by the platform, or -1 if it is not available. */
+  private int getPlatformThermalStatus() {
+    if (VERSION.SDK_INT < VERSION_CODES.Q || powerManager == null) {
+      return -1;
+    }
+    return powerManager.getCurrentThermalStatus();
+  }
+
+  @GuardedBy("this")
+  private void setLevel(Level newLevel) {
+    Log.i(
+        TAG,
+        "Thermal level "
+            + level
+            + " -> "
+            + newLevel
+            + ", rise="
+            + riseCelsius
+            + "C, trend="
+            + trendCelsiusPerMinute
+            + "C/min");
+    level = newLevel;
+    VisionMetrics.incrementCounter("thermal.level_changes", 1);
+  }
+
+  private synchronized void startMonitoring() {
+    temperatureMonitor = new TemperatureMonitor(context);
+  }
+
+  private synchronized void stopMonitoring() {
+    if (temperatureMonitor != null) {
+      temperatureMonitor.stop();
+      temperatureMonitor = null;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Draws a bitmap that is not upright, e.g. kept in the orientation it is stored in, rotated to be
+ * upright. The rotation is applied when drawing rather than by copying the bitmap, and the
+ * intrinsic size is that of the upright image, so that views lay it out as if it were upright.
+ */
+public class UprightBitmapDrawable extends Drawable {
+
+  private final Bitmap bitmap;
+  private final Matrix uprightMatrix;
+  private final int uprightWidth;
+  private final int uprightHeight;
+  private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+  private final Matrix matrix = new Matrix();
+
+  /** @param rotationDegrees the clockwise rotation that makes the bitmap upright */
+  public UprightBitmapDrawable(Bitmap bitmap, int rotationDegrees) {
+    this.bitmap = bitmap;
+    uprightMatrix =
+        BitmapUtils.getUprightTransformation(
+            bitmap.getWidth(), bitmap.getHeight(), rotationDegrees, false, false);
+    boolean isTransposed = rotationDegrees % 180 != 0;
+    uprightWidth = isTransposed ? bitmap.getHeight() : bitmap.getWidth();
+    uprightHeight = isTransposed ? bitmap.getWidth() : bitmap.getHeight();
+  }
+
+  @Override
+  public void draw(@NonNull Canvas canvas) {
+    Rect bounds = getBounds();
+    if (bounds.isEmpty()) {
+      return;
+    }
+    matrix.set(uprightMatrix);
+    matrix.postScale(
+        (float) bounds.width() / uprightWidth, (float) bounds.height() / uprightHeight);
+    matrix.postTranslate(bounds.left, bounds.top);
+    canvas.drawBitmap(bitmap, matrix, paint);
+  }
+
+  @Override
+  public int getIntrinsicWidth() {
+    return uprightWidth;
+  }
+
+  @Override
+  public int getIntrinsicHeight() {
+    return uprightHeight;
+  }
+
+  @Override
+  public void setAlpha(int alpha) {
+    paint.setAlpha(alpha);
+    invalidateSelf();
+  }
+
+  @Override
+  public void setColorFilter(@Nullable ColorFilter colorFilter) {
+    paint.setColorFilter(colorFilter);
+    invalidateSelf();
+  }
+
+  @Override
+  public int getOpacity() {
+    return bitmap.hasAlpha() ? PixelFormat.TRANSLUCENT : PixelFormat.OPAQUE;
+  }
+}
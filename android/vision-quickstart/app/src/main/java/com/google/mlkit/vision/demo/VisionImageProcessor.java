@@ -27,6 +27,16 @@ public interface VisionImageProcessor {
   /** Processes a bitmap image. */
   void processBitmap(Bitmap bitmap, GraphicOverlay graphicOverlay);
 
+  /**
+   * Processes a bitmap image that is not upright, e.g. still kept in the orientation it is stored
+   * in, given the clockwise rotation that makes it upright. The results are for the upright image.
+   * Processors that cannot pass the rotation to their detectors rotate a copy of the bitmap first,
+   * as the caller keeps using the given one, e.g. to show it.
+   */
+  default void processBitmap(Bitmap bitmap, int rotationDegrees, GraphicOverlay graphicOverlay) {
+    processBitmap(BitmapUtils.copyRotatedBitmap(bitmap, rotationDegrees), graphicOverlay);
+  }
+
   /** Processes ByteBuffer image data, e.g. used for Camera1 live preview case. */
   void processByteBuffer(
       ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay)
@@ -35,6 +45,19 @@ public interface VisionImageProcessor {
   /** Processes ImageProxy image data, e.g. used for CameraX live preview case. */
   void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) throws MlKitException;
 
+  /**
+   * Returns the number of live frames processed during the last second, including those answered
+   * with previous results, e.g. used to match the camera frame rate to what the pipeline gets
+   * through.
+   */
+  int getProcessedFramesPerSecond();
+
+  /**
+   * Sends a synthetic frame of the given size through the detector, so that it is initialized
+   * before the first camera frame arrives.
+   */
+  void warmUp(int frameWidth, int frameHeight);
+
   /** Stops the underlying machine learning model and release resources. */
   void stop();
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.util.Log;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide registry of named metrics describing what the demo pipeline is doing, e.g. how many
+ * frames were dropped or which state a governor is in. Components publish into it from any thread
+ * and {@link #snapshot()} or {@link #log()} read everything at once.
+ *
+ * <p>Counters only ever grow, gauges hold the last value that was set. Names are dot separated
+ * with the component first, e.g. {@code thermal.level}.
+ */
+public final class VisionMetrics {
+
+  private static final String TAG = "VisionMetrics";
+
+  private static final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Object> gauges = new ConcurrentHashMap<>();
+
+  private VisionMetrics() {}
+
+  /** Adds the given amount to a counter, creating it if needed, and returns the new value. */
+  public static long incrementCounter(String name, long delta) {
+    AtomicLong counter = counters.get(name);
+    if (counter == null) {
+      AtomicLong newCounter = new AtomicLong();
+      counter = counters.putIfAbsent(name, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    return counter.addAndGet(delta);
+  }
+
+  public static long getCounter(String name) {
+    AtomicLong counter = counters.get(name);
+    return counter == null ? 0 : counter.get();
+  }
+
+  /** Sets a gauge to the given value, e.g. a number, a boolean or an enum. */
+  public static void setGauge(String name, Object value) {
+    gauges.put(name, value);
+  }
+
+  public static Object getGauge(String name) {
+    return gauges.get(name);
+  }
+
+  /** Returns all counters and gauges, sorted by name. */
+  public static Map<String, Object> snapshot() {
+    Map<String, Object> snapshot = new TreeMap<>();
+    for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+    snapshot.putAll(gauges);
+    return snapshot;
+  }
+
+  /** Logs all counters and gauges, one per line. */
+  public static void log() {
+    for (Map.Entry<String, Object> entry : snapshot().entrySet()) {
+      Log.d(TAG, entry.getKey() + ": " + entry.getValue());
+    }
+  }
+
+  /** Drops all metrics, e.g. before starting a benchmark. */
+  public static void reset() {
+    counters.clear();
+    gauges.clear();
+  }
+}
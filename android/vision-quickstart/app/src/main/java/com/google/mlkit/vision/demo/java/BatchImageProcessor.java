@@ -0,0 +1,402 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.BitmapUtils;
+import com.google.mlkit.vision.demo.BitmapUtils.OrientedBitmap;
+import com.google.mlkit.vision.demo.LatencyPercentiles;
+import com.google.mlkit.vision.demo.VisionMetrics;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs a detector over a batch of images, e.g. to validate a model on a folder of photos, and
+ * writes one line of results per image to a tab-separated output file.
+ *
+ * <p>Images are decoded on {@link #DECODE_THREADS} threads, subsampled to the target size, and at
+ * most {@code concurrency} of them are in the detector at once. No more than {@code concurrency +
+ * DECODE_THREADS} decoded images are held at any time, so memory stays bounded whatever the size
+ * of the batch. Each line holds the URI, the upright image size, the decoding, queueing and
+ * detection latencies in milliseconds, the number of results and their union bounds, or the error
+ * if the image could not be processed. Results that cannot be counted or have no location, e.g.
+ * segmentation masks or image labels, are written as {@code -}.
+ *
+ * <p>Once done, the throughput and the latency percentiles of each stage are logged, written at the
+ * end of the output file, passed to the callback and published to {@link VisionMetrics} under
+ * {@code batch.*}.
+ */
+final class BatchImageProcessor {
+
+  /** Receives the summary of a batch once all its images are processed, on the main thread. */
+  interface Callback {
+    void onBatchFinished(String summary, File outputFile);
+  }
+
+  private static final String TAG = "BatchImageProcessor";
+  private static final int DECODE_THREADS = 2;
+  private static final int PROGRESS_LOG_INTERVAL = 100;
+
+  private final ContentResolver contentResolver;
+  private final VisionProcessorBase<?> processor;
+  private final int targetWidth;
+  private final int targetHeight;
+  private final File outputFile;
+  private final Callback callback;
+  // Bound the decoded images held at once and the images in the detector at once.
+  private final Semaphore imagePermits;
+  private final Semaphore detectorPermits;
+  // Lists the images and hands them to the decode threads one by one.
+  private final ExecutorService feedExecutor = Executors.newSingleThreadExecutor();
+  private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(DECODE_THREADS);
+  // Writes the results and updates the statistics, one image at a time.
+  private final ExecutorService resultExecutor = Executors.newSingleThreadExecutor();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private volatile boolean isCancelled;
+
+  // Only accessed on the result thread.
+  @Nullable private Writer writer;
+  private final LatencyPercentiles decoding = new LatencyPercentiles(/* windowSize= */ 0);
+  private final LatencyPercentiles queueing = new LatencyPercentiles(/* windowSize= */ 0);
+  private final LatencyPercentiles detection = new LatencyPercentiles(/* windowSize= */ 0);
+  private long startMs;
+  // The number of images handed to the decode threads, -1 until all of them were.
+  private int submittedImages = -1;
+  private int completedImages;
+  private int failedImages;
+
+  /**
+   * @param targetWidth the width to fit the upright images in, or 0 to keep their original size
+   * @param targetHeight the height to fit the upright images in, or 0 to keep their original size
+   * @param concurrency how many images may be in the detector at once
+   */
+  BatchImageProcessor(
+      Context context,
+      VisionProcessorBase<?> processor,
+      int targetWidth,
+      int targetHeight,
+      int concurrency,
+      Callback callback) {
+    this.contentResolver = context.getContentResolver();
+    this.processor = processor;
+    this.targetWidth = targetWidth;
+    this.targetHeight = targetHeight;
+    this.callback = callback;
+    imagePermits = new Semaphore(concurrency + DECODE_THREADS);
+    detectorPermits = new Semaphore(concurrency);
+    File directory = context.getExternalFilesDir(/* type= */ null);
+    if (directory == null) {
+      directory = context.getFilesDir();
+    }
+    String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+    outputFile = new File(directory, "batch_" + timestamp + ".tsv");
+  }
+
+  /** Processes the given images. */
+  void start(List<Uri> imageUris) {
+    feedExecutor.execute(() -> feed(imageUris));
+  }
+
+  /**
+   * Processes the images in a directory picked with {@code Intent.ACTION_OPEN_DOCUMENT_TREE},
+   * without going into its subdirectories.
+   */
+  void startForDirectory(Uri treeUri) {
+    feedExecutor.execute(() -> feed(listImages(treeUri)));
+  }
+
+  /**
+   * Stops handing images to the detector. The images already in flight are still written out, along
+   * with the summary of those processed so far.
+   */
+  void cancel() {
+    isCancelled = true;
+    if (!feedExecutor.shutdownNow().isEmpty()) {
+      // Nothing was started, so there is nothing to finish either.
+      decodeExecutor.shutdown();
+      resultExecutor.shutdown();
+    }
+  }
+
+  private void feed(List<Uri> imageUris) {
+    Log.i(TAG, "Processing " + imageUris.size() + " images into " + outputFile);
+    long feedStartMs = SystemClock.elapsedRealtime();
+    resultExecutor.execute(() -> openOutput(feedStartMs));
+    int submitted = 0;
+    try {
+      for (Uri uri : imageUris) {
+        if (isCancelled) {
+          break;
+        }
+        imagePermits.acquire();
+        decodeExecutor.execute(() -> decodeAndDetect(uri));
+        submitted++;
+      }
+    } catch (InterruptedException e) {
+      // Cancelled while waiting for an image to be done.
+    }
+    int totalImages = submitted;
+    resultExecutor.execute(
+        () -> {
+          submittedImages = totalImages;
+          finishIfDone();
+        });
+  }
+
+  private void decodeAndDetect(Uri uri) {
+    long decodeStartMs = SystemClock.elapsedRealtime();
+    OrientedBitmap image = null;
+    String error = "cannot decode";
+    try {
+      image =
+          BitmapUtils.decodeOrientedBitmapFromContentUri(
+              contentResolver, uri, targetWidth, targetHeight);
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Failed to decode " + uri, e);
+      error = e.toString();
+    }
+    if (image == null) {
+      imagePermits.release();
+      String decodeError = error;
+      resultExecutor.execute(() -> onFailed(uri, decodeError));
+      return;
+    }
+    long decodedMs = SystemClock.elapsedRealtime();
+    detectorPermits.acquireUninterruptibly();
+    detect(processor, uri, image, decodedMs - decodeStartMs, decodedMs);
+  }
+
+  private <T> void detect(
+      VisionProcessorBase<T> processor,
+      Uri uri,
+      OrientedBitmap image,
+      long decodeMs,
+      long decodedMs) {
+    long detectStartMs = SystemClock.elapsedRealtime();
+    Bitmap bitmap = image.getBitmap();
+    int rotationDegrees = image.getRotationDegrees();
+    Task<T> task;
+    try {
+      task = processor.detectInImage(InputImage.fromBitmap(bitmap, rotationDegrees), bitmap);
+    } catch (RuntimeException e) {
+      // E.g. the detector was closed in the meantime.
+      task = Tasks.forException(e);
+    }
+    boolean isTransposed = rotationDegrees % 180 != 0;
+    int width = isTransposed ? bitmap.getHeight() : bitmap.getWidth();
+    int height = isTransposed ? bitmap.getWidth() : bitmap.getHeight();
+    task.addOnCompleteListener(
+        resultExecutor,
+        completedTask -> {
+          long detectMs = SystemClock.elapsedRealtime() - detectStartMs;
+          // The bitmap is released to the garbage collector once this returns.
+          detectorPermits.release();
+          imagePermits.release();
+          if (!completedTask.isSuccessful()) {
+            onFailed(uri, String.valueOf(completedTask.getException()));
+            return;
+          }
+          T results = completedTask.getResult();
+          decoding.add(decodeMs);
+          queueing.add(detectStartMs - decodedMs);
+          detection.add(detectMs);
+          writeLine(
+              formatResultLine(
+                  uri.toString(),
+                  width,
+                  height,
+                  decodeMs,
+                  detectStartMs - decodedMs,
+                  detectMs,
+                  processor.getResultCount(results),
+                  processor.getResultBounds(results)));
+          onCompleted();
+        });
+  }
+
+  private void onFailed(Uri uri, String error) {
+    failedImages++;
+    writeLine(formatErrorLine(uri.toString(), error));
+    onCompleted();
+  }
+
+  private void onCompleted() {
+    completedImages++;
+    if (completedImages % PROGRESS_LOG_INTERVAL == 0) {
+      Log.i(TAG, "Processed " + completedImages + " images");
+    }
+    finishIfDone();
+  }
+
+  private void finishIfDone() {
+    if (submittedImages < 0 || completedImages < submittedImages) {
+      return;
+    }
+    long elapsedMs = Math.max(1, SystemClock.elapsedRealtime() - startMs);
+    float imagesPerSecond = completedImages * 1000f / elapsedMs;
+    StringBuilder summary = new StringBuilder();
+    summary.append(
+        String.format(
+            Locale.US,
+            "%d images (%d failed%s) in %.1fs, %.1f images/s",
+            completedImages,
+            failedImages,
+            isCancelled ? ", cancelled" : "",
+            elapsedMs / 1000f,
+            imagesPerSecond));
+    decoding.appendTo(summary.append(", "), "decoding");
+    queueing.appendTo(summary.append(", "), "queueing");
+    detection.appendTo(summary.append(", "), "detection");
+    writeLine("# " + summary);
+    closeOutput();
+    Log.i(TAG, summary.toString());
+    VisionMetrics.setGauge("batch.images_per_second", imagesPerSecond);
+    VisionMetrics.setGauge("batch.decoding_p50_ms", decoding.getPercentiles()[0]);
+    VisionMetrics.setGauge("batch.queueing_p50_ms", queueing.getPercentiles()[0]);
+    VisionMetrics.setGauge("batch.detection_p50_ms", detection.getPercentiles()[0]);
+
+    feedExecutor.shutdown();
+    decodeExecutor.shutdown();
+    resultExecutor.shutdown();
+    String finalSummary = summary.toString();
+    mainHandler.post(() -> callback.onBatchFinished(finalSummary, outputFile));
+  }
+
+  /**
+   * Formats the line of an image that was processed, with a negative count or null bounds if the
+   * results cannot be counted or have no location.
+   */
+  @VisibleForTesting
+  static String formatResultLine(
+      String uri,
+      int width,
+      int height,
+      long decodeMs,
+      long queueMs,
+      long detectMs,
+      int count,
+      @Nullable RectF bounds) {
+    return String.format(
+        Locale.US,
+        "%s\t%d\t%d\t%d\t%d\t%d\t%s\t%s",
+        uri,
+        width,
+        height,
+        decodeMs,
+        queueMs,
+        detectMs,
+        count < 0 ? "-" : String.valueOf(count),
+        bounds == null
+            ? "-"
+            : String.format(
+                Locale.US,
+                "%.0f,%.0f,%.0f,%.0f",
+                bounds.left,
+                bounds.top,
+                bounds.right,
+                bounds.bottom));
+  }
+
+  /** Formats the line of an image that could not be processed, keeping it on one line. */
+  @VisibleForTesting
+  static String formatErrorLine(String uri, String error) {
+    return uri + "\terror\t" + error.replace('\t', ' ').replace('\n', ' ');
+  }
+
+  private void openOutput(long startMs) {
+    this.startMs = startMs;
+    try {
+      writer = new BufferedWriter(new FileWriter(outputFile));
+      writer.write("# uri\twidth\theight\tdecode_ms\tqueue_ms\tdetect_ms\tresults\tbounds\n");
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to open " + outputFile, e);
+      writer = null;
+    }
+  }
+
+  private void writeLine(String line) {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.write(line);
+      writer.write('\n');
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write to " + outputFile, e);
+    }
+  }
+
+  private void closeOutput() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to close " + outputFile, e);
+    }
+    writer = null;
+  }
+
+  private List<Uri> listImages(Uri treeUri) {
+    List<Uri> imageUris = new ArrayList<>();
+    Uri childrenUri =
+        DocumentsContract.buildChildDocumentsUriUsingTree(
+            treeUri, DocumentsContract.getTreeDocumentId(treeUri));
+    String[] projection = {Document.COLUMN_DOCUMENT_ID, Document.COLUMN_MIME_TYPE};
+    try (Cursor cursor =
+        contentResolver.query(
+            childrenUri, projection, /* selection= */ null, /* selectionArgs= */ null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        String mimeType = cursor.getString(1);
+        if (mimeType != null && mimeType.startsWith("image/")) {
+          imageUris.add(DocumentsContract.buildDocumentUriUsingTree(treeUri, cursor.getString(0)));
+        }
+      }
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Failed to list the images in " + treeUri, e);
+    }
+    return imageUris;
+  }
+}
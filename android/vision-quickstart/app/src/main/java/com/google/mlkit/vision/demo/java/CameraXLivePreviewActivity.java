@@ -17,10 +17,15 @@
 package com.google.mlkit.vision.demo.java;
 
 import android.content.Intent;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CaptureRequest;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.appcompat.app.AppCompatActivity;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.view.View;
 import android.widget.AdapterView;
@@ -33,7 +38,12 @@ import android.widget.Toast;
 import android.widget.ToggleButton;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
 import androidx.annotation.RequiresApi;
+import androidx.camera.camera2.interop.Camera2CameraControl;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.CaptureRequestOptions;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraInfoUnavailableException;
 import androidx.camera.core.CameraSelector;
@@ -50,7 +60,9 @@ import com.google.mlkit.common.MlKitException;
 import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.barcode.ZoomSuggestionOptions.ZoomCallback;
 import com.google.mlkit.vision.demo.CameraXViewModel;
+import com.google.mlkit.vision.demo.CaptureRateController;
 import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.GraphicOverlayTextureView;
 import com.google.mlkit.vision.demo.R;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
 import com.google.mlkit.vision.demo.java.barcodescanner.BarcodeScannerProcessor;
@@ -75,6 +87,9 @@ import com.google.mlkit.vision.text.korean.KoreanTextRecognizerOptions;
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /** Live preview demo app for ML Kit APIs using CameraX. */
 @KeepName
@@ -99,10 +114,20 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
   private static final String TEXT_RECOGNITION_DEVANAGARI = "Text Recognition Devanagari";
   private static final String TEXT_RECOGNITION_JAPANESE = "Text Recognition Japanese";
   private static final String TEXT_RECOGNITION_KOREAN = "Text Recognition Korean";
+  private static final String TEXT_RECOGNITION_AUTO_SCRIPT = "Text Recognition Auto Script";
   private static final String FACE_MESH_DETECTION = "Face Mesh Detection (Beta)";
 
   private static final String STATE_SELECTED_MODEL = "selected_model";
 
+  // Only used with STRATEGY_BLOCK_PRODUCER: one frame being analyzed and one waiting, so that a
+  // slow detector does not leave a long queue of stale frames behind.
+  private static final int ANALYSIS_IMAGE_QUEUE_DEPTH = 2;
+  // The resolution CameraX analyzes frames at when no target resolution is set.
+  private static final int DEFAULT_ANALYSIS_WIDTH = 640;
+  private static final int DEFAULT_ANALYSIS_HEIGHT = 480;
+
+  private static final int MAX_CAPTURE_FPS = 30;
+
   private PreviewView previewView;
   private GraphicOverlay graphicOverlay;
 
@@ -111,7 +136,15 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
   @Nullable private Preview previewUseCase;
   @Nullable private ImageAnalysis analysisUseCase;
   @Nullable private VisionImageProcessor imageProcessor;
-  private boolean needUpdateGraphicOverlayImageSourceInfo;
+  private volatile boolean needUpdateGraphicOverlayImageSourceInfo;
+  private ExecutorService analysisExecutor;
+
+  // Only created while adaptive capture rate is turned on.
+  @Nullable private CaptureRateController captureRateController;
+  // The frame rate range requested from the camera, or null while it runs at its default range.
+  @Nullable private Range<Integer> captureFpsRange;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final Runnable captureRateEvaluation = this::evaluateCaptureRate;
 
   private String selectedModel = OBJECT_DETECTION;
   private int lensFacing = CameraSelector.LENS_FACING_BACK;
@@ -126,6 +159,7 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
       selectedModel = savedInstanceState.getString(STATE_SELECTED_MODEL, OBJECT_DETECTION);
     }
     cameraSelector = new CameraSelector.Builder().requireLensFacing(lensFacing).build();
+    analysisExecutor = Executors.newSingleThreadExecutor();
 
     setContentView(R.layout.activity_vision_camerax_live_preview);
     previewView = findViewById(R.id.preview_view);
@@ -136,6 +170,11 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
     if (graphicOverlay == null) {
       Log.d(TAG, "graphicOverlay is null");
     }
+    if (PreferenceUtils.shouldRenderOverlayOnRenderThread(this)) {
+      GraphicOverlayTextureView renderView = findViewById(R.id.graphic_overlay_render_view);
+      renderView.setVisibility(View.VISIBLE);
+      graphicOverlay.setRenderView(renderView);
+    }
 
     Spinner spinner = findViewById(R.id.spinner);
     List<String> options = new ArrayList<>();
@@ -154,6 +193,7 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
     options.add(TEXT_RECOGNITION_DEVANAGARI);
     options.add(TEXT_RECOGNITION_JAPANESE);
     options.add(TEXT_RECOGNITION_KOREAN);
+    options.add(TEXT_RECOGNITION_AUTO_SCRIPT);
     options.add(FACE_MESH_DETECTION);
 
     // Creating adapter for spinner
@@ -246,6 +286,7 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
   @Override
   protected void onPause() {
     super.onPause();
+    mainHandler.removeCallbacks(captureRateEvaluation);
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
@@ -254,9 +295,13 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
   @Override
   public void onDestroy() {
     super.onDestroy();
+    if (analysisUseCase != null) {
+      analysisUseCase.clearAnalyzer();
+    }
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
+    analysisExecutor.shutdown();
   }
 
   private void bindAllCameraUseCases() {
@@ -317,7 +362,9 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
                   .build();
           CustomObjectDetectorOptions customObjectDetectorOptions =
               PreferenceUtils.getCustomObjectDetectorOptionsForLivePreview(this, localModel);
-          imageProcessor = new ObjectDetectorProcessor(this, customObjectDetectorOptions);
+          imageProcessor =
+              new ObjectDetectorProcessor(
+                  this, customObjectDetectorOptions, localModel, /* isLiveMode= */ true);
           break;
         case CUSTOM_AUTOML_OBJECT_DETECTION:
           Log.i(TAG, "Using Custom AutoML Object Detector Processor");
@@ -326,7 +373,9 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
           CustomObjectDetectorOptions customAutoMLODTOptions =
               PreferenceUtils.getCustomObjectDetectorOptionsForLivePreview(
                   this, customAutoMLODTLocalModel);
-          imageProcessor = new ObjectDetectorProcessor(this, customAutoMLODTOptions);
+          imageProcessor =
+              new ObjectDetectorProcessor(
+                  this, customAutoMLODTOptions, customAutoMLODTLocalModel, /* isLiveMode= */ true);
           break;
         case TEXT_RECOGNITION_CHINESE:
           Log.i(TAG, "Using on-device Text recognition Processor for Latin and Chinese.");
@@ -351,6 +400,14 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
           imageProcessor =
               new TextRecognitionProcessor(this, new KoreanTextRecognizerOptions.Builder().build());
           break;
+        case TEXT_RECOGNITION_AUTO_SCRIPT:
+          Log.i(TAG, "Using on-device Text recognition Processor routing scripts.");
+          imageProcessor =
+              new TextRecognitionProcessor(
+                  this,
+                  new TextRecognizerOptions.Builder().build(),
+                  /* shouldRouteScripts= */ true);
+          break;
         case TEXT_RECOGNITION_LATIN:
           Log.i(TAG, "Using on-device Text recognition Processor for Latin.");
           imageProcessor =
@@ -358,7 +415,7 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
           break;
         case FACE_DETECTION:
           Log.i(TAG, "Using Face Detector Processor");
-          imageProcessor = new FaceDetectorProcessor(this);
+          imageProcessor = new FaceDetectorProcessor(this, /* isLiveMode= */ true);
           break;
         case BARCODE_SCANNING:
           Log.i(TAG, "Using Barcode Detector Processor");
@@ -373,7 +430,7 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
                   return true;
                 };
           }
-          imageProcessor = new BarcodeScannerProcessor(this, zoomCallback);
+          imageProcessor = new BarcodeScannerProcessor(this, zoomCallback, /* isLiveMode= */ true);
           break;
         case IMAGE_LABELING:
           Log.i(TAG, "Using Image Label Detector Processor");
@@ -436,18 +493,39 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
       return;
     }
 
-    ImageAnalysis.Builder builder = new ImageAnalysis.Builder();
+    ImageAnalysis.Builder builder =
+        new ImageAnalysis.Builder()
+            .setBackpressureStrategy(PreferenceUtils.getCameraXBackpressureStrategy(this))
+            .setImageQueueDepth(ANALYSIS_IMAGE_QUEUE_DEPTH);
     Size targetResolution = PreferenceUtils.getCameraXTargetResolution(this, lensFacing);
     if (targetResolution != null) {
       builder.setTargetResolution(targetResolution);
     }
+    if (PreferenceUtils.isDetectorWarmUpEnabled(this)) {
+      if (targetResolution != null) {
+        imageProcessor.warmUp(targetResolution.getWidth(), targetResolution.getHeight());
+      } else {
+        imageProcessor.warmUp(DEFAULT_ANALYSIS_WIDTH, DEFAULT_ANALYSIS_HEIGHT);
+      }
+    }
+    if (PreferenceUtils.isCameraXRgbaOutputEnabled(this)) {
+      // Lets CameraX do the YUV to RGB conversion, so that frames can be copied into a bitmap
+      // directly instead of going through NV21 and JPEG.
+      builder.setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888);
+    }
     analysisUseCase = builder.build();
 
+    // imageProcessor.processImageProxy will use another thread to run the detection underneath, but
+    // converting the frame for the preview still happens in the analyzer, so it can be moved off
+    // the main thread as well.
+    Executor analyzerExecutor =
+        PreferenceUtils.shouldRunCameraXAnalysisInBackground(this)
+            ? analysisExecutor
+            : ContextCompat.getMainExecutor(this);
+    VisionImageProcessor processor = imageProcessor;
     needUpdateGraphicOverlayImageSourceInfo = true;
     analysisUseCase.setAnalyzer(
-        // imageProcessor.processImageProxy will use another thread to run the detection underneath,
-        // thus we can just runs the analyzer itself on main thread.
-        ContextCompat.getMainExecutor(this),
+        analyzerExecutor,
         imageProxy -> {
           if (needUpdateGraphicOverlayImageSourceInfo) {
             boolean isImageFlipped = lensFacing == CameraSelector.LENS_FACING_FRONT;
@@ -462,14 +540,84 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
             needUpdateGraphicOverlayImageSourceInfo = false;
           }
           try {
-            imageProcessor.processImageProxy(imageProxy, graphicOverlay);
+            processor.processImageProxy(imageProxy, graphicOverlay);
           } catch (MlKitException e) {
             Log.e(TAG, "Failed to process image. Error: " + e.getLocalizedMessage());
-            Toast.makeText(getApplicationContext(), e.getLocalizedMessage(), Toast.LENGTH_SHORT)
-                .show();
+            runOnUiThread(
+                () ->
+                    Toast.makeText(
+                            getApplicationContext(), e.getLocalizedMessage(), Toast.LENGTH_SHORT)
+                        .show());
           }
         });
 
-    cameraProvider.bindToLifecycle(/* lifecycleOwner= */ this, cameraSelector, analysisUseCase);
+    camera =
+        cameraProvider.bindToLifecycle(/* lifecycleOwner= */ this, cameraSelector, analysisUseCase);
+    startCaptureRateEvaluation();
+  }
+
+  private void startCaptureRateEvaluation() {
+    mainHandler.removeCallbacks(captureRateEvaluation);
+    captureFpsRange = null;
+    if (!PreferenceUtils.isAdaptiveCaptureRateEnabled(this)) {
+      captureRateController = null;
+      return;
+    }
+    captureRateController = new CaptureRateController(MAX_CAPTURE_FPS);
+    mainHandler.postDelayed(captureRateEvaluation, CaptureRateController.EVALUATION_INTERVAL_MS);
+  }
+
+  /**
+   * Periodically sets the target frame rate range of the camera to the supported range closest to
+   * the rate the image processor keeps up with. The range is changed through the capture request
+   * options, so that the use cases do not need to be bound again.
+   */
+  @OptIn(markerClass = ExperimentalCamera2Interop.class)
+  private void evaluateCaptureRate() {
+    if (camera == null || imageProcessor == null || captureRateController == null) {
+      return;
+    }
+    Range<Integer>[] availableFpsRanges =
+        Camera2CameraInfo.from(camera.getCameraInfo())
+            .getCameraCharacteristic(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+    if (availableFpsRanges == null || availableFpsRanges.length == 0) {
+      Log.w(TAG, "The camera does not report its frame rate ranges, keeping the default one.");
+      return;
+    }
+    int captureFps = captureFpsRange == null ? MAX_CAPTURE_FPS : captureFpsRange.getUpper();
+    int targetFps =
+        captureRateController.onEvaluation(
+            imageProcessor.getProcessedFramesPerSecond(), captureFps);
+    Range<Integer> fpsRange = selectFpsRange(availableFpsRanges, targetFps);
+    if (!fpsRange.equals(captureFpsRange)) {
+      Log.d(TAG, "Capture frame rate range: " + captureFpsRange + " -> " + fpsRange);
+      @SuppressWarnings("FutureReturnValueIgnored")
+      ListenableFuture<Void> ignored =
+          Camera2CameraControl.from(camera.getCameraControl())
+              .setCaptureRequestOptions(
+                  new CaptureRequestOptions.Builder()
+                      .setCaptureRequestOption(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange)
+                      .build());
+      captureFpsRange = fpsRange;
+    }
+    mainHandler.postDelayed(captureRateEvaluation, CaptureRateController.EVALUATION_INTERVAL_MS);
+  }
+
+  /**
+   * Selects the range whose upper bound is closest to the target, preferring the smallest lower
+   * bound so that frames are still properly exposed in low light, as {@code CameraSource} does.
+   */
+  private static Range<Integer> selectFpsRange(Range<Integer>[] fpsRanges, int targetFps) {
+    Range<Integer> selectedFpsRange = fpsRanges[0];
+    for (Range<Integer> range : fpsRanges) {
+      int upperBoundDiff = Math.abs(targetFps - range.getUpper());
+      int selectedUpperBoundDiff = Math.abs(targetFps - selectedFpsRange.getUpper());
+      if (upperBoundDiff < selectedUpperBoundDiff
+          || (upperBoundDiff == selectedUpperBoundDiff
+              && range.getLower() < selectedFpsRange.getLower())) {
+        selectedFpsRange = range;
+      }
+    }
+    return selectedFpsRange;
   }
 }
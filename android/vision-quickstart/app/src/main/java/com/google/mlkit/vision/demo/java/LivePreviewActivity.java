@@ -35,6 +35,7 @@ import com.google.mlkit.vision.barcode.ZoomSuggestionOptions.ZoomCallback;
 import com.google.mlkit.vision.demo.CameraSource;
 import com.google.mlkit.vision.demo.CameraSourcePreview;
 import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.GraphicOverlayTextureView;
 import com.google.mlkit.vision.demo.R;
 import com.google.mlkit.vision.demo.java.barcodescanner.BarcodeScannerProcessor;
 import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
@@ -80,6 +81,7 @@ public final class LivePreviewActivity extends AppCompatActivity
   private static final String TEXT_RECOGNITION_DEVANAGARI = "Text Recognition Devanagari";
   private static final String TEXT_RECOGNITION_JAPANESE = "Text Recognition Japanese";
   private static final String TEXT_RECOGNITION_KOREAN = "Text Recognition Korean";
+  private static final String TEXT_RECOGNITION_AUTO_SCRIPT = "Text Recognition Auto Script";
   private static final String FACE_MESH_DETECTION = "Face Mesh Detection (Beta)";
 
   private static final String TAG = "LivePreviewActivity";
@@ -104,6 +106,11 @@ public final class LivePreviewActivity extends AppCompatActivity
     if (graphicOverlay == null) {
       Log.d(TAG, "graphicOverlay is null");
     }
+    if (PreferenceUtils.shouldRenderOverlayOnRenderThread(this)) {
+      GraphicOverlayTextureView renderView = findViewById(R.id.graphic_overlay_render_view);
+      renderView.setVisibility(View.VISIBLE);
+      graphicOverlay.setRenderView(renderView);
+    }
 
     Spinner spinner = findViewById(R.id.spinner);
     List<String> options = new ArrayList<>();
@@ -122,6 +129,7 @@ public final class LivePreviewActivity extends AppCompatActivity
     options.add(TEXT_RECOGNITION_DEVANAGARI);
     options.add(TEXT_RECOGNITION_JAPANESE);
     options.add(TEXT_RECOGNITION_KOREAN);
+    options.add(TEXT_RECOGNITION_AUTO_SCRIPT);
     options.add(FACE_MESH_DETECTION);
 
     // Creating adapter for spinner
@@ -182,6 +190,8 @@ public final class LivePreviewActivity extends AppCompatActivity
     if (cameraSource == null) {
       cameraSource = new CameraSource(this, graphicOverlay);
     }
+    cameraSource.setAdaptiveCaptureRateEnabled(PreferenceUtils.isAdaptiveCaptureRateEnabled(this));
+    cameraSource.setPreviewBufferCount(PreferenceUtils.getCameraPreviewBufferCount(this));
 
     try {
       switch (model) {
@@ -201,7 +211,8 @@ public final class LivePreviewActivity extends AppCompatActivity
           CustomObjectDetectorOptions customObjectDetectorOptions =
               PreferenceUtils.getCustomObjectDetectorOptionsForLivePreview(this, localModel);
           cameraSource.setMachineLearningFrameProcessor(
-              new ObjectDetectorProcessor(this, customObjectDetectorOptions));
+              new ObjectDetectorProcessor(
+                  this, customObjectDetectorOptions, localModel, /* isLiveMode= */ true));
           break;
         case CUSTOM_AUTOML_OBJECT_DETECTION:
           Log.i(TAG, "Using Custom AutoML Object Detector Processor");
@@ -211,7 +222,11 @@ public final class LivePreviewActivity extends AppCompatActivity
               PreferenceUtils.getCustomObjectDetectorOptionsForLivePreview(
                   this, customAutoMLODTLocalModel);
           cameraSource.setMachineLearningFrameProcessor(
-              new ObjectDetectorProcessor(this, customAutoMLODTOptions));
+              new ObjectDetectorProcessor(
+                  this,
+                  customAutoMLODTOptions,
+                  customAutoMLODTLocalModel,
+                  /* isLiveMode= */ true));
           break;
         case TEXT_RECOGNITION_LATIN:
           Log.i(TAG, "Using on-device Text recognition Processor for Latin.");
@@ -242,9 +257,18 @@ public final class LivePreviewActivity extends AppCompatActivity
               new TextRecognitionProcessor(
                   this, new KoreanTextRecognizerOptions.Builder().build()));
           break;
+        case TEXT_RECOGNITION_AUTO_SCRIPT:
+          Log.i(TAG, "Using on-device Text recognition Processor routing scripts.");
+          cameraSource.setMachineLearningFrameProcessor(
+              new TextRecognitionProcessor(
+                  this,
+                  new TextRecognizerOptions.Builder().build(),
+                  /* shouldRouteScripts= */ true));
+          break;
         case FACE_DETECTION:
           Log.i(TAG, "Using Face Detector Processor");
-          cameraSource.setMachineLearningFrameProcessor(new FaceDetectorProcessor(this));
+          cameraSource.setMachineLearningFrameProcessor(
+              new FaceDetectorProcessor(this, /* isLiveMode= */ true));
           break;
         case BARCODE_SCANNING:
           Log.i(TAG, "Using Barcode Detector Processor");
@@ -253,7 +277,7 @@ public final class LivePreviewActivity extends AppCompatActivity
             zoomCallback = zoomLevel -> cameraSource.setZoom(zoomLevel);
           }
           cameraSource.setMachineLearningFrameProcessor(
-              new BarcodeScannerProcessor(this, zoomCallback));
+              new BarcodeScannerProcessor(this, zoomCallback, /* isLiveMode= */ true));
           break;
         case IMAGE_LABELING:
           Log.i(TAG, "Using Image Label Detector Processor");
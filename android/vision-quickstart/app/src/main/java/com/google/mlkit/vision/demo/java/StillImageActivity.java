@@ -16,8 +16,7 @@
 
 package com.google.mlkit.vision.demo.java;
 
-import static java.lang.Math.max;
-
+import android.content.ClipData;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.res.Configuration;
@@ -27,6 +26,7 @@ import android.os.Build;
 import android.os.Build.VERSION;
 import android.os.Bundle;
 import android.provider.MediaStore;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import android.util.Log;
 import android.util.Pair;
@@ -43,8 +43,10 @@ import android.widget.Toast;
 import com.google.android.gms.common.annotation.KeepName;
 import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.demo.BitmapUtils;
+import com.google.mlkit.vision.demo.BitmapUtils.OrientedBitmap;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.R;
+import com.google.mlkit.vision.demo.UprightBitmapDrawable;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
 import com.google.mlkit.vision.demo.java.barcodescanner.BarcodeScannerProcessor;
 import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
@@ -70,6 +72,9 @@ import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /** Activity demonstrating different image detector features with a still image from camera. */
 @KeepName
@@ -93,6 +98,7 @@ public final class StillImageActivity extends AppCompatActivity {
   private static final String TEXT_RECOGNITION_DEVANAGARI = "Text Recognition Devanagari";
   private static final String TEXT_RECOGNITION_JAPANESE = "Text Recognition Japanese";
   private static final String TEXT_RECOGNITION_KOREAN = "Text Recognition Korean";
+  private static final String TEXT_RECOGNITION_AUTO_SCRIPT = "Text Recognition Auto Script";
   private static final String FACE_MESH_DETECTION = "Face Mesh Detection (Beta)";
   private static final String SUBJECT_SEGMENTATION = "Subject Segmentation (Beta)";
 
@@ -106,6 +112,8 @@ public final class StillImageActivity extends AppCompatActivity {
 
   private static final int REQUEST_IMAGE_CAPTURE = 1001;
   private static final int REQUEST_CHOOSE_IMAGE = 1002;
+  private static final int REQUEST_CHOOSE_BATCH_DIRECTORY = 1003;
+  private static final int REQUEST_CHOOSE_BATCH_IMAGES = 1004;
 
   private ImageView preview;
   private GraphicOverlay graphicOverlay;
@@ -119,6 +127,17 @@ public final class StillImageActivity extends AppCompatActivity {
   private int imageMaxHeight;
   private VisionImageProcessor imageProcessor;
 
+  // Decodes the chosen images off the main thread, one at a time.
+  private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+  @Nullable private Future<?> pendingDecode;
+  // Incremented for each decode, so that only the result of the last one is shown.
+  private int decodeGeneration;
+
+  // The batch chosen by the user, only started once the image processor is recreated in onResume.
+  @Nullable private Uri pendingBatchDirectory;
+  @Nullable private List<Uri> pendingBatchImages;
+  @Nullable private BatchImageProcessor batchProcessor;
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -139,6 +158,12 @@ public final class StillImageActivity extends AppCompatActivity {
                     } else if (itemId == R.id.take_photo_using_camera) {
                       startCameraIntentForResult();
                       return true;
+                    } else if (itemId == R.id.process_images_in_folder) {
+                      startChooseBatchDirectoryIntentForResult();
+                      return true;
+                    } else if (itemId == R.id.process_several_images) {
+                      startChooseBatchImagesIntentForResult();
+                      return true;
                     }
                     return false;
                   });
@@ -192,11 +217,13 @@ public final class StillImageActivity extends AppCompatActivity {
     Log.d(TAG, "onResume");
     createImageProcessor();
     tryReloadAndDetectInImage();
+    startPendingBatch();
   }
 
   @Override
   public void onPause() {
     super.onPause();
+    cancelBatch();
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
@@ -205,6 +232,8 @@ public final class StillImageActivity extends AppCompatActivity {
   @Override
   public void onDestroy() {
     super.onDestroy();
+    decodeExecutor.shutdownNow();
+    cancelBatch();
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
@@ -228,6 +257,7 @@ public final class StillImageActivity extends AppCompatActivity {
     options.add(TEXT_RECOGNITION_DEVANAGARI);
     options.add(TEXT_RECOGNITION_JAPANESE);
     options.add(TEXT_RECOGNITION_KOREAN);
+    options.add(TEXT_RECOGNITION_AUTO_SCRIPT);
     options.add(FACE_MESH_DETECTION);
     if (VERSION.SDK_INT >= Build.VERSION_CODES.N) {
       options.add(SUBJECT_SEGMENTATION);
@@ -314,6 +344,20 @@ public final class StillImageActivity extends AppCompatActivity {
     startActivityForResult(Intent.createChooser(intent, "Select Picture"), REQUEST_CHOOSE_IMAGE);
   }
 
+  private void startChooseBatchDirectoryIntentForResult() {
+    Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+    startActivityForResult(intent, REQUEST_CHOOSE_BATCH_DIRECTORY);
+  }
+
+  private void startChooseBatchImagesIntentForResult() {
+    Intent intent = new Intent();
+    intent.setType("image/*");
+    intent.setAction(Intent.ACTION_GET_CONTENT);
+    intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+    startActivityForResult(
+        Intent.createChooser(intent, "Select Pictures"), REQUEST_CHOOSE_BATCH_IMAGES);
+  }
+
   @Override
   protected void onActivityResult(int requestCode, int resultCode, Intent data) {
     if (requestCode == REQUEST_IMAGE_CAPTURE && resultCode == RESULT_OK) {
@@ -322,6 +366,19 @@ public final class StillImageActivity extends AppCompatActivity {
       // In this case, imageUri is returned by the chooser, save it.
       imageUri = data.getData();
       tryReloadAndDetectInImage();
+    } else if (requestCode == REQUEST_CHOOSE_BATCH_DIRECTORY && resultCode == RESULT_OK) {
+      pendingBatchDirectory = data.getData();
+    } else if (requestCode == REQUEST_CHOOSE_BATCH_IMAGES && resultCode == RESULT_OK) {
+      List<Uri> imageUris = new ArrayList<>();
+      ClipData clipData = data.getClipData();
+      if (clipData != null) {
+        for (int i = 0; i < clipData.getItemCount(); i++) {
+          imageUris.add(clipData.getItemAt(i).getUri());
+        }
+      } else if (data.getData() != null) {
+        imageUris.add(data.getData());
+      }
+      pendingBatchImages = imageUris;
     } else {
       super.onActivityResult(requestCode, resultCode, data);
     }
@@ -329,57 +386,129 @@ public final class StillImageActivity extends AppCompatActivity {
 
   private void tryReloadAndDetectInImage() {
     Log.d(TAG, "Try reload and detect image");
-    try {
-      if (imageUri == null) {
-        return;
-      }
+    if (imageUri == null) {
+      return;
+    }
 
-      if (SIZE_SCREEN.equals(selectedSize) && imageMaxWidth == 0) {
-        // UI layout has not finished yet, will reload once it's ready.
-        return;
-      }
+    if (SIZE_SCREEN.equals(selectedSize) && imageMaxWidth == 0) {
+      // UI layout has not finished yet, will reload once it's ready.
+      return;
+    }
 
-      Bitmap imageBitmap = BitmapUtils.getBitmapFromContentUri(getContentResolver(), imageUri);
-      if (imageBitmap == null) {
-        return;
-      }
+    // Only the image chosen last is shown, so a decode still running for another one is dropped.
+    if (pendingDecode != null) {
+      pendingDecode.cancel(/* mayInterruptIfRunning= */ true);
+    }
+    int generation = ++decodeGeneration;
+    Uri uri = imageUri;
+    // Get the dimensions of the image view, or none to keep the original size.
+    Pair<Integer, Integer> targetedSize =
+        selectedSize.equals(SIZE_ORIGINAL) ? new Pair<>(0, 0) : getTargetedWidthHeight();
+    pendingDecode =
+        decodeExecutor.submit(
+            () -> {
+              OrientedBitmap resizedBitmap;
+              try {
+                // The pixels are kept in the orientation they are stored in and the rotation is
+                // passed to the detector instead, unless the image is mirrored too.
+                resizedBitmap =
+                    BitmapUtils.decodeOrientedBitmapFromContentUri(
+                        getContentResolver(), uri, targetedSize.first, targetedSize.second);
+              } catch (IOException e) {
+                Log.e(TAG, "Error retrieving saved image", e);
+                runOnUiThread(
+                    () -> {
+                      if (generation == decodeGeneration) {
+                        imageUri = null;
+                      }
+                    });
+                return;
+              }
+              if (resizedBitmap == null) {
+                return;
+              }
+              runOnUiThread(
+                  () -> {
+                    if (generation == decodeGeneration && !isDestroyed()) {
+                      detectInImage(resizedBitmap.getBitmap(), resizedBitmap.getRotationDegrees());
+                    }
+                  });
+            });
+  }
 
-      // Clear the overlay first
-      graphicOverlay.clear();
-
-      Bitmap resizedBitmap;
-      if (selectedSize.equals(SIZE_ORIGINAL)) {
-        resizedBitmap = imageBitmap;
-      } else {
-        // Get the dimensions of the image view
-        Pair<Integer, Integer> targetedSize = getTargetedWidthHeight();
-
-        // Determine how much to scale down the image
-        float scaleFactor =
-            max(
-                (float) imageBitmap.getWidth() / (float) targetedSize.first,
-                (float) imageBitmap.getHeight() / (float) targetedSize.second);
-
-        resizedBitmap =
-            Bitmap.createScaledBitmap(
-                imageBitmap,
-                (int) (imageBitmap.getWidth() / scaleFactor),
-                (int) (imageBitmap.getHeight() / scaleFactor),
-                true);
-      }
+  /**
+   * Shows an image and runs the detector on it.
+   *
+   * @param rotationDegrees the clockwise rotation that makes the image upright
+   */
+  private void detectInImage(Bitmap resizedBitmap, int rotationDegrees) {
+    // Clear the overlay first
+    graphicOverlay.clear();
 
-      preview.setImageBitmap(resizedBitmap);
+    UprightBitmapDrawable drawable = new UprightBitmapDrawable(resizedBitmap, rotationDegrees);
+    preview.setImageDrawable(drawable);
 
-      if (imageProcessor != null) {
-        graphicOverlay.setImageSourceInfo(
-            resizedBitmap.getWidth(), resizedBitmap.getHeight(), /* isFlipped= */ false);
-        imageProcessor.processBitmap(resizedBitmap, graphicOverlay);
-      } else {
-        Log.e(TAG, "Null imageProcessor, please check adb logs for imageProcessor creation error");
-      }
-    } catch (IOException e) {
-      Log.e(TAG, "Error retrieving saved image");
-      imageUri = null;
+    if (imageProcessor != null) {
+      graphicOverlay.setImageSourceInfo(
+          drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), /* isFlipped= */ false);
+      imageProcessor.processBitmap(resizedBitmap, rotationDegrees, graphicOverlay);
+    } else {
+      Log.e(TAG, "Null imageProcessor, please check adb logs for imageProcessor creation error");
+    }
+  }
+
+  /**
+   * Runs the current detector over the batch of images chosen by the user, if any, writing the
+   * results to a file. See {@link BatchImageProcessor}.
+   */
+  private void startPendingBatch() {
+    if (pendingBatchDirectory == null && pendingBatchImages == null) {
+      return;
+    }
+    Uri directory = pendingBatchDirectory;
+    List<Uri> imageUris = pendingBatchImages;
+    pendingBatchDirectory = null;
+    pendingBatchImages = null;
+    if (!(imageProcessor instanceof VisionProcessorBase)) {
+      Toast.makeText(
+              getApplicationContext(),
+              "Batch processing is not supported for " + selectedMode,
+              Toast.LENGTH_LONG)
+          .show();
+      return;
+    }
+
+    cancelBatch();
+    // Images are decoded at the selected size, like a single image.
+    Pair<Integer, Integer> targetedSize =
+        selectedSize.equals(SIZE_ORIGINAL) ? new Pair<>(0, 0) : getTargetedWidthHeight();
+    batchProcessor =
+        new BatchImageProcessor(
+            this,
+            (VisionProcessorBase<?>) imageProcessor,
+            targetedSize.first,
+            targetedSize.second,
+            PreferenceUtils.getBatchConcurrency(this),
+            (summary, outputFile) ->
+                Toast.makeText(
+                        getApplicationContext(),
+                        summary + "\nResults written to " + outputFile,
+                        Toast.LENGTH_LONG)
+                    .show());
+    if (directory != null) {
+      batchProcessor.startForDirectory(directory);
+    } else {
+      batchProcessor.start(imageUris);
+    }
+    Toast.makeText(
+            getApplicationContext(), "Processing batch with " + selectedMode, Toast.LENGTH_SHORT)
+        .show();
+  }
+
+  private void cancelBatch() {
+    if (batchProcessor != null) {
+      batchProcessor.cancel();
+      batchProcessor = null;
     }
   }
 
@@ -408,6 +537,8 @@ public final class StillImageActivity extends AppCompatActivity {
   }
 
   private void createImageProcessor() {
+    // A running batch uses the processor about to be stopped.
+    cancelBatch();
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
@@ -446,43 +577,35 @@ public final class StillImageActivity extends AppCompatActivity {
           imageProcessor = new BarcodeScannerProcessor(this, /* zoomCallback= */ null);
           break;
         case TEXT_RECOGNITION_LATIN:
-          if (imageProcessor != null) {
-            imageProcessor.stop();
-          }
           imageProcessor =
               new TextRecognitionProcessor(this, new TextRecognizerOptions.Builder().build());
           break;
         case TEXT_RECOGNITION_CHINESE:
-          if (imageProcessor != null) {
-            imageProcessor.stop();
-          }
           imageProcessor =
               new TextRecognitionProcessor(
                   this, new ChineseTextRecognizerOptions.Builder().build());
           break;
         case TEXT_RECOGNITION_DEVANAGARI:
-          if (imageProcessor != null) {
-            imageProcessor.stop();
-          }
           imageProcessor =
               new TextRecognitionProcessor(
                   this, new DevanagariTextRecognizerOptions.Builder().build());
           break;
         case TEXT_RECOGNITION_JAPANESE:
-          if (imageProcessor != null) {
-            imageProcessor.stop();
-          }
           imageProcessor =
               new TextRecognitionProcessor(
                   this, new JapaneseTextRecognizerOptions.Builder().build());
           break;
         case TEXT_RECOGNITION_KOREAN:
-          if (imageProcessor != null) {
-            imageProcessor.stop();
-          }
           imageProcessor =
               new TextRecognitionProcessor(this, new KoreanTextRecognizerOptions.Builder().build());
           break;
+        case TEXT_RECOGNITION_AUTO_SCRIPT:
+          imageProcessor =
+              new TextRecognitionProcessor(
+                  this,
+                  new TextRecognizerOptions.Builder().build(),
+                  /* shouldRouteScripts= */ true);
+          break;
         case IMAGE_LABELING:
           imageProcessor = new LabelDetectorProcessor(this, ImageLabelerOptions.DEFAULT_OPTIONS);
           break;
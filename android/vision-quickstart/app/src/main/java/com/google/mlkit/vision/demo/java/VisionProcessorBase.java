@@ -23,6 +23,9 @@ import android.app.ActivityManager;
 import android.app.ActivityManager.MemoryInfo;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Build.VERSION_CODES;
 import android.os.SystemClock;
 import android.util.Log;
@@ -42,18 +45,36 @@ import com.google.android.odml.image.MediaMlImageBuilder;
 import com.google.android.odml.image.MlImage;
 import com.google.mlkit.common.MlKitException;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.AdaptiveResolutionController;
 import com.google.mlkit.vision.demo.BitmapUtils;
 import com.google.mlkit.vision.demo.CameraImageGraphic;
+import com.google.mlkit.vision.demo.ColdStartStats;
+import com.google.mlkit.vision.demo.DetectionRegion;
+import com.google.mlkit.vision.demo.FrameLatencyStats;
 import com.google.mlkit.vision.demo.FrameMetadata;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.InferenceInfoGraphic;
+import com.google.mlkit.vision.demo.InputPathLatencyStats;
+import com.google.mlkit.vision.demo.InputPathLatencyStats.InputPath;
+import com.google.mlkit.vision.demo.LandmarkTracker;
+import com.google.mlkit.vision.demo.RegionCropper;
+import com.google.mlkit.vision.demo.ResultReuse;
 import com.google.mlkit.vision.demo.ScopedExecutor;
 import com.google.mlkit.vision.demo.TemperatureMonitor;
+import com.google.mlkit.vision.demo.ThermalGovernor;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
+import com.google.mlkit.vision.demo.VisionMetrics;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Abstract base class for vision frame processors. Subclasses need to implement {@link
@@ -70,10 +91,25 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   private final ActivityManager activityManager;
   private final Timer fpsTimer = new Timer();
   private final ScopedExecutor executor;
-  private final TemperatureMonitor temperatureMonitor;
+  // Only one of these is created, depending on whether the thermal governor is turned on.
+  @Nullable private final ThermalGovernor thermalGovernor;
+  @Nullable private final TemperatureMonitor temperatureMonitor;
+  // Only created if adaptive detection resolution is turned on.
+  @Nullable private final AdaptiveResolutionController resolutionController;
+  // Cuts the detection region out of live frames, if one is set.
+  private final RegionCropper regionCropper;
+  // Answers static scenes and the frames between keyframes with earlier results.
+  private final ResultReuse<T> resultReuse;
+  private final ColdStartStats coldStartStats;
 
   // Whether this processor is already shut down
-  private boolean isShutdown;
+  private volatile boolean isShutdown;
+
+  // When the last live frame was let through to the detector, used to throttle the frame rate.
+  private volatile long lastAcceptedFrameMs;
+
+  // Thermal level the subclass was last notified of, only accessed on the main thread.
+  private ThermalGovernor.Level thermalLevel = ThermalGovernor.Level.NOMINAL;
 
   // Used to calculate latency, running in the same thread, no sync needed.
   private int numRuns = 0;
@@ -83,10 +119,16 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   private long totalDetectorMs = 0;
   private long maxDetectorMs = 0;
   private long minDetectorMs = Long.MAX_VALUE;
+  // Latency of the last detected frame, shown again along with reused results.
+  private long lastFrameLatencyMs;
+  private long lastDetectorLatencyMs;
 
   // Frame count that have been processed so far in an one second interval to calculate FPS.
   private int frameProcessedInOneSecondInterval = 0;
-  private int framesPerSecond = 0;
+  // Frames answered with previous results in the same interval, which count as processed too.
+  private int frameReusedInOneSecondInterval = 0;
+  // Written by the FPS timer and read by the camera frame rate adaptation on the main thread.
+  private volatile int framesPerSecond = 0;
 
   // To keep the latest images and its metadata.
   @GuardedBy("this")
@@ -101,52 +143,128 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   @GuardedBy("this")
   private FrameMetadata processingMetaData;
 
+  // Only created if Camera1 frames are processed in the pipelined mode.
+  @GuardedBy("this")
+  @Nullable
+  private FramePipeline framePipeline;
+
   protected VisionProcessorBase(Context context) {
+    coldStartStats = new ColdStartStats(getClass().getSimpleName(), SystemClock.elapsedRealtime());
     activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
     executor = new ScopedExecutor(TaskExecutors.MAIN_THREAD);
     fpsTimer.scheduleAtFixedRate(
         new TimerTask() {
           @Override
           public void run() {
-            framesPerSecond = frameProcessedInOneSecondInterval;
+            framesPerSecond = frameProcessedInOneSecondInterval + frameReusedInOneSecondInterval;
             frameProcessedInOneSecondInterval = 0;
+            frameReusedInOneSecondInterval = 0;
           }
         },
         /* delay= */ 0,
         /* period= */ 1000);
-    temperatureMonitor = new TemperatureMonitor(context);
+    if (PreferenceUtils.isThermalGovernorEnabled(context)) {
+      thermalGovernor = ThermalGovernor.acquire(context);
+      temperatureMonitor = null;
+    } else {
+      thermalGovernor = null;
+      temperatureMonitor = new TemperatureMonitor(context);
+    }
+    resolutionController = AdaptiveResolutionController.create(context, getClass().getSimpleName());
+    regionCropper = new RegionCropper(PreferenceUtils.getDetectionRegion(context));
+    resultReuse = new ResultReuse<>(PreferenceUtils.isStaticSceneSkippingEnabled(context));
+  }
+
+  /**
+   * Runs the detector once on a blank NV21 frame of the given size, so that its model is loaded
+   * before the first camera frame arrives instead of stalling it. Detection runs asynchronously and
+   * nothing is drawn.
+   */
+  @Override
+  public void warmUp(int frameWidth, int frameHeight) {
+    if (isShutdown) {
+      return;
+    }
+    byte[] frame = new byte[frameWidth * frameHeight * 3 / 2];
+    Arrays.fill(frame, (byte) 128);
+    InputImage image =
+        InputImage.fromByteBuffer(
+            ByteBuffer.wrap(frame),
+            frameWidth,
+            frameHeight,
+            /* rotationDegrees= */ 0,
+            InputImage.IMAGE_FORMAT_NV21);
+    long warmUpStartMs = SystemClock.elapsedRealtime();
+    warmUpDetector(image)
+        .addOnCompleteListener(
+            executor,
+            task -> {
+              long endMs = SystemClock.elapsedRealtime();
+              if (!task.isSuccessful()) {
+                Log.w(TAG, "Detector warm-up failed", task.getException());
+                return;
+              }
+              coldStartStats.onWarmUp(endMs - warmUpStartMs);
+            });
   }
 
   // -----------------Code for processing single still image----------------------------------------
   @Override
   public void processBitmap(Bitmap bitmap, final GraphicOverlay graphicOverlay) {
+    processBitmap(bitmap, /* rotationDegrees= */ 0, graphicOverlay);
+  }
+
+  @Override
+  public void processBitmap(
+      Bitmap bitmap, int rotationDegrees, final GraphicOverlay graphicOverlay) {
     long frameStartMs = SystemClock.elapsedRealtime();
 
     if (isMlImageEnabled(graphicOverlay.getContext())) {
-      MlImage mlImage = new BitmapMlImageBuilder(bitmap).build();
+      MlImage mlImage = new BitmapMlImageBuilder(bitmap).setRotation(rotationDegrees).build();
       requestDetectInImage(
           mlImage,
           graphicOverlay,
           /* originalCameraImage= */ null,
           /* shouldShowFps= */ false,
-          frameStartMs);
+          frameStartMs,
+          /* captureTimeMs= */ 0);
       mlImage.close();
 
       return;
     }
 
-    requestDetectInImage(
-        InputImage.fromBitmap(bitmap, 0),
+    InputImage image = InputImage.fromBitmap(bitmap, rotationDegrees);
+    setUpListener(
+        detectInImage(image, bitmap),
+        InputPath.INPUT_IMAGE,
+        getUprightWidth(bitmap.getWidth(), bitmap.getHeight(), rotationDegrees),
+        getUprightHeight(bitmap.getWidth(), bitmap.getHeight(), rotationDegrees),
         graphicOverlay,
         /* originalCameraImage= */ null,
         /* shouldShowFps= */ false,
-        frameStartMs);
+        frameStartMs,
+        /* captureTimeMs= */ 0,
+        /* crop= */ null,
+        /* sceneSignature= */ null);
   }
 
   // -----------------Code for processing live preview frame from Camera1 API-----------------------
   @Override
   public synchronized void processByteBuffer(
       ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay) {
+    if (shouldDropFrameForThermalLevel()) {
+      return;
+    }
+    if (PreferenceUtils.isCameraFramePipelineEnabled(graphicOverlay.getContext())) {
+      if (isShutdown) {
+        return;
+      }
+      if (framePipeline == null) {
+        framePipeline = new FramePipeline(graphicOverlay);
+      }
+      framePipeline.prepare(data, frameMetadata);
+      return;
+    }
     latestImage = data;
     latestImageMetaData = frameMetadata;
     if (processingImage == null && processingMetaData == null) {
@@ -165,15 +283,39 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   }
 
   private void processImage(
-      ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay) {
+      ByteBuffer data, FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay) {
     long frameStartMs = SystemClock.elapsedRealtime();
 
     // If live viewport is on (that is the underneath surface view takes care of the camera preview
     // drawing), skip the unnecessary bitmap creation that used for the manual preview drawing.
-    Bitmap bitmap =
-        PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())
-            ? null
-            : BitmapUtils.getBitmap(data, frameMetadata);
+    Bitmap bitmap = getPreviewBitmap(data, frameMetadata, graphicOverlay);
+
+    byte[] sceneSignature = resultReuse.getSignature(data, frameMetadata);
+    T reusableResults =
+        resultReuse.getReusableResults(sceneSignature, frameMetadata.getCaptureTimeMs());
+    if (reusableResults != null) {
+      showReusedResults(reusableResults, graphicOverlay, bitmap)
+          .addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
+      return;
+    }
+
+    int downscaleFactor = getDownscaleFactor(frameMetadata.getWidth(), frameMetadata.getHeight());
+    DetectionRegion.Crop crop = regionCropper.getCrop(frameMetadata, downscaleFactor);
+    if (crop != null) {
+      data =
+          BitmapUtils.cropNv21(
+              data,
+              frameMetadata.getWidth(),
+              frameMetadata.getHeight(),
+              crop.getSensorRect(),
+              downscaleFactor);
+      frameMetadata = RegionCropper.getCroppedMetadata(frameMetadata, crop, downscaleFactor);
+    } else if (downscaleFactor > 1) {
+      data =
+          BitmapUtils.downscaleNv21(
+              data, frameMetadata.getWidth(), frameMetadata.getHeight(), downscaleFactor);
+      frameMetadata = RegionCropper.getCroppedMetadata(frameMetadata, null, downscaleFactor);
+    }
 
     if (isMlImageEnabled(graphicOverlay.getContext())) {
       MlImage mlImage =
@@ -185,7 +327,15 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
               .setRotation(frameMetadata.getRotation())
               .build();
 
-      requestDetectInImage(mlImage, graphicOverlay, bitmap, /* shouldShowFps= */ true, frameStartMs)
+      requestDetectInImage(
+              mlImage,
+              graphicOverlay,
+              bitmap,
+              /* shouldShowFps= */ true,
+              frameStartMs,
+              frameMetadata.getCaptureTimeMs(),
+              crop,
+              sceneSignature)
           .addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
 
       // This is optional. Java Garbage collection can also close it eventually.
@@ -203,24 +353,286 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
             graphicOverlay,
             bitmap,
             /* shouldShowFps= */ true,
-            frameStartMs)
+            frameStartMs,
+            frameMetadata.getCaptureTimeMs(),
+            crop,
+            sceneSignature)
         .addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
   }
 
+  /**
+   * Processes Camera1 frames in two stages connected by a bounded queue. The calling thread
+   * prepares a frame (copies the camera buffer, converts the preview bitmap and builds the detector
+   * input) while a dedicated thread feeds the previously prepared frame to the detector, so
+   * preparation and inference overlap on multi-core devices.
+   *
+   * <p>The queue holds a single frame and a newly prepared frame replaces a stale one, so a frame
+   * never waits for more than the detection that is already running.
+   */
+  private class FramePipeline implements Runnable {
+    private final BlockingQueue<PreparedFrame> preparedFrames = new ArrayBlockingQueue<>(1);
+    // Frame copies that are free to be reused, since camera buffers are returned to the camera as
+    // soon as processByteBuffer returns.
+    private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+    private final GraphicOverlay graphicOverlay;
+    private final Thread detectionThread;
+
+    FramePipeline(GraphicOverlay graphicOverlay) {
+      this.graphicOverlay = graphicOverlay;
+      detectionThread = new Thread(this, "FramePipelineDetection");
+      detectionThread.start();
+    }
+
+    /** Prepares a frame on the calling thread and queues it for detection. */
+    void prepare(ByteBuffer data, FrameMetadata frameMetadata) {
+      long frameStartMs = SystemClock.elapsedRealtime();
+      long captureTimeMs = frameMetadata.getCaptureTimeMs();
+
+      // The camera buffer stays valid until this returns, so the preview bitmap can be converted
+      // from it directly.
+      Bitmap bitmap = getPreviewBitmap(data, frameMetadata, graphicOverlay);
+
+      byte[] sceneSignature = resultReuse.getSignature(data, frameMetadata);
+      T reusableResults = resultReuse.getReusableResults(sceneSignature, captureTimeMs);
+      if (reusableResults != null) {
+        showReusedResults(reusableResults, graphicOverlay, bitmap);
+        return;
+      }
+
+      byte[] frameBytes;
+      int downscaleFactor = getDownscaleFactor(frameMetadata.getWidth(), frameMetadata.getHeight());
+      DetectionRegion.Crop crop = regionCropper.getCrop(frameMetadata, downscaleFactor);
+      if (crop != null) {
+        Rect sensorRect = crop.getSensorRect();
+        FrameMetadata croppedMetadata =
+            RegionCropper.getCroppedMetadata(frameMetadata, crop, downscaleFactor);
+        frameBytes = obtainBuffer(croppedMetadata.getWidth() * croppedMetadata.getHeight() * 3 / 2);
+        BitmapUtils.cropNv21(
+            data,
+            frameMetadata.getWidth(),
+            frameMetadata.getHeight(),
+            sensorRect,
+            downscaleFactor,
+            frameBytes);
+        frameMetadata = croppedMetadata;
+      } else if (downscaleFactor > 1) {
+        FrameMetadata downscaledMetadata =
+            RegionCropper.getCroppedMetadata(frameMetadata, null, downscaleFactor);
+        frameBytes =
+            obtainBuffer(downscaledMetadata.getWidth() * downscaledMetadata.getHeight() * 3 / 2);
+        BitmapUtils.downscaleNv21(
+            data, frameMetadata.getWidth(), frameMetadata.getHeight(), downscaleFactor, frameBytes);
+        frameMetadata = downscaledMetadata;
+      } else {
+        data.rewind();
+        frameBytes = obtainBuffer(data.limit());
+        data.get(frameBytes, 0, frameBytes.length);
+      }
+      ByteBuffer frameData = ByteBuffer.wrap(frameBytes);
+
+      PreparedFrame frame;
+      if (isMlImageEnabled(graphicOverlay.getContext())) {
+        MlImage mlImage =
+            new ByteBufferMlImageBuilder(
+                    frameData,
+                    frameMetadata.getWidth(),
+                    frameMetadata.getHeight(),
+                    MlImage.IMAGE_FORMAT_NV21)
+                .setRotation(frameMetadata.getRotation())
+                .build();
+        frame =
+            new PreparedFrame(
+                frameBytes,
+                null,
+                mlImage,
+                bitmap,
+                frameStartMs,
+                captureTimeMs,
+                crop,
+                sceneSignature);
+      } else {
+        InputImage inputImage =
+            InputImage.fromByteBuffer(
+                frameData,
+                frameMetadata.getWidth(),
+                frameMetadata.getHeight(),
+                frameMetadata.getRotation(),
+                InputImage.IMAGE_FORMAT_NV21);
+        frame =
+            new PreparedFrame(
+                frameBytes,
+                inputImage,
+                null,
+                bitmap,
+                frameStartMs,
+                captureTimeMs,
+                crop,
+                sceneSignature);
+      }
+
+      // Replaces a stale frame rather than blocking the camera thread.
+      while (!preparedFrames.offer(frame)) {
+        PreparedFrame staleFrame = preparedFrames.poll();
+        if (staleFrame != null) {
+          release(staleFrame);
+        }
+      }
+    }
+
+    /** Feeds prepared frames to the detector, one detection at a time. */
+    @Override
+    public void run() {
+      while (!isShutdown) {
+        PreparedFrame frame;
+        try {
+          frame = preparedFrames.take();
+        } catch (InterruptedException e) {
+          Log.d(TAG, "Frame pipeline terminated.");
+          return;
+        }
+        try {
+          Task<T> task =
+              frame.mlImage != null
+                  ? requestDetectInImage(
+                      frame.mlImage,
+                      graphicOverlay,
+                      frame.bitmap,
+                      /* shouldShowFps= */ true,
+                      frame.frameStartMs,
+                      frame.captureTimeMs,
+                      frame.crop,
+                      frame.sceneSignature)
+                  : requestDetectInImage(
+                      frame.inputImage,
+                      graphicOverlay,
+                      frame.bitmap,
+                      /* shouldShowFps= */ true,
+                      frame.frameStartMs,
+                      frame.captureTimeMs,
+                      frame.crop,
+                      frame.sceneSignature);
+          Tasks.await(task);
+        } catch (ExecutionException e) {
+          // Already reported by the failure listener.
+        } catch (InterruptedException e) {
+          Log.d(TAG, "Frame pipeline terminated.");
+          return;
+        } finally {
+          release(frame);
+        }
+      }
+    }
+
+    void stop() {
+      detectionThread.interrupt();
+      PreparedFrame frame;
+      while ((frame = preparedFrames.poll()) != null) {
+        release(frame);
+      }
+      freeBuffers.clear();
+    }
+
+    private byte[] obtainBuffer(int size) {
+      byte[] buffer;
+      while ((buffer = freeBuffers.poll()) != null) {
+        if (buffer.length == size) {
+          return buffer;
+        }
+      }
+      return new byte[size];
+    }
+
+    private void release(PreparedFrame frame) {
+      if (frame.mlImage != null) {
+        // This is optional. Java Garbage collection can also close it eventually.
+        frame.mlImage.close();
+      }
+      freeBuffers.offer(frame.frameBytes);
+    }
+  }
+
+  /** A Camera1 frame that is ready to be sent to the detector. */
+  private static class PreparedFrame {
+    final byte[] frameBytes;
+    @Nullable final InputImage inputImage;
+    @Nullable final MlImage mlImage;
+    @Nullable final Bitmap bitmap;
+    final long frameStartMs;
+    final long captureTimeMs;
+    @Nullable final DetectionRegion.Crop crop;
+    @Nullable final byte[] sceneSignature;
+
+    PreparedFrame(
+        byte[] frameBytes,
+        @Nullable InputImage inputImage,
+        @Nullable MlImage mlImage,
+        @Nullable Bitmap bitmap,
+        long frameStartMs,
+        long captureTimeMs,
+        @Nullable DetectionRegion.Crop crop,
+        @Nullable byte[] sceneSignature) {
+      this.frameBytes = frameBytes;
+      this.inputImage = inputImage;
+      this.mlImage = mlImage;
+      this.bitmap = bitmap;
+      this.frameStartMs = frameStartMs;
+      this.captureTimeMs = captureTimeMs;
+      this.crop = crop;
+      this.sceneSignature = sceneSignature;
+    }
+  }
+
   // -----------------Code for processing live preview frame from CameraX API-----------------------
   @Override
   @RequiresApi(VERSION_CODES.LOLLIPOP)
   @ExperimentalGetImage
   public void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) {
     long frameStartMs = SystemClock.elapsedRealtime();
-    if (isShutdown) {
+    long captureTimeMs = FrameMetadata.toElapsedRealtimeMs(image.getImageInfo().getTimestamp());
+    if (isShutdown || shouldDropFrameForThermalLevel()) {
       image.close();
       return;
     }
 
+    if (image.getFormat() == PixelFormat.RGBA_8888) {
+      processRgbaImageProxy(image, graphicOverlay, frameStartMs, captureTimeMs);
+      return;
+    }
+
     Bitmap bitmap = null;
     if (!PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())) {
-      bitmap = BitmapUtils.getBitmap(image);
+      // Kept in sensor orientation, the overlay rotates it when drawing it.
+      graphicOverlay.setSourceRotation(image.getImageInfo().getRotationDegrees());
+      bitmap = BitmapUtils.getSensorBitmap(image);
+    }
+
+    byte[] sceneSignature = resultReuse.getSignature(image);
+    T reusableResults = resultReuse.getReusableResults(sceneSignature, captureTimeMs);
+    if (reusableResults != null) {
+      // Nothing refers to the image anymore, so the next frame can be delivered right away.
+      image.close();
+      showReusedResults(reusableResults, graphicOverlay, bitmap);
+      return;
+    }
+
+    int downscaleFactor = getDownscaleFactor(image.getWidth(), image.getHeight());
+    DetectionRegion.Crop crop =
+        regionCropper.getCrop(
+            image.getWidth(),
+            image.getHeight(),
+            image.getImageInfo().getRotationDegrees(),
+            downscaleFactor);
+    if (downscaleFactor > 1 || crop != null) {
+      processDownscaledImageProxy(
+          image,
+          crop,
+          sceneSignature,
+          downscaleFactor,
+          graphicOverlay,
+          bitmap,
+          frameStartMs,
+          captureTimeMs);
+      return;
     }
 
     if (isMlImageEnabled(graphicOverlay.getContext())) {
@@ -234,7 +646,10 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
               graphicOverlay,
               /* originalCameraImage= */ bitmap,
               /* shouldShowFps= */ true,
-              frameStartMs)
+              frameStartMs,
+              captureTimeMs,
+              /* crop= */ null,
+              sceneSignature)
           // When the image is from CameraX analysis use case, must call image.close() on received
           // images when finished using them. Otherwise, new images may not be received or the
           // camera may stall.
@@ -249,22 +664,174 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
             graphicOverlay,
             /* originalCameraImage= */ bitmap,
             /* shouldShowFps= */ true,
-            frameStartMs)
+            frameStartMs,
+            captureTimeMs,
+            /* crop= */ null,
+            sceneSignature)
         // When the image is from CameraX analysis use case, must call image.close() on received
         // images when finished using them. Otherwise, new images may not be received or the camera
         // may stall.
         .addOnCompleteListener(results -> image.close());
   }
 
+  /**
+   * Processes a YUV_420_888 frame from the analysis use case at a reduced resolution, or only the
+   * given region of it. The kept pixels are gathered into an NV21 buffer, so the detector never
+   * sees the full resolution image.
+   */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  private void processDownscaledImageProxy(
+      ImageProxy image,
+      @Nullable DetectionRegion.Crop crop,
+      @Nullable byte[] sceneSignature,
+      int downscaleFactor,
+      GraphicOverlay graphicOverlay,
+      @Nullable Bitmap bitmap,
+      long frameStartMs,
+      long captureTimeMs) {
+    Rect rect = RegionCropper.getSensorRect(crop, image.getWidth(), image.getHeight());
+    ByteBuffer data = BitmapUtils.yuv420ToCroppedNv21(image, rect, downscaleFactor);
+    int width = BitmapUtils.getDownscaledSize(rect.width(), downscaleFactor);
+    int height = BitmapUtils.getDownscaledSize(rect.height(), downscaleFactor);
+    int rotationDegrees = image.getImageInfo().getRotationDegrees();
+    // The image is only closed once detection is done so that CameraX does not deliver a new frame
+    // while the detector is still busy.
+    if (isMlImageEnabled(graphicOverlay.getContext())) {
+      MlImage mlImage =
+          new ByteBufferMlImageBuilder(data, width, height, MlImage.IMAGE_FORMAT_NV21)
+              .setRotation(rotationDegrees)
+              .build();
+      requestDetectInImage(
+              mlImage,
+              graphicOverlay,
+              bitmap,
+              /* shouldShowFps= */ true,
+              frameStartMs,
+              captureTimeMs,
+              crop,
+              sceneSignature)
+          .addOnCompleteListener(results -> image.close());
+      mlImage.close();
+      return;
+    }
+
+    requestDetectInImage(
+            InputImage.fromByteBuffer(
+                data, width, height, rotationDegrees, InputImage.IMAGE_FORMAT_NV21),
+            graphicOverlay,
+            bitmap,
+            /* shouldShowFps= */ true,
+            frameStartMs,
+            captureTimeMs,
+            crop,
+            sceneSignature)
+        .addOnCompleteListener(results -> image.close());
+  }
+
+  /**
+   * Processes a frame the analysis use case delivered as RGBA_8888. The pixels are copied into a
+   * bitmap once, which is then used both as detector input and, if the live viewport is disabled,
+   * as the preview image. Static scenes are skipped and the detection region is cut out as for YUV
+   * frames.
+   */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  private void processRgbaImageProxy(
+      ImageProxy image, GraphicOverlay graphicOverlay, long frameStartMs, long captureTimeMs) {
+    Bitmap frameBitmap = BitmapUtils.getRgbaBitmap(image);
+    int rotationDegrees = image.getImageInfo().getRotationDegrees();
+    Bitmap bitmap = null;
+    if (!PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())) {
+      // The preview and the detector share the bitmap in sensor orientation, the detector being
+      // given the rotation and the overlay rotating it when drawing it.
+      graphicOverlay.setSourceRotation(rotationDegrees);
+      bitmap = frameBitmap;
+    }
+
+    byte[] sceneSignature = resultReuse.getSignature(image);
+    T reusableResults = resultReuse.getReusableResults(sceneSignature, captureTimeMs);
+    if (reusableResults != null) {
+      image.close();
+      showReusedResults(reusableResults, graphicOverlay, bitmap);
+      return;
+    }
+
+    int downscaleFactor = getDownscaleFactor(image.getWidth(), image.getHeight());
+    DetectionRegion.Crop crop =
+        regionCropper.getCrop(
+            image.getWidth(), image.getHeight(), rotationDegrees, downscaleFactor);
+    frameBitmap = RegionCropper.cropBitmap(frameBitmap, crop, downscaleFactor);
+
+    Task<T> task;
+    if (isMlImageEnabled(graphicOverlay.getContext())) {
+      MlImage mlImage = new BitmapMlImageBuilder(frameBitmap).setRotation(rotationDegrees).build();
+      task =
+          requestDetectInImage(
+              mlImage,
+              graphicOverlay,
+              /* originalCameraImage= */ bitmap,
+              /* shouldShowFps= */ true,
+              frameStartMs,
+              captureTimeMs,
+              crop,
+              sceneSignature);
+      mlImage.close();
+    } else {
+      task =
+          requestDetectInImage(
+              InputImage.fromBitmap(frameBitmap, rotationDegrees),
+              graphicOverlay,
+              /* originalCameraImage= */ bitmap,
+              /* shouldShowFps= */ true,
+              frameStartMs,
+              captureTimeMs,
+              crop,
+              sceneSignature);
+    }
+    // The pixels have already been copied out, but the image is only closed once detection is done
+    // so that CameraX does not deliver a new frame while the detector is still busy.
+    task.addOnCompleteListener(results -> image.close());
+  }
+
   // -----------------Common processing logic-------------------------------------------------------
   private Task<T> requestDetectInImage(
       final InputImage image,
       final GraphicOverlay graphicOverlay,
       @Nullable final Bitmap originalCameraImage,
       boolean shouldShowFps,
-      long frameStartMs) {
+      long frameStartMs,
+      long captureTimeMs) {
+    return requestDetectInImage(
+        image,
+        graphicOverlay,
+        originalCameraImage,
+        shouldShowFps,
+        frameStartMs,
+        captureTimeMs,
+        /* crop= */ null,
+        /* sceneSignature= */ null);
+  }
+
+  private Task<T> requestDetectInImage(
+      final InputImage image,
+      final GraphicOverlay graphicOverlay,
+      @Nullable final Bitmap originalCameraImage,
+      boolean shouldShowFps,
+      long frameStartMs,
+      long captureTimeMs,
+      @Nullable DetectionRegion.Crop crop,
+      @Nullable byte[] sceneSignature) {
     return setUpListener(
-        detectInImage(image), graphicOverlay, originalCameraImage, shouldShowFps, frameStartMs);
+        detectInImage(image),
+        InputPath.INPUT_IMAGE,
+        getUprightWidth(image.getWidth(), image.getHeight(), image.getRotationDegrees()),
+        getUprightHeight(image.getWidth(), image.getHeight(), image.getRotationDegrees()),
+        graphicOverlay,
+        originalCameraImage,
+        shouldShowFps,
+        frameStartMs,
+        captureTimeMs,
+        crop,
+        sceneSignature);
   }
 
   private Task<T> requestDetectInImage(
@@ -272,17 +839,54 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
       final GraphicOverlay graphicOverlay,
       @Nullable final Bitmap originalCameraImage,
       boolean shouldShowFps,
-      long frameStartMs) {
+      long frameStartMs,
+      long captureTimeMs) {
+    return requestDetectInImage(
+        image,
+        graphicOverlay,
+        originalCameraImage,
+        shouldShowFps,
+        frameStartMs,
+        captureTimeMs,
+        /* crop= */ null,
+        /* sceneSignature= */ null);
+  }
+
+  private Task<T> requestDetectInImage(
+      final MlImage image,
+      final GraphicOverlay graphicOverlay,
+      @Nullable final Bitmap originalCameraImage,
+      boolean shouldShowFps,
+      long frameStartMs,
+      long captureTimeMs,
+      @Nullable DetectionRegion.Crop crop,
+      @Nullable byte[] sceneSignature) {
     return setUpListener(
-        detectInImage(image), graphicOverlay, originalCameraImage, shouldShowFps, frameStartMs);
+        detectInImage(image),
+        InputPath.ML_IMAGE,
+        getUprightWidth(image.getWidth(), image.getHeight(), image.getRotation()),
+        getUprightHeight(image.getWidth(), image.getHeight(), image.getRotation()),
+        graphicOverlay,
+        originalCameraImage,
+        shouldShowFps,
+        frameStartMs,
+        captureTimeMs,
+        crop,
+        sceneSignature);
   }
 
   private Task<T> setUpListener(
       Task<T> task,
+      InputPath inputPath,
+      int imageWidth,
+      int imageHeight,
       final GraphicOverlay graphicOverlay,
       @Nullable final Bitmap originalCameraImage,
       boolean shouldShowFps,
-      long frameStartMs) {
+      long frameStartMs,
+      long captureTimeMs,
+      @Nullable DetectionRegion.Crop crop,
+      @Nullable byte[] sceneSignature) {
     final long detectorStartMs = SystemClock.elapsedRealtime();
     return task.addOnSuccessListener(
             executor,
@@ -301,6 +905,18 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
               totalDetectorMs += currentDetectorLatencyMs;
               maxDetectorMs = max(currentDetectorLatencyMs, maxDetectorMs);
               minDetectorMs = min(currentDetectorLatencyMs, minDetectorMs);
+              coldStartStats.onDetection(currentDetectorLatencyMs, endMs);
+              lastFrameLatencyMs = currentFrameLatencyMs;
+              lastDetectorLatencyMs = currentDetectorLatencyMs;
+              if (shouldShowFps) {
+                resultReuse.onResults(
+                    results, sceneSignature, captureTimeMs, currentDetectorLatencyMs);
+              }
+              InputPathLatencyStats.record(
+                  getClass().getSimpleName(),
+                  inputPath,
+                  currentFrameLatencyMs,
+                  currentDetectorLatencyMs);
 
               // Only log inference info once per second. When frameProcessedInOneSecondInterval is
               // equal to 1, it means this is the first frame processed during the current second.
@@ -326,7 +942,55 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
                 activityManager.getMemoryInfo(mi);
                 long availableMegs = mi.availMem / 0x100000L;
                 Log.d(TAG, "Memory available in system: " + availableMegs + " MB");
-                temperatureMonitor.logTemperature();
+                if (thermalGovernor != null) {
+                  thermalGovernor.update();
+                  thermalGovernor.logTemperature();
+                  ThermalGovernor.Level level = thermalGovernor.getLevel();
+                  if (level != thermalLevel) {
+                    thermalLevel = level;
+                    onThermalLevelChanged(level);
+                  }
+                } else {
+                  temperatureMonitor.logTemperature();
+                }
+                InputPathLatencyStats.logSummary(getClass().getSimpleName());
+                FrameLatencyStats.logSummary();
+                VisionMetrics.log();
+              }
+
+              // The latency measured while the governor forces a lower resolution says nothing
+              // about the resolution the controller picked.
+              if (resolutionController != null
+                  && shouldShowFps
+                  && getThermalMinDownscaleFactor() == 1) {
+                resolutionController.onDetectorLatency(currentDetectorLatencyMs);
+              }
+              // Results of a cropped frame are placed where the crop is in the whole frame.
+              int frameWidth = crop != null ? crop.getFrameWidth() : imageWidth;
+              int frameHeight = crop != null ? crop.getFrameHeight() : imageHeight;
+              float offsetX = crop != null ? crop.getOffsetX() : 0;
+              float offsetY = crop != null ? crop.getOffsetY() : 0;
+              if ((resolutionController != null
+                      || thermalGovernor != null
+                      || regionCropper.hasDetectionRegion())
+                  && shouldShowFps) {
+                // The detector input size changes with the downscale factor, so keep the overlay
+                // in the coordinates of the image these results refer to.
+                if (graphicOverlay.getImageWidth() != frameWidth
+                    || graphicOverlay.getImageHeight() != frameHeight
+                    || graphicOverlay.getImageOffsetX() != offsetX
+                    || graphicOverlay.getImageOffsetY() != offsetY) {
+                  graphicOverlay.setImageSourceInfo(
+                      frameWidth,
+                      frameHeight,
+                      offsetX,
+                      offsetY,
+                      graphicOverlay.isImageFlipped());
+                }
+              }
+              if (regionCropper.isTracking() && shouldShowFps) {
+                regionCropper.onResultBounds(
+                    getResultBounds(results), crop, frameWidth, frameHeight);
               }
 
               graphicOverlay.clear();
@@ -342,6 +1006,10 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
                         currentDetectorLatencyMs,
                         shouldShowFps ? framesPerSecond : null));
               }
+              if (shouldShowFps && captureTimeMs > 0) {
+                // The end-to-end latency is recorded once these results are actually drawn.
+                graphicOverlay.setFrameTiming(captureTimeMs, frameStartMs, endMs);
+              }
               graphicOverlay.postInvalidate();
             })
         .addOnFailureListener(
@@ -361,13 +1029,179 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
             });
   }
 
+  /**
+   * Shows results of a previous frame again along with a new frame of the same scene, without
+   * running the detector. The returned task completes once they are in the overlay. The frame
+   * counts as processed, so that the camera frame rate is not lowered while frames are cheap.
+   */
+  private Task<T> showReusedResults(
+      T results, GraphicOverlay graphicOverlay, @Nullable Bitmap originalCameraImage) {
+    return Tasks.call(
+        executor,
+        () -> {
+          frameReusedInOneSecondInterval++;
+          graphicOverlay.clear();
+          if (originalCameraImage != null) {
+            graphicOverlay.add(new CameraImageGraphic(graphicOverlay, originalCameraImage));
+          }
+          VisionProcessorBase.this.onSuccess(results, graphicOverlay);
+          if (!PreferenceUtils.shouldHideDetectionInfo(graphicOverlay.getContext())) {
+            graphicOverlay.add(
+                new InferenceInfoGraphic(
+                    graphicOverlay, lastFrameLatencyMs, lastDetectorLatencyMs, framesPerSecond));
+          }
+          graphicOverlay.postInvalidate();
+          return results;
+        });
+  }
+
+  @Override
+  public int getProcessedFramesPerSecond() {
+    return framesPerSecond;
+  }
+
+  /**
+   * Stops this processor and releases what it holds. Activities may call this more than once, e.g.
+   * when pausing and again when replacing the processor, so only the first call has an effect.
+   */
   @Override
   public void stop() {
+    if (isShutdown) {
+      return;
+    }
     executor.shutdown();
     isShutdown = true;
+    synchronized (this) {
+      if (framePipeline != null) {
+        framePipeline.stop();
+        framePipeline = null;
+      }
+    }
     resetLatencyStats();
     fpsTimer.cancel();
-    temperatureMonitor.stop();
+    resultReuse.reset();
+    if (thermalGovernor != null) {
+      thermalGovernor.release();
+    } else {
+      temperatureMonitor.stop();
+    }
+  }
+
+  /**
+   * Returns whether {@link #stop()} was called. Subclasses that release pooled detectors when they
+   * stop check this first, so that they release them only once.
+   */
+  protected boolean isShutdown() {
+    return isShutdown;
+  }
+
+  /**
+   * Called on the main thread when the thermal governor changes its level. Subclasses can override
+   * this to switch to a cheaper detector mode while the device is hot.
+   */
+  protected void onThermalLevelChanged(ThermalGovernor.Level level) {}
+
+  /**
+   * Sets the region of live frames to send to the detector, or null to send whole frames. Replaces
+   * the region picked in the settings.
+   */
+  protected void setDetectionRegion(@Nullable DetectionRegion detectionRegion) {
+    regionCropper.setDetectionRegion(detectionRegion);
+  }
+
+  /**
+   * Sets the tracker that decides which live frames are keyframes. For the other frames, the
+   * detector is skipped and {@link #onSuccess} is called again with the results of the last
+   * keyframe, which subclasses are expected to draw at the positions extrapolated by the tracker.
+   */
+  protected void setLandmarkTracker(@Nullable LandmarkTracker landmarkTracker) {
+    resultReuse.setLandmarkTracker(landmarkTracker);
+  }
+
+  /**
+   * Returns the bounds of the given results in the coordinates of the upright image sent to the
+   * detector, or null if nothing was found. Subclasses need to override this for a tracked {@link
+   * DetectionRegion} to follow their results.
+   */
+  @Nullable
+  protected RectF getResultBounds(@NonNull T results) {
+    return null;
+  }
+
+  /**
+   * Returns the number of results, e.g. of faces, or -1 if they cannot be counted, e.g. a
+   * segmentation mask. Lists are counted by default, subclasses with other results override this.
+   */
+  protected int getResultCount(@NonNull T results) {
+    return results instanceof Collection ? ((Collection<?>) results).size() : -1;
+  }
+
+  /** Returns the smallest rectangle containing all given bounding boxes, ignoring null ones. */
+  @Nullable
+  protected static RectF getUnionBounds(List<Rect> boundingBoxes) {
+    RectF union = null;
+    for (Rect boundingBox : boundingBoxes) {
+      if (boundingBox == null) {
+        continue;
+      }
+      if (union == null) {
+        union = new RectF(boundingBox);
+      } else {
+        union.union(boundingBox.left, boundingBox.top, boundingBox.right, boundingBox.bottom);
+      }
+    }
+    return union;
+  }
+
+  /** Returns by how much a live frame of the given size is subsampled before detection. */
+  private int getDownscaleFactor(int frameWidth, int frameHeight) {
+    int downscaleFactor =
+        resolutionController == null
+            ? 1
+            : resolutionController.getDownscaleFactor(frameWidth, frameHeight);
+    return max(downscaleFactor, getThermalMinDownscaleFactor());
+  }
+
+  private int getThermalMinDownscaleFactor() {
+    return thermalGovernor == null ? 1 : thermalGovernor.getLevel().getMinDownscaleFactor();
+  }
+
+  /** Returns whether a live frame should be skipped to keep the rate the thermal level allows. */
+  private boolean shouldDropFrameForThermalLevel() {
+    if (thermalGovernor == null) {
+      return false;
+    }
+    long minFrameIntervalMs = thermalGovernor.getLevel().getMinFrameIntervalMs();
+    long nowMs = SystemClock.elapsedRealtime();
+    if (minFrameIntervalMs > 0 && nowMs - lastAcceptedFrameMs < minFrameIntervalMs) {
+      VisionMetrics.incrementCounter("thermal.frames_dropped", 1);
+      return true;
+    }
+    lastAcceptedFrameMs = nowMs;
+    return false;
+  }
+
+  /**
+   * Converts a Camera1 frame into the bitmap drawn behind the graphics, or returns null if the live
+   * viewport draws the preview instead. The bitmap is kept in sensor orientation, the overlay
+   * rotating it when drawing it.
+   */
+  @Nullable
+  private static Bitmap getPreviewBitmap(
+      ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay) {
+    if (PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())) {
+      return null;
+    }
+    graphicOverlay.setSourceRotation(frameMetadata.getRotation());
+    return BitmapUtils.getSensorBitmap(data, frameMetadata);
+  }
+
+  private static int getUprightWidth(int width, int height, int rotationDegrees) {
+    return rotationDegrees == 90 || rotationDegrees == 270 ? height : width;
+  }
+
+  private static int getUprightHeight(int width, int height, int rotationDegrees) {
+    return rotationDegrees == 90 || rotationDegrees == 270 ? width : height;
   }
 
   private void resetLatencyStats() {
@@ -382,6 +1216,14 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
   protected abstract Task<T> detectInImage(InputImage image);
 
+  /**
+   * Runs the detector on an image made from the given bitmap. Processors that need the pixels
+   * again after detection override this, as InputImage does not give the bitmap back.
+   */
+  protected Task<T> detectInImage(InputImage image, Bitmap bitmap) {
+    return detectInImage(image);
+  }
+
   protected Task<T> detectInImage(MlImage image) {
     return Tasks.forException(
         new MlKitException(
@@ -389,11 +1231,25 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
             MlKitException.INVALID_ARGUMENT));
   }
 
+  /**
+   * Runs the detector on the blank frame of {@link #warmUp}. Processors that keep per-frame state
+   * around their detector, e.g. for adaptive decisions or cached results, override this to run the
+   * ML Kit client directly, so that the warm-up frame does not skew that state.
+   */
+  protected Task<?> warmUpDetector(InputImage image) {
+    return detectInImage(image);
+  }
+
   protected abstract void onSuccess(@NonNull T results, @NonNull GraphicOverlay graphicOverlay);
 
   protected abstract void onFailure(@NonNull Exception e);
 
+  /**
+   * Whether frames are handed to {@link #detectInImage(MlImage)} rather than {@link
+   * #detectInImage(InputImage)}. Follows the global setting, which is off by default. Processors
+   * can override this to always pick one.
+   */
   protected boolean isMlImageEnabled(Context context) {
-    return false;
+    return PreferenceUtils.shouldUseMlImage(context);
   }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.barcodescanner;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.demo.VisionMetrics;
+import java.util.List;
+
+/**
+ * Learns which barcode formats a live scanner actually sees, so that it can scan for those only.
+ *
+ * <p>Every frame is scanned for all formats during a warm-up of {@link #WARM_UP_SCANS} scans. From
+ * then on, the formats seen so far are returned by {@link #getNarrowedFormats()} and the scanner is
+ * expected to look for those only, except for a probe with all formats every {@link
+ * #PROBE_INTERVAL_MS}. Formats found by a probe are added to the narrowed ones.
+ *
+ * <p>The average latency of full and narrowed scans is published to {@link VisionMetrics} under
+ * {@code barcode.*}, along with the gain of narrowing.
+ */
+final class BarcodeFormatLearner {
+
+  private static final String TAG = "BarcodeFormatLearner";
+  private static final int WARM_UP_SCANS = 30;
+  private static final long PROBE_INTERVAL_MS = 2_000;
+  private static final float LATENCY_SMOOTHING = 0.1f;
+
+  @GuardedBy("this")
+  private int scans;
+
+  // Bitwise or of the Barcode.FORMAT_* constants seen so far.
+  @GuardedBy("this")
+  private int seenFormats;
+
+  @GuardedBy("this")
+  private int narrowedFormats = Barcode.FORMAT_ALL_FORMATS;
+
+  @GuardedBy("this")
+  private long lastProbeMs;
+
+  @GuardedBy("this")
+  private float fullScanLatencyMs = -1;
+
+  @GuardedBy("this")
+  private float narrowedScanLatencyMs = -1;
+
+  /**
+   * Returns the formats the scanner should look for, or {@link Barcode#FORMAT_ALL_FORMATS} while
+   * they are still unknown.
+   */
+  synchronized int getNarrowedFormats() {
+    return narrowedFormats;
+  }
+
+  /**
+   * Returns whether the next frame should be scanned for all formats although they have been
+   * narrowed, to find formats that were not seen so far.
+   */
+  boolean shouldProbe() {
+    return shouldProbe(SystemClock.elapsedRealtime());
+  }
+
+  @VisibleForTesting
+  synchronized boolean shouldProbe(long nowMs) {
+    if (narrowedFormats == Barcode.FORMAT_ALL_FORMATS) {
+      return false;
+    }
+    if (nowMs - lastProbeMs < PROBE_INTERVAL_MS) {
+      return false;
+    }
+    lastProbeMs = nowMs;
+    VisionMetrics.incrementCounter("barcode.probes", 1);
+    return true;
+  }
+
+  /** Feeds the barcodes found by a scan, whether it was for all formats, and how long it took. */
+  void onResults(List<Barcode> barcodes, boolean isFullScan, long latencyMs) {
+    int foundFormats = 0;
+    for (Barcode barcode : barcodes) {
+      if (barcode.getFormat() > 0) {
+        foundFormats |= barcode.getFormat();
+      }
+    }
+    onResults(foundFormats, isFullScan, latencyMs, SystemClock.elapsedRealtime());
+  }
+
+  /**
+   * Feeds the bitwise or of the Barcode.FORMAT_* constants found by a scan, whether it was for all
+   * formats, how long it took and when it ended.
+   */
+  @VisibleForTesting
+  synchronized void onResults(int foundFormats, boolean isFullScan, long latencyMs, long nowMs) {
+    scans++;
+    if (isFullScan) {
+      fullScanLatencyMs = smooth(fullScanLatencyMs, latencyMs);
+    } else {
+      narrowedScanLatencyMs = smooth(narrowedScanLatencyMs, latencyMs);
+    }
+    seenFormats |= foundFormats;
+
+    if (scans >= WARM_UP_SCANS && seenFormats != 0 && seenFormats != narrowedFormats) {
+      Log.i(
+          TAG,
+          "Narrowing barcode formats from 0x"
+              + Integer.toHexString(narrowedFormats)
+              + " to 0x"
+              + Integer.toHexString(seenFormats));
+      narrowedFormats = seenFormats;
+      lastProbeMs = nowMs;
+      VisionMetrics.incrementCounter("barcode.format_changes", 1);
+      VisionMetrics.setGauge("barcode.formats", "0x" + Integer.toHexString(narrowedFormats));
+    }
+
+    VisionMetrics.setGauge("barcode.full_scan_latency_ms", fullScanLatencyMs);
+    if (narrowedScanLatencyMs >= 0) {
+      VisionMetrics.setGauge("barcode.narrowed_scan_latency_ms", narrowedScanLatencyMs);
+    }
+    if (fullScanLatencyMs > 0 && narrowedScanLatencyMs >= 0) {
+      VisionMetrics.setGauge(
+          "barcode.latency_gain_percent",
+          100 * (fullScanLatencyMs - narrowedScanLatencyMs) / fullScanLatencyMs);
+    }
+  }
+
+  /** Returns the formats set in the given bitwise or of Barcode.FORMAT_* constants one by one. */
+  static int[] toFormatList(int formats) {
+    int[] formatList = new int[Integer.bitCount(formats)];
+    int remainingFormats = formats;
+    for (int i = 0; remainingFormats != 0; i++) {
+      formatList[i] = Integer.lowestOneBit(remainingFormats);
+      remainingFormats &= ~formatList[i];
+    }
+    return formatList;
+  }
+
+  private static float smooth(float averageMs, long latencyMs) {
+    return averageMs < 0 ? latencyMs : averageMs + LATENCY_SMOOTHING * (latencyMs - averageMs);
+  }
+}
@@ -18,6 +18,9 @@ package com.google.mlkit.vision.demo.java.barcodescanner;
 
 import android.content.Context;
 import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -30,8 +33,13 @@ import com.google.mlkit.vision.barcode.ZoomSuggestionOptions;
 import com.google.mlkit.vision.barcode.ZoomSuggestionOptions.ZoomCallback;
 import com.google.mlkit.vision.barcode.common.Barcode;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectionRegion;
+import com.google.mlkit.vision.demo.DetectorPool;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /** Barcode Detector Demo. */
@@ -39,37 +47,143 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
 
   private static final String TAG = "BarcodeProcessor";
 
+  private final Context context;
+  @Nullable private final ZoomCallback zoomCallback;
+  // Scans for all formats.
   private final BarcodeScanner barcodeScanner;
+  // Only created if adaptive formats are turned on.
+  @Nullable private final BarcodeFormatLearner formatLearner;
+  // Only created if barcode tracking is turned on, only accessed on the main thread.
+  @Nullable private final BarcodeTracker barcodeTracker;
+  // Scans for the formats seen so far once they are known, read on the detection threads.
+  @Nullable private volatile BarcodeScanner narrowedScanner;
+  // The formats of narrowedScanner, only accessed on the main thread.
+  private int narrowedFormats = Barcode.FORMAT_ALL_FORMATS;
 
   public BarcodeScannerProcessor(Context context, @Nullable ZoomCallback zoomCallback) {
+    this(context, zoomCallback, /* isLiveMode= */ false);
+  }
+
+  /**
+   * Creates a processor that, for live frames, applies the barcode settings that only make sense
+   * across frames: scanning only for the formats seen so far (see {@link BarcodeFormatLearner}),
+   * and tracking barcodes so that each one is reported once and the next frames are cropped around
+   * them (see {@link BarcodeTracker}).
+   */
+  public BarcodeScannerProcessor(
+      Context context, @Nullable ZoomCallback zoomCallback, boolean isLiveMode) {
     super(context);
+    this.context = context;
+    this.zoomCallback = zoomCallback;
     // Note that if you know which format of barcode your app is dealing with, detection will be
     // faster to specify the supported barcode formats one by one, e.g.
     // new BarcodeScannerOptions.Builder()
     //     .setBarcodeFormats(Barcode.FORMAT_QR_CODE)
     //     .build();
-    if (zoomCallback != null) {
-      BarcodeScannerOptions options =
-          new BarcodeScannerOptions.Builder()
-              .setZoomSuggestionOptions(new ZoomSuggestionOptions.Builder(zoomCallback).build())
-              .build();
-      barcodeScanner = BarcodeScanning.getClient(options);
+    barcodeScanner = createScanner(Barcode.FORMAT_ALL_FORMATS);
+    formatLearner =
+        isLiveMode && PreferenceUtils.isAdaptiveBarcodeFormatsEnabled(context)
+            ? new BarcodeFormatLearner()
+            : null;
+    if (isLiveMode && PreferenceUtils.isBarcodeTrackingEnabled(context)) {
+      barcodeTracker = new BarcodeTracker();
+      setDetectionRegion(DetectionRegion.tracked());
     } else {
-      barcodeScanner = BarcodeScanning.getClient();
+      barcodeTracker = null;
     }
   }
 
   @Override
   public void stop() {
+    if (isShutdown()) {
+      return;
+    }
     super.stop();
-    barcodeScanner.close();
+    releaseScanner(barcodeScanner);
+    if (narrowedScanner != null) {
+      releaseScanner(narrowedScanner);
+      narrowedScanner = null;
+    }
   }
 
   @Override
   protected Task<List<Barcode>> detectInImage(InputImage image) {
+    BarcodeScanner scanner = selectScanner();
+    return learnFormats(scanner.process(image), scanner);
+  }
+
+  @Override
+  protected Task<?> warmUpDetector(InputImage image) {
+    // Skips format learning, which would count the blank frame as a scan.
     return barcodeScanner.process(image);
   }
 
+  @Override
+  protected Task<List<Barcode>> detectInImage(MlImage image) {
+    BarcodeScanner scanner = selectScanner();
+    return learnFormats(scanner.process(image), scanner);
+  }
+
+  private BarcodeScanner selectScanner() {
+    BarcodeScanner scanner = narrowedScanner;
+    if (scanner == null || formatLearner.shouldProbe()) {
+      return barcodeScanner;
+    }
+    return scanner;
+  }
+
+  private Task<List<Barcode>> learnFormats(Task<List<Barcode>> task, BarcodeScanner scanner) {
+    if (formatLearner == null) {
+      return task;
+    }
+    long startMs = SystemClock.elapsedRealtime();
+    // Listeners without an executor run on the main thread.
+    return task.addOnSuccessListener(
+        barcodes -> {
+          formatLearner.onResults(
+              barcodes, scanner == barcodeScanner, SystemClock.elapsedRealtime() - startMs);
+          updateNarrowedScanner(formatLearner.getNarrowedFormats());
+        });
+  }
+
+  private void updateNarrowedScanner(int formats) {
+    if (isShutdown() || formats == narrowedFormats) {
+      return;
+    }
+    BarcodeScanner previousScanner = narrowedScanner;
+    narrowedScanner = createScanner(formats);
+    narrowedFormats = formats;
+    if (previousScanner != null) {
+      releaseScanner(previousScanner);
+    }
+  }
+
+  private BarcodeScanner createScanner(int formats) {
+    BarcodeScannerOptions.Builder builder = new BarcodeScannerOptions.Builder();
+    if (formats != Barcode.FORMAT_ALL_FORMATS) {
+      int[] formatList = BarcodeFormatLearner.toFormatList(formats);
+      builder.setBarcodeFormats(
+          formatList[0], Arrays.copyOfRange(formatList, 1, formatList.length));
+    }
+    if (zoomCallback != null) {
+      // Scanners with zoom suggestions call back into the camera of one activity, so are not
+      // pooled.
+      builder.setZoomSuggestionOptions(new ZoomSuggestionOptions.Builder(zoomCallback).build());
+      return BarcodeScanning.getClient(builder.build());
+    }
+    BarcodeScannerOptions options = builder.build();
+    return DetectorPool.acquire(
+        context, BarcodeScanner.class, options, () -> BarcodeScanning.getClient(options));
+  }
+
+  private void releaseScanner(BarcodeScanner scanner) {
+    if (zoomCallback != null) {
+      scanner.close();
+    } else {
+      DetectorPool.release(scanner);
+    }
+  }
+
   @Override
   protected void onSuccess(
       @NonNull List<Barcode> barcodes, @NonNull GraphicOverlay graphicOverlay) {
@@ -77,12 +191,37 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
       Log.v(MANUAL_TESTING_LOG, "No barcode has been detected");
     }
     for (int i = 0; i < barcodes.size(); ++i) {
-      Barcode barcode = barcodes.get(i);
-      graphicOverlay.add(new BarcodeGraphic(graphicOverlay, barcode));
+      graphicOverlay.add(new BarcodeGraphic(graphicOverlay, barcodes.get(i)));
+    }
+    List<Barcode> newBarcodes = barcodes;
+    if (barcodeTracker != null) {
+      // The overlay is set to the frame these results were cropped from.
+      newBarcodes =
+          barcodeTracker.update(
+              barcodes,
+              graphicOverlay.getImageOffsetX(),
+              graphicOverlay.getImageOffsetY(),
+              graphicOverlay.getImageWidth(),
+              graphicOverlay.getImageHeight());
+    }
+    for (Barcode barcode : newBarcodes) {
+      if (barcodeTracker != null) {
+        Log.i(TAG, "New barcode: " + barcode.getDisplayValue());
+      }
       logExtrasForTesting(barcode);
     }
   }
 
+  @Override
+  @Nullable
+  protected RectF getResultBounds(@NonNull List<Barcode> barcodes) {
+    List<Rect> boundingBoxes = new ArrayList<>();
+    for (Barcode barcode : barcodes) {
+      boundingBoxes.add(barcode.getBoundingBox());
+    }
+    return getUnionBounds(boundingBoxes);
+  }
+
   private static void logExtrasForTesting(Barcode barcode) {
     if (barcode != null) {
       if (barcode.getBoundingBox() != null) {
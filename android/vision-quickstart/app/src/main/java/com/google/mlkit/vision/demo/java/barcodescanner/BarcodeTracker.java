@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.barcodescanner;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.demo.VisionMetrics;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Follows barcodes across live frames, so that each one is only reported once while it stays in
+ * view.
+ *
+ * <p>A barcode is matched to the nearest track of the same format and raw value. Barcodes without
+ * a raw value are matched by position only, if their center is within {@link
+ * #MAX_MATCH_DISTANCE} times their size of the track. Positions are normalized to the whole
+ * upright frame, so that frames cropped or subsampled differently can be compared. Tracks that
+ * were not matched for {@link #LOST_TIMEOUT_MS} are dropped.
+ *
+ * <p>Not thread safe, results are expected to be fed on the main thread. New barcodes are counted
+ * in {@link VisionMetrics} under {@code barcode.new_barcodes}.
+ */
+final class BarcodeTracker {
+
+  private static final long LOST_TIMEOUT_MS = 1_000;
+  private static final float MAX_MATCH_DISTANCE = 1f;
+
+  private final List<Track> tracks = new ArrayList<>();
+
+  /**
+   * Matches the barcodes found in a frame to the tracked ones and returns those seen for the first
+   * time.
+   *
+   * @param offsetX where the detector input starts horizontally within the frame
+   * @param offsetY where the detector input starts vertically within the frame
+   * @param frameWidth the width of the upright frame in the coordinates of the detector input
+   * @param frameHeight the height of the upright frame in the coordinates of the detector input
+   */
+  List<Barcode> update(
+      List<Barcode> barcodes, float offsetX, float offsetY, int frameWidth, int frameHeight) {
+    long nowMs = SystemClock.elapsedRealtime();
+    List<Track> matchedTracks = new ArrayList<>();
+    List<Barcode> newBarcodes = new ArrayList<>();
+    for (Barcode barcode : barcodes) {
+      Rect boundingBox = barcode.getBoundingBox();
+      if (boundingBox == null) {
+        continue;
+      }
+      float[] center = getCenter(barcode, boundingBox);
+      float centerX = (center[0] + offsetX) / frameWidth;
+      float centerY = (center[1] + offsetY) / frameHeight;
+      float size =
+          Math.max(
+              (float) boundingBox.width() / frameWidth, (float) boundingBox.height() / frameHeight);
+      Track track = findTrack(barcode, centerX, centerY, size, matchedTracks);
+      if (track == null) {
+        track = new Track(barcode.getFormat(), barcode.getRawValue());
+        tracks.add(track);
+        newBarcodes.add(barcode);
+      }
+      track.centerX = centerX;
+      track.centerY = centerY;
+      track.size = size;
+      track.lastSeenMs = nowMs;
+      matchedTracks.add(track);
+    }
+
+    Iterator<Track> iterator = tracks.iterator();
+    while (iterator.hasNext()) {
+      if (nowMs - iterator.next().lastSeenMs > LOST_TIMEOUT_MS) {
+        iterator.remove();
+      }
+    }
+    if (!newBarcodes.isEmpty()) {
+      VisionMetrics.incrementCounter("barcode.new_barcodes", newBarcodes.size());
+    }
+    VisionMetrics.setGauge("barcode.tracked", tracks.size());
+    return newBarcodes;
+  }
+
+  @Nullable
+  private Track findTrack(
+      Barcode barcode, float centerX, float centerY, float size, List<Track> matchedTracks) {
+    String rawValue = barcode.getRawValue();
+    Track nearestTrack = null;
+    float nearestDistance = Float.MAX_VALUE;
+    for (Track track : tracks) {
+      if (track.format != barcode.getFormat()
+          || !Objects.equals(track.rawValue, rawValue)
+          || matchedTracks.contains(track)) {
+        continue;
+      }
+      float distance = (float) Math.hypot(track.centerX - centerX, track.centerY - centerY);
+      if (rawValue == null && distance > MAX_MATCH_DISTANCE * Math.max(size, track.size)) {
+        continue;
+      }
+      if (distance < nearestDistance) {
+        nearestTrack = track;
+        nearestDistance = distance;
+      }
+    }
+    return nearestTrack;
+  }
+
+  /** Returns the center of the corner points, or of the bounding box if there are none. */
+  private static float[] getCenter(Barcode barcode, Rect boundingBox) {
+    Point[] cornerPoints = barcode.getCornerPoints();
+    if (cornerPoints == null || cornerPoints.length == 0) {
+      return new float[] {boundingBox.exactCenterX(), boundingBox.exactCenterY()};
+    }
+    float sumX = 0;
+    float sumY = 0;
+    for (Point point : cornerPoints) {
+      sumX += point.x;
+      sumY += point.y;
+    }
+    return new float[] {sumX / cornerPoints.length, sumY / cornerPoints.length};
+  }
+
+  private static final class Track {
+    final int format;
+    @Nullable final String rawValue;
+    float centerX;
+    float centerY;
+    float size;
+    long lastSeenMs;
+
+    Track(int format, @Nullable String rawValue) {
+      this.format = format;
+      this.rawValue = rawValue;
+    }
+  }
+}
@@ -18,11 +18,18 @@ package com.google.mlkit.vision.demo.java.facedetector;
 
 import android.content.Context;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorPool;
 import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.LandmarkTracker;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.face.Face;
@@ -30,8 +37,11 @@ import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.google.mlkit.vision.face.FaceLandmark;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /** Face Detector Demo. */
 public class FaceDetectorProcessor extends VisionProcessorBase<List<Face>> {
@@ -39,31 +49,124 @@ public class FaceDetectorProcessor extends VisionProcessorBase<List<Face>> {
   private static final String TAG = "FaceDetectorProcessor";
 
   private final FaceDetector detector;
+  // Only created for live frames if two-tier detection is turned on, along with twoTierDetector.
+  @Nullable private final FaceDetector fastDetector;
+  @Nullable private final TwoTierFaceDetector twoTierDetector;
+  // Only created for live frames if keyframe tracking is turned on.
+  @Nullable private final LandmarkTracker landmarkTracker;
+  // The results last fed to the tracker, only accessed on the main thread.
+  @Nullable private List<Face> trackedFaces;
 
   public FaceDetectorProcessor(Context context) {
+    this(context, /* isLiveMode= */ false);
+  }
+
+  /**
+   * Creates a processor that, for live frames, applies the face settings that only make sense
+   * across frames: running the detector with the chosen options on keyframes only, with a fast
+   * detector in between (see {@link TwoTierFaceDetector}), and only running any detector on
+   * keyframes, drawing the faces from their tracked landmarks in between (see {@link
+   * LandmarkTracker}).
+   */
+  public FaceDetectorProcessor(Context context, boolean isLiveMode) {
     super(context);
     FaceDetectorOptions faceDetectorOptions = PreferenceUtils.getFaceDetectorOptions(context);
     Log.v(MANUAL_TESTING_LOG, "Face detector options: " + faceDetectorOptions);
-    detector = FaceDetection.getClient(faceDetectorOptions);
+    detector =
+        DetectorPool.acquire(
+            context,
+            FaceDetector.class,
+            faceDetectorOptions,
+            () -> FaceDetection.getClient(faceDetectorOptions));
+    if (isLiveMode && PreferenceUtils.isTwoTierFaceDetectionEnabled(context)) {
+      FaceDetectorOptions fastOptions = PreferenceUtils.getFastFaceDetectorOptions(context);
+      fastDetector =
+          DetectorPool.acquire(
+              context, FaceDetector.class, fastOptions, () -> FaceDetection.getClient(fastOptions));
+      twoTierDetector = new TwoTierFaceDetector(fastDetector, detector);
+    } else {
+      fastDetector = null;
+      twoTierDetector = null;
+    }
+    if (isLiveMode && PreferenceUtils.isKeyframeTrackingEnabled(context)) {
+      landmarkTracker = new LandmarkTracker("face_keyframes");
+      setLandmarkTracker(landmarkTracker);
+    } else {
+      landmarkTracker = null;
+    }
   }
 
   @Override
   public void stop() {
+    if (isShutdown()) {
+      return;
+    }
     super.stop();
-    detector.close();
+    DetectorPool.release(detector);
+    if (fastDetector != null) {
+      DetectorPool.release(fastDetector);
+    }
   }
 
   @Override
   protected Task<List<Face>> detectInImage(InputImage image) {
+    if (twoTierDetector != null) {
+      return twoTierDetector.process(image);
+    }
+    return detector.process(image);
+  }
+
+  @Override
+  protected Task<?> warmUpDetector(InputImage image) {
+    // Skips the two-tier detector, which would keep the empty results for the next frames.
+    if (fastDetector != null) {
+      return Tasks.whenAll(detector.process(image), fastDetector.process(image));
+    }
+    return detector.process(image);
+  }
+
+  @Override
+  protected Task<List<Face>> detectInImage(MlImage image) {
+    if (twoTierDetector != null) {
+      return twoTierDetector.process(image);
+    }
     return detector.process(image);
   }
 
   @Override
   protected void onSuccess(@NonNull List<Face> faces, @NonNull GraphicOverlay graphicOverlay) {
+    // With keyframe tracking, the results of the last keyframe are passed again for skipped frames,
+    // so only new results are fed to the tracker.
+    boolean isKeyframe = landmarkTracker == null || faces != trackedFaces;
+    if (landmarkTracker != null && isKeyframe) {
+      trackedFaces = faces;
+      Map<Long, PointF> points = new HashMap<>();
+      for (int i = 0; i < faces.size(); i++) {
+        FaceGraphic.addTrackedPoints(faces.get(i), FaceGraphic.getFaceKey(faces.get(i), i), points);
+      }
+      landmarkTracker.update(
+          points, graphicOverlay.getImageWidth(), graphicOverlay.getImageHeight());
+    }
+    for (int i = 0; i < faces.size(); i++) {
+      Face face = faces.get(i);
+      Face details = twoTierDetector != null ? twoTierDetector.getAttributes(face) : null;
+      graphicOverlay.add(
+          new FaceGraphic(
+              graphicOverlay, face, details, landmarkTracker, FaceGraphic.getFaceKey(face, i)));
+      if (isKeyframe) {
+        logExtrasForTesting(face);
+      }
+    }
+  }
+
+  @Override
+  @Nullable
+  protected RectF getResultBounds(@NonNull List<Face> faces) {
+    List<Rect> boundingBoxes = new ArrayList<>();
     for (Face face : faces) {
-      graphicOverlay.add(new FaceGraphic(graphicOverlay, face));
-      logExtrasForTesting(face);
+      boundingBoxes.add(face.getBoundingBox());
     }
+    return getUnionBounds(boundingBoxes);
   }
 
   private static void logExtrasForTesting(Face face) {
@@ -20,13 +20,18 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import androidx.annotation.Nullable;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import com.google.mlkit.vision.demo.LandmarkTracker;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceContour;
 import com.google.mlkit.vision.face.FaceLandmark;
 import com.google.mlkit.vision.face.FaceLandmark.LandmarkType;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Graphic instance for rendering face position, contour, and landmarks within the associated
@@ -52,6 +57,12 @@ public class FaceGraphic extends Graphic {
         {Color.WHITE, Color.BLACK},
         {Color.BLACK, Color.GREEN}
       };
+  // Ids of the points of a face in a landmark tracker. Contour points are numbered from their
+  // contour type, which starts at 1, times MAX_CONTOUR_POINTS.
+  private static final int BOX_CENTER_POINT = 0;
+  private static final int MAX_CONTOUR_POINTS = 64;
+  private static final int FIRST_LANDMARK_POINT = 2048;
+  private static final int POINTS_PER_FACE = 4096;
 
   private final Paint facePositionPaint;
   private final Paint[] idPaints;
@@ -59,11 +70,46 @@ public class FaceGraphic extends Graphic {
   private final Paint[] labelPaints;
 
   private volatile Face face;
+  // The face to draw the contours, landmarks and classification of, moved by detailsOffsetX/Y.
+  private final Face details;
+  private final float detailsOffsetX;
+  private final float detailsOffsetY;
+  @Nullable private final LandmarkTracker landmarkTracker;
+  private final long faceKey;
 
   FaceGraphic(GraphicOverlay overlay, Face face) {
+    this(overlay, face, /* details= */ null, /* landmarkTracker= */ null, /* faceKey= */ 0);
+  }
+
+  /**
+   * Creates a graphic that draws the face at the positions tracked by the given tracker, see
+   * {@link #addTrackedPoints}.
+   *
+   * @param details the same face found by another detector with more options, e.g. on a previous
+   *     keyframe, to draw the contours, landmarks and classification of, or null to use the face
+   */
+  FaceGraphic(
+      GraphicOverlay overlay,
+      Face face,
+      @Nullable Face details,
+      @Nullable LandmarkTracker landmarkTracker,
+      long faceKey) {
     super(overlay);
 
     this.face = face;
+    if (details != null) {
+      this.details = details;
+      detailsOffsetX =
+          face.getBoundingBox().exactCenterX() - details.getBoundingBox().exactCenterX();
+      detailsOffsetY =
+          face.getBoundingBox().exactCenterY() - details.getBoundingBox().exactCenterY();
+    } else {
+      this.details = face;
+      detailsOffsetX = 0;
+      detailsOffsetY = 0;
+    }
+    this.landmarkTracker = landmarkTracker;
+    this.faceKey = faceKey;
     final int selectedColor = Color.WHITE;
 
     facePositionPaint = new Paint();
@@ -98,8 +144,12 @@ public class FaceGraphic extends Graphic {
     }
 
     // Draws a circle at the position of the detected face, with the face's track id below.
-    float x = translateX(face.getBoundingBox().centerX());
-    float y = translateY(face.getBoundingBox().centerY());
+    PointF center =
+        getPosition(
+            BOX_CENTER_POINT,
+            new PointF(face.getBoundingBox().centerX(), face.getBoundingBox().centerY()));
+    float x = translateX(center.x);
+    float y = translateY(center.y);
     canvas.drawCircle(x, y, FACE_POSITION_RADIUS, facePositionPaint);
 
     // Calculate positions.
@@ -115,31 +165,31 @@ public class FaceGraphic extends Graphic {
 
     // Calculate width and height of label box
     float textWidth = idPaints[colorID].measureText("ID: " + face.getTrackingId());
-    if (face.getSmilingProbability() != null) {
+    if (details.getSmilingProbability() != null) {
       yLabelOffset -= lineHeight;
       textWidth =
           Math.max(
               textWidth,
               idPaints[colorID].measureText(
-                  String.format(Locale.US, "Happiness: %.2f", face.getSmilingProbability())));
+                  String.format(Locale.US, "Happiness: %.2f", details.getSmilingProbability())));
     }
-    if (face.getLeftEyeOpenProbability() != null) {
+    if (details.getLeftEyeOpenProbability() != null) {
       yLabelOffset -= lineHeight;
       textWidth =
           Math.max(
               textWidth,
               idPaints[colorID].measureText(
                   String.format(
-                      Locale.US, "Left eye open: %.2f", face.getLeftEyeOpenProbability())));
+                      Locale.US, "Left eye open: %.2f", details.getLeftEyeOpenProbability())));
     }
-    if (face.getRightEyeOpenProbability() != null) {
+    if (details.getRightEyeOpenProbability() != null) {
       yLabelOffset -= lineHeight;
       textWidth =
           Math.max(
               textWidth,
               idPaints[colorID].measureText(
                   String.format(
-                      Locale.US, "Right eye open: %.2f", face.getRightEyeOpenProbability())));
+                      Locale.US, "Right eye open: %.2f", details.getRightEyeOpenProbability())));
     }
 
     yLabelOffset = yLabelOffset - 3 * lineHeight;
@@ -147,17 +197,17 @@ public class FaceGraphic extends Graphic {
         Math.max(
             textWidth,
             idPaints[colorID].measureText(
-                String.format(Locale.US, "EulerX: %.2f", face.getHeadEulerAngleX())));
+                String.format(Locale.US, "EulerX: %.2f", details.getHeadEulerAngleX())));
     textWidth =
         Math.max(
             textWidth,
             idPaints[colorID].measureText(
-                String.format(Locale.US, "EulerY: %.2f", face.getHeadEulerAngleY())));
+                String.format(Locale.US, "EulerY: %.2f", details.getHeadEulerAngleY())));
     textWidth =
         Math.max(
             textWidth,
             idPaints[colorID].measureText(
-                String.format(Locale.US, "EulerZ: %.2f", face.getHeadEulerAngleZ())));
+                String.format(Locale.US, "EulerZ: %.2f", details.getHeadEulerAngleZ())));
     // Draw labels
     canvas.drawRect(
         left - BOX_STROKE_WIDTH,
@@ -173,81 +223,84 @@ public class FaceGraphic extends Graphic {
     }
 
     // Draws all face contours.
-    for (FaceContour contour : face.getAllContours()) {
-      for (PointF point : contour.getPoints()) {
+    for (FaceContour contour : details.getAllContours()) {
+      List<PointF> points = contour.getPoints();
+      for (int i = 0; i < points.size(); i++) {
+        PointF point =
+            getDetailsPosition(getContourPointId(contour.getFaceContourType(), i), points.get(i));
         canvas.drawCircle(
             translateX(point.x), translateY(point.y), FACE_POSITION_RADIUS, facePositionPaint);
       }
     }
 
     // Draws smiling and left/right eye open probabilities.
-    if (face.getSmilingProbability() != null) {
+    if (details.getSmilingProbability() != null) {
       canvas.drawText(
-          "Smiling: " + String.format(Locale.US, "%.2f", face.getSmilingProbability()),
+          "Smiling: " + String.format(Locale.US, "%.2f", details.getSmilingProbability()),
           left,
           top + yLabelOffset,
           idPaints[colorID]);
       yLabelOffset += lineHeight;
     }
 
-    FaceLandmark leftEye = face.getLandmark(FaceLandmark.LEFT_EYE);
-    if (face.getLeftEyeOpenProbability() != null) {
+    FaceLandmark leftEye = details.getLandmark(FaceLandmark.LEFT_EYE);
+    if (details.getLeftEyeOpenProbability() != null) {
       canvas.drawText(
-          "Left eye open: " + String.format(Locale.US, "%.2f", face.getLeftEyeOpenProbability()),
+          "Left eye open: " + String.format(Locale.US, "%.2f", details.getLeftEyeOpenProbability()),
           left,
           top + yLabelOffset,
           idPaints[colorID]);
       yLabelOffset += lineHeight;
     }
     if (leftEye != null) {
+      PointF leftEyePosition = getLandmarkPosition(leftEye);
       float leftEyeLeft =
-          translateX(leftEye.getPosition().x) - idPaints[colorID].measureText("Left Eye") / 2.0f;
+          translateX(leftEyePosition.x) - idPaints[colorID].measureText("Left Eye") / 2.0f;
       canvas.drawRect(
           leftEyeLeft - BOX_STROKE_WIDTH,
-          translateY(leftEye.getPosition().y) + ID_Y_OFFSET - ID_TEXT_SIZE,
+          translateY(leftEyePosition.y) + ID_Y_OFFSET - ID_TEXT_SIZE,
           leftEyeLeft + idPaints[colorID].measureText("Left Eye") + BOX_STROKE_WIDTH,
-          translateY(leftEye.getPosition().y) + ID_Y_OFFSET + BOX_STROKE_WIDTH,
+          translateY(leftEyePosition.y) + ID_Y_OFFSET + BOX_STROKE_WIDTH,
           labelPaints[colorID]);
       canvas.drawText(
-          "Left Eye",
-          leftEyeLeft,
-          translateY(leftEye.getPosition().y) + ID_Y_OFFSET,
-          idPaints[colorID]);
+          "Left Eye", leftEyeLeft, translateY(leftEyePosition.y) + ID_Y_OFFSET, idPaints[colorID]);
     }
 
-    FaceLandmark rightEye = face.getLandmark(FaceLandmark.RIGHT_EYE);
-    if (face.getRightEyeOpenProbability() != null) {
+    FaceLandmark rightEye = details.getLandmark(FaceLandmark.RIGHT_EYE);
+    if (details.getRightEyeOpenProbability() != null) {
       canvas.drawText(
-          "Right eye open: " + String.format(Locale.US, "%.2f", face.getRightEyeOpenProbability()),
+          "Right eye open: "
+              + String.format(Locale.US, "%.2f", details.getRightEyeOpenProbability()),
           left,
           top + yLabelOffset,
           idPaints[colorID]);
       yLabelOffset += lineHeight;
     }
     if (rightEye != null) {
+      PointF rightEyePosition = getLandmarkPosition(rightEye);
       float rightEyeLeft =
-          translateX(rightEye.getPosition().x) - idPaints[colorID].measureText("Right Eye") / 2.0f;
+          translateX(rightEyePosition.x) - idPaints[colorID].measureText("Right Eye") / 2.0f;
       canvas.drawRect(
           rightEyeLeft - BOX_STROKE_WIDTH,
-          translateY(rightEye.getPosition().y) + ID_Y_OFFSET - ID_TEXT_SIZE,
+          translateY(rightEyePosition.y) + ID_Y_OFFSET - ID_TEXT_SIZE,
           rightEyeLeft + idPaints[colorID].measureText("Right Eye") + BOX_STROKE_WIDTH,
-          translateY(rightEye.getPosition().y) + ID_Y_OFFSET + BOX_STROKE_WIDTH,
+          translateY(rightEyePosition.y) + ID_Y_OFFSET + BOX_STROKE_WIDTH,
           labelPaints[colorID]);
       canvas.drawText(
           "Right Eye",
           rightEyeLeft,
-          translateY(rightEye.getPosition().y) + ID_Y_OFFSET,
+          translateY(rightEyePosition.y) + ID_Y_OFFSET,
           idPaints[colorID]);
     }
 
     canvas.drawText(
-        "EulerX: " + face.getHeadEulerAngleX(), left, top + yLabelOffset, idPaints[colorID]);
+        "EulerX: " + details.getHeadEulerAngleX(), left, top + yLabelOffset, idPaints[colorID]);
     yLabelOffset += lineHeight;
     canvas.drawText(
-        "EulerY: " + face.getHeadEulerAngleY(), left, top + yLabelOffset, idPaints[colorID]);
+        "EulerY: " + details.getHeadEulerAngleY(), left, top + yLabelOffset, idPaints[colorID]);
     yLabelOffset += lineHeight;
     canvas.drawText(
-        "EulerZ: " + face.getHeadEulerAngleZ(), left, top + yLabelOffset, idPaints[colorID]);
+        "EulerZ: " + details.getHeadEulerAngleZ(), left, top + yLabelOffset, idPaints[colorID]);
 
     // Draw facial landmarks
     drawFaceLandmark(canvas, FaceLandmark.LEFT_EYE);
@@ -257,13 +310,66 @@ public class FaceGraphic extends Graphic {
   }
 
   private void drawFaceLandmark(Canvas canvas, @LandmarkType int landmarkType) {
-    FaceLandmark faceLandmark = face.getLandmark(landmarkType);
+    FaceLandmark faceLandmark = details.getLandmark(landmarkType);
     if (faceLandmark != null) {
+      PointF position = getLandmarkPosition(faceLandmark);
       canvas.drawCircle(
-          translateX(faceLandmark.getPosition().x),
-          translateY(faceLandmark.getPosition().y),
-          FACE_POSITION_RADIUS,
-          facePositionPaint);
+          translateX(position.x), translateY(position.y), FACE_POSITION_RADIUS, facePositionPaint);
+    }
+  }
+
+  private PointF getLandmarkPosition(FaceLandmark landmark) {
+    return getDetailsPosition(
+        FIRST_LANDMARK_POINT + landmark.getLandmarkType(), landmark.getPosition());
+  }
+
+  /** Returns where to draw a point of the details, moved along with the face. */
+  private PointF getDetailsPosition(int pointId, PointF detectedPosition) {
+    if (details == face) {
+      return getPosition(pointId, detectedPosition);
     }
+    return getPosition(
+        pointId,
+        new PointF(detectedPosition.x + detailsOffsetX, detectedPosition.y + detailsOffsetY));
+  }
+
+  /** Returns where to draw a point of the face, tracked if there is a tracker. */
+  private PointF getPosition(int pointId, PointF detectedPosition) {
+    if (landmarkTracker == null) {
+      return detectedPosition;
+    }
+    return landmarkTracker.getPosition(faceKey * POINTS_PER_FACE + pointId, detectedPosition);
+  }
+
+  /**
+   * Returns the key identifying a face across frames: its tracking id if face tracking is turned
+   * on, its index in the results otherwise.
+   */
+  static long getFaceKey(Face face, int index) {
+    Integer trackingId = face.getTrackingId();
+    return trackingId != null ? trackingId : -1 - index;
+  }
+
+  /** Adds the points drawn for a face to the given map, keyed as a tracker is asked for them. */
+  static void addTrackedPoints(Face face, long faceKey, Map<Long, PointF> points) {
+    long firstKey = faceKey * POINTS_PER_FACE;
+    Rect boundingBox = face.getBoundingBox();
+    points.put(
+        firstKey + BOX_CENTER_POINT, new PointF(boundingBox.centerX(), boundingBox.centerY()));
+    for (FaceContour contour : face.getAllContours()) {
+      List<PointF> contourPoints = contour.getPoints();
+      for (int i = 0; i < contourPoints.size(); i++) {
+        points.put(
+            firstKey + getContourPointId(contour.getFaceContourType(), i), contourPoints.get(i));
+      }
+    }
+    for (FaceLandmark landmark : face.getAllLandmarks()) {
+      points.put(
+          firstKey + FIRST_LANDMARK_POINT + landmark.getLandmarkType(), landmark.getPosition());
+    }
+  }
+
+  private static int getContourPointId(int contourType, int index) {
+    return contourType * MAX_CONTOUR_POINTS + index;
   }
 }
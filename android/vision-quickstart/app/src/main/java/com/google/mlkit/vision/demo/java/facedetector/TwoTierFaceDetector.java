@@ -0,0 +1,197 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.facedetector;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.android.odml.image.MlImage;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.VisionMetrics;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetector;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects faces in live frames with two detectors: a fast one with tracking on every frame, and
+ * one with the expensive options from the settings, e.g. contours and classification, only on
+ * keyframes.
+ *
+ * <p>A frame is a keyframe every {@link #KEYFRAME_INTERVAL_MS}, and right after the fast detector
+ * found a face with a tracking id it has not seen before. Both detectors then run on the same
+ * frame, and each face of the full detector is matched to the fast face it overlaps most. Its
+ * attributes are kept by the tracking id of the fast face until that face is lost, so that they
+ * can be drawn along with the fast faces of the next frames.
+ *
+ * <p>Detections are counted in {@link VisionMetrics} under {@code face_tiers.*}.
+ */
+final class TwoTierFaceDetector {
+
+  private static final long KEYFRAME_INTERVAL_MS = 500;
+  // Minimum intersection over union for a face of the full detector to match a fast one.
+  private static final float MIN_MATCH_IOU = 0.3f;
+
+  private final FaceDetector fastDetector;
+  private final FaceDetector fullDetector;
+
+  // Faces of the full detector, by tracking id of the matching fast face.
+  @GuardedBy("this")
+  private final Map<Integer, Face> attributesByTrackingId = new HashMap<>();
+
+  // Tracking ids of the fast faces present in the last keyframe.
+  @GuardedBy("this")
+  private final Set<Integer> keyframeTrackingIds = new HashSet<>();
+
+  @GuardedBy("this")
+  private boolean hasNewFaces;
+
+  @GuardedBy("this")
+  private long lastKeyframeMs;
+
+  TwoTierFaceDetector(FaceDetector fastDetector, FaceDetector fullDetector) {
+    this.fastDetector = fastDetector;
+    this.fullDetector = fullDetector;
+  }
+
+  /** Detects the faces in a frame, returning those of the fast detector. */
+  Task<List<Face>> process(InputImage image) {
+    if (!startKeyframe()) {
+      return onFastResults(fastDetector.process(image));
+    }
+    return merge(fastDetector.process(image), fullDetector.process(image));
+  }
+
+  /** Detects the faces in a frame, returning those of the fast detector. */
+  Task<List<Face>> process(MlImage image) {
+    // Both detectors are started before this returns, as the image may be closed right after.
+    if (!startKeyframe()) {
+      return onFastResults(fastDetector.process(image));
+    }
+    return merge(fastDetector.process(image), fullDetector.process(image));
+  }
+
+  /**
+   * Returns the face found by the full detector for the given fast face in the last keyframe it
+   * was matched in, or null if there is none.
+   */
+  @Nullable
+  synchronized Face getAttributes(Face face) {
+    Integer trackingId = face.getTrackingId();
+    return trackingId != null ? attributesByTrackingId.get(trackingId) : null;
+  }
+
+  private synchronized boolean startKeyframe() {
+    long nowMs = SystemClock.elapsedRealtime();
+    if (!hasNewFaces && nowMs - lastKeyframeMs < KEYFRAME_INTERVAL_MS) {
+      VisionMetrics.incrementCounter("face_tiers.fast_detections", 1);
+      return false;
+    }
+    if (hasNewFaces) {
+      VisionMetrics.incrementCounter("face_tiers.new_face_keyframes", 1);
+    }
+    hasNewFaces = false;
+    lastKeyframeMs = nowMs;
+    VisionMetrics.incrementCounter("face_tiers.full_detections", 1);
+    return true;
+  }
+
+  private Task<List<Face>> onFastResults(Task<List<Face>> fastTask) {
+    // Listeners without an executor run on the main thread.
+    return fastTask.addOnSuccessListener(
+        faces -> {
+          synchronized (TwoTierFaceDetector.this) {
+            for (Face face : faces) {
+              Integer trackingId = face.getTrackingId();
+              if (trackingId != null && !keyframeTrackingIds.contains(trackingId)) {
+                hasNewFaces = true;
+              }
+            }
+            dropLostFaces(faces);
+          }
+        });
+  }
+
+  private Task<List<Face>> merge(Task<List<Face>> fastTask, Task<List<Face>> fullTask) {
+    return Tasks.whenAllComplete(fastTask, fullTask)
+        .continueWith(
+            task -> {
+              if (!fastTask.isSuccessful()) {
+                throw fastTask.getException();
+              }
+              List<Face> faces = fastTask.getResult();
+              synchronized (TwoTierFaceDetector.this) {
+                dropLostFaces(faces);
+                keyframeTrackingIds.clear();
+                for (Face face : faces) {
+                  if (face.getTrackingId() != null) {
+                    keyframeTrackingIds.add(face.getTrackingId());
+                  }
+                }
+                if (fullTask.isSuccessful()) {
+                  for (Face fullFace : fullTask.getResult()) {
+                    Face face = findMatchingFace(fullFace, faces);
+                    if (face != null && face.getTrackingId() != null) {
+                      attributesByTrackingId.put(face.getTrackingId(), fullFace);
+                    }
+                  }
+                }
+              }
+              return faces;
+            });
+  }
+
+  @GuardedBy("this")
+  private void dropLostFaces(List<Face> faces) {
+    Set<Integer> trackingIds = new HashSet<>();
+    for (Face face : faces) {
+      trackingIds.add(face.getTrackingId());
+    }
+    attributesByTrackingId.keySet().retainAll(trackingIds);
+  }
+
+  @Nullable
+  private static Face findMatchingFace(Face fullFace, List<Face> faces) {
+    Face bestFace = null;
+    float bestIou = MIN_MATCH_IOU;
+    for (Face face : faces) {
+      float iou = getIntersectionOverUnion(fullFace.getBoundingBox(), face.getBoundingBox());
+      if (iou >= bestIou) {
+        bestFace = face;
+        bestIou = iou;
+      }
+    }
+    return bestFace;
+  }
+
+  private static float getIntersectionOverUnion(Rect a, Rect b) {
+    Rect intersection = new Rect();
+    if (!intersection.setIntersect(a, b)) {
+      return 0;
+    }
+    float intersectionArea = (float) intersection.width() * intersection.height();
+    float unionArea =
+        (float) a.width() * a.height() + (float) b.width() * b.height() - intersectionArea;
+    return unionArea > 0 ? intersectionArea / unionArea : 0;
+  }
+}
@@ -17,11 +17,15 @@
 package com.google.mlkit.vision.demo.java.facemeshdetector;
 
 import android.content.Context;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.Task;
 import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorPool;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
@@ -29,6 +33,7 @@ import com.google.mlkit.vision.facemesh.FaceMesh;
 import com.google.mlkit.vision.facemesh.FaceMeshDetection;
 import com.google.mlkit.vision.facemesh.FaceMeshDetector;
 import com.google.mlkit.vision.facemesh.FaceMeshDetectorOptions;
+import java.util.ArrayList;
 import java.util.List;
 
 /** Selfie Face Detector Demo. */
@@ -45,13 +50,19 @@ public class FaceMeshDetectorProcessor extends VisionProcessorBase<List<FaceMesh
       optionsBuilder.setUseCase(FaceMeshDetectorOptions.BOUNDING_BOX_ONLY);
     }
 
-    detector = FaceMeshDetection.getClient(optionsBuilder.build());
+    FaceMeshDetectorOptions options = optionsBuilder.build();
+    detector =
+        DetectorPool.acquire(
+            context, FaceMeshDetector.class, options, () -> FaceMeshDetection.getClient(options));
   }
 
   @Override
   public void stop() {
+    if (isShutdown()) {
+      return;
+    }
     super.stop();
-    detector.close();
+    DetectorPool.release(detector);
   }
 
   @Override
@@ -59,6 +70,11 @@ public class FaceMeshDetectorProcessor extends VisionProcessorBase<List<FaceMesh
     return detector.process(image);
   }
 
+  @Override
+  protected Task<List<FaceMesh>> detectInImage(MlImage image) {
+    return detector.process(image);
+  }
+
   @Override
   protected void onSuccess(
       @NonNull List<FaceMesh> faces, @NonNull GraphicOverlay graphicOverlay) {
@@ -67,6 +83,16 @@ public class FaceMeshDetectorProcessor extends VisionProcessorBase<List<FaceMesh
     }
   }
 
+  @Override
+  @Nullable
+  protected RectF getResultBounds(@NonNull List<FaceMesh> faces) {
+    List<Rect> boundingBoxes = new ArrayList<>();
+    for (FaceMesh face : faces) {
+      boundingBoxes.add(face.getBoundingBox());
+    }
+    return getUnionBounds(boundingBoxes);
+  }
+
   @Override
   protected void onFailure(@NonNull Exception e) {
     Log.e(TAG, "Face detection failed " + e);
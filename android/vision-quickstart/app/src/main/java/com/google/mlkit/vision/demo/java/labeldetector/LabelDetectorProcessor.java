@@ -20,7 +20,9 @@ import android.content.Context;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import com.google.android.gms.tasks.Task;
+import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorPool;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.label.ImageLabel;
@@ -38,13 +40,18 @@ public class LabelDetectorProcessor extends VisionProcessorBase<List<ImageLabel>
 
   public LabelDetectorProcessor(Context context, ImageLabelerOptionsBase options) {
     super(context);
-    imageLabeler = ImageLabeling.getClient(options);
+    imageLabeler =
+        DetectorPool.acquire(
+            context, ImageLabeler.class, options, () -> ImageLabeling.getClient(options));
   }
 
   @Override
   public void stop() {
+    if (isShutdown()) {
+      return;
+    }
     super.stop();
-    imageLabeler.close();
+    DetectorPool.release(imageLabeler);
   }
 
   @Override
@@ -52,6 +59,11 @@ public class LabelDetectorProcessor extends VisionProcessorBase<List<ImageLabel>
     return imageLabeler.process(image);
   }
 
+  @Override
+  protected Task<List<ImageLabel>> detectInImage(MlImage image) {
+    return imageLabeler.process(image);
+  }
+
   @Override
   protected void onSuccess(
       @NonNull List<ImageLabel> labels, @NonNull GraphicOverlay graphicOverlay) {
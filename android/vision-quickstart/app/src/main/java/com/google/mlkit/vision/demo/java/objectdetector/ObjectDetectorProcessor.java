@@ -17,16 +17,25 @@
 package com.google.mlkit.vision.demo.java.objectdetector;
 
 import android.content.Context;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.android.odml.image.MlImage;
+import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorPool;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.objects.DetectedObject;
 import com.google.mlkit.vision.objects.ObjectDetection;
 import com.google.mlkit.vision.objects.ObjectDetector;
 import com.google.mlkit.vision.objects.ObjectDetectorOptionsBase;
+import java.util.ArrayList;
 import java.util.List;
 
 /** A processor to run object detector. */
@@ -34,21 +43,88 @@ public class ObjectDetectorProcessor extends VisionProcessorBase<List<DetectedOb
 
   private static final String TAG = "ObjectDetectorProcessor";
 
+  // Runs on every frame: the detector with the given options, or the localizer of labelCache.
   private final ObjectDetector detector;
+  // Only created for live frames if the label cache is turned on, along with labelCache.
+  @Nullable private final ObjectDetector classifier;
+  @Nullable private final ObjectLabelCache labelCache;
 
   public ObjectDetectorProcessor(Context context, ObjectDetectorOptionsBase options) {
     super(context);
-    detector = ObjectDetection.getClient(options);
+    detector = acquireDetector(context, options);
+    classifier = null;
+    labelCache = null;
+  }
+
+  /**
+   * Creates a processor for a custom classification model that, for live frames and if turned on
+   * in the settings, detects objects with tracking on every frame and only classifies them when
+   * they are new or changed, caching their labels in between (see {@link ObjectLabelCache}).
+   *
+   * @param options the options to detect with when the label cache is off
+   * @param localModel the classification model of the options
+   */
+  public ObjectDetectorProcessor(
+      Context context,
+      ObjectDetectorOptionsBase options,
+      LocalModel localModel,
+      boolean isLiveMode) {
+    super(context);
+    if (isLiveMode && PreferenceUtils.isObjectLabelCacheEnabled(context)) {
+      detector =
+          acquireDetector(
+              context, PreferenceUtils.getObjectLocalizerOptionsForLivePreview(context));
+      classifier =
+          acquireDetector(
+              context, PreferenceUtils.getCustomObjectClassifierOptions(context, localModel));
+      labelCache = new ObjectLabelCache(detector, classifier);
+    } else {
+      detector = acquireDetector(context, options);
+      classifier = null;
+      labelCache = null;
+    }
+  }
+
+  private static ObjectDetector acquireDetector(
+      Context context, ObjectDetectorOptionsBase options) {
+    return DetectorPool.acquire(
+        context, ObjectDetector.class, options, () -> ObjectDetection.getClient(options));
   }
 
   @Override
   public void stop() {
+    if (isShutdown()) {
+      return;
+    }
     super.stop();
-    detector.close();
+    DetectorPool.release(detector);
+    if (classifier != null) {
+      DetectorPool.release(classifier);
+    }
   }
 
   @Override
   protected Task<List<DetectedObject>> detectInImage(InputImage image) {
+    if (labelCache != null) {
+      return labelCache.process(image);
+    }
+    return detector.process(image);
+  }
+
+  @Override
+  protected Task<?> warmUpDetector(InputImage image) {
+    // Skips the label cache, which would keep the empty results for the next frames.
+    if (classifier != null) {
+      return Tasks.whenAll(detector.process(image), classifier.process(image));
+    }
+    return detector.process(image);
+  }
+
+  @Override
+  protected Task<List<DetectedObject>> detectInImage(MlImage image) {
+    if (labelCache != null) {
+      return labelCache.process(image);
+    }
     return detector.process(image);
   }
 
@@ -56,8 +132,22 @@ public class ObjectDetectorProcessor extends VisionProcessorBase<List<DetectedOb
   protected void onSuccess(
       @NonNull List<DetectedObject> results, @NonNull GraphicOverlay graphicOverlay) {
     for (DetectedObject object : results) {
-      graphicOverlay.add(new ObjectGraphic(graphicOverlay, object));
+      if (labelCache != null) {
+        graphicOverlay.add(new ObjectGraphic(graphicOverlay, object, labelCache.getLabels(object)));
+      } else {
+        graphicOverlay.add(new ObjectGraphic(graphicOverlay, object));
+      }
+    }
+  }
+
+  @Override
+  @Nullable
+  protected RectF getResultBounds(@NonNull List<DetectedObject> results) {
+    List<Rect> boundingBoxes = new ArrayList<>();
+    for (DetectedObject object : results) {
+      boundingBoxes.add(object.getBoundingBox());
     }
+    return getUnionBounds(boundingBoxes);
   }
 
   @Override
@@ -24,6 +24,7 @@ import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
 import com.google.mlkit.vision.objects.DetectedObject;
 import com.google.mlkit.vision.objects.DetectedObject.Label;
+import java.util.List;
 import java.util.Locale;
 
 /** Draw the detected object info in preview. */
@@ -49,14 +50,21 @@ public class ObjectGraphic extends Graphic {
   private static final String LABEL_FORMAT = "%.2f%% confidence (index: %d)";
 
   private final DetectedObject object;
+  private final List<Label> labels;
   private final Paint[] boxPaints;
   private final Paint[] textPaints;
   private final Paint[] labelPaints;
 
   public ObjectGraphic(GraphicOverlay overlay, DetectedObject object) {
+    this(overlay, object, object.getLabels());
+  }
+
+  /** Creates a graphic that draws the object with the given labels instead of its own. */
+  public ObjectGraphic(GraphicOverlay overlay, DetectedObject object, List<Label> labels) {
     super(overlay);
 
     this.object = object;
+    this.labels = labels;
 
     int numColors = COLORS.length;
     textPaints = new Paint[numColors];
@@ -88,7 +96,7 @@ public class ObjectGraphic extends Graphic {
     float yLabelOffset = -lineHeight;
 
     // Calculate width and height of label box
-    for (Label label : object.getLabels()) {
+    for (Label label : labels) {
       textWidth = Math.max(textWidth, textPaints[colorID].measureText(label.getText()));
       textWidth =
           Math.max(
@@ -125,7 +133,7 @@ public class ObjectGraphic extends Graphic {
         textPaints[colorID]);
     yLabelOffset += lineHeight;
 
-    for (Label label : object.getLabels()) {
+    for (Label label : labels) {
       canvas.drawText(label.getText(), rect.left, rect.top + yLabelOffset, textPaints[colorID]);
       yLabelOffset += lineHeight;
       canvas.drawText(
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.objectdetector;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.android.odml.image.MlImage;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.VisionMetrics;
+import com.google.mlkit.vision.objects.DetectedObject;
+import com.google.mlkit.vision.objects.DetectedObject.Label;
+import com.google.mlkit.vision.objects.ObjectDetector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects objects in live frames with a localizer that tracks them on every frame, and only runs
+ * a custom classifier when a tracked object needs labels, caching the labels by tracking id.
+ *
+ * <p>A tracked object needs labels when it is new, when its box changed significantly since it
+ * was classified, i.e. the two boxes overlap by less than {@link #MIN_UNCHANGED_IOU}, or when its
+ * labels are older than {@link #LABEL_EXPIRY_MS}. The detector API classifies whole frames, so the
+ * classifier then runs on the next frame, along with the localizer, and each object it finds is
+ * matched to the tracked object it overlaps most. Objects of frames with stable objects only are
+ * labeled from the cache, without running the classifier.
+ *
+ * <p>Classifications and cached objects are counted in {@link VisionMetrics} under {@code
+ * object_labels.*}.
+ */
+final class ObjectLabelCache {
+
+  private static final long LABEL_EXPIRY_MS = 3_000;
+  private static final float MIN_UNCHANGED_IOU = 0.6f;
+  // Minimum intersection over union for an object of the classifier to match a tracked one.
+  private static final float MIN_MATCH_IOU = 0.3f;
+
+  private final ObjectDetector localizer;
+  private final ObjectDetector classifier;
+
+  @GuardedBy("this")
+  private final Map<Integer, Entry> entriesByTrackingId = new HashMap<>();
+
+  @GuardedBy("this")
+  private boolean needsClassification = true;
+
+  ObjectLabelCache(ObjectDetector localizer, ObjectDetector classifier) {
+    this.localizer = localizer;
+    this.classifier = classifier;
+  }
+
+  /** Detects the objects in a frame, returning those of the localizer. */
+  Task<List<DetectedObject>> process(InputImage image) {
+    if (!startClassification()) {
+      return onLocalizerResults(localizer.process(image));
+    }
+    return merge(localizer.process(image), classifier.process(image));
+  }
+
+  /** Detects the objects in a frame, returning those of the localizer. */
+  Task<List<DetectedObject>> process(MlImage image) {
+    // Both detectors are started before this returns, as the image may be closed right after.
+    if (!startClassification()) {
+      return onLocalizerResults(localizer.process(image));
+    }
+    return merge(localizer.process(image), classifier.process(image));
+  }
+
+  /** Returns the cached labels of a tracked object, or its own labels if there are none. */
+  synchronized List<Label> getLabels(DetectedObject object) {
+    Integer trackingId = object.getTrackingId();
+    Entry entry = trackingId != null ? entriesByTrackingId.get(trackingId) : null;
+    return entry != null ? entry.labels : object.getLabels();
+  }
+
+  private synchronized boolean startClassification() {
+    if (!needsClassification) {
+      return false;
+    }
+    needsClassification = false;
+    VisionMetrics.incrementCounter("object_labels.classifications", 1);
+    return true;
+  }
+
+  private Task<List<DetectedObject>> onLocalizerResults(Task<List<DetectedObject>> task) {
+    // Listeners without an executor run on the main thread.
+    return task.addOnSuccessListener(
+        objects -> {
+          synchronized (ObjectLabelCache.this) {
+            dropLostObjects(objects);
+            updateNeedsClassification(objects);
+          }
+        });
+  }
+
+  private Task<List<DetectedObject>> merge(
+      Task<List<DetectedObject>> localizerTask, Task<List<DetectedObject>> classifierTask) {
+    return Tasks.whenAllComplete(localizerTask, classifierTask)
+        .continueWith(
+            task -> {
+              if (!localizerTask.isSuccessful()) {
+                throw localizerTask.getException();
+              }
+              List<DetectedObject> objects = localizerTask.getResult();
+              synchronized (ObjectLabelCache.this) {
+                dropLostObjects(objects);
+                if (classifierTask.isSuccessful()) {
+                  long nowMs = SystemClock.elapsedRealtime();
+                  List<DetectedObject> classifiedObjects = classifierTask.getResult();
+                  for (DetectedObject object : objects) {
+                    if (object.getTrackingId() == null) {
+                      continue;
+                    }
+                    // Objects the classifier did not find are cached without labels, so that
+                    // they are not classified again until they change or expire.
+                    DetectedObject classifiedObject = findMatchingObject(object, classifiedObjects);
+                    List<Label> labels =
+                        classifiedObject != null
+                            ? classifiedObject.getLabels()
+                            : new ArrayList<>();
+                    entriesByTrackingId.put(
+                        object.getTrackingId(), new Entry(labels, object.getBoundingBox(), nowMs));
+                  }
+                  VisionMetrics.incrementCounter(
+                      "object_labels.classified_objects", objects.size());
+                }
+                updateNeedsClassification(objects);
+              }
+              return objects;
+            });
+  }
+
+  @GuardedBy("this")
+  private void dropLostObjects(List<DetectedObject> objects) {
+    Set<Integer> trackingIds = new HashSet<>();
+    for (DetectedObject object : objects) {
+      trackingIds.add(object.getTrackingId());
+    }
+    entriesByTrackingId.keySet().retainAll(trackingIds);
+  }
+
+  @GuardedBy("this")
+  private void updateNeedsClassification(List<DetectedObject> objects) {
+    long nowMs = SystemClock.elapsedRealtime();
+    int cachedObjects = 0;
+    for (DetectedObject object : objects) {
+      Integer trackingId = object.getTrackingId();
+      Entry entry = trackingId != null ? entriesByTrackingId.get(trackingId) : null;
+      if (entry == null
+          || needsLabels(
+              entry.boundingBox, entry.classificationTimeMs, object.getBoundingBox(), nowMs)) {
+        needsClassification = true;
+      } else {
+        cachedObjects++;
+      }
+    }
+    VisionMetrics.incrementCounter("object_labels.cached_objects", cachedObjects);
+  }
+
+  /**
+   * Returns whether the cached labels of an object that was classified with the given box at the
+   * given time need to be replaced, now that it has the given box.
+   */
+  @VisibleForTesting
+  static boolean needsLabels(
+      Rect classifiedBox, long classificationTimeMs, Rect boundingBox, long nowMs) {
+    return nowMs - classificationTimeMs > LABEL_EXPIRY_MS
+        || getIntersectionOverUnion(classifiedBox, boundingBox) < MIN_UNCHANGED_IOU;
+  }
+
+  @Nullable
+  private static DetectedObject findMatchingObject(
+      DetectedObject object, List<DetectedObject> classifiedObjects) {
+    DetectedObject bestObject = null;
+    float bestIou = MIN_MATCH_IOU;
+    for (DetectedObject classifiedObject : classifiedObjects) {
+      float iou =
+          getIntersectionOverUnion(object.getBoundingBox(), classifiedObject.getBoundingBox());
+      if (iou >= bestIou) {
+        bestObject = classifiedObject;
+        bestIou = iou;
+      }
+    }
+    return bestObject;
+  }
+
+  @VisibleForTesting
+  static float getIntersectionOverUnion(Rect a, Rect b) {
+    // Computed from the edges, without allocating a rectangle for every pair of objects.
+    int intersectionWidth = Math.min(a.right, b.right) - Math.max(a.left, b.left);
+    int intersectionHeight = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+    if (intersectionWidth <= 0 || intersectionHeight <= 0) {
+      return 0;
+    }
+    float intersectionArea = (float) intersectionWidth * intersectionHeight;
+    float unionArea =
+        (float) (a.right - a.left) * (a.bottom - a.top)
+            + (float) (b.right - b.left) * (b.bottom - b.top)
+            - intersectionArea;
+    return unionArea > 0 ? intersectionArea / unionArea : 0;
+  }
+
+  private static final class Entry {
+    final List<Label> labels;
+    final Rect boundingBox;
+    final long classificationTimeMs;
+
+    Entry(List<Label> labels, Rect boundingBox, long classificationTimeMs) {
+      this.labels = labels;
+      this.boundingBox = boundingBox;
+      this.classificationTimeMs = classificationTimeMs;
+    }
+  }
+}
@@ -17,20 +17,33 @@
 package com.google.mlkit.vision.demo.java.posedetector;
 
 import android.content.Context;
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.Task;
 import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorPool;
 import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.LandmarkTracker;
+import com.google.mlkit.vision.demo.ThermalGovernor;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.demo.java.posedetector.classification.PoseClassifierProcessor;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.pose.Pose;
 import com.google.mlkit.vision.pose.PoseDetection;
 import com.google.mlkit.vision.pose.PoseDetector;
 import com.google.mlkit.vision.pose.PoseDetectorOptionsBase;
+import com.google.mlkit.vision.pose.PoseLandmark;
+import com.google.mlkit.vision.pose.accurate.AccuratePoseDetectorOptions;
+import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -38,17 +51,35 @@ import java.util.concurrent.Executors;
 public class PoseDetectorProcessor
     extends VisionProcessorBase<PoseDetectorProcessor.PoseWithClassification> {
   private static final String TAG = "PoseDetectorProcessor";
+  private static final long DEFAULT_LATENCY_BUDGET_MS = 66;
 
   private final PoseDetector detector;
+  // Base pose detector used instead of the accurate one while the device is severely hot or the
+  // model selector picks it, and the other way around. Created on first use and only closed when
+  // the processor stops, as frames may still be in flight. Only accessed on the main thread.
+  @Nullable private PoseDetector fastDetector;
+  @Nullable private PoseDetector accurateDetector;
+  private volatile PoseDetector activeDetector;
+  private volatile boolean isActiveDetectorAccurate;
+  // Only created for stream mode if the adaptive pose model is turned on.
+  @Nullable private final PoseModelSelector modelSelector;
+  // Whether the device is severely hot, only accessed on the main thread.
+  private boolean isHot;
 
   private final boolean showInFrameLikelihood;
   private final boolean visualizeZ;
   private final boolean rescaleZForVisualization;
   private final boolean runClassification;
   private final boolean isStreamMode;
+  private final boolean isAccurate;
   private final Context context;
   private final Executor classificationExecutor;
 
+  // Only created for stream mode if keyframe tracking is turned on.
+  @Nullable private final LandmarkTracker landmarkTracker;
+  // The results last fed to the tracker, only accessed on the main thread.
+  @Nullable private PoseWithClassification trackedPose;
+
   private PoseClassifierProcessor poseClassifierProcessor;
   /** Internal class to hold Pose and classification results. */
   protected static class PoseWithClassification {
@@ -81,61 +112,178 @@ public class PoseDetectorProcessor
     this.showInFrameLikelihood = showInFrameLikelihood;
     this.visualizeZ = visualizeZ;
     this.rescaleZForVisualization = rescaleZForVisualization;
-    detector = PoseDetection.getClient(options);
+    detector =
+        DetectorPool.acquire(
+            context, PoseDetector.class, options, () -> PoseDetection.getClient(options));
+    activeDetector = detector;
+    isAccurate = options instanceof AccuratePoseDetectorOptions;
+    isActiveDetectorAccurate = isAccurate;
+    if (isStreamMode && PreferenceUtils.isAdaptivePoseModelEnabled(context)) {
+      long latencyBudgetMs = PreferenceUtils.getAdaptiveResolutionTargetLatencyMs(context);
+      modelSelector =
+          new PoseModelSelector(
+              latencyBudgetMs > 0 ? latencyBudgetMs : DEFAULT_LATENCY_BUDGET_MS, isAccurate);
+    } else {
+      modelSelector = null;
+    }
     this.runClassification = runClassification;
     this.isStreamMode = isStreamMode;
     this.context = context;
     classificationExecutor = Executors.newSingleThreadExecutor();
+    if (isStreamMode && PreferenceUtils.isKeyframeTrackingEnabled(context)) {
+      landmarkTracker = new LandmarkTracker("pose_keyframes");
+      setLandmarkTracker(landmarkTracker);
+    } else {
+      landmarkTracker = null;
+    }
   }
 
   @Override
   public void stop() {
+    if (isShutdown()) {
+      return;
+    }
     super.stop();
-    detector.close();
+    DetectorPool.release(detector);
+    if (fastDetector != null) {
+      DetectorPool.release(fastDetector);
+    }
+    if (accurateDetector != null) {
+      DetectorPool.release(accurateDetector);
+    }
+  }
+
+  @Override
+  protected void onThermalLevelChanged(ThermalGovernor.Level level) {
+    if (!isStreamMode) {
+      return;
+    }
+    isHot = level == ThermalGovernor.Level.SEVERE;
+    updateActiveDetector();
+  }
+
+  /** Switches to the detector picked by the thermal level and the model selector, if any. */
+  private void updateActiveDetector() {
+    boolean useAccurate =
+        !isHot && (modelSelector != null ? modelSelector.isAccurate() : isAccurate);
+    PoseDetector targetDetector;
+    if (useAccurate == isAccurate) {
+      targetDetector = detector;
+    } else if (useAccurate) {
+      if (accurateDetector == null) {
+        AccuratePoseDetectorOptions accurateOptions =
+            new AccuratePoseDetectorOptions.Builder()
+                .setDetectorMode(AccuratePoseDetectorOptions.STREAM_MODE)
+                .build();
+        accurateDetector =
+            DetectorPool.acquire(
+                context,
+                PoseDetector.class,
+                accurateOptions,
+                () -> PoseDetection.getClient(accurateOptions));
+      }
+      targetDetector = accurateDetector;
+    } else {
+      if (fastDetector == null) {
+        PoseDetectorOptions fastOptions =
+            new PoseDetectorOptions.Builder()
+                .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
+                .build();
+        fastDetector =
+            DetectorPool.acquire(
+                context,
+                PoseDetector.class,
+                fastOptions,
+                () -> PoseDetection.getClient(fastOptions));
+      }
+      targetDetector = fastDetector;
+    }
+    if (activeDetector != targetDetector) {
+      Log.i(
+          TAG,
+          (isHot ? "Device is hot, switching" : "Switching")
+              + " to the "
+              + (useAccurate ? "accurate" : "base")
+              + " pose detector");
+      isActiveDetectorAccurate = useAccurate;
+      activeDetector = targetDetector;
+    }
   }
 
   @Override
   protected Task<PoseWithClassification> detectInImage(InputImage image) {
-    return detector
-        .process(image)
-        .continueWith(
-            classificationExecutor,
-            task -> {
-              Pose pose = task.getResult();
-              List<String> classificationResult = new ArrayList<>();
-              if (runClassification) {
-                if (poseClassifierProcessor == null) {
-                  poseClassifierProcessor = new PoseClassifierProcessor(context, isStreamMode);
-                }
-                classificationResult = poseClassifierProcessor.getPoseResult(pose);
-              }
-              return new PoseWithClassification(pose, classificationResult);
-            });
+    long startMs = SystemClock.elapsedRealtime();
+    boolean isAccurateRun = isActiveDetectorAccurate;
+    return continueWithClassification(activeDetector.process(image), startMs, isAccurateRun);
+  }
+
+  @Override
+  protected Task<?> warmUpDetector(InputImage image) {
+    // Skips classification and the latency fed to the model selector.
+    return activeDetector.process(image);
   }
 
   @Override
   protected Task<PoseWithClassification> detectInImage(MlImage image) {
-    return detector
-        .process(image)
-        .continueWith(
-            classificationExecutor,
-            task -> {
-              Pose pose = task.getResult();
-              List<String> classificationResult = new ArrayList<>();
-              if (runClassification) {
-                if (poseClassifierProcessor == null) {
-                  poseClassifierProcessor = new PoseClassifierProcessor(context, isStreamMode);
-                }
-                classificationResult = poseClassifierProcessor.getPoseResult(pose);
-              }
-              return new PoseWithClassification(pose, classificationResult);
-            });
+    long startMs = SystemClock.elapsedRealtime();
+    boolean isAccurateRun = isActiveDetectorAccurate;
+    return continueWithClassification(activeDetector.process(image), startMs, isAccurateRun);
+  }
+
+  private Task<PoseWithClassification> continueWithClassification(
+      Task<Pose> poseTask, long startMs, boolean isAccurateRun) {
+    return poseTask.continueWith(
+        classificationExecutor,
+        task -> {
+          Pose pose = task.getResult();
+          if (modelSelector != null) {
+            modelSelector.onResult(
+                isAccurateRun,
+                SystemClock.elapsedRealtime() - startMs,
+                getMeanInFrameLikelihood(pose));
+          }
+          List<String> classificationResult = new ArrayList<>();
+          if (runClassification) {
+            if (poseClassifierProcessor == null) {
+              poseClassifierProcessor = new PoseClassifierProcessor(context, isStreamMode);
+            }
+            classificationResult = poseClassifierProcessor.getPoseResult(pose);
+          }
+          return new PoseWithClassification(pose, classificationResult);
+        });
+  }
+
+  /** Returns the mean in-frame likelihood of the landmarks, or -1 if no pose was found. */
+  private static float getMeanInFrameLikelihood(Pose pose) {
+    List<PoseLandmark> landmarks = pose.getAllPoseLandmarks();
+    if (landmarks.isEmpty()) {
+      return -1;
+    }
+    float sum = 0;
+    for (PoseLandmark landmark : landmarks) {
+      sum += landmark.getInFrameLikelihood();
+    }
+    return sum / landmarks.size();
   }
 
   @Override
   protected void onSuccess(
       @NonNull PoseWithClassification poseWithClassification,
       @NonNull GraphicOverlay graphicOverlay) {
+    if (modelSelector != null) {
+      updateActiveDetector();
+    }
+    // The results of the last keyframe are passed again for skipped frames, so only new results
+    // are fed to the tracker.
+    if (landmarkTracker != null && poseWithClassification != trackedPose) {
+      trackedPose = poseWithClassification;
+      Map<Long, PointF> points = new HashMap<>();
+      for (PoseLandmark landmark : poseWithClassification.pose.getAllPoseLandmarks()) {
+        points.put((long) landmark.getLandmarkType(), landmark.getPosition());
+      }
+      landmarkTracker.update(
+          points, graphicOverlay.getImageWidth(), graphicOverlay.getImageHeight());
+    }
     graphicOverlay.add(
         new PoseGraphic(
             graphicOverlay,
@@ -143,7 +291,28 @@ public class PoseDetectorProcessor
             showInFrameLikelihood,
             visualizeZ,
             rescaleZForVisualization,
-            poseWithClassification.classificationResult));
+            poseWithClassification.classificationResult,
+            landmarkTracker));
+  }
+
+  @Override
+  protected int getResultCount(@NonNull PoseWithClassification poseWithClassification) {
+    return poseWithClassification.pose.getAllPoseLandmarks().isEmpty() ? 0 : 1;
+  }
+
+  @Override
+  @Nullable
+  protected RectF getResultBounds(@NonNull PoseWithClassification poseWithClassification) {
+    RectF bounds = null;
+    for (PoseLandmark landmark : poseWithClassification.pose.getAllPoseLandmarks()) {
+      PointF position = landmark.getPosition();
+      if (bounds == null) {
+        bounds = new RectF(position.x, position.y, position.x, position.y);
+      } else {
+        bounds.union(position.x, position.y);
+      }
+    }
+    return bounds;
   }
 
   @Override
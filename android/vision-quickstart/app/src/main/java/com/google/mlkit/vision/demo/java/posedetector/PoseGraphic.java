@@ -22,9 +22,12 @@ import static java.lang.Math.min;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PointF;
+import androidx.annotation.Nullable;
 import com.google.mlkit.vision.common.PointF3D;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import com.google.mlkit.vision.demo.LandmarkTracker;
 import com.google.mlkit.vision.pose.Pose;
 import com.google.mlkit.vision.pose.PoseLandmark;
 import java.util.List;
@@ -46,6 +49,8 @@ public class PoseGraphic extends Graphic {
   private float zMax = Float.MIN_VALUE;
 
   private final List<String> poseClassification;
+  // Draws the landmarks at their tracked positions, keyed by landmark type, if not null.
+  @Nullable private final LandmarkTracker landmarkTracker;
   private final Paint classificationTextPaint;
   private final Paint leftPaint;
   private final Paint rightPaint;
@@ -57,7 +62,8 @@ public class PoseGraphic extends Graphic {
       boolean showInFrameLikelihood,
       boolean visualizeZ,
       boolean rescaleZForVisualization,
-      List<String> poseClassification) {
+      List<String> poseClassification,
+      @Nullable LandmarkTracker landmarkTracker) {
     super(overlay);
     this.pose = pose;
     this.showInFrameLikelihood = showInFrameLikelihood;
@@ -65,6 +71,7 @@ public class PoseGraphic extends Graphic {
     this.rescaleZForVisualization = rescaleZForVisualization;
 
     this.poseClassification = poseClassification;
+    this.landmarkTracker = landmarkTracker;
     classificationTextPaint = new Paint();
     classificationTextPaint.setColor(Color.WHITE);
     classificationTextPaint.setTextSize(POSE_CLASSIFICATION_TEXT_SIZE);
@@ -187,10 +194,11 @@ public class PoseGraphic extends Graphic {
     // Draw inFrameLikelihood for all points
     if (showInFrameLikelihood) {
       for (PoseLandmark landmark : landmarks) {
+        PointF position = getPosition(landmark);
         canvas.drawText(
             String.format(Locale.US, "%.2f", landmark.getInFrameLikelihood()),
-            translateX(landmark.getPosition().x),
-            translateY(landmark.getPosition().y),
+            translateX(position.x),
+            translateY(position.y),
             whitePaint);
       }
     }
@@ -200,7 +208,8 @@ public class PoseGraphic extends Graphic {
     PointF3D point = landmark.getPosition3D();
     updatePaintColorByZValue(
         paint, canvas, visualizeZ, rescaleZForVisualization, point.getZ(), zMin, zMax);
-    canvas.drawCircle(translateX(point.getX()), translateY(point.getY()), DOT_RADIUS, paint);
+    PointF position = getPosition(landmark);
+    canvas.drawCircle(translateX(position.x), translateY(position.y), DOT_RADIUS, paint);
   }
 
   void drawLine(Canvas canvas, PoseLandmark startLandmark, PoseLandmark endLandmark, Paint paint) {
@@ -212,11 +221,20 @@ public class PoseGraphic extends Graphic {
     updatePaintColorByZValue(
         paint, canvas, visualizeZ, rescaleZForVisualization, avgZInImagePixel, zMin, zMax);
 
+    PointF startPosition = getPosition(startLandmark);
+    PointF endPosition = getPosition(endLandmark);
     canvas.drawLine(
-        translateX(start.getX()),
-        translateY(start.getY()),
-        translateX(end.getX()),
-        translateY(end.getY()),
+        translateX(startPosition.x),
+        translateY(startPosition.y),
+        translateX(endPosition.x),
+        translateY(endPosition.y),
         paint);
   }
+
+  private PointF getPosition(PoseLandmark landmark) {
+    if (landmarkTracker == null) {
+      return landmark.getPosition();
+    }
+    return landmarkTracker.getPosition(landmark.getLandmarkType(), landmark.getPosition());
+  }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+import com.google.mlkit.vision.demo.VisionMetrics;
+import java.util.Locale;
+
+/**
+ * Picks between the base and the accurate pose model for live frames, from the latency of each
+ * and the in-frame likelihood of the landmarks.
+ *
+ * <p>The accurate model is picked when the base model leaves headroom, i.e. takes less than {@link
+ * #HEADROOM_FRACTION} of the latency budget, while the landmarks are uncertain, i.e. their mean
+ * in-frame likelihood is under {@link #LOW_LIKELIHOOD}. The base model is picked again as soon as
+ * the accurate one goes over the budget, which means frames are being dropped. After that, the
+ * accurate model is only tried again once its latency could have changed, after {@link
+ * #RETRY_INTERVAL_MS}. A model is kept for at least {@link #MIN_MODE_DURATION_MS}, so that the
+ * two thresholds and the minimum duration keep the selector from flapping.
+ *
+ * <p>Switches and the time spent with each model are published to {@link VisionMetrics} under
+ * {@code pose_model.*}.
+ */
+final class PoseModelSelector {
+
+  private static final String TAG = "PoseModelSelector";
+  private static final float HEADROOM_FRACTION = 0.5f;
+  private static final float LOW_LIKELIHOOD = 0.8f;
+  private static final long MIN_MODE_DURATION_MS = 2_000;
+  private static final long RETRY_INTERVAL_MS = 10_000;
+  private static final float SMOOTHING = 0.2f;
+
+  private final long latencyBudgetMs;
+
+  @GuardedBy("this")
+  private boolean isAccurate;
+
+  @GuardedBy("this")
+  private long modeStartMs;
+
+  // When the time spent in the current mode was last added up.
+  @GuardedBy("this")
+  private long lastUpdateMs;
+
+  @GuardedBy("this")
+  private long fastTimeMs;
+
+  @GuardedBy("this")
+  private long accurateTimeMs;
+
+  @GuardedBy("this")
+  private float fastLatencyMs = -1;
+
+  @GuardedBy("this")
+  private float accurateLatencyMs = -1;
+
+  @GuardedBy("this")
+  private float likelihood = -1;
+
+  PoseModelSelector(long latencyBudgetMs, boolean isAccurate) {
+    this(latencyBudgetMs, isAccurate, SystemClock.elapsedRealtime());
+  }
+
+  @VisibleForTesting
+  PoseModelSelector(long latencyBudgetMs, boolean isAccurate, long startMs) {
+    this.latencyBudgetMs = latencyBudgetMs;
+    this.isAccurate = isAccurate;
+    modeStartMs = startMs;
+    lastUpdateMs = startMs;
+  }
+
+  /** Returns whether the accurate model should be used for the next frames. */
+  synchronized boolean isAccurate() {
+    return isAccurate;
+  }
+
+  /**
+   * Feeds the result of a frame.
+   *
+   * @param wasAccurate whether the frame went through the accurate model
+   * @param latencyMs how long the model took
+   * @param meanInFrameLikelihood the mean in-frame likelihood of the landmarks, or a negative value
+   *     if no pose was found
+   */
+  void onResult(boolean wasAccurate, long latencyMs, float meanInFrameLikelihood) {
+    onResult(wasAccurate, latencyMs, meanInFrameLikelihood, SystemClock.elapsedRealtime());
+  }
+
+  @VisibleForTesting
+  synchronized void onResult(
+      boolean wasAccurate, long latencyMs, float meanInFrameLikelihood, long nowMs) {
+    addTimeInMode(nowMs);
+    if (wasAccurate) {
+      accurateLatencyMs = smooth(accurateLatencyMs, latencyMs);
+    } else {
+      fastLatencyMs = smooth(fastLatencyMs, latencyMs);
+    }
+    if (meanInFrameLikelihood >= 0) {
+      likelihood = smooth(likelihood, meanInFrameLikelihood);
+    }
+    // Results of frames sent before the last switch say nothing about the current mode.
+    if (wasAccurate != isAccurate || nowMs - modeStartMs < MIN_MODE_DURATION_MS) {
+      return;
+    }
+
+    if (isAccurate) {
+      if (accurateLatencyMs > latencyBudgetMs) {
+        switchMode(/* toAccurate= */ false, nowMs);
+      }
+    } else if (fastLatencyMs < HEADROOM_FRACTION * latencyBudgetMs
+        && likelihood >= 0
+        && likelihood < LOW_LIKELIHOOD
+        && (accurateLatencyMs <= latencyBudgetMs || nowMs - modeStartMs > RETRY_INTERVAL_MS)) {
+      switchMode(/* toAccurate= */ true, nowMs);
+    }
+  }
+
+  @GuardedBy("this")
+  private void switchMode(boolean toAccurate, long nowMs) {
+    Log.i(
+        TAG,
+        String.format(
+            Locale.US,
+            "Switching to the %s pose model, latency %.0f ms (base) / %.0f ms (accurate), "
+                + "likelihood %.2f",
+            toAccurate ? "accurate" : "base", fastLatencyMs, accurateLatencyMs, likelihood));
+    isAccurate = toAccurate;
+    modeStartMs = nowMs;
+    VisionMetrics.incrementCounter("pose_model.switches", 1);
+  }
+
+  @GuardedBy("this")
+  private void addTimeInMode(long nowMs) {
+    if (isAccurate) {
+      accurateTimeMs += nowMs - lastUpdateMs;
+    } else {
+      fastTimeMs += nowMs - lastUpdateMs;
+    }
+    lastUpdateMs = nowMs;
+    VisionMetrics.setGauge("pose_model.mode", isAccurate ? "accurate" : "base");
+    VisionMetrics.setGauge("pose_model.base_seconds", fastTimeMs / 1000f);
+    VisionMetrics.setGauge("pose_model.accurate_seconds", accurateTimeMs / 1000f);
+    long totalTimeMs = fastTimeMs + accurateTimeMs;
+    if (totalTimeMs > 0) {
+      VisionMetrics.setGauge("pose_model.accurate_percent", 100f * accurateTimeMs / totalTimeMs);
+    }
+  }
+
+  private static float smooth(float average, float value) {
+    return average < 0 ? value : average + SMOOTHING * (value - average);
+  }
+}
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import com.google.android.gms.tasks.Task;
+import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
@@ -59,6 +60,11 @@ public class SegmenterProcessor extends VisionProcessorBase<SegmentationMask> {
     return segmenter.process(image);
   }
 
+  @Override
+  protected Task<SegmentationMask> detectInImage(MlImage image) {
+    return segmenter.process(image);
+  }
+
   @Override
   protected void onSuccess(
       @NonNull SegmentationMask segmentationMask, @NonNull GraphicOverlay graphicOverlay) {
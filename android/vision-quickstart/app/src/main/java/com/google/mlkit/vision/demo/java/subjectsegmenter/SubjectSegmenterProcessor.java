@@ -17,18 +17,24 @@
 package com.google.mlkit.vision.demo.java.subjectsegmenter;
 
 import android.content.Context;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Build;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
+import com.google.mlkit.vision.segmentation.subject.Subject;
 import com.google.mlkit.vision.segmentation.subject.SubjectSegmentation;
 import com.google.mlkit.vision.segmentation.subject.SubjectSegmentationResult;
 import com.google.mlkit.vision.segmentation.subject.SubjectSegmenter;
 import com.google.mlkit.vision.segmentation.subject.SubjectSegmenterOptions;
+import java.util.ArrayList;
+import java.util.List;
 
 /** A processor to run Subject Segmenter. */
 @RequiresApi(Build.VERSION_CODES.N)
@@ -56,8 +62,10 @@ public class SubjectSegmenterProcessor extends VisionProcessorBase<SubjectSegmen
 
   @Override
   protected Task<SubjectSegmentationResult> detectInImage(InputImage image) {
-    this.imageWidth = image.getWidth();
-    this.imageHeight = image.getHeight();
+    // The mask is for the upright image.
+    boolean isTransposed = image.getRotationDegrees() % 180 != 0;
+    this.imageWidth = isTransposed ? image.getHeight() : image.getWidth();
+    this.imageHeight = isTransposed ? image.getWidth() : image.getHeight();
     return subjectSegmenter.process(image);
   }
 
@@ -70,8 +78,34 @@ public class SubjectSegmenterProcessor extends VisionProcessorBase<SubjectSegmen
             graphicOverlay, segmentationResult, imageWidth, imageHeight));
   }
 
+  @Override
+  protected int getResultCount(@NonNull SubjectSegmentationResult segmentationResult) {
+    return segmentationResult.getSubjects().size();
+  }
+
+  @Override
+  @Nullable
+  protected RectF getResultBounds(@NonNull SubjectSegmentationResult segmentationResult) {
+    List<Rect> boundingBoxes = new ArrayList<>();
+    for (Subject subject : segmentationResult.getSubjects()) {
+      boundingBoxes.add(
+          new Rect(
+              subject.getStartX(),
+              subject.getStartY(),
+              subject.getStartX() + subject.getWidth(),
+              subject.getStartY() + subject.getHeight()));
+    }
+    return getUnionBounds(boundingBoxes);
+  }
+
   @Override
   protected void onFailure(@NonNull Exception e) {
     Log.e(TAG, "Subject segmentation failed: ", e);
   }
+
+  @Override
+  protected boolean isMlImageEnabled(Context context) {
+    // SubjectSegmenter only takes InputImage, and the image size is needed for the graphic anyway.
+    return false;
+  }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.textdetector;
+
+import android.graphics.Point;
+import com.google.mlkit.vision.text.Text.TextBlock;
+import java.util.List;
+
+/** Text blocks recognized in crops of an image, with the top left corner of each crop. */
+final class CroppedText {
+  final List<TextBlock> textBlocks;
+  final List<Point> blockOffsets;
+
+  CroppedText(List<TextBlock> textBlocks, List<Point> blockOffsets) {
+    this.textBlocks = textBlocks;
+    this.blockOffsets = blockOffsets;
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.textdetector;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.BitmapUtils;
+import com.google.mlkit.vision.demo.DetectionRegion;
+import com.google.mlkit.vision.demo.SceneChangeDetector;
+import com.google.mlkit.vision.demo.VisionMetrics;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.Text.TextBlock;
+import com.google.mlkit.vision.text.TextRecognizer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Recognizes text in live NV21 frames tile by tile, only running the recognizer again on the tiles
+ * whose content changed since they were last recognized.
+ *
+ * <p>The upright frame is split into {@link #TILE_COUNT} horizontal bands, so that lines of text
+ * are rarely cut, each recognized with a margin of {@link #TILE_OVERLAP} into its neighbors. A tile
+ * keeps the blocks whose center is within its band, along with a {@link SceneChangeDetector}
+ * signature of its pixels. A tile is recognized again when its signature changed or its blocks are
+ * older than {@link #MAX_TILE_AGE_MS}; when more than half of the tiles changed, e.g. because the
+ * camera moved, the whole frame is recognized at once instead. The blocks of all tiles are merged
+ * into one result.
+ *
+ * <p>Recognized and reused tiles are counted in {@link VisionMetrics} under {@code text_tiles.*}.
+ */
+final class IncrementalTextRecognizer {
+
+  private static final String TAG = "IncrementalTextRecognizer";
+  private static final int TILE_COUNT = 4;
+  private static final float TILE_OVERLAP = 0.05f;
+  private static final long MAX_TILE_AGE_MS = 2_000;
+
+  private final TextRecognizer textRecognizer;
+  // Runs the merging of results, one at a time.
+  private final Executor executor;
+  private final Tile[] tiles = new Tile[TILE_COUNT];
+
+  // The frame the tiles were recognized in. Tiles are dropped when it changes.
+  @GuardedBy("this")
+  private int frameWidth;
+
+  @GuardedBy("this")
+  private int frameHeight;
+
+  @GuardedBy("this")
+  private int rotationDegrees;
+
+  IncrementalTextRecognizer(TextRecognizer textRecognizer, Executor executor) {
+    this.textRecognizer = textRecognizer;
+    this.executor = executor;
+    for (int i = 0; i < TILE_COUNT; i++) {
+      tiles[i] = new Tile(i);
+    }
+  }
+
+  /**
+   * Recognizes the changed tiles of an NV21 frame. The frame data is only read before this
+   * returns, so the buffer can be reused right away.
+   */
+  Task<CroppedText> process(ByteBuffer data, int width, int height, int rotationDegrees) {
+    if (!data.hasArray()) {
+      // Tiles are cut out of the backing array, so copy read-only buffers once.
+      ByteBuffer copy = ByteBuffer.allocate(data.limit());
+      data.rewind();
+      copy.put(data);
+      data = copy;
+    }
+    long frameTimeMs = SystemClock.elapsedRealtime();
+    DetectionRegion.Crop[] crops = new DetectionRegion.Crop[TILE_COUNT];
+    byte[][] signatures = new byte[TILE_COUNT][];
+    List<Integer> changedTiles = new ArrayList<>();
+    synchronized (this) {
+      if (width != frameWidth || height != frameHeight || rotationDegrees != this.rotationDegrees) {
+        for (Tile tile : tiles) {
+          tile.clear();
+        }
+        frameWidth = width;
+        frameHeight = height;
+        this.rotationDegrees = rotationDegrees;
+      }
+      for (int i = 0; i < TILE_COUNT; i++) {
+        crops[i] =
+            tiles[i].region.getCrop(width, height, rotationDegrees, /* downscaleFactor= */ 1);
+        if (crops[i] == null) {
+          // The frame is too small to be tiled.
+          return recognizeWholeFrame(data, width, height, rotationDegrees, signatures, frameTimeMs);
+        }
+        signatures[i] = SceneChangeDetector.computeSignature(data, width, crops[i].getSensorRect());
+        if (tiles[i].needsRecognition(signatures[i], frameTimeMs)) {
+          changedTiles.add(i);
+        }
+      }
+    }
+
+    if (changedTiles.size() > TILE_COUNT / 2) {
+      return recognizeWholeFrame(data, width, height, rotationDegrees, signatures, frameTimeMs);
+    }
+    VisionMetrics.incrementCounter("text_tiles.recognized", changedTiles.size());
+    VisionMetrics.incrementCounter("text_tiles.reused", TILE_COUNT - changedTiles.size());
+    if (changedTiles.isEmpty()) {
+      return Tasks.forResult(merge());
+    }
+
+    List<Task<Text>> tileTasks = new ArrayList<>();
+    for (int i : changedTiles) {
+      Rect sensorRect = crops[i].getSensorRect();
+      InputImage tileImage =
+          InputImage.fromByteBuffer(
+              BitmapUtils.cropNv21(data, width, height, sensorRect, /* factor= */ 1),
+              BitmapUtils.getDownscaledSize(sensorRect.width(), 1),
+              BitmapUtils.getDownscaledSize(sensorRect.height(), 1),
+              rotationDegrees,
+              InputImage.IMAGE_FORMAT_NV21);
+      tileTasks.add(textRecognizer.process(tileImage));
+    }
+    return Tasks.whenAllComplete(tileTasks)
+        .continueWith(
+            executor,
+            ignored -> {
+              for (int k = 0; k < changedTiles.size(); k++) {
+                int i = changedTiles.get(k);
+                Task<Text> tileTask = tileTasks.get(k);
+                if (!tileTask.isSuccessful()) {
+                  Log.w(TAG, "Recognition of tile " + i + " failed", tileTask.getException());
+                  continue;
+                }
+                Point offset =
+                    new Point(
+                        Math.round(crops[i].getOffsetX()), Math.round(crops[i].getOffsetY()));
+                update(
+                    i,
+                    tileTask.getResult().getTextBlocks(),
+                    offset,
+                    signatures[i],
+                    crops[i].getFrameHeight(),
+                    frameTimeMs);
+              }
+              return merge();
+            });
+  }
+
+  private Task<CroppedText> recognizeWholeFrame(
+      ByteBuffer data,
+      int width,
+      int height,
+      int rotationDegrees,
+      byte[][] signatures,
+      long frameTimeMs) {
+    VisionMetrics.incrementCounter("text_tiles.full_frames", 1);
+    // Copied since the frame buffer can be reused once process() returns.
+    InputImage image =
+        InputImage.fromByteBuffer(
+            BitmapUtils.downscaleNv21(data, width, height, /* factor= */ 1),
+            width,
+            height,
+            rotationDegrees,
+            InputImage.IMAGE_FORMAT_NV21);
+    int uprightHeight = rotationDegrees == 90 || rotationDegrees == 270 ? width : height;
+    return textRecognizer
+        .process(image)
+        .continueWith(
+            executor,
+            task -> {
+              List<TextBlock> textBlocks = task.getResult().getTextBlocks();
+              for (int i = 0; i < TILE_COUNT; i++) {
+                update(i, textBlocks, new Point(), signatures[i], uprightHeight, frameTimeMs);
+              }
+              return merge();
+            });
+  }
+
+  /**
+   * Replaces the blocks of a tile with those of the given ones that are centered in its band.
+   *
+   * @param offset the top left corner of the recognized crop in the upright frame
+   * @param signature the signature of the tile when it was recognized, or null if unknown
+   * @param uprightHeight the height of the upright frame
+   */
+  private synchronized void update(
+      int tileIndex,
+      List<TextBlock> textBlocks,
+      Point offset,
+      @Nullable byte[] signature,
+      int uprightHeight,
+      long frameTimeMs) {
+    Tile tile = tiles[tileIndex];
+    if (frameTimeMs < tile.recognitionTimeMs) {
+      // A later frame already updated this tile.
+      return;
+    }
+    float bandTop = (float) tileIndex * uprightHeight / TILE_COUNT;
+    float bandBottom = (float) (tileIndex + 1) * uprightHeight / TILE_COUNT;
+    tile.textBlocks.clear();
+    tile.blockOffsets.clear();
+    for (TextBlock block : textBlocks) {
+      Rect boundingBox = block.getBoundingBox();
+      if (boundingBox == null) {
+        continue;
+      }
+      float centerY = boundingBox.exactCenterY() + offset.y;
+      if (centerY >= bandTop && centerY < bandBottom) {
+        tile.textBlocks.add(block);
+        tile.blockOffsets.add(offset);
+      }
+    }
+    tile.signature = signature;
+    tile.recognitionTimeMs = frameTimeMs;
+  }
+
+  private synchronized CroppedText merge() {
+    List<TextBlock> textBlocks = new ArrayList<>();
+    List<Point> blockOffsets = new ArrayList<>();
+    for (Tile tile : tiles) {
+      textBlocks.addAll(tile.textBlocks);
+      blockOffsets.addAll(tile.blockOffsets);
+    }
+    return new CroppedText(
+        Collections.unmodifiableList(textBlocks), Collections.unmodifiableList(blockOffsets));
+  }
+
+  /** A horizontal band of the upright frame and the text last recognized in it. */
+  private static final class Tile {
+    final DetectionRegion region;
+    final List<TextBlock> textBlocks = new ArrayList<>();
+    final List<Point> blockOffsets = new ArrayList<>();
+    @Nullable byte[] signature;
+    long recognitionTimeMs;
+
+    Tile(int index) {
+      float top = Math.max(0, (float) index / TILE_COUNT - TILE_OVERLAP);
+      float bottom = Math.min(1, (float) (index + 1) / TILE_COUNT + TILE_OVERLAP);
+      region = DetectionRegion.fixed(new RectF(0, top, 1, bottom));
+    }
+
+    boolean needsRecognition(byte[] currentSignature, long frameTimeMs) {
+      return signature == null
+          || frameTimeMs - recognitionTimeMs > MAX_TILE_AGE_MS
+          || !SceneChangeDetector.isUnchanged(currentSignature, signature);
+    }
+
+    void clear() {
+      textBlocks.clear();
+      blockOffsets.clear();
+      signature = null;
+      recognitionTimeMs = 0;
+    }
+  }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.textdetector;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.Image;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.BitmapUtils;
+import com.google.mlkit.vision.demo.DetectorPool;
+import com.google.mlkit.vision.demo.FrameMetadata;
+import com.google.mlkit.vision.demo.VisionMetrics;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.Text.Line;
+import com.google.mlkit.vision.text.Text.TextBlock;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.TextRecognizerOptionsInterface;
+import com.google.mlkit.vision.text.chinese.ChineseTextRecognizerOptions;
+import com.google.mlkit.vision.text.devanagari.DevanagariTextRecognizerOptions;
+import com.google.mlkit.vision.text.japanese.JapaneseTextRecognizerOptions;
+import com.google.mlkit.vision.text.korean.KoreanTextRecognizerOptions;
+import java.lang.Character.UnicodeBlock;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Sends the text blocks that the Latin recognizer is unsure about to the recognizers of other
+ * scripts, so that documents mixing scripts are covered without running every recognizer on every
+ * image.
+ *
+ * <p>The Latin recognizer runs first on the whole image. Its blocks with a mean line confidence
+ * under {@link #MIN_LATIN_CONFIDENCE} are routed, or the whole image if it found nothing at all.
+ * The script recognizers are then tried one by one, starting with the one that recognized text
+ * last, on a crop around the routed blocks if the pixels of the image can be read and on the
+ * whole image otherwise. A script recognizer takes over the routed blocks overlapped by its own
+ * blocks written in its script, and the next one is only tried if routed blocks are left. Script
+ * recognizers are only created once they are needed.
+ *
+ * <p>If no script recognizer found anything, routing pauses for {@link #ROUTING_BACKOFF_MS} so
+ * that e.g. blurry Latin text in live frames doesn't run every recognizer on every frame. The
+ * recognizer invocations saved compared to running all of them are counted in {@link
+ * VisionMetrics} under {@code text_routing.*}.
+ */
+final class ScriptRouter {
+
+  private static final String TAG = "ScriptRouter";
+  private static final float MIN_LATIN_CONFIDENCE = 0.5f;
+  private static final long ROUTING_BACKOFF_MS = 1_000;
+  private static final int CROP_PADDING = 16;
+
+  /** The scripts with a recognizer of their own, all of which also recognize Latin text. */
+  private enum Script {
+    CHINESE(
+        new ChineseTextRecognizerOptions.Builder().build(), UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS),
+    DEVANAGARI(new DevanagariTextRecognizerOptions.Builder().build(), UnicodeBlock.DEVANAGARI),
+    JAPANESE(
+        new JapaneseTextRecognizerOptions.Builder().build(),
+        UnicodeBlock.HIRAGANA,
+        UnicodeBlock.KATAKANA),
+    KOREAN(
+        new KoreanTextRecognizerOptions.Builder().build(),
+        UnicodeBlock.HANGUL_SYLLABLES,
+        UnicodeBlock.HANGUL_JAMO,
+        UnicodeBlock.HANGUL_COMPATIBILITY_JAMO);
+
+    final TextRecognizerOptionsInterface options;
+    private final List<UnicodeBlock> unicodeBlocks;
+
+    Script(TextRecognizerOptionsInterface options, UnicodeBlock... unicodeBlocks) {
+      this.options = options;
+      this.unicodeBlocks = Arrays.asList(unicodeBlocks);
+    }
+
+    /** Returns whether the given text has at least one character of this script. */
+    boolean isWrittenIn(String text) {
+      for (int i = 0; i < text.length(); ) {
+        int codePoint = text.codePointAt(i);
+        if (unicodeBlocks.contains(UnicodeBlock.of(codePoint))) {
+          return true;
+        }
+        i += Character.charCount(codePoint);
+      }
+      return false;
+    }
+  }
+
+  private final Context context;
+  // Runs all routing steps, one at a time.
+  private final Executor executor;
+
+  // Scripts in the order they are tried, the last one that recognized text first. Only accessed on
+  // the executor.
+  private final List<Script> scriptOrder = new ArrayList<>(Arrays.asList(Script.values()));
+  private long routingPausedUntilMs;
+
+  @GuardedBy("this")
+  private final Map<Script, TextRecognizer> recognizers = new EnumMap<>(Script.class);
+
+  @GuardedBy("this")
+  private boolean isClosed;
+
+  ScriptRouter(Context context, Executor executor) {
+    this.context = context;
+    this.executor = executor;
+  }
+
+  /**
+   * Completes the Latin recognition of an image with the script recognizers its uncertain blocks
+   * need.
+   *
+   * @param image the image the Latin recognizer ran on, for the script recognizers to run on again
+   * @param bitmap the bitmap the image was made from, as InputImage does not give it back, or null
+   *     if it was not made from a bitmap. Other images are converted once a crop is needed.
+   */
+  Task<CroppedText> route(Task<Text> latinTask, InputImage image, @Nullable Bitmap bitmap) {
+    return latinTask.continueWithTask(
+        executor,
+        task -> {
+          Routing routing = new Routing(task.getResult(), image, bitmap);
+          if (SystemClock.elapsedRealtime() < routingPausedUntilMs) {
+            return Tasks.forResult(finish(routing));
+          }
+          return routeNext(routing);
+        });
+  }
+
+  /** Releases the script recognizers. Blocks routed afterwards keep their Latin recognition. */
+  synchronized void close() {
+    isClosed = true;
+    for (TextRecognizer recognizer : recognizers.values()) {
+      DetectorPool.release(recognizer);
+    }
+    recognizers.clear();
+  }
+
+  private Task<CroppedText> routeNext(Routing routing) {
+    if (!routing.hasRoutedBlocks() || !routing.remainingScripts.hasNext()) {
+      return Tasks.forResult(finish(routing));
+    }
+    Script script = routing.remainingScripts.next();
+    TextRecognizer recognizer = getRecognizer(script);
+    if (recognizer == null) {
+      return Tasks.forResult(finish(routing));
+    }
+
+    InputImage input = routing.image;
+    Point offset = new Point();
+    Rect cropRect = routing.getCropRect();
+    Bitmap bitmap = cropRect != null ? routing.getBitmap() : null;
+    if (bitmap != null) {
+      // Cuts the crop out of the pixels as stored and lets the recognizer rotate it, so that the
+      // whole image is never rotated.
+      int rotationDegrees = routing.image.getRotationDegrees();
+      Matrix toStored = new Matrix();
+      BitmapUtils.getUprightTransformation(
+              bitmap.getWidth(), bitmap.getHeight(), rotationDegrees, false, false)
+          .invert(toStored);
+      RectF storedRect = new RectF(cropRect);
+      toStored.mapRect(storedRect);
+      Rect storedCropRect = new Rect();
+      storedRect.round(storedCropRect);
+      input =
+          InputImage.fromBitmap(
+              Bitmap.createBitmap(
+                  bitmap,
+                  storedCropRect.left,
+                  storedCropRect.top,
+                  storedCropRect.width(),
+                  storedCropRect.height()),
+              rotationDegrees);
+      offset.set(cropRect.left, cropRect.top);
+    }
+    routing.invocations++;
+    return recognizer
+        .process(input)
+        .continueWithTask(
+            executor,
+            task -> {
+              if (!task.isSuccessful()) {
+                Log.w(TAG, "Recognition of " + script + " text failed", task.getException());
+              } else if (routing.takeOver(script, task.getResult().getTextBlocks(), offset)) {
+                scriptOrder.remove(script);
+                scriptOrder.add(0, script);
+              }
+              return routeNext(routing);
+            });
+  }
+
+  private CroppedText finish(Routing routing) {
+    // Routed blocks that no script recognizer took over keep their Latin recognition.
+    for (TextBlock block : routing.routedBlocks) {
+      routing.textBlocks.add(block);
+      routing.blockOffsets.add(new Point());
+    }
+    if (routing.invocations > 1 && !routing.hasTakenOver) {
+      routingPausedUntilMs = SystemClock.elapsedRealtime() + ROUTING_BACKOFF_MS;
+    }
+    VisionMetrics.incrementCounter("text_routing.invocations", routing.invocations);
+    VisionMetrics.incrementCounter(
+        "text_routing.invocations_saved", Script.values().length + 1 - routing.invocations);
+    return new CroppedText(routing.textBlocks, routing.blockOffsets);
+  }
+
+  @Nullable
+  private synchronized TextRecognizer getRecognizer(Script script) {
+    if (isClosed) {
+      return null;
+    }
+    TextRecognizer recognizer = recognizers.get(script);
+    if (recognizer == null) {
+      recognizer =
+          DetectorPool.acquire(
+              context,
+              TextRecognizer.class,
+              script.options,
+              () -> TextRecognition.getClient(script.options));
+      recognizers.put(script, recognizer);
+    }
+    return recognizer;
+  }
+
+  @Nullable
+  private static Bitmap convertToBitmap(InputImage image) {
+    switch (image.getFormat()) {
+      case InputImage.IMAGE_FORMAT_NV21:
+        ByteBuffer data = image.getByteBuffer();
+        return data == null
+            ? null
+            : BitmapUtils.getSensorBitmap(
+                data,
+                new FrameMetadata.Builder()
+                    .setWidth(image.getWidth())
+                    .setHeight(image.getHeight())
+                    .build());
+      case InputImage.IMAGE_FORMAT_YUV_420_888:
+        Image mediaImage = image.getMediaImage();
+        return mediaImage == null ? null : BitmapUtils.getSensorBitmap(mediaImage);
+      default:
+        return null;
+    }
+  }
+
+  private static boolean isUncertain(TextBlock block) {
+    List<Line> lines = block.getLines();
+    if (block.getBoundingBox() == null || lines.isEmpty()) {
+      return false;
+    }
+    float confidenceSum = 0;
+    for (Line line : lines) {
+      confidenceSum += line.getConfidence();
+    }
+    return confidenceSum / lines.size() < MIN_LATIN_CONFIDENCE;
+  }
+
+  /** The state of routing one image. */
+  private final class Routing {
+    final InputImage image;
+    // The pixels of the image as stored, converted once a crop needs them if not given.
+    @Nullable Bitmap bitmap;
+    boolean hasConvertedBitmap;
+    final Iterator<Script> remainingScripts = new ArrayList<>(scriptOrder).iterator();
+    // The result so far, and the Latin blocks that still need a script recognizer.
+    final List<TextBlock> textBlocks = new ArrayList<>();
+    final List<Point> blockOffsets = new ArrayList<>();
+    final List<TextBlock> routedBlocks = new ArrayList<>();
+    boolean isRoutingWholeImage;
+    boolean hasTakenOver;
+    int invocations = 1;
+
+    Routing(Text latinText, InputImage image, @Nullable Bitmap bitmap) {
+      this.image = image;
+      this.bitmap = bitmap;
+      hasConvertedBitmap = bitmap != null;
+      for (TextBlock block : latinText.getTextBlocks()) {
+        if (isUncertain(block)) {
+          routedBlocks.add(block);
+        } else {
+          textBlocks.add(block);
+          blockOffsets.add(new Point());
+        }
+      }
+      isRoutingWholeImage = latinText.getTextBlocks().isEmpty();
+      VisionMetrics.incrementCounter("text_routing.routed_blocks", routedBlocks.size());
+    }
+
+    boolean hasRoutedBlocks() {
+      return isRoutingWholeImage || !routedBlocks.isEmpty();
+    }
+
+    /** Returns the padded bounds of the routed blocks, or null to use the whole image. */
+    @Nullable
+    Rect getCropRect() {
+      if (isRoutingWholeImage) {
+        return null;
+      }
+      Rect cropRect = new Rect(routedBlocks.get(0).getBoundingBox());
+      for (TextBlock block : routedBlocks) {
+        cropRect.union(block.getBoundingBox());
+      }
+      cropRect.inset(-CROP_PADDING, -CROP_PADDING);
+      boolean isTransposed = image.getRotationDegrees() % 180 != 0;
+      int uprightWidth = isTransposed ? image.getHeight() : image.getWidth();
+      int uprightHeight = isTransposed ? image.getWidth() : image.getHeight();
+      if (!cropRect.intersect(0, 0, uprightWidth, uprightHeight)) {
+        return null;
+      }
+      return cropRect;
+    }
+
+    /**
+     * Returns the pixels of the image as stored, i.e. before its rotation, or null if they cannot
+     * be read. Live frames are only converted here, as most of them need no crop.
+     */
+    @Nullable
+    Bitmap getBitmap() {
+      if (!hasConvertedBitmap) {
+        hasConvertedBitmap = true;
+        bitmap = convertToBitmap(image);
+      }
+      return bitmap;
+    }
+
+    /**
+     * Takes over the routed blocks overlapped by blocks of the given script found at the given
+     * offset in the image, and returns whether there were any.
+     */
+    boolean takeOver(Script script, List<TextBlock> scriptBlocks, Point offset) {
+      boolean hasFoundText = false;
+      for (TextBlock block : scriptBlocks) {
+        if (block.getBoundingBox() == null || !script.isWrittenIn(block.getText())) {
+          continue;
+        }
+        Rect boundingBox = new Rect(block.getBoundingBox());
+        boundingBox.offset(offset.x, offset.y);
+        boolean isOverlapping = isRoutingWholeImage;
+        Iterator<TextBlock> iterator = routedBlocks.iterator();
+        while (iterator.hasNext()) {
+          if (Rect.intersects(iterator.next().getBoundingBox(), boundingBox)) {
+            iterator.remove();
+            isOverlapping = true;
+          }
+        }
+        if (isOverlapping) {
+          textBlocks.add(block);
+          blockOffsets.add(offset);
+          hasFoundText = true;
+        }
+      }
+      if (hasFoundText) {
+        isRoutingWholeImage = false;
+        hasTakenOver = true;
+      }
+      return hasFoundText;
+    }
+  }
+}
@@ -22,52 +22,32 @@ import static java.lang.Math.min;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
-import android.util.Log;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
-import com.google.mlkit.vision.text.Text;
-import com.google.mlkit.vision.text.Text.Element;
-import com.google.mlkit.vision.text.Text.Line;
-import com.google.mlkit.vision.text.Text.Symbol;
-import com.google.mlkit.vision.text.Text.TextBlock;
-import java.util.Arrays;
-import java.util.Locale;
 
 /**
  * Graphic instance for rendering TextBlock position, size, and ID within an associated graphic
  * overlay view.
+ *
+ * <p>The geometry is precomputed into a {@link TextLayout}, so drawing only translates the cached
+ * boxes to view coordinates and skips the ones outside of the visible area.
  */
 public class TextGraphic extends Graphic {
 
-  private static final String TAG = "TextGraphic";
-  private static final String TEXT_WITH_LANGUAGE_TAG_FORMAT = "%s:%s";
-
   private static final int TEXT_COLOR = Color.BLACK;
   private static final int MARKER_COLOR = Color.WHITE;
-  private static final float TEXT_SIZE = 54.0f;
-  private static final float STROKE_WIDTH = 4.0f;
+  static final float TEXT_SIZE = 54.0f;
+  static final float STROKE_WIDTH = 4.0f;
 
   private final Paint rectPaint;
   private final Paint textPaint;
   private final Paint labelPaint;
-  private final Text text;
-  private final boolean shouldGroupTextInBlocks;
-  private final boolean showLanguageTag;
-  private final boolean showConfidence;
+  private final TextLayout layout;
 
-  TextGraphic(
-      GraphicOverlay overlay,
-      Text text,
-      boolean shouldGroupTextInBlocks,
-      boolean showLanguageTag,
-      boolean showConfidence) {
+  TextGraphic(GraphicOverlay overlay, TextLayout layout) {
     super(overlay);
 
-    this.text = text;
-    this.shouldGroupTextInBlocks = shouldGroupTextInBlocks;
-    this.showLanguageTag = showLanguageTag;
-    this.showConfidence = showConfidence;
+    this.layout = layout;
 
     rectPaint = new Paint();
     rectPaint.setColor(MARKER_COLOR);
@@ -88,80 +68,31 @@ public class TextGraphic extends Graphic {
   /** Draws the text block annotations for position, size, and raw value on the supplied canvas. */
   @Override
   public void draw(Canvas canvas) {
-    Log.d(TAG, "Text is: " + text.getText());
-    for (TextBlock textBlock : text.getTextBlocks()) {
-      // Renders the text at the bottom of the box.
-      Log.d(TAG, "TextBlock text is: " + textBlock.getText());
-      Log.d(TAG, "TextBlock boundingbox is: " + textBlock.getBoundingBox());
-      Log.d(TAG, "TextBlock cornerpoint is: " + Arrays.toString(textBlock.getCornerPoints()));
-      if (shouldGroupTextInBlocks) {
-        String text =
-            showLanguageTag
-                ? String.format(
-                    TEXT_WITH_LANGUAGE_TAG_FORMAT,
-                    textBlock.getRecognizedLanguage(),
-                    textBlock.getText())
-                : textBlock.getText();
-        drawText(
-            text,
-            new RectF(textBlock.getBoundingBox()),
-            TEXT_SIZE * textBlock.getLines().size() + 2 * STROKE_WIDTH,
-            canvas);
-      } else {
-        for (Line line : textBlock.getLines()) {
-          Log.d(TAG, "Line text is: " + line.getText());
-          Log.d(TAG, "Line boundingbox is: " + line.getBoundingBox());
-          Log.d(TAG, "Line cornerpoint is: " + Arrays.toString(line.getCornerPoints()));
-          Log.d(TAG, "Line confidence is: " + line.getConfidence());
-          Log.d(TAG, "Line angle is: " + line.getAngle());
-          String text =
-              showLanguageTag
-                  ? String.format(
-                      TEXT_WITH_LANGUAGE_TAG_FORMAT, line.getRecognizedLanguage(), line.getText())
-                  : line.getText();
-          text =
-              showConfidence
-                  ? String.format(Locale.US, "%s (%.2f)", text, line.getConfidence())
-                  : text;
-          drawText(text, new RectF(line.getBoundingBox()), TEXT_SIZE + 2 * STROKE_WIDTH, canvas);
+    int canvasWidth = canvas.getWidth();
+    int canvasHeight = canvas.getHeight();
+    for (int i = 0; i < layout.getCount(); i++) {
+      // If the image is flipped, the left will be translated to right, and the right to left.
+      float x0 = translateX(layout.getLeft(i));
+      float x1 = translateX(layout.getRight(i));
+      float left = min(x0, x1);
+      float right = max(x0, x1);
+      float top = translateY(layout.getTop(i));
+      float bottom = translateY(layout.getBottom(i));
+      float labelTop = top - layout.getLabelHeight(i);
+      float labelRight = left + layout.getLabelWidth(i) + 2 * STROKE_WIDTH;
 
-          for (Element element : line.getElements()) {
-            Log.d(TAG, "Element text is: " + element.getText());
-            Log.d(TAG, "Element boundingbox is: " + element.getBoundingBox());
-            Log.d(TAG, "Element cornerpoint is: " + Arrays.toString(element.getCornerPoints()));
-            Log.d(TAG, "Element language is: " + element.getRecognizedLanguage());
-            Log.d(TAG, "Element confidence is: " + element.getConfidence());
-            Log.d(TAG, "Element angle is: " + element.getAngle());
-            for (Symbol symbol : element.getSymbols()) {
-              Log.d(TAG, "Symbol text is: " + symbol.getText());
-              Log.d(TAG, "Symbol boundingbox is: " + symbol.getBoundingBox());
-              Log.d(TAG, "Symbol cornerpoint is: " + Arrays.toString(symbol.getCornerPoints()));
-              Log.d(TAG, "Symbol confidence is: " + symbol.getConfidence());
-              Log.d(TAG, "Symbol angle is: " + symbol.getAngle());
-            }
-          }
-        }
+      // Skips the boxes which are entirely outside of the visible area, including their labels.
+      if (max(right, labelRight) < 0
+          || left - STROKE_WIDTH > canvasWidth
+          || bottom < 0
+          || labelTop > canvasHeight) {
+        continue;
       }
-    }
-  }
 
-  private void drawText(String text, RectF rect, float textHeight, Canvas canvas) {
-    // If the image is flipped, the left will be translated to right, and the right to left.
-    float x0 = translateX(rect.left);
-    float x1 = translateX(rect.right);
-    rect.left = min(x0, x1);
-    rect.right = max(x0, x1);
-    rect.top = translateY(rect.top);
-    rect.bottom = translateY(rect.bottom);
-    canvas.drawRect(rect, rectPaint);
-    float textWidth = textPaint.measureText(text);
-    canvas.drawRect(
-        rect.left - STROKE_WIDTH,
-        rect.top - textHeight,
-        rect.left + textWidth + 2 * STROKE_WIDTH,
-        rect.top,
-        labelPaint);
-    // Renders the text at the bottom of the box.
-    canvas.drawText(text, rect.left, rect.top - STROKE_WIDTH, textPaint);
+      canvas.drawRect(left, top, right, bottom, rectPaint);
+      canvas.drawRect(left - STROKE_WIDTH, labelTop, labelRight, top, labelPaint);
+      // Renders the text at the bottom of the box.
+      canvas.drawText(layout.getLabel(i), left, top - STROKE_WIDTH, textPaint);
+    }
   }
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.textdetector;
+
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.Text.Element;
+import com.google.mlkit.vision.text.Text.Line;
+import com.google.mlkit.vision.text.Text.Symbol;
+import com.google.mlkit.vision.text.Text.TextBlock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Overlay geometry for a {@link Text} result, flattened into parallel arrays so that {@link
+ * TextGraphic#draw} only has to replay it.
+ *
+ * <p>Bounding boxes are kept in image coordinates since the image-to-view transformation may change
+ * after the layout is computed (e.g. on a layout change of the overlay). Label widths and heights
+ * are already in view pixels as the label text size does not depend on the image scale.
+ *
+ * <p>A layout can also merge text blocks recognized in different crops of the same image, each
+ * moved by the position of its crop.
+ */
+public final class TextLayout {
+
+  private static final String TAG = "TextLayout";
+  private static final String TEXT_WITH_LANGUAGE_TAG_FORMAT = "%s:%s";
+
+  private final List<TextBlock> textBlocks;
+  // Bounding box of each text block in image coordinates, null if the block has none.
+  private final Rect[] blockBoundingBoxes;
+  private final int count;
+  // Bounding boxes in image coordinates as [left, top, right, bottom] for each item.
+  private final float[] boxes;
+  private final String[] labels;
+  private final float[] labelWidths;
+  private final float[] labelHeights;
+
+  private TextLayout(
+      List<TextBlock> textBlocks,
+      Rect[] blockBoundingBoxes,
+      int count,
+      float[] boxes,
+      String[] labels,
+      float[] labelWidths,
+      float[] labelHeights) {
+    this.textBlocks = textBlocks;
+    this.blockBoundingBoxes = blockBoundingBoxes;
+    this.count = count;
+    this.boxes = boxes;
+    this.labels = labels;
+    this.labelWidths = labelWidths;
+    this.labelHeights = labelHeights;
+  }
+
+  /**
+   * Computes the layout of the given {@link Text}. This walks the full block / line / element /
+   * symbol hierarchy once, so it should be called off the UI thread.
+   */
+  public static TextLayout create(
+      Text text, boolean shouldGroupTextInBlocks, boolean showLanguageTag, boolean showConfidence) {
+    Log.d(TAG, "Text is: " + text.getText());
+    List<TextBlock> textBlocks = text.getTextBlocks();
+    return create(
+        textBlocks,
+        Collections.nCopies(textBlocks.size(), new Point()),
+        shouldGroupTextInBlocks,
+        showLanguageTag,
+        showConfidence);
+  }
+
+  /**
+   * Computes the layout of text blocks recognized in crops of an image, moving each block by the
+   * top left corner of its crop in the image. Like {@link #create(Text, boolean, boolean,
+   * boolean)}, this should be called off the UI thread.
+   */
+  public static TextLayout create(
+      List<TextBlock> textBlocks,
+      List<Point> blockOffsets,
+      boolean shouldGroupTextInBlocks,
+      boolean showLanguageTag,
+      boolean showConfidence) {
+    Paint textPaint = new Paint();
+    textPaint.setTextSize(TextGraphic.TEXT_SIZE);
+
+    List<Rect> rects = new ArrayList<>();
+    List<String> labelList = new ArrayList<>();
+    List<Float> heightList = new ArrayList<>();
+    Rect[] blockBoundingBoxes = new Rect[textBlocks.size()];
+
+    for (int blockIndex = 0; blockIndex < textBlocks.size(); blockIndex++) {
+      TextBlock textBlock = textBlocks.get(blockIndex);
+      Point offset = blockOffsets.get(blockIndex);
+      Log.d(TAG, "TextBlock text is: " + textBlock.getText());
+      Log.d(TAG, "TextBlock boundingbox is: " + textBlock.getBoundingBox());
+      Log.d(TAG, "TextBlock cornerpoint is: " + Arrays.toString(textBlock.getCornerPoints()));
+      blockBoundingBoxes[blockIndex] = offset(textBlock.getBoundingBox(), offset);
+      if (shouldGroupTextInBlocks) {
+        if (textBlock.getBoundingBox() == null) {
+          continue;
+        }
+        String label =
+            showLanguageTag
+                ? String.format(
+                    TEXT_WITH_LANGUAGE_TAG_FORMAT,
+                    textBlock.getRecognizedLanguage(),
+                    textBlock.getText())
+                : textBlock.getText();
+        rects.add(blockBoundingBoxes[blockIndex]);
+        labelList.add(label);
+        heightList.add(
+            TextGraphic.TEXT_SIZE * textBlock.getLines().size() + 2 * TextGraphic.STROKE_WIDTH);
+      } else {
+        for (Line line : textBlock.getLines()) {
+          logLine(line);
+          if (line.getBoundingBox() == null) {
+            continue;
+          }
+          String label =
+              showLanguageTag
+                  ? String.format(
+                      TEXT_WITH_LANGUAGE_TAG_FORMAT, line.getRecognizedLanguage(), line.getText())
+                  : line.getText();
+          label =
+              showConfidence
+                  ? String.format(Locale.US, "%s (%.2f)", label, line.getConfidence())
+                  : label;
+          rects.add(offset(line.getBoundingBox(), offset));
+          labelList.add(label);
+          heightList.add(TextGraphic.TEXT_SIZE + 2 * TextGraphic.STROKE_WIDTH);
+        }
+      }
+    }
+
+    int count = rects.size();
+    float[] boxes = new float[count * 4];
+    String[] labels = new String[count];
+    float[] labelWidths = new float[count];
+    float[] labelHeights = new float[count];
+    for (int i = 0; i < count; i++) {
+      Rect rect = rects.get(i);
+      boxes[i * 4] = rect.left;
+      boxes[i * 4 + 1] = rect.top;
+      boxes[i * 4 + 2] = rect.right;
+      boxes[i * 4 + 3] = rect.bottom;
+      labels[i] = labelList.get(i);
+      labelWidths[i] = textPaint.measureText(labels[i]);
+      labelHeights[i] = heightList.get(i);
+    }
+    return new TextLayout(
+        textBlocks, blockBoundingBoxes, count, boxes, labels, labelWidths, labelHeights);
+  }
+
+  @Nullable
+  private static Rect offset(@Nullable Rect rect, Point offset) {
+    if (rect == null || (offset.x == 0 && offset.y == 0)) {
+      return rect;
+    }
+    Rect offsetRect = new Rect(rect);
+    offsetRect.offset(offset.x, offset.y);
+    return offsetRect;
+  }
+
+  private static void logLine(Line line) {
+    Log.d(TAG, "Line text is: " + line.getText());
+    Log.d(TAG, "Line boundingbox is: " + line.getBoundingBox());
+    Log.d(TAG, "Line cornerpoint is: " + Arrays.toString(line.getCornerPoints()));
+    Log.d(TAG, "Line confidence is: " + line.getConfidence());
+    Log.d(TAG, "Line angle is: " + line.getAngle());
+    for (Element element : line.getElements()) {
+      Log.d(TAG, "Element text is: " + element.getText());
+      Log.d(TAG, "Element boundingbox is: " + element.getBoundingBox());
+      Log.d(TAG, "Element cornerpoint is: " + Arrays.toString(element.getCornerPoints()));
+      Log.d(TAG, "Element language is: " + element.getRecognizedLanguage());
+      Log.d(TAG, "Element confidence is: " + element.getConfidence());
+      Log.d(TAG, "Element angle is: " + element.getAngle());
+      for (Symbol symbol : element.getSymbols()) {
+        Log.d(TAG, "Symbol text is: " + symbol.getText());
+        Log.d(TAG, "Symbol boundingbox is: " + symbol.getBoundingBox());
+        Log.d(TAG, "Symbol cornerpoint is: " + Arrays.toString(symbol.getCornerPoints()));
+        Log.d(TAG, "Symbol confidence is: " + symbol.getConfidence());
+        Log.d(TAG, "Symbol angle is: " + symbol.getAngle());
+      }
+    }
+  }
+
+  /** Returns the text blocks this layout was computed from. */
+  public List<TextBlock> getTextBlocks() {
+    return textBlocks;
+  }
+
+  /**
+   * Returns the bounding box of the text block at the given index in image coordinates, or null if
+   * it has none.
+   */
+  @Nullable
+  public Rect getBlockBoundingBox(int blockIndex) {
+    return blockBoundingBoxes[blockIndex];
+  }
+
+  /** Returns the number of labelled boxes in this layout. */
+  public int getCount() {
+    return count;
+  }
+
+  float getLeft(int i) {
+    return boxes[i * 4];
+  }
+
+  float getTop(int i) {
+    return boxes[i * 4 + 1];
+  }
+
+  float getRight(int i) {
+    return boxes[i * 4 + 2];
+  }
+
+  float getBottom(int i) {
+    return boxes[i * 4 + 3];
+  }
+
+  String getLabel(int i) {
+    return labels[i];
+  }
+
+  float getLabelWidth(int i) {
+    return labelWidths[i];
+  }
+
+  float getLabelHeight(int i) {
+    return labelHeights[i];
+  }
+}
@@ -17,70 +17,234 @@
 package com.google.mlkit.vision.demo.java.textdetector;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.Task;
+import com.google.android.odml.image.BitmapExtractor;
+import com.google.android.odml.image.ByteBufferExtractor;
+import com.google.android.odml.image.ImageProperties;
+import com.google.android.odml.image.MediaImageExtractor;
+import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorPool;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.text.Text;
 import com.google.mlkit.vision.text.Text.Element;
 import com.google.mlkit.vision.text.Text.Line;
+import com.google.mlkit.vision.text.Text.TextBlock;
 import com.google.mlkit.vision.text.TextRecognition;
 import com.google.mlkit.vision.text.TextRecognizer;
 import com.google.mlkit.vision.text.TextRecognizerOptionsInterface;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /** Processor for the text detector demo. */
-public class TextRecognitionProcessor extends VisionProcessorBase<Text> {
+public class TextRecognitionProcessor extends VisionProcessorBase<TextLayout> {
 
   private static final String TAG = "TextRecProcessor";
 
+  // Computes the overlay geometry of each result off the main thread. Shared by all instances so
+  // that pending layouts of a stopped processor never run into a shut down executor.
+  private static final Executor LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor();
+
   private final TextRecognizer textRecognizer;
   private final Boolean shouldGroupRecognizedTextInBlocks;
   private final Boolean showLanguageTag;
   private final boolean showConfidence;
+  // Only created if scripts are routed.
+  @Nullable private final ScriptRouter scriptRouter;
+  // Only created if incremental recognition is turned on and scripts are not routed.
+  @Nullable private final IncrementalTextRecognizer incrementalRecognizer;
 
   public TextRecognitionProcessor(
       Context context, TextRecognizerOptionsInterface textRecognizerOptions) {
+    this(context, textRecognizerOptions, /* shouldRouteScripts= */ false);
+  }
+
+  /**
+   * Creates a processor that, if scripts are routed, runs the recognizers of other scripts on the
+   * text the given recognizer is unsure about. Routing is meant for the Latin recognizer, see
+   * {@link ScriptRouter}.
+   */
+  public TextRecognitionProcessor(
+      Context context,
+      TextRecognizerOptionsInterface textRecognizerOptions,
+      boolean shouldRouteScripts) {
     super(context);
     shouldGroupRecognizedTextInBlocks = PreferenceUtils.shouldGroupRecognizedTextInBlocks(context);
     showLanguageTag = PreferenceUtils.showLanguageTag(context);
     showConfidence = PreferenceUtils.shouldShowTextConfidence(context);
-    textRecognizer = TextRecognition.getClient(textRecognizerOptions);
+    textRecognizer =
+        DetectorPool.acquire(
+            context,
+            TextRecognizer.class,
+            textRecognizerOptions,
+            () -> TextRecognition.getClient(textRecognizerOptions));
+    scriptRouter = shouldRouteScripts ? new ScriptRouter(context, LAYOUT_EXECUTOR) : null;
+    incrementalRecognizer =
+        !shouldRouteScripts && PreferenceUtils.isIncrementalTextRecognitionEnabled(context)
+            ? new IncrementalTextRecognizer(textRecognizer, LAYOUT_EXECUTOR)
+            : null;
   }
 
   @Override
   public void stop() {
+    if (isShutdown()) {
+      return;
+    }
     super.stop();
-    textRecognizer.close();
+    DetectorPool.release(textRecognizer);
+    if (scriptRouter != null) {
+      scriptRouter.close();
+    }
+  }
+
+  @Override
+  protected Task<TextLayout> detectInImage(InputImage image) {
+    return detectInImage(image, /* bitmap= */ null);
+  }
+
+  @Override
+  protected Task<TextLayout> detectInImage(InputImage image, @Nullable Bitmap bitmap) {
+    // Only live frames come as NV21, which incremental recognition can cut into tiles.
+    if (incrementalRecognizer != null
+        && image.getFormat() == InputImage.IMAGE_FORMAT_NV21
+        && image.getByteBuffer() != null) {
+      return layOutCropped(
+          incrementalRecognizer.process(
+              image.getByteBuffer(),
+              image.getWidth(),
+              image.getHeight(),
+              image.getRotationDegrees()));
+    }
+    Task<Text> recognitionTask = textRecognizer.process(image);
+    if (scriptRouter == null) {
+      return layOut(recognitionTask);
+    }
+    return layOutCropped(scriptRouter.route(recognitionTask, image, bitmap));
   }
 
   @Override
-  protected Task<Text> detectInImage(InputImage image) {
+  protected Task<?> warmUpDetector(InputImage image) {
+    // Skips incremental recognition, which would keep the blank frame as its reference tiles.
     return textRecognizer.process(image);
   }
 
   @Override
-  protected void onSuccess(@NonNull Text text, @NonNull GraphicOverlay graphicOverlay) {
+  protected Task<TextLayout> detectInImage(MlImage image) {
+    if (incrementalRecognizer != null && isNv21ByteBuffer(image)) {
+      return layOutCropped(
+          incrementalRecognizer.process(
+              ByteBufferExtractor.extract(image),
+              image.getWidth(),
+              image.getHeight(),
+              image.getRotation()));
+    }
+    Task<Text> recognitionTask = textRecognizer.process(image);
+    if (scriptRouter == null) {
+      return layOut(recognitionTask);
+    }
+    // The MlImage is closed once this returns, so script recognizers run on what it wraps.
+    InputImage inputImage = toInputImage(image);
+    if (inputImage == null) {
+      return layOut(recognitionTask);
+    }
+    Bitmap bitmap =
+        image.getContainedImageProperties().get(0).getStorageType() == MlImage.STORAGE_TYPE_BITMAP
+            ? BitmapExtractor.extract(image)
+            : null;
+    return layOutCropped(scriptRouter.route(recognitionTask, inputImage, bitmap));
+  }
+
+  private Task<TextLayout> layOut(Task<Text> recognitionTask) {
+    return recognitionTask.continueWith(
+        LAYOUT_EXECUTOR,
+        task ->
+            TextLayout.create(
+                task.getResult(),
+                shouldGroupRecognizedTextInBlocks,
+                showLanguageTag,
+                showConfidence));
+  }
+
+  private Task<TextLayout> layOutCropped(Task<CroppedText> croppedTextTask) {
+    return croppedTextTask.continueWith(
+        LAYOUT_EXECUTOR,
+        task ->
+            TextLayout.create(
+                task.getResult().textBlocks,
+                task.getResult().blockOffsets,
+                shouldGroupRecognizedTextInBlocks,
+                showLanguageTag,
+                showConfidence));
+  }
+
+  private static boolean isNv21ByteBuffer(MlImage image) {
+    ImageProperties properties = image.getContainedImageProperties().get(0);
+    return properties.getStorageType() == MlImage.STORAGE_TYPE_BYTEBUFFER
+        && properties.getImageFormat() == MlImage.IMAGE_FORMAT_NV21;
+  }
+
+  /** Returns an image with the same content as the given MlImage, or null if not supported. */
+  @Nullable
+  private static InputImage toInputImage(MlImage image) {
+    ImageProperties properties = image.getContainedImageProperties().get(0);
+    switch (properties.getStorageType()) {
+      case MlImage.STORAGE_TYPE_BITMAP:
+        return InputImage.fromBitmap(BitmapExtractor.extract(image), image.getRotation());
+      case MlImage.STORAGE_TYPE_MEDIA_IMAGE:
+        return InputImage.fromMediaImage(MediaImageExtractor.extract(image), image.getRotation());
+      case MlImage.STORAGE_TYPE_BYTEBUFFER:
+        if (!isNv21ByteBuffer(image)) {
+          return null;
+        }
+        return InputImage.fromByteBuffer(
+            ByteBufferExtractor.extract(image),
+            image.getWidth(),
+            image.getHeight(),
+            image.getRotation(),
+            InputImage.IMAGE_FORMAT_NV21);
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  protected void onSuccess(@NonNull TextLayout layout, @NonNull GraphicOverlay graphicOverlay) {
     Log.d(TAG, "On-device Text detection successful");
-    logExtrasForTesting(text);
-    graphicOverlay.add(
-        new TextGraphic(
-            graphicOverlay,
-            text,
-            shouldGroupRecognizedTextInBlocks,
-            showLanguageTag,
-            showConfidence));
-  }
-
-  private static void logExtrasForTesting(Text text) {
-    if (text != null) {
-      Log.v(MANUAL_TESTING_LOG, "Detected text has : " + text.getTextBlocks().size() + " blocks");
-      for (int i = 0; i < text.getTextBlocks().size(); ++i) {
-        List<Line> lines = text.getTextBlocks().get(i).getLines();
+    logExtrasForTesting(layout.getTextBlocks());
+    graphicOverlay.add(new TextGraphic(graphicOverlay, layout));
+  }
+
+  @Override
+  protected int getResultCount(@NonNull TextLayout layout) {
+    return layout.getTextBlocks().size();
+  }
+
+  @Override
+  @Nullable
+  protected RectF getResultBounds(@NonNull TextLayout layout) {
+    List<Rect> boundingBoxes = new ArrayList<>();
+    for (int i = 0; i < layout.getTextBlocks().size(); i++) {
+      boundingBoxes.add(layout.getBlockBoundingBox(i));
+    }
+    return getUnionBounds(boundingBoxes);
+  }
+
+  private static void logExtrasForTesting(List<TextBlock> textBlocks) {
+    if (textBlocks != null) {
+      Log.v(MANUAL_TESTING_LOG, "Detected text has : " + textBlocks.size() + " blocks");
+      for (int i = 0; i < textBlocks.size(); ++i) {
+        List<Line> lines = textBlocks.get(i).getLines();
         Log.v(
             MANUAL_TESTING_LOG,
             String.format("Detected text block %d has %d lines", i, lines.size()));
@@ -48,6 +48,7 @@ import com.google.mlkit.common.model.LocalModel
 import com.google.mlkit.vision.barcode.ZoomSuggestionOptions.ZoomCallback
 import com.google.mlkit.vision.demo.CameraXViewModel
 import com.google.mlkit.vision.demo.GraphicOverlay
+import com.google.mlkit.vision.demo.GraphicOverlayTextureView
 import com.google.mlkit.vision.demo.R
 import com.google.mlkit.vision.demo.VisionImageProcessor
 import com.google.mlkit.vision.demo.kotlin.barcodescanner.BarcodeScannerProcessor
@@ -68,6 +69,8 @@ import com.google.mlkit.vision.text.devanagari.DevanagariTextRecognizerOptions
 import com.google.mlkit.vision.text.japanese.JapaneseTextRecognizerOptions
 import com.google.mlkit.vision.text.korean.KoreanTextRecognizerOptions
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 /** Live preview demo app for ML Kit APIs using CameraX. */
 @KeepName
@@ -82,7 +85,8 @@ class CameraXLivePreviewActivity :
   private var previewUseCase: Preview? = null
   private var analysisUseCase: ImageAnalysis? = null
   private var imageProcessor: VisionImageProcessor? = null
-  private var needUpdateGraphicOverlayImageSourceInfo = false
+  @Volatile private var needUpdateGraphicOverlayImageSourceInfo = false
+  private val analysisExecutor: ExecutorService = Executors.newSingleThreadExecutor()
   private var selectedModel = OBJECT_DETECTION
   private var lensFacing = CameraSelector.LENS_FACING_BACK
   private var cameraSelector: CameraSelector? = null
@@ -103,6 +107,11 @@ class CameraXLivePreviewActivity :
     if (graphicOverlay == null) {
       Log.d(TAG, "graphicOverlay is null")
     }
+    if (PreferenceUtils.shouldRenderOverlayOnRenderThread(this)) {
+      val renderView = findViewById<GraphicOverlayTextureView>(R.id.graphic_overlay_render_view)
+      renderView.visibility = View.VISIBLE
+      graphicOverlay!!.setRenderView(renderView)
+    }
     val spinner = findViewById<Spinner>(R.id.spinner)
     val options: MutableList<String> = ArrayList()
     options.add(OBJECT_DETECTION)
@@ -146,6 +155,7 @@ class CameraXLivePreviewActivity :
     settingsButton.setOnClickListener {
       val intent = Intent(applicationContext, SettingsActivity::class.java)
       intent.putExtra(SettingsActivity.EXTRA_LAUNCH_SOURCE, LaunchSource.CAMERAX_LIVE_PREVIEW)
+      intent.putExtra(SettingsActivity.EXTRA_KOTLIN_DEMO, true)
       startActivity(intent)
     }
   }
@@ -211,7 +221,9 @@ class CameraXLivePreviewActivity :
 
   public override fun onDestroy() {
     super.onDestroy()
+    analysisUseCase?.clearAnalyzer()
     imageProcessor?.run { this.stop() }
+    analysisExecutor.shutdown()
   }
 
   private fun bindAllCameraUseCases() {
@@ -372,19 +384,39 @@ class CameraXLivePreviewActivity :
         return
       }
 
-    val builder = ImageAnalysis.Builder()
+    val builder =
+      ImageAnalysis.Builder()
+        .setBackpressureStrategy(PreferenceUtils.getCameraXBackpressureStrategy(this))
+        .setImageQueueDepth(ANALYSIS_IMAGE_QUEUE_DEPTH)
     val targetResolution = PreferenceUtils.getCameraXTargetResolution(this, lensFacing)
     if (targetResolution != null) {
       builder.setTargetResolution(targetResolution)
     }
+    if (PreferenceUtils.isDetectorWarmUpEnabled(this)) {
+      if (targetResolution != null) {
+        imageProcessor!!.warmUp(targetResolution.width, targetResolution.height)
+      } else {
+        imageProcessor!!.warmUp(DEFAULT_ANALYSIS_WIDTH, DEFAULT_ANALYSIS_HEIGHT)
+      }
+    }
+    if (PreferenceUtils.isCameraXRgbaOutputEnabled(this)) {
+      // Lets CameraX do the YUV to RGB conversion, so that frames can be copied into a bitmap
+      // directly instead of going through NV21 and JPEG.
+      builder.setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888)
+    }
     analysisUseCase = builder.build()
 
+    // imageProcessor.processImageProxy will use another thread to run the detection underneath, but
+    // converting the frame for the preview still happens in the analyzer, so it can be moved off the
+    // main thread as well.
+    val analyzerExecutor =
+      if (PreferenceUtils.shouldRunCameraXAnalysisInBackground(this)) analysisExecutor
+      else ContextCompat.getMainExecutor(this)
+    val processor = imageProcessor!!
     needUpdateGraphicOverlayImageSourceInfo = true
 
     analysisUseCase?.setAnalyzer(
-      // imageProcessor.processImageProxy will use another thread to run the detection underneath,
-      // thus we can just runs the analyzer itself on main thread.
-      ContextCompat.getMainExecutor(this),
+      analyzerExecutor,
       ImageAnalysis.Analyzer { imageProxy: ImageProxy ->
         if (needUpdateGraphicOverlayImageSourceInfo) {
           val isImageFlipped = lensFacing == CameraSelector.LENS_FACING_FRONT
@@ -397,10 +429,12 @@ class CameraXLivePreviewActivity :
           needUpdateGraphicOverlayImageSourceInfo = false
         }
         try {
-          imageProcessor!!.processImageProxy(imageProxy, graphicOverlay)
+          processor.processImageProxy(imageProxy, graphicOverlay)
         } catch (e: MlKitException) {
           Log.e(TAG, "Failed to process image. Error: " + e.localizedMessage)
-          Toast.makeText(applicationContext, e.localizedMessage, Toast.LENGTH_SHORT).show()
+          runOnUiThread {
+            Toast.makeText(applicationContext, e.localizedMessage, Toast.LENGTH_SHORT).show()
+          }
         }
       },
     )
@@ -427,5 +461,12 @@ class CameraXLivePreviewActivity :
     private const val FACE_MESH_DETECTION = "Face Mesh Detection (Beta)"
 
     private const val STATE_SELECTED_MODEL = "selected_model"
+
+    // Only used with STRATEGY_BLOCK_PRODUCER: one frame being analyzed and one waiting, so that a
+    // slow detector does not leave a long queue of stale frames behind.
+    private const val ANALYSIS_IMAGE_QUEUE_DEPTH = 2
+    // The resolution CameraX analyzes frames at when no target resolution is set.
+    private const val DEFAULT_ANALYSIS_WIDTH = 640
+    private const val DEFAULT_ANALYSIS_HEIGHT = 480
   }
 }
@@ -35,6 +35,7 @@ import com.google.mlkit.vision.barcode.ZoomSuggestionOptions.ZoomCallback
 import com.google.mlkit.vision.demo.CameraSource
 import com.google.mlkit.vision.demo.CameraSourcePreview
 import com.google.mlkit.vision.demo.GraphicOverlay
+import com.google.mlkit.vision.demo.GraphicOverlayTextureView
 import com.google.mlkit.vision.demo.R
 import com.google.mlkit.vision.demo.kotlin.barcodescanner.BarcodeScannerProcessor
 import com.google.mlkit.vision.demo.kotlin.facedetector.FaceDetectorProcessor
@@ -80,6 +81,11 @@ class LivePreviewActivity :
     if (graphicOverlay == null) {
       Log.d(TAG, "graphicOverlay is null")
     }
+    if (PreferenceUtils.shouldRenderOverlayOnRenderThread(this)) {
+      val renderView = findViewById<GraphicOverlayTextureView>(R.id.graphic_overlay_render_view)
+      renderView.visibility = View.VISIBLE
+      graphicOverlay!!.setRenderView(renderView)
+    }
 
     val spinner = findViewById<Spinner>(R.id.spinner)
     val options: MutableList<String> = ArrayList()
@@ -116,6 +122,7 @@ class LivePreviewActivity :
     settingsButton.setOnClickListener {
       val intent = Intent(applicationContext, SettingsActivity::class.java)
       intent.putExtra(SettingsActivity.EXTRA_LAUNCH_SOURCE, LaunchSource.LIVE_PREVIEW)
+      intent.putExtra(SettingsActivity.EXTRA_KOTLIN_DEMO, true)
       startActivity(intent)
     }
 
@@ -155,6 +162,8 @@ class LivePreviewActivity :
     if (cameraSource == null) {
       cameraSource = CameraSource(this, graphicOverlay)
     }
+    cameraSource!!.setAdaptiveCaptureRateEnabled(PreferenceUtils.isAdaptiveCaptureRateEnabled(this))
+    cameraSource!!.setPreviewBufferCount(PreferenceUtils.getCameraPreviewBufferCount(this))
     try {
       when (model) {
         OBJECT_DETECTION -> {
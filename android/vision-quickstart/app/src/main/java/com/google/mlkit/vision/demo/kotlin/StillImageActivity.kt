@@ -134,6 +134,7 @@ class StillImageActivity : AppCompatActivity() {
     settingsButton.setOnClickListener {
       val intent = Intent(applicationContext, SettingsActivity::class.java)
       intent.putExtra(SettingsActivity.EXTRA_LAUNCH_SOURCE, LaunchSource.STILL_IMAGE)
+      intent.putExtra(SettingsActivity.EXTRA_KOTLIN_DEMO, true)
       startActivity(intent)
     }
   }
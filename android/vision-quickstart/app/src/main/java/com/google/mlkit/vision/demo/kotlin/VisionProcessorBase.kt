@@ -19,6 +19,7 @@ package com.google.mlkit.vision.demo.kotlin
 import android.app.ActivityManager
 import android.content.Context
 import android.graphics.Bitmap
+import android.graphics.PixelFormat
 import android.os.Build.VERSION_CODES
 import android.os.SystemClock
 import android.util.Log
@@ -43,6 +44,8 @@ import com.google.mlkit.vision.demo.CameraImageGraphic
 import com.google.mlkit.vision.demo.FrameMetadata
 import com.google.mlkit.vision.demo.GraphicOverlay
 import com.google.mlkit.vision.demo.InferenceInfoGraphic
+import com.google.mlkit.vision.demo.InputPathLatencyStats
+import com.google.mlkit.vision.demo.InputPathLatencyStats.InputPath
 import com.google.mlkit.vision.demo.ScopedExecutor
 import com.google.mlkit.vision.demo.VisionImageProcessor
 import com.google.mlkit.vision.demo.preference.PreferenceUtils
@@ -85,7 +88,8 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
 
   // Frame count that have been processed so far in an one second interval to calculate FPS.
   private var frameProcessedInOneSecondInterval = 0
-  private var framesPerSecond = 0
+  // Written by the FPS timer and read by the camera frame rate adaptation on the main thread.
+  @Volatile private var framesPerSecond = 0
 
   // To keep the latest images and its metadata.
   @GuardedBy("this") private var latestImage: ByteBuffer? = null
@@ -212,6 +216,10 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
     if (isShutdown) {
       return
     }
+    if (image.format == PixelFormat.RGBA_8888) {
+      processRgbaImageProxy(image, graphicOverlay, frameStartMs)
+      return
+    }
     var bitmap: Bitmap? = null
     if (!PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.context)) {
       bitmap = BitmapUtils.getBitmap(image)
@@ -250,6 +258,54 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
       .addOnCompleteListener { image.close() }
   }
 
+  /**
+   * Processes a frame the analysis use case delivered as RGBA_8888. The pixels are copied into a
+   * bitmap once, which is then used both as detector input and, if the live viewport is disabled,
+   * as the preview image.
+   */
+  @RequiresApi(VERSION_CODES.LOLLIPOP)
+  private fun processRgbaImageProxy(
+    image: ImageProxy,
+    graphicOverlay: GraphicOverlay,
+    frameStartMs: Long
+  ) {
+    var frameBitmap = BitmapUtils.getRgbaBitmap(image)
+    var rotationDegrees = image.imageInfo.rotationDegrees
+    var bitmap: Bitmap? = null
+    if (!PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.context)) {
+      // The preview needs an upright bitmap anyway, so let the detector share it.
+      frameBitmap = BitmapUtils.rotateBitmap(frameBitmap, rotationDegrees)
+      rotationDegrees = 0
+      bitmap = frameBitmap
+    }
+
+    val task: Task<T>
+    if (isMlImageEnabled(graphicOverlay.context)) {
+      val mlImage = BitmapMlImageBuilder(frameBitmap).setRotation(rotationDegrees).build()
+      task =
+        requestDetectInImage(
+          mlImage,
+          graphicOverlay,
+          /* originalCameraImage= */ bitmap,
+          /* shouldShowFps= */ true,
+          frameStartMs
+        )
+      mlImage.close()
+    } else {
+      task =
+        requestDetectInImage(
+          InputImage.fromBitmap(frameBitmap, rotationDegrees),
+          graphicOverlay,
+          /* originalCameraImage= */ bitmap,
+          /* shouldShowFps= */ true,
+          frameStartMs
+        )
+    }
+    // The pixels have already been copied out, but the image is only closed once detection is done
+    // so that CameraX does not deliver a new frame while the detector is still busy.
+    task.addOnCompleteListener { image.close() }
+  }
+
   // -----------------Common processing logic-------------------------------------------------------
   private fun requestDetectInImage(
     image: InputImage,
@@ -260,6 +316,7 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
   ): Task<T> {
     return setUpListener(
       detectInImage(image),
+      InputPath.INPUT_IMAGE,
       graphicOverlay,
       originalCameraImage,
       shouldShowFps,
@@ -276,6 +333,7 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
   ): Task<T> {
     return setUpListener(
       detectInImage(image),
+      InputPath.ML_IMAGE,
       graphicOverlay,
       originalCameraImage,
       shouldShowFps,
@@ -285,6 +343,7 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
 
   private fun setUpListener(
     task: Task<T>,
+    inputPath: InputPath,
     graphicOverlay: GraphicOverlay,
     originalCameraImage: Bitmap?,
     shouldShowFps: Boolean,
@@ -309,6 +368,12 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
           totalDetectorMs += currentDetectorLatencyMs
           maxDetectorMs = max(currentDetectorLatencyMs, maxDetectorMs)
           minDetectorMs = min(currentDetectorLatencyMs, minDetectorMs)
+          InputPathLatencyStats.record(
+            javaClass.simpleName,
+            inputPath,
+            currentFrameLatencyMs,
+            currentDetectorLatencyMs
+          )
 
           // Only log inference info once per second. When frameProcessedInOneSecondInterval is
           // equal to 1, it means this is the first frame processed during the current second.
@@ -336,6 +401,7 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
             activityManager.getMemoryInfo(mi)
             val availableMegs: Long = mi.availMem / 0x100000L
             Log.d(TAG, "Memory available in system: $availableMegs MB")
+            InputPathLatencyStats.logSummary(javaClass.simpleName)
           }
           graphicOverlay.clear()
           if (originalCameraImage != null) {
@@ -377,6 +443,25 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
       )
   }
 
+  override fun getProcessedFramesPerSecond(): Int = framesPerSecond
+
+  override fun warmUp(frameWidth: Int, frameHeight: Int) {
+    if (isShutdown) {
+      return
+    }
+    // Loads the model before the first camera frame arrives, nothing is drawn for the result.
+    val frame = ByteArray(frameWidth * frameHeight * 3 / 2) { 128.toByte() }
+    detectInImage(
+      InputImage.fromByteBuffer(
+        ByteBuffer.wrap(frame),
+        frameWidth,
+        frameHeight,
+        /* rotationDegrees= */ 0,
+        InputImage.IMAGE_FORMAT_NV21
+      )
+    )
+  }
+
   override fun stop() {
     executor.shutdown()
     isShutdown = true
@@ -409,7 +494,11 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
 
   protected abstract fun onFailure(e: Exception)
 
+  /**
+   * Whether frames are handed to [detectInImage] as [MlImage] rather than [InputImage]. Follows the
+   * global setting, which is off by default. Processors can override this to always pick one.
+   */
   protected open fun isMlImageEnabled(context: Context?): Boolean {
-    return false
+    return PreferenceUtils.shouldUseMlImage(context!!)
   }
 }
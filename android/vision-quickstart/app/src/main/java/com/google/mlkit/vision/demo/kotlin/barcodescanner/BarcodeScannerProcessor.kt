@@ -19,6 +19,7 @@ package com.google.mlkit.vision.demo.kotlin.barcodescanner
 import android.content.Context
 import android.util.Log
 import com.google.android.gms.tasks.Task
+import com.google.android.odml.image.MlImage
 import com.google.mlkit.vision.barcode.BarcodeScanner
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions
 import com.google.mlkit.vision.barcode.BarcodeScanning
@@ -62,6 +63,10 @@ class BarcodeScannerProcessor(context: Context, zoomCallback: ZoomCallback?) :
     return barcodeScanner.process(image)
   }
 
+  override fun detectInImage(image: MlImage): Task<List<Barcode>> {
+    return barcodeScanner.process(image)
+  }
+
   override fun onSuccess(barcodes: List<Barcode>, graphicOverlay: GraphicOverlay) {
     if (barcodes.isEmpty()) {
       Log.v(MANUAL_TESTING_LOG, "No barcode has been detected")
@@ -19,6 +19,7 @@ package com.google.mlkit.vision.demo.kotlin.facedetector
 import android.content.Context
 import android.util.Log
 import com.google.android.gms.tasks.Task
+import com.google.android.odml.image.MlImage
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.demo.GraphicOverlay
 import com.google.mlkit.vision.demo.kotlin.VisionProcessorBase
@@ -56,6 +57,10 @@ class FaceDetectorProcessor(context: Context, detectorOptions: FaceDetectorOptio
     return detector.process(image)
   }
 
+  override fun detectInImage(image: MlImage): Task<List<Face>> {
+    return detector.process(image)
+  }
+
   override fun onSuccess(faces: List<Face>, graphicOverlay: GraphicOverlay) {
     for (face in faces) {
       graphicOverlay.add(FaceGraphic(graphicOverlay, face))
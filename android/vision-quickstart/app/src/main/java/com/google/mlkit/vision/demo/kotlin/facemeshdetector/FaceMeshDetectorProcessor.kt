@@ -51,6 +51,10 @@ class FaceMeshDetectorProcessor(context: Context) :
     return detector.process(image)
   }
 
+  override fun detectInImage(image: MlImage): Task<List<FaceMesh>> {
+    return detector.process(image)
+  }
+
   override fun onSuccess(faces: List<FaceMesh>, graphicOverlay: GraphicOverlay) {
     for (face in faces) {
       graphicOverlay.add(FaceMeshGraphic(graphicOverlay, face))
@@ -19,6 +19,7 @@ package com.google.mlkit.vision.demo.kotlin.labeldetector
 import android.content.Context
 import android.util.Log
 import com.google.android.gms.tasks.Task
+import com.google.android.odml.image.MlImage
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.demo.GraphicOverlay
 import com.google.mlkit.vision.demo.kotlin.VisionProcessorBase
@@ -50,6 +51,10 @@ class LabelDetectorProcessor(context: Context, options: ImageLabelerOptionsBase)
     return imageLabeler.process(image)
   }
 
+  override fun detectInImage(image: MlImage): Task<List<ImageLabel>> {
+    return imageLabeler.process(image)
+  }
+
   override fun onSuccess(labels: List<ImageLabel>, graphicOverlay: GraphicOverlay) {
     graphicOverlay.add(LabelGraphic(graphicOverlay, labels))
     logExtrasForTesting(labels)
@@ -19,6 +19,7 @@ package com.google.mlkit.vision.demo.kotlin.objectdetector
 import android.content.Context
 import android.util.Log
 import com.google.android.gms.tasks.Task
+import com.google.android.odml.image.MlImage
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.demo.GraphicOverlay
 import com.google.mlkit.vision.demo.kotlin.VisionProcessorBase
@@ -51,6 +52,10 @@ class ObjectDetectorProcessor(context: Context, options: ObjectDetectorOptionsBa
     return detector.process(image)
   }
 
+  override fun detectInImage(image: MlImage): Task<List<DetectedObject>> {
+    return detector.process(image)
+  }
+
   override fun onSuccess(results: List<DetectedObject>, graphicOverlay: GraphicOverlay) {
     for (result in results) {
       graphicOverlay.add(ObjectGraphic(graphicOverlay, result))
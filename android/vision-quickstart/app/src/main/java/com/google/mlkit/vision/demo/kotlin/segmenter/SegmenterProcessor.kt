@@ -19,6 +19,7 @@ package com.google.mlkit.vision.demo.kotlin.segmenter
 import android.content.Context
 import android.util.Log
 import com.google.android.gms.tasks.Task
+import com.google.android.odml.image.MlImage
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.demo.GraphicOverlay
 import com.google.mlkit.vision.demo.kotlin.VisionProcessorBase
@@ -59,6 +60,10 @@ class SegmenterProcessor :
     return segmenter.process(image)
   }
 
+  override fun detectInImage(image: MlImage): Task<SegmentationMask> {
+    return segmenter.process(image)
+  }
+
   override fun onSuccess(
     segmentationMask: SegmentationMask,
     graphicOverlay: GraphicOverlay
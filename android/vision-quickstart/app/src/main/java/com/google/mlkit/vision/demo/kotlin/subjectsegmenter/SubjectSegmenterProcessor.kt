@@ -68,6 +68,11 @@ class SubjectSegmenterProcessor : VisionProcessorBase<SubjectSegmentationResult>
     Log.e(TAG, "Segmentation failed: $e")
   }
 
+  override fun isMlImageEnabled(context: Context?): Boolean {
+    // SubjectSegmenter only takes InputImage, and the image size is needed for the graphic anyway.
+    return false
+  }
+
   companion object {
     private const val TAG = "SbjSegmenterProcessor"
   }
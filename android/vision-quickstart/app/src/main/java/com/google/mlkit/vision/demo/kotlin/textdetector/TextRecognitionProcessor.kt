@@ -19,6 +19,7 @@ package com.google.mlkit.vision.demo.kotlin.textdetector
 import android.content.Context
 import android.util.Log
 import com.google.android.gms.tasks.Task
+import com.google.android.odml.image.MlImage
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.demo.GraphicOverlay
 import com.google.mlkit.vision.demo.kotlin.VisionProcessorBase
@@ -48,6 +49,10 @@ class TextRecognitionProcessor(
     return textRecognizer.process(image)
   }
 
+  override fun detectInImage(image: MlImage): Task<Text> {
+    return textRecognizer.process(image)
+  }
+
   override fun onSuccess(text: Text, graphicOverlay: GraphicOverlay) {
     Log.d(TAG, "On-device Text detection successful")
     logExtrasForTesting(text)
@@ -47,12 +47,23 @@ public class CameraXLivePreviewPreferenceFragment extends LivePreviewPreferenceF
         findPreference(getString(R.string.pref_key_rear_camera_preview_size)));
     cameraPreference.removePreference(
         findPreference(getString(R.string.pref_key_front_camera_preview_size)));
+    cameraPreference.removePreference(
+        findPreference(getString(R.string.pref_key_camera_frame_pipeline)));
+    cameraPreference.removePreference(
+        findPreference(getString(R.string.pref_key_camera_preview_buffer_count)));
     setUpCameraXTargetAnalysisSizePreference(
         R.string.pref_key_camerax_rear_camera_target_resolution, CameraSelector.LENS_FACING_BACK);
     setUpCameraXTargetAnalysisSizePreference(
         R.string.pref_key_camerax_front_camera_target_resolution, CameraSelector.LENS_FACING_FRONT);
   }
 
+  @Override
+  void removeJavaOnlyPreferences() {
+    super.removeJavaOnlyPreferences();
+    // The Kotlin CameraX activity does not change the capture rate.
+    SettingsActivity.removePreference(this, R.string.pref_key_adaptive_capture_rate);
+  }
+
   private void setUpCameraXTargetAnalysisSizePreference(
       @StringRes int previewSizePrefKeyId, int lensFacing) {
     ListPreference pref = (ListPreference) findPreference(getString(previewSizePrefKeyId));
@@ -38,6 +38,28 @@ public class CameraXSourceDemoPreferenceFragment extends CameraXLivePreviewPrefe
 
     preferenceCategory.removePreference(
         findPreference(getString(R.string.pref_key_camera_live_viewport)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_overlay_render_thread)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_camerax_analysis_background_executor)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_camerax_backpressure_strategy)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_camerax_rgba_output)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_adaptive_resolution_target_latency)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_thermal_governor)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_adaptive_capture_rate)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_detection_region)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_static_scene_skipping)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_keyframe_tracking)));
+    preferenceCategory.removePreference(
+        findPreference(getString(R.string.pref_key_detector_warm_up)));
     // Remove the PreferenceCategories for hiding camera detection info.
     preferenceScreen.removePreference(preferenceScreen.getPreference(1));
 
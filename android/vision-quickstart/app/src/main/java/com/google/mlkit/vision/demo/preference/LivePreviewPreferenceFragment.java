@@ -41,6 +41,25 @@ public class LivePreviewPreferenceFragment extends PreferenceFragment {
     addPreferencesFromResource(R.xml.preference_live_preview_quickstart);
     setUpCameraPreferences();
     setUpFaceDetectionPreferencesForStreamMode();
+    if (SettingsActivity.isKotlinDemo(this)) {
+      removeJavaOnlyPreferences();
+    }
+  }
+
+  /** Removes the settings that only the Java activities and processors implement. */
+  void removeJavaOnlyPreferences() {
+    SettingsActivity.removePreference(this, R.string.pref_key_camera_frame_pipeline);
+    SettingsActivity.removePreference(this, R.string.pref_key_adaptive_resolution_target_latency);
+    SettingsActivity.removePreference(this, R.string.pref_key_thermal_governor);
+    SettingsActivity.removePreference(this, R.string.pref_key_detection_region);
+    SettingsActivity.removePreference(this, R.string.pref_key_static_scene_skipping);
+    SettingsActivity.removePreference(this, R.string.pref_key_keyframe_tracking);
+    SettingsActivity.removePreference(this, R.string.pref_key_adaptive_barcode_formats);
+    SettingsActivity.removePreference(this, R.string.pref_key_barcode_tracking);
+    SettingsActivity.removePreference(this, R.string.pref_key_incremental_text_recognition);
+    SettingsActivity.removePreference(this, R.string.pref_key_object_detector_label_cache);
+    SettingsActivity.removePreference(this, R.string.pref_key_live_preview_face_detection_two_tier);
+    SettingsActivity.removePreference(this, R.string.pref_key_pose_detector_adaptive_model);
   }
 
   void setUpCameraPreferences() {
@@ -50,6 +69,12 @@ public class LivePreviewPreferenceFragment extends PreferenceFragment {
         findPreference(getString(R.string.pref_key_camerax_rear_camera_target_resolution)));
     cameraPreference.removePreference(
         findPreference(getString(R.string.pref_key_camerax_front_camera_target_resolution)));
+    cameraPreference.removePreference(
+        findPreference(getString(R.string.pref_key_camerax_analysis_background_executor)));
+    cameraPreference.removePreference(
+        findPreference(getString(R.string.pref_key_camerax_backpressure_strategy)));
+    cameraPreference.removePreference(
+        findPreference(getString(R.string.pref_key_camerax_rgba_output)));
     setUpCameraPreviewSizePreference(
         R.string.pref_key_rear_camera_preview_size,
         R.string.pref_key_rear_camera_picture_size,
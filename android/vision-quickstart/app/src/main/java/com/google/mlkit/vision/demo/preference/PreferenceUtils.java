@@ -24,11 +24,13 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.annotation.StringRes;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
 import com.google.android.gms.common.images.Size;
 import com.google.common.base.Preconditions;
 import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.demo.CameraSource;
 import com.google.mlkit.vision.demo.CameraSource.SizePair;
+import com.google.mlkit.vision.demo.DetectionRegion;
 import com.google.mlkit.vision.demo.R;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.google.mlkit.vision.facemesh.FaceMeshDetectorOptions;
@@ -43,6 +45,9 @@ import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions;
 public class PreferenceUtils {
 
   private static final int POSE_DETECTOR_PERFORMANCE_MODE_FAST = 1;
+  private static final int REGION_FULL_FRAME = 0;
+  private static final int REGION_CENTER = 1;
+  private static final int REGION_TRACKED = 2;
 
   static void saveString(Context context, @StringRes int prefKeyId, @Nullable String value) {
     PreferenceManager.getDefaultSharedPreferences(context)
@@ -185,6 +190,45 @@ public class PreferenceUtils {
     return builder.build();
   }
 
+  /**
+   * Returns the options of the detector that tracks objects on every live frame when the object
+   * label cache is turned on: the live settings without classification.
+   */
+  public static ObjectDetectorOptions getObjectLocalizerOptionsForLivePreview(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    boolean enableMultipleObjects =
+        sharedPreferences.getBoolean(
+            context.getString(
+                R.string.pref_key_live_preview_object_detector_enable_multiple_objects),
+            false);
+    ObjectDetectorOptions.Builder builder =
+        new ObjectDetectorOptions.Builder().setDetectorMode(ObjectDetectorOptions.STREAM_MODE);
+    if (enableMultipleObjects) {
+      builder.enableMultipleObjects();
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the options of the detector that classifies live frames when the object label cache
+   * needs labels. It runs on some frames only, so it does not track objects across frames.
+   */
+  public static CustomObjectDetectorOptions getCustomObjectClassifierOptions(
+      Context context, LocalModel localModel) {
+    return getCustomObjectDetectorOptions(
+        context,
+        localModel,
+        R.string.pref_key_live_preview_object_detector_enable_multiple_objects,
+        R.string.pref_key_live_preview_object_detector_enable_classification,
+        CustomObjectDetectorOptions.SINGLE_IMAGE_MODE);
+  }
+
+  public static boolean isObjectLabelCacheEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_object_detector_label_cache);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
   public static FaceDetectorOptions getFaceDetectorOptions(Context context) {
     int landmarkMode =
         getModeTypePreferenceValue(
@@ -230,6 +274,30 @@ public class PreferenceUtils {
     return optionsBuilder.build();
   }
 
+  /**
+   * Returns the options of the fast face detector run on every live frame when two-tier face
+   * detection is turned on: tracking and nothing else, with the minimum face size of the settings.
+   */
+  public static FaceDetectorOptions getFastFaceDetectorOptions(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    float minFaceSize =
+        Float.parseFloat(
+            sharedPreferences.getString(
+                context.getString(R.string.pref_key_live_preview_face_detection_min_face_size),
+                "0.1"));
+    return new FaceDetectorOptions.Builder()
+        .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+        .setMinFaceSize(minFaceSize)
+        .enableTracking()
+        .build();
+  }
+
+  public static boolean isTwoTierFaceDetectionEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_live_preview_face_detection_two_tier);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
   public static PoseDetectorOptionsBase getPoseDetectorOptionsForLivePreview(Context context) {
     int performanceMode =
         getModeTypePreferenceValue(
@@ -286,6 +354,18 @@ public class PreferenceUtils {
     return sharedPreferences.getBoolean(prefKey, true);
   }
 
+  public static boolean isAdaptiveBarcodeFormatsEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_adaptive_barcode_formats);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isBarcodeTrackingEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_barcode_tracking);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
   public static boolean shouldGroupRecognizedTextInBlocks(Context context) {
     SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
     String prefKey = context.getString(R.string.pref_key_group_recognized_text_in_blocks);
@@ -304,6 +384,12 @@ public class PreferenceUtils {
     return sharedPreferences.getBoolean(prefKey, false);
   }
 
+  public static boolean isIncrementalTextRecognitionEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_incremental_text_recognition);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
   public static boolean preferGPUForPoseDetection(Context context) {
     SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
     String prefKey = context.getString(R.string.pref_key_pose_detector_prefer_gpu);
@@ -342,6 +428,12 @@ public class PreferenceUtils {
     return sharedPreferences.getBoolean(prefKey, false);
   }
 
+  public static boolean isAdaptivePoseModelEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_pose_detector_adaptive_model);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
   public static boolean shouldSegmentationEnableRawSizeMask(Context context) {
     SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
     String prefKey = context.getString(R.string.pref_key_segmentation_raw_size_mask);
@@ -360,12 +452,123 @@ public class PreferenceUtils {
     return Integer.parseInt(sharedPreferences.getString(prefKey, String.valueOf(defaultValue)));
   }
 
+  /** Returns how many images of a batch may be in the detector at once. */
+  public static int getBatchConcurrency(Context context) {
+    return getModeTypePreferenceValue(context, R.string.pref_key_batch_concurrency, 2);
+  }
+
+  public static boolean shouldUseMlImage(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_use_ml_image);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
   public static boolean isCameraLiveViewportEnabled(Context context) {
     SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
     String prefKey = context.getString(R.string.pref_key_camera_live_viewport);
     return sharedPreferences.getBoolean(prefKey, false);
   }
 
+  public static boolean isCameraFramePipelineEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_camera_frame_pipeline);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean shouldRenderOverlayOnRenderThread(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_overlay_render_thread);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean shouldRunCameraXAnalysisInBackground(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_camerax_analysis_background_executor);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  /**
+   * Returns the {@link ImageAnalysis} backpressure strategy, either {@link
+   * ImageAnalysis#STRATEGY_KEEP_ONLY_LATEST} or {@link ImageAnalysis#STRATEGY_BLOCK_PRODUCER}.
+   */
+  public static int getCameraXBackpressureStrategy(Context context) {
+    return getModeTypePreferenceValue(
+        context,
+        R.string.pref_key_camerax_backpressure_strategy,
+        ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST);
+  }
+
+  /**
+   * Returns the detector latency that live preview frames are scaled down for, or 0 if frames are
+   * always processed at full resolution.
+   */
+  public static long getAdaptiveResolutionTargetLatencyMs(Context context) {
+    return getModeTypePreferenceValue(
+        context, R.string.pref_key_adaptive_resolution_target_latency, 0);
+  }
+
+  public static boolean isThermalGovernorEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_thermal_governor);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  /** Returns how many preview buffers the Camera1 source hands to the camera. */
+  public static int getCameraPreviewBufferCount(Context context) {
+    return getModeTypePreferenceValue(
+        context,
+        R.string.pref_key_camera_preview_buffer_count,
+        CameraSource.DEFAULT_PREVIEW_BUFFER_COUNT);
+  }
+
+  public static boolean isAdaptiveCaptureRateEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_adaptive_capture_rate);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  /**
+   * Returns the region of live frames that detectors should process, or null if they should process
+   * whole frames.
+   */
+  @Nullable
+  public static DetectionRegion getDetectionRegion(Context context) {
+    int regionType =
+        getModeTypePreferenceValue(context, R.string.pref_key_detection_region, REGION_FULL_FRAME);
+    switch (regionType) {
+      case REGION_CENTER:
+        return DetectionRegion.center(/* widthFraction= */ 0.6f, /* heightFraction= */ 0.6f);
+      case REGION_TRACKED:
+        return DetectionRegion.tracked();
+      default:
+        return null;
+    }
+  }
+
+  public static boolean isStaticSceneSkippingEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_static_scene_skipping);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isKeyframeTrackingEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_keyframe_tracking);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isDetectorWarmUpEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_detector_warm_up);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isCameraXRgbaOutputEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_camerax_rgba_output);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
   public static int getFaceMeshUseCase(Context context) {
     SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
     String prefKey = context.getString(R.string.pref_key_face_mesh_use_case);
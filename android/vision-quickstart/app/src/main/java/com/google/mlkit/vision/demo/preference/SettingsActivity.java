@@ -17,7 +17,11 @@
 package com.google.mlkit.vision.demo.preference;
 
 import android.os.Bundle;
+import android.preference.Preference;
 import android.preference.PreferenceFragment;
+import android.preference.PreferenceGroup;
+import android.preference.PreferenceScreen;
+import androidx.annotation.StringRes;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.mlkit.vision.demo.R;
@@ -30,6 +34,12 @@ public class SettingsActivity extends AppCompatActivity {
 
   public static final String EXTRA_LAUNCH_SOURCE = "extra_launch_source";
 
+  /**
+   * Set by the Kotlin demo activities, so that the settings only the Java activities and processors
+   * implement are not shown to them.
+   */
+  public static final String EXTRA_KOTLIN_DEMO = "extra_kotlin_demo";
+
   /** Specifies where this activity is launched from. */
   @SuppressWarnings("NewApi") // CameraX is only available on API 21+
   public enum LaunchSource {
@@ -74,4 +84,31 @@ public class SettingsActivity extends AppCompatActivity {
       throw new RuntimeException(e);
     }
   }
+
+  /** Returns whether the settings were opened from a Kotlin demo activity. */
+  static boolean isKotlinDemo(PreferenceFragment fragment) {
+    return fragment.getActivity().getIntent().getBooleanExtra(EXTRA_KOTLIN_DEMO, false);
+  }
+
+  /**
+   * Removes a preference from the category holding it, and the category as well if nothing is left
+   * in it. Does nothing if the preference was already removed.
+   */
+  static void removePreference(PreferenceFragment fragment, @StringRes int keyId) {
+    Preference preference = fragment.findPreference(fragment.getString(keyId));
+    if (preference == null) {
+      return;
+    }
+    PreferenceScreen preferenceScreen = fragment.getPreferenceScreen();
+    for (int i = 0; i < preferenceScreen.getPreferenceCount(); i++) {
+      Preference child = preferenceScreen.getPreference(i);
+      if (child instanceof PreferenceGroup
+          && ((PreferenceGroup) child).removePreference(preference)) {
+        if (((PreferenceGroup) child).getPreferenceCount() == 0) {
+          preferenceScreen.removePreference(child);
+        }
+        return;
+      }
+    }
+  }
 }
@@ -27,5 +27,9 @@ public class StillImagePreferenceFragment extends PreferenceFragment {
   public void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     addPreferencesFromResource(R.xml.preference_still_image);
+    if (SettingsActivity.isKotlinDemo(this)) {
+      // Only the Java still image activity has a batch mode.
+      SettingsActivity.removePreference(this, R.string.pref_key_batch_concurrency);
+    }
   }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class AdaptiveResolutionControllerTest {
+
+  private static final long TARGET_LATENCY_MS = 100;
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  private final FakeSharedPreferences calibration = new FakeSharedPreferences();
+  private final AdaptiveResolutionController controller =
+      new AdaptiveResolutionController(calibration, "detector", TARGET_LATENCY_MS);
+  private long nowMs;
+
+  @Test
+  public void startsAtFullResolution() {
+    assertEquals(1, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void stepsDownAfterConsecutiveSlowFrames() {
+    controller.getDownscaleFactor(WIDTH, HEIGHT);
+
+    feed(200, 9);
+    assertEquals(1, controller.getDownscaleFactor(WIDTH, HEIGHT));
+    feed(200, 1);
+    assertEquals(2, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void keepsResolutionWithinStepDownMargin() {
+    controller.getDownscaleFactor(WIDTH, HEIGHT);
+
+    feed(110, 100);
+
+    assertEquals(1, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void ignoresFramesInFlightWhenFactorChanged() {
+    stepDownToFactorTwo();
+
+    // Frames already in the detector when the factor changed were subsampled less.
+    feed(1_000, 3);
+    feed(200, 9);
+
+    assertEquals(2, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void stepsUpOnlyAfterMoreFramesUnderTarget() {
+    stepDownToFactorTwo();
+    // The measurement at full resolution is stale by then, so it is predicted from the pixel
+    // count: 4 x 20 ms.
+    nowMs += 31_000;
+
+    feed(20, 3 + 59);
+    assertEquals(2, controller.getDownscaleFactor(WIDTH, HEIGHT));
+    feed(20, 1);
+    assertEquals(1, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void keepsResolutionWithinStepUpMargin() {
+    stepDownToFactorTwo();
+    nowMs += 31_000;
+
+    // Predicted at 4 x 22 ms = 88 ms at full resolution, over 85% of the target.
+    feed(22, 200);
+
+    assertEquals(2, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void recentMeasurementKeepsResolutionDown() {
+    stepDownToFactorTwo();
+
+    // Fast at factor 2, but measured at 200 ms at full resolution a moment ago.
+    feed(20, 200);
+
+    assertEquals(2, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void startsFromCalibratedFactor() {
+    stepDownToFactorTwo();
+
+    AdaptiveResolutionController nextSession =
+        new AdaptiveResolutionController(calibration, "detector", TARGET_LATENCY_MS);
+
+    assertEquals(2, nextSession.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  @Test
+  public void keepsSmallFramesAtFullResolution() {
+    controller.getDownscaleFactor(320, 200);
+
+    feed(1_000, 100);
+
+    assertEquals(1, controller.getDownscaleFactor(320, 200));
+  }
+
+  @Test
+  public void limitsFactorByShortSide() {
+    controller.getDownscaleFactor(WIDTH, HEIGHT);
+
+    for (int i = 0; i < 10; i++) {
+      feed(1_000, 3 + 10);
+    }
+
+    // 480 / 4 = 120 pixels, the smallest short side that is still detected well.
+    assertEquals(4, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  private void stepDownToFactorTwo() {
+    controller.getDownscaleFactor(WIDTH, HEIGHT);
+    feed(200, 10);
+    assertEquals(2, controller.getDownscaleFactor(WIDTH, HEIGHT));
+  }
+
+  private void feed(long latencyMs, int frames) {
+    for (int i = 0; i < frames; i++) {
+      nowMs += 33;
+      controller.onDetectorLatency(latencyMs, nowMs);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CaptureRateControllerTest {
+
+  private static final int MAX_FPS = 30;
+
+  private final CaptureRateController controller = new CaptureRateController(MAX_FPS);
+
+  @Test
+  public void startsAtMaxFps() {
+    assertEquals(MAX_FPS, controller.getTargetFps());
+  }
+
+  @Test
+  public void lowersTargetToProcessedFpsWithHeadroom() {
+    assertEquals(13, controller.onEvaluation(10, MAX_FPS, 0));
+  }
+
+  @Test
+  public void ignoresUnknownProcessedFps() {
+    assertEquals(MAX_FPS, controller.onEvaluation(-1, MAX_FPS, 0));
+  }
+
+  @Test
+  public void neverGoesUnderMinFps() {
+    assertEquals(5, controller.onEvaluation(1, MAX_FPS, 0));
+  }
+
+  @Test
+  public void ignoresEvaluationRightAfterChange() {
+    controller.onEvaluation(16, MAX_FPS, 0);
+    assertEquals(20, controller.getTargetFps());
+
+    // Still includes frames captured at the previous rate.
+    assertEquals(20, controller.onEvaluation(8, MAX_FPS, 2_000));
+  }
+
+  @Test
+  public void ignoresSmallChanges() {
+    controller.onEvaluation(16, MAX_FPS, 0);
+    controller.onEvaluation(16, 20, 2_000);
+
+    // 17 fps would ask for 21, which is not worth reconfiguring the camera.
+    assertEquals(20, controller.onEvaluation(17, 20, 4_000));
+    assertEquals(20, controller.onEvaluation(17, 20, 6_000));
+  }
+
+  @Test
+  public void probesMaxFpsOnlyAfterConsecutiveSaturatedEvaluations() {
+    controller.onEvaluation(10, MAX_FPS, 0);
+    controller.onEvaluation(10, 13, 2_000);
+
+    assertEquals(13, controller.onEvaluation(12, 13, 4_000));
+    assertEquals(MAX_FPS, controller.onEvaluation(12, 13, 6_000));
+  }
+
+  @Test
+  public void saturationCountRestartsWhenProcessorFallsBehind() {
+    controller.onEvaluation(10, MAX_FPS, 0);
+    controller.onEvaluation(10, 13, 2_000);
+
+    assertEquals(13, controller.onEvaluation(12, 13, 4_000));
+    assertEquals(13, controller.onEvaluation(10, 13, 6_000));
+    assertEquals(13, controller.onEvaluation(12, 13, 8_000));
+  }
+
+  @Test
+  public void doesNotProbeAgainDuringCooldown() {
+    controller.onEvaluation(10, MAX_FPS, 0);
+    controller.onEvaluation(10, 13, 2_000);
+    controller.onEvaluation(12, 13, 4_000);
+    controller.onEvaluation(12, 13, 6_000);
+    // The probe shows the processor does not get faster.
+    controller.onEvaluation(12, MAX_FPS, 8_000);
+    assertEquals(15, controller.onEvaluation(12, MAX_FPS, 10_000));
+    controller.onEvaluation(14, 15, 12_000);
+
+    assertEquals(15, controller.onEvaluation(14, 15, 14_000));
+    assertEquals(15, controller.onEvaluation(14, 15, 16_000));
+    assertEquals(15, controller.onEvaluation(14, 15, 18_000));
+    assertEquals(MAX_FPS, controller.onEvaluation(14, 15, 26_000));
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import android.content.SharedPreferences;
+import androidx.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/** In-memory {@link SharedPreferences}, whose edits are applied right away. */
+final class FakeSharedPreferences implements SharedPreferences {
+
+  private final Map<String, Object> values = new HashMap<>();
+
+  @Override
+  public Map<String, ?> getAll() {
+    return new HashMap<>(values);
+  }
+
+  @Nullable
+  @Override
+  public String getString(String key, @Nullable String defValue) {
+    return values.containsKey(key) ? (String) values.get(key) : defValue;
+  }
+
+  @Nullable
+  @Override
+  @SuppressWarnings("unchecked")
+  public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+    return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+  }
+
+  @Override
+  public int getInt(String key, int defValue) {
+    return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+  }
+
+  @Override
+  public long getLong(String key, long defValue) {
+    return values.containsKey(key) ? (Long) values.get(key) : defValue;
+  }
+
+  @Override
+  public float getFloat(String key, float defValue) {
+    return values.containsKey(key) ? (Float) values.get(key) : defValue;
+  }
+
+  @Override
+  public boolean getBoolean(String key, boolean defValue) {
+    return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+  }
+
+  @Override
+  public boolean contains(String key) {
+    return values.containsKey(key);
+  }
+
+  @Override
+  public Editor edit() {
+    return new FakeEditor();
+  }
+
+  @Override
+  public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void unregisterOnSharedPreferenceChangeListener(
+      OnSharedPreferenceChangeListener listener) {
+    throw new UnsupportedOperationException();
+  }
+
+  private final class FakeEditor implements Editor {
+
+    @Override
+    public Editor putString(String key, @Nullable String value) {
+      values.put(key, value);
+      return this;
+    }
+
+    @Override
+    public Editor putStringSet(String key, @Nullable Set<String> values) {
+      FakeSharedPreferences.this.values.put(key, values);
+      return this;
+    }
+
+    @Override
+    public Editor putInt(String key, int value) {
+      values.put(key, value);
+      return this;
+    }
+
+    @Override
+    public Editor putLong(String key, long value) {
+      values.put(key, value);
+      return this;
+    }
+
+    @Override
+    public Editor putFloat(String key, float value) {
+      values.put(key, value);
+      return this;
+    }
+
+    @Override
+    public Editor putBoolean(String key, boolean value) {
+      values.put(key, value);
+      return this;
+    }
+
+    @Override
+    public Editor remove(String key) {
+      values.remove(key);
+      return this;
+    }
+
+    @Override
+    public Editor clear() {
+      values.clear();
+      return this;
+    }
+
+    @Override
+    public boolean commit() {
+      return true;
+    }
+
+    @Override
+    public void apply() {}
+  }
+}
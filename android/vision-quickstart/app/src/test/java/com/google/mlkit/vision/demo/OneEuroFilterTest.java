@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class OneEuroFilterTest {
+
+  private static final long FRAME_INTERVAL_MS = 33;
+
+  @Test
+  public void passesFirstSampleThrough() {
+    OneEuroFilter filter = new OneEuroFilter(1f, 0f, 1f);
+
+    assertEquals(42f, filter.filter(42f, 1_000), 0f);
+    assertEquals(0f, filter.getDerivative(), 0f);
+  }
+
+  @Test
+  public void smoothsJitterOfStillValue() {
+    OneEuroFilter filter = new OneEuroFilter(1f, 0f, 1f);
+    filter.filter(100f, 0);
+
+    float maxDeviation = 0;
+    for (int i = 1; i <= 30; i++) {
+      float rawValue = i % 2 == 0 ? 105f : 95f;
+      float value = filter.filter(rawValue, i * FRAME_INTERVAL_MS);
+      maxDeviation = Math.max(maxDeviation, Math.abs(value - 100f));
+    }
+
+    assertTrue("deviation " + maxDeviation, maxDeviation < 2f);
+  }
+
+  @Test
+  public void lagsLessWhileMovingWithHigherBeta() {
+    OneEuroFilter still = new OneEuroFilter(1f, 0f, 1f);
+    OneEuroFilter adaptive = new OneEuroFilter(1f, 0.05f, 1f);
+    float rawValue = 0;
+    for (int i = 0; i <= 30; i++) {
+      rawValue = i * 10f;
+      still.filter(rawValue, i * FRAME_INTERVAL_MS);
+      adaptive.filter(rawValue, i * FRAME_INTERVAL_MS);
+    }
+
+    float stillLag = rawValue - still.getValue();
+    float adaptiveLag = rawValue - adaptive.getValue();
+    assertTrue("lag " + adaptiveLag + " vs " + stillLag, adaptiveLag < stillLag / 2);
+  }
+
+  @Test
+  public void derivativeFollowsMotion() {
+    OneEuroFilter rising = new OneEuroFilter(1f, 0.05f, 1f);
+    OneEuroFilter falling = new OneEuroFilter(1f, 0.05f, 1f);
+    for (int i = 0; i <= 100; i++) {
+      // 300 units per second.
+      rising.filter(i * 3f, i * 10L);
+      falling.filter(-i * 3f, i * 10L);
+    }
+
+    assertTrue("derivative " + rising.getDerivative(), rising.getDerivative() > 250f);
+    assertEquals(-rising.getDerivative(), falling.getDerivative(), 1e-3f);
+  }
+
+  @Test
+  public void derivativeDecaysOnceStill() {
+    OneEuroFilter filter = new OneEuroFilter(1f, 0.05f, 1f);
+    for (int i = 0; i <= 30; i++) {
+      filter.filter(i * 10f, i * FRAME_INTERVAL_MS);
+    }
+    float movingDerivative = filter.getDerivative();
+    for (int i = 31; i <= 90; i++) {
+      filter.filter(300f, i * FRAME_INTERVAL_MS);
+    }
+
+    assertTrue(
+        "derivative " + filter.getDerivative(),
+        Math.abs(filter.getDerivative()) < movingDerivative / 10);
+  }
+
+  @Test
+  public void keepsLastSampleTime() {
+    OneEuroFilter filter = new OneEuroFilter(1f, 0f, 1f);
+    filter.filter(1f, 100);
+    filter.filter(2f, 133);
+
+    assertEquals(133, filter.getLastTimeMs());
+  }
+}
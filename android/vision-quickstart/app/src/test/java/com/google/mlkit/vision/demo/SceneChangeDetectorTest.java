@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SceneChangeDetectorTest {
+
+  private static final int SIGNATURE_SIZE = 32 * 32;
+
+  private final SceneChangeDetector<Object> detector = new SceneChangeDetector<>();
+  private final Object results = new Object();
+
+  @Test
+  public void detectsFramesUntilReferenceIsSet() {
+    assertNull(detector.getReusableResults(signature(100), 0));
+  }
+
+  @Test
+  public void reusesResultsUnderMeanDifferenceThreshold() {
+    detector.setReference(signature(100), results, 0);
+
+    assertSame(results, detector.getReusableResults(signature(103), 100));
+    assertNull(detector.getReusableResults(signature(104), 100));
+  }
+
+  @Test
+  public void averagesDifferenceOverSignature() {
+    detector.setReference(signature(100), results, 0);
+    byte[] signature = signature(100);
+    // A large change in a small part of the frame, e.g. a moving hand, is not averaged away.
+    Arrays.fill(signature, 0, SIGNATURE_SIZE / 8, (byte) 140);
+
+    assertNull(detector.getReusableResults(signature, 100));
+  }
+
+  @Test
+  public void slowChangesAddUpAgainstDetectedReference() {
+    detector.setReference(signature(100), results, 0);
+
+    assertSame(results, detector.getReusableResults(signature(102), 100));
+    assertSame(results, detector.getReusableResults(signature(103), 200));
+    assertNull(detector.getReusableResults(signature(105), 300));
+  }
+
+  @Test
+  public void expiresResults() {
+    detector.setReference(signature(100), results, 0);
+
+    assertSame(results, detector.getReusableResults(signature(100), 1_000));
+    assertNull(detector.getReusableResults(signature(100), 1_001));
+  }
+
+  @Test
+  public void resetDropsReference() {
+    detector.setReference(signature(100), results, 0);
+    detector.reset();
+
+    assertNull(detector.getReusableResults(signature(100), 100));
+  }
+
+  @Test
+  public void comparesLumaAsUnsigned() {
+    assertTrue(SceneChangeDetector.isUnchanged(signature(200), signature(202)));
+    assertFalse(SceneChangeDetector.isUnchanged(signature(0), signature(255)));
+  }
+
+  private static byte[] signature(int luma) {
+    byte[] signature = new byte[SIGNATURE_SIZE];
+    Arrays.fill(signature, (byte) luma);
+    return signature;
+  }
+}
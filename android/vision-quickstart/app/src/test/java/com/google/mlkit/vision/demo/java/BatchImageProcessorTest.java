@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.java;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.RectF;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class BatchImageProcessorTest {
+
+  private static final String URI = "content://images/1";
+
+  @Test
+  public void formatsResultLine() {
+    RectF bounds = new RectF();
+    // Set field by field, as the constructors of the framework stubs do nothing.
+    bounds.left = 10.4f;
+    bounds.top = 20.6f;
+    bounds.right = 110f;
+    bounds.bottom = 220f;
+
+    assertEquals(
+        URI + "\t640\t480\t12\t3\t45\t2\t10,21,110,220",
+        BatchImageProcessor.formatResultLine(URI, 640, 480, 12, 3, 45, 2, bounds));
+  }
+
+  @Test
+  public void formatsUncountedResultsWithoutLocation() {
+    assertEquals(
+        URI + "\t640\t480\t12\t3\t45\t-\t-",
+        BatchImageProcessor.formatResultLine(URI, 640, 480, 12, 3, 45, -1, null));
+  }
+
+  @Test
+  public void formatsEmptyResults() {
+    assertEquals(
+        URI + "\t640\t480\t12\t3\t45\t0\t-",
+        BatchImageProcessor.formatResultLine(URI, 640, 480, 12, 3, 45, 0, null));
+  }
+
+  @Test
+  public void keepsErrorOnOneLine() {
+    assertEquals(
+        URI + "\terror\tjava.io.IOException: bad  header",
+        BatchImageProcessor.formatErrorLine(URI, "java.io.IOException: bad\t\nheader"));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.java.barcodescanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class BarcodeFormatLearnerTest {
+
+  private static final int WARM_UP_SCANS = 30;
+
+  private final BarcodeFormatLearner learner = new BarcodeFormatLearner();
+
+  @Test
+  public void scansAllFormatsDuringWarmUp() {
+    scan(Barcode.FORMAT_QR_CODE, WARM_UP_SCANS - 1, 0);
+
+    assertEquals(Barcode.FORMAT_ALL_FORMATS, learner.getNarrowedFormats());
+    assertFalse(learner.shouldProbe(10_000));
+  }
+
+  @Test
+  public void narrowsToSeenFormatsAfterWarmUp() {
+    scan(Barcode.FORMAT_QR_CODE, 10, 0);
+    scan(Barcode.FORMAT_EAN_13, 10, 0);
+    scan(0, 10, 0);
+
+    assertEquals(Barcode.FORMAT_QR_CODE | Barcode.FORMAT_EAN_13, learner.getNarrowedFormats());
+  }
+
+  @Test
+  public void keepsAllFormatsWhileNothingIsSeen() {
+    scan(0, 2 * WARM_UP_SCANS, 0);
+
+    assertEquals(Barcode.FORMAT_ALL_FORMATS, learner.getNarrowedFormats());
+  }
+
+  @Test
+  public void probesOncePerInterval() {
+    scan(Barcode.FORMAT_QR_CODE, WARM_UP_SCANS, 1_000);
+
+    assertFalse(learner.shouldProbe(2_999));
+    assertTrue(learner.shouldProbe(3_000));
+    assertFalse(learner.shouldProbe(3_100));
+    assertTrue(learner.shouldProbe(5_000));
+  }
+
+  @Test
+  public void widensFormatsFoundByProbe() {
+    scan(Barcode.FORMAT_QR_CODE, WARM_UP_SCANS, 0);
+    assertTrue(learner.shouldProbe(2_000));
+
+    learner.onResults(Barcode.FORMAT_CODE_128, /* isFullScan= */ true, 50, 2_050);
+
+    assertEquals(Barcode.FORMAT_QR_CODE | Barcode.FORMAT_CODE_128, learner.getNarrowedFormats());
+    // The interval restarts with the new formats.
+    assertFalse(learner.shouldProbe(3_000));
+  }
+
+  @Test
+  public void splitsFormatsOneByOne() {
+    assertArrayEquals(
+        new int[] {Barcode.FORMAT_CODE_128, Barcode.FORMAT_QR_CODE},
+        BarcodeFormatLearner.toFormatList(Barcode.FORMAT_QR_CODE | Barcode.FORMAT_CODE_128));
+    assertArrayEquals(new int[0], BarcodeFormatLearner.toFormatList(0));
+  }
+
+  private void scan(int foundFormats, int scans, long nowMs) {
+    for (int i = 0; i < scans; i++) {
+      learner.onResults(foundFormats, /* isFullScan= */ true, 50, nowMs);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.java.objectdetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Rect;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ObjectLabelCacheTest {
+
+  private static final Rect BOX = rect(0, 0, 100, 100);
+
+  @Test
+  public void computesIntersectionOverUnion() {
+    assertEquals(1f, ObjectLabelCache.getIntersectionOverUnion(BOX, rect(0, 0, 100, 100)), 1e-6f);
+    assertEquals(
+        50f / 150, ObjectLabelCache.getIntersectionOverUnion(BOX, rect(50, 0, 150, 100)), 1e-6f);
+    assertEquals(0f, ObjectLabelCache.getIntersectionOverUnion(BOX, rect(100, 0, 200, 100)), 0f);
+    assertEquals(0f, ObjectLabelCache.getIntersectionOverUnion(BOX, rect(0, 0, 0, 0)), 0f);
+  }
+
+  @Test
+  public void keepsLabelsOfObjectThatBarelyMoved() {
+    // Overlaps by 90 / 110.
+    assertFalse(ObjectLabelCache.needsLabels(BOX, 0, rect(10, 0, 110, 100), 1_000));
+  }
+
+  @Test
+  public void replacesLabelsOfObjectThatChangedSignificantly() {
+    // Overlaps by 75 / 125 = 0.6, still the same object.
+    assertFalse(ObjectLabelCache.needsLabels(BOX, 0, rect(25, 0, 125, 100), 1_000));
+    // Overlaps by 74 / 126.
+    assertTrue(ObjectLabelCache.needsLabels(BOX, 0, rect(26, 0, 126, 100), 1_000));
+  }
+
+  @Test
+  public void replacesExpiredLabels() {
+    assertFalse(ObjectLabelCache.needsLabels(BOX, 1_000, BOX, 4_000));
+    assertTrue(ObjectLabelCache.needsLabels(BOX, 1_000, BOX, 4_001));
+  }
+
+  private static Rect rect(int left, int top, int right, int bottom) {
+    // Set field by field, as the constructors of the framework stubs do nothing.
+    Rect rect = new Rect();
+    rect.left = left;
+    rect.top = top;
+    rect.right = right;
+    rect.bottom = bottom;
+    return rect;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class PoseModelSelectorTest {
+
+  private static final long BUDGET_MS = 100;
+  private static final float UNCERTAIN = 0.5f;
+  private static final float CERTAIN = 0.95f;
+
+  private final PoseModelSelector selector =
+      new PoseModelSelector(BUDGET_MS, /* isAccurate= */ false, /* startMs= */ 0);
+
+  @Test
+  public void keepsBaseModelWhileLandmarksAreCertain() {
+    selector.onResult(/* wasAccurate= */ false, 30, CERTAIN, 5_000);
+
+    assertFalse(selector.isAccurate());
+  }
+
+  @Test
+  public void keepsBaseModelWithoutHeadroom() {
+    selector.onResult(/* wasAccurate= */ false, 50, UNCERTAIN, 5_000);
+
+    assertFalse(selector.isAccurate());
+  }
+
+  @Test
+  public void keepsBaseModelWithoutPose() {
+    selector.onResult(/* wasAccurate= */ false, 30, -1, 5_000);
+
+    assertFalse(selector.isAccurate());
+  }
+
+  @Test
+  public void switchesToAccurateModelOnlyAfterMinModeDuration() {
+    selector.onResult(/* wasAccurate= */ false, 30, UNCERTAIN, 1_999);
+    assertFalse(selector.isAccurate());
+
+    selector.onResult(/* wasAccurate= */ false, 30, UNCERTAIN, 2_000);
+    assertTrue(selector.isAccurate());
+  }
+
+  @Test
+  public void keepsAccurateModelWithinBudget() {
+    switchToAccurateModel();
+
+    selector.onResult(/* wasAccurate= */ true, 90, UNCERTAIN, 5_000);
+
+    assertTrue(selector.isAccurate());
+  }
+
+  @Test
+  public void switchesBackToBaseModelOverBudget() {
+    switchToAccurateModel();
+
+    selector.onResult(/* wasAccurate= */ true, 150, UNCERTAIN, 4_000);
+
+    assertFalse(selector.isAccurate());
+  }
+
+  @Test
+  public void ignoresFramesOfPreviousModel() {
+    switchToAccurateModel();
+
+    selector.onResult(/* wasAccurate= */ false, 500, UNCERTAIN, 4_000);
+
+    assertTrue(selector.isAccurate());
+  }
+
+  @Test
+  public void retriesAccurateModelOnlyAfterRetryInterval() {
+    switchToAccurateModel();
+    selector.onResult(/* wasAccurate= */ true, 150, UNCERTAIN, 4_000);
+
+    selector.onResult(/* wasAccurate= */ false, 30, UNCERTAIN, 6_000);
+    assertFalse(selector.isAccurate());
+    selector.onResult(/* wasAccurate= */ false, 30, UNCERTAIN, 14_000);
+    assertFalse(selector.isAccurate());
+
+    selector.onResult(/* wasAccurate= */ false, 30, UNCERTAIN, 14_001);
+    assertTrue(selector.isAccurate());
+  }
+
+  private void switchToAccurateModel() {
+    selector.onResult(/* wasAccurate= */ false, 30, UNCERTAIN, 2_000);
+    assertTrue(selector.isAccurate());
+  }
+}